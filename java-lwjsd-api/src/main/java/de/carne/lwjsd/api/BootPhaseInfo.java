@@ -0,0 +1,75 @@
+/*
+ * Copyright (c) 2018-2021 Holger de Carne and contributors, All Rights Reserved.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.carne.lwjsd.api;
+
+import java.time.Duration;
+
+/**
+ * {@linkplain ServiceManager} boot phase information.
+ */
+public final class BootPhaseInfo {
+
+	private final String name;
+	private final Duration offset;
+	private final Duration duration;
+
+	/**
+	 * Constructs a new {@linkplain BootPhaseInfo} instance.
+	 *
+	 * @param name the name of the boot phase.
+	 * @param offset the start of the boot phase relative to the start of the boot.
+	 * @param duration the duration of the boot phase.
+	 */
+	public BootPhaseInfo(String name, Duration offset, Duration duration) {
+		this.name = name;
+		this.offset = offset;
+		this.duration = duration;
+	}
+
+	/**
+	 * Gets the name of the boot phase.
+	 *
+	 * @return the name of the boot phase.
+	 */
+	public String name() {
+		return this.name;
+	}
+
+	/**
+	 * Gets the start of the boot phase relative to the start of the boot.
+	 *
+	 * @return the start of the boot phase relative to the start of the boot.
+	 */
+	public Duration offset() {
+		return this.offset;
+	}
+
+	/**
+	 * Gets the duration of the boot phase.
+	 *
+	 * @return the duration of the boot phase.
+	 */
+	public Duration duration() {
+		return this.duration;
+	}
+
+	@Override
+	public String toString() {
+		return this.name + " (+" + this.offset.toMillis() + " ms: " + this.duration.toMillis() + " ms)";
+	}
+
+}
@@ -54,4 +54,21 @@ public interface ServiceContext {
 	 */
 	<T extends Service> T getService(Class<T> serviceClass) throws ServiceManagerException;
 
+	/**
+	 * Gets a {@linkplain ServiceHandle} for the {@linkplain Service} instance of a specific type.
+	 * <p>
+	 * The returned handle is resolved on access. Therefore the service type does not need to be available at the time
+	 * the handle is created.
+	 * <p>
+	 * The default implementation invokes {@linkplain #getService(Class)} on every access. Implementations may override
+	 * this function to provide a cheaper resolution.
+	 *
+	 * @param <T> the requested service type.
+	 * @param serviceClass the type of the {@linkplain Service} to reference.
+	 * @return the {@linkplain ServiceHandle} referencing the {@linkplain Service} instance.
+	 */
+	default <T extends Service> ServiceHandle<T> getServiceHandle(Class<T> serviceClass) {
+		return () -> getService(serviceClass);
+	}
+
 }
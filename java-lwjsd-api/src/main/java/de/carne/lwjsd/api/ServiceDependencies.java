@@ -0,0 +1,45 @@
+/*
+ * Copyright (c) 2018-2021 Holger de Carne and contributors, All Rights Reserved.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.carne.lwjsd.api;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Declares the {@linkplain Service}s a {@linkplain Service} depends on.
+ * <p>
+ * During auto start the {@linkplain ServiceManager} starts the declared dependencies before the annotated
+ * {@linkplain Service}. Independent {@linkplain Service}s may be started in parallel. A dependency is referenced by
+ * its {@linkplain ServiceId#serviceName()} and is resolved within the declaring module first, followed by the
+ * runtime module and any other loaded module.
+ */
+@Documented
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.TYPE)
+public @interface ServiceDependencies {
+
+	/**
+	 * Gets the names of the {@linkplain Service}s the annotated {@linkplain Service} depends on.
+	 *
+	 * @return the names of the {@linkplain Service}s the annotated {@linkplain Service} depends on.
+	 */
+	String[] value();
+
+}
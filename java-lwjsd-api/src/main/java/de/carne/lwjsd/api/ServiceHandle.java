@@ -0,0 +1,39 @@
+/*
+ * Copyright (c) 2018-2021 Holger de Carne and contributors, All Rights Reserved.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.carne.lwjsd.api;
+
+/**
+ * Handle to the current {@linkplain Service} instance of a specific type.
+ * <p>
+ * In contrast to a {@linkplain Service} reference retrieved via {@linkplain ServiceContext#getService(Class)} a
+ * handle always resolves to the currently registered instance. Hence it stays valid if the providing module is
+ * deleted and registered again.
+ *
+ * @param <T> the referenced service type.
+ */
+@FunctionalInterface
+public interface ServiceHandle<T extends Service> {
+
+	/**
+	 * Gets the current {@linkplain Service} instance referenced by this handle.
+	 *
+	 * @return the current {@linkplain Service} instance referenced by this handle.
+	 * @throws ServiceManagerException if the service type is currently not available.
+	 */
+	T get() throws ServiceManagerException;
+
+}
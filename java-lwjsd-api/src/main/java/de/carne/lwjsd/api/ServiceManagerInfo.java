@@ -31,6 +31,8 @@ public final class ServiceManagerInfo {
 	private final ServiceManagerState state;
 	private final List<ModuleInfo> moduleInfos;
 	private final List<ServiceInfo> serviceInfos;
+	private final long version;
+	private final List<BootPhaseInfo> bootPhaseInfos;
 
 	/**
 	 * Constructs a new {@linkplain ServiceManagerInfo} instance.
@@ -42,10 +44,41 @@ public final class ServiceManagerInfo {
 	 */
 	public ServiceManagerInfo(URI baseUri, ServiceManagerState state, Collection<ModuleInfo> moduleInfos,
 			Collection<ServiceInfo> serviceInfos) {
+		this(baseUri, state, moduleInfos, serviceInfos, 0);
+	}
+
+	/**
+	 * Constructs a new {@linkplain ServiceManagerInfo} instance.
+	 *
+	 * @param baseUri the base {@linkplain URI} of the {@linkplain ServiceManager}.
+	 * @param state the current state of the {@linkplain ServiceManager}.
+	 * @param moduleInfos the status informations of the registered {@linkplain Service} modules.
+	 * @param serviceInfos the status informations of the registered {@linkplain Service}s.
+	 * @param version the version of the status information.
+	 */
+	public ServiceManagerInfo(URI baseUri, ServiceManagerState state, Collection<ModuleInfo> moduleInfos,
+			Collection<ServiceInfo> serviceInfos, long version) {
+		this(baseUri, state, moduleInfos, serviceInfos, version, Collections.emptyList());
+	}
+
+	/**
+	 * Constructs a new {@linkplain ServiceManagerInfo} instance.
+	 *
+	 * @param baseUri the base {@linkplain URI} of the {@linkplain ServiceManager}.
+	 * @param state the current state of the {@linkplain ServiceManager}.
+	 * @param moduleInfos the status informations of the registered {@linkplain Service} modules.
+	 * @param serviceInfos the status informations of the registered {@linkplain Service}s.
+	 * @param version the version of the status information.
+	 * @param bootPhaseInfos the boot phase informations of the {@linkplain ServiceManager}.
+	 */
+	public ServiceManagerInfo(URI baseUri, ServiceManagerState state, Collection<ModuleInfo> moduleInfos,
+			Collection<ServiceInfo> serviceInfos, long version, Collection<BootPhaseInfo> bootPhaseInfos) {
 		this.baseUri = baseUri;
 		this.state = state;
 		this.moduleInfos = new ArrayList<>(moduleInfos);
 		this.serviceInfos = new ArrayList<>(serviceInfos);
+		this.version = version;
+		this.bootPhaseInfos = new ArrayList<>(bootPhaseInfos);
 	}
 
 	/**
@@ -84,6 +117,30 @@ public final class ServiceManagerInfo {
 		return Collections.unmodifiableList(this.serviceInfos);
 	}
 
+	/**
+	 * Gets the version of the status information.
+	 * <p>
+	 * The version is increased by the {@linkplain ServiceManager} on every status change. Hence two status
+	 * informations with the same version reflect the same status.
+	 *
+	 * @return the version of the status information.
+	 */
+	public long version() {
+		return this.version;
+	}
+
+	/**
+	 * Gets the boot phase informations of the {@linkplain ServiceManager}.
+	 * <p>
+	 * The boot phases are listed in the order they have been finished. The list is empty until the
+	 * {@linkplain ServiceManager} boot has been finished.
+	 *
+	 * @return the boot phase informations of the {@linkplain ServiceManager}.
+	 */
+	public Collection<BootPhaseInfo> bootPhaseInfos() {
+		return Collections.unmodifiableList(this.bootPhaseInfos);
+	}
+
 	@Override
 	public String toString() {
 		return this.baseUri + " (" + this.state + ")";
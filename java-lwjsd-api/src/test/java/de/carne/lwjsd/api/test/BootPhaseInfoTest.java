@@ -0,0 +1,41 @@
+/*
+ * Copyright (c) 2018-2021 Holger de Carne and contributors, All Rights Reserved.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.carne.lwjsd.api.test;
+
+import java.time.Duration;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import de.carne.lwjsd.api.BootPhaseInfo;
+
+/**
+ * Test {@linkplain BootPhaseInfo} class.
+ */
+class BootPhaseInfoTest {
+
+	@Test
+	void testBootPhaseInfo() {
+		BootPhaseInfo bootPhaseInfo = new BootPhaseInfo("phaseName", Duration.ofMillis(12), Duration.ofMillis(34));
+
+		Assertions.assertEquals("phaseName", bootPhaseInfo.name());
+		Assertions.assertEquals(Duration.ofMillis(12), bootPhaseInfo.offset());
+		Assertions.assertEquals(Duration.ofMillis(34), bootPhaseInfo.duration());
+		Assertions.assertEquals("phaseName (+12 ms: 34 ms)", bootPhaseInfo.toString());
+	}
+
+}
@@ -0,0 +1,69 @@
+/*
+ * Copyright (c) 2018-2021 Holger de Carne and contributors, All Rights Reserved.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.carne.lwjsd.api.test;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import de.carne.lwjsd.api.Service;
+import de.carne.lwjsd.api.ServiceContext;
+import de.carne.lwjsd.api.ServiceDependencies;
+import de.carne.lwjsd.api.ServiceException;
+
+/**
+ * Test {@linkplain ServiceDependencies} class.
+ */
+class ServiceDependenciesTest {
+
+	private static class TestService1 implements Service {
+
+		public TestService1() {
+			// Nothing to do
+		}
+
+		@Override
+		public void start(ServiceContext context) throws ServiceException {
+			// Nothing to do
+		}
+
+		@Override
+		public void stop(ServiceContext context) throws ServiceException {
+			// Nothing to do
+		}
+
+	}
+
+	@ServiceDependencies({ "de.carne.lwjsd.api.test.ServiceDependenciesTest$TestService1" })
+	private static class TestService2 extends TestService1 {
+
+		public TestService2() {
+			// Nothing to do
+		}
+
+	}
+
+	@Test
+	void testServiceDependencies() {
+		Assertions.assertNull(TestService1.class.getAnnotation(ServiceDependencies.class));
+
+		ServiceDependencies dependencies = TestService2.class.getAnnotation(ServiceDependencies.class);
+
+		Assertions.assertNotNull(dependencies);
+		Assertions.assertArrayEquals(new String[] { TestService1.class.getName() }, dependencies.value());
+	}
+
+}
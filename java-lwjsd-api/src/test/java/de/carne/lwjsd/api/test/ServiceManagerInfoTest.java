@@ -18,12 +18,14 @@ package de.carne.lwjsd.api.test;
 
 import java.net.URI;
 import java.net.URISyntaxException;
+import java.time.Duration;
 import java.util.ArrayList;
 import java.util.Collection;
 
 import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.Test;
 
+import de.carne.lwjsd.api.BootPhaseInfo;
 import de.carne.lwjsd.api.ModuleInfo;
 import de.carne.lwjsd.api.ServiceInfo;
 import de.carne.lwjsd.api.ServiceManagerInfo;
@@ -46,7 +48,26 @@ class ServiceManagerInfoTest {
 		Assertions.assertEquals(ServiceManagerState.CONFIGURED, serviceManagerInfo.state());
 		Assertions.assertEquals(0, serviceManagerInfo.moduleInfos().size());
 		Assertions.assertEquals(0, serviceManagerInfo.serviceInfos().size());
+		Assertions.assertEquals(0, serviceManagerInfo.version());
+		Assertions.assertEquals(0, serviceManagerInfo.bootPhaseInfos().size());
 		Assertions.assertEquals(baseUri + " (CONFIGURED)", serviceManagerInfo.toString());
+
+		ServiceManagerInfo versionedServiceManagerInfo = new ServiceManagerInfo(baseUri, ServiceManagerState.RUNNING,
+				moduleInfos, serviceInfos, 42);
+
+		Assertions.assertEquals(ServiceManagerState.RUNNING, versionedServiceManagerInfo.state());
+		Assertions.assertEquals(42, versionedServiceManagerInfo.version());
+
+		Collection<BootPhaseInfo> bootPhaseInfos = new ArrayList<>();
+
+		bootPhaseInfos.add(new BootPhaseInfo("phaseName", Duration.ZERO, Duration.ofMillis(1)));
+
+		ServiceManagerInfo bootedServiceManagerInfo = new ServiceManagerInfo(baseUri, ServiceManagerState.RUNNING,
+				moduleInfos, serviceInfos, 43, bootPhaseInfos);
+
+		Assertions.assertEquals(43, bootedServiceManagerInfo.version());
+		Assertions.assertEquals(1, bootedServiceManagerInfo.bootPhaseInfos().size());
+		Assertions.assertEquals("phaseName", bootedServiceManagerInfo.bootPhaseInfos().iterator().next().name());
 	}
 
 }
@@ -24,6 +24,8 @@ import java.net.URISyntaxException;
 import java.util.ArrayList;
 import java.util.List;
 
+import org.eclipse.jdt.annotation.Nullable;
+
 import de.carne.boot.ApplicationMain;
 import de.carne.boot.check.Check;
 import de.carne.lwjsd.api.ServiceManagerException;
@@ -66,6 +68,9 @@ public class LwjsdMain implements ApplicationMain {
 	private static final String NAME = "lwjsd";
 
 	private Command command = Command.NONE;
+	private boolean fastBoot = false;
+	@Nullable
+	private String logConfig = null;
 	private List<ClientAction> clientActions = new ArrayList<>();
 	private final RuntimeConfig config = new RuntimeConfig(Defaults.get());
 
@@ -81,6 +86,9 @@ public class LwjsdMain implements ApplicationMain {
 
 		try {
 			bootCmdLine.process();
+			if (!this.fastBoot) {
+				applyRequestedLogConfig();
+			}
 
 			LOG.info("Running command ''{0}''...", bootCmdLine);
 
@@ -144,12 +152,23 @@ public class LwjsdMain implements ApplicationMain {
 	}
 
 	private int runServerCommand() throws InterruptedException, ServiceManagerException {
-		try (Server server = new Server(this.config)) {
+		try (Server server = new Server(this.config, this.fastBoot)) {
+			if (this.fastBoot) {
+				server.addDeferredBootTask("Logs.readConfig", this::applyRequestedLogConfig);
+			}
 			server.start(true);
 		}
 		return 0;
 	}
 
+	private void applyRequestedLogConfig() {
+		String requestedLogConfig = this.logConfig;
+
+		if (requestedLogConfig != null) {
+			applyLogConfig(requestedLogConfig);
+		}
+	}
+
 	private static void applyLogConfig(String config) {
 		try {
 			Logs.readConfig(config);
@@ -161,8 +180,9 @@ public class LwjsdMain implements ApplicationMain {
 	private CmdLineProcessor buildBootCmdLine(String[] args) {
 		CmdLineProcessor cmdLine = new CmdLineProcessor(name(), args);
 
-		cmdLine.onSwitch(arg -> applyLogConfig(Logs.CONFIG_VERBOSE)).arg("--verbose");
-		cmdLine.onSwitch(arg -> applyLogConfig(Logs.CONFIG_DEBUG)).arg("--debug");
+		cmdLine.onSwitch(arg -> this.logConfig = Logs.CONFIG_VERBOSE).arg("--verbose");
+		cmdLine.onSwitch(arg -> this.logConfig = Logs.CONFIG_DEBUG).arg("--debug");
+		cmdLine.onSwitch(arg -> this.fastBoot = true).arg("--fast-boot");
 		cmdLine.onUnnamedOption(CmdLineProcessor::ignore);
 		cmdLine.onUnknownArg(CmdLineProcessor::ignore);
 		return cmdLine;
@@ -177,6 +197,7 @@ public class LwjsdMain implements ApplicationMain {
 		cmdLine.onOption(this::setBaseUri).arg("--baseUri");
 		cmdLine.onSwitch(this::addStatusAction).arg("--status");
 		cmdLine.onSwitch(this::addRequestStopAction).arg("--requestStop");
+		cmdLine.onSwitch(this::setFastBoot).arg("--fast-boot");
 		return cmdLine;
 	}
 
@@ -198,6 +219,10 @@ public class LwjsdMain implements ApplicationMain {
 		this.config.setBaseUri(baseUri);
 	}
 
+	private void setFastBoot(String arg) {
+		validateCommandAction(arg, Command.SERVER);
+	}
+
 	@SuppressWarnings("squid:S106")
 	private void addStatusAction(String arg) {
 		validateCommandAction(arg, Command.CLIENT);
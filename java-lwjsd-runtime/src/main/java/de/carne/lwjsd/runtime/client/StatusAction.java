@@ -18,6 +18,7 @@ package de.carne.lwjsd.runtime.client;
 
 import java.io.PrintStream;
 
+import de.carne.lwjsd.api.BootPhaseInfo;
 import de.carne.lwjsd.api.ModuleInfo;
 import de.carne.lwjsd.api.ServiceInfo;
 import de.carne.lwjsd.api.ServiceManagerException;
@@ -58,6 +59,12 @@ public class StatusAction implements ClientAction {
 			this.out.println(" autoStart:" + serviceInfo.autoStartFlag());
 			this.out.println(" state    :" + serviceInfo.state());
 		}
+		for (BootPhaseInfo bootPhaseInfo : status.bootPhaseInfos()) {
+			this.out.println("[BootPhase]");
+			this.out.println(" name    :" + bootPhaseInfo.name());
+			this.out.println(" offset  :" + bootPhaseInfo.offset().toMillis() + " ms");
+			this.out.println(" duration:" + bootPhaseInfo.duration().toMillis() + " ms");
+		}
 		return 0;
 	}
 
@@ -32,11 +32,40 @@ public final class Syslog {
 	 */
 	public static final long CONNECTION_TTL = SystemProperties.longValue(".CONNECTION_TTL", 60 * 60 * 1000000000l);
 
+	/**
+	 * Time (in nanoseconds) before {@linkplain #CONNECTION_TTL} expiry at which a replacement connection is established
+	 * in the background.
+	 */
+	public static final long CONNECTION_REFRESH_LEAD = SystemProperties.longValue(".CONNECTION_REFRESH_LEAD",
+			60 * 1000000000l);
+
+	/**
+	 * Maximum number of TLS sessions cached for resumption.
+	 */
+	public static final int TLS_SESSION_CACHE_SIZE = SystemProperties.intValue(".TLS_SESSION_CACHE_SIZE", 64);
+
+	/**
+	 * Time (in seconds) a TLS session is cached for resumption (must exceed {@linkplain #CONNECTION_TTL} for sessions
+	 * to be resumed during connection refresh).
+	 */
+	public static final int TLS_SESSION_TIMEOUT = SystemProperties.intValue(".TLS_SESSION_TIMEOUT",
+			(int) Math.min(2 * CONNECTION_TTL / 1000000000l, Integer.MAX_VALUE));
+
 	/**
 	 * Number of retries during Syslog message sending.
 	 */
 	public static final int RETRY_COUNT = SystemProperties.intValue(".RETRY_COUNT", 3);
 
+	/**
+	 * Maximum number of bytes a non-blocking connection buffers before a sender is blocked.
+	 */
+	public static final int PENDING_OUTPUT_LIMIT = SystemProperties.intValue(".PENDING_OUTPUT_LIMIT", 1024 * 1024);
+
+	/**
+	 * Time (in milliseconds) a sender waits for buffered output of a non-blocking connection to be written.
+	 */
+	public static final long PENDING_OUTPUT_TIMEOUT = SystemProperties.longValue(".PENDING_OUTPUT_TIMEOUT", 5000l);
+
 	/**
 	 * The trailer to use for non-transparent-framing for TCP based transports.
 	 */
@@ -0,0 +1,229 @@
+/*
+ * Copyright (c) 2018-2021 Holger de Carne and contributors, All Rights Reserved.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.carne.lwjsd.runtime.logging;
+
+import java.io.IOException;
+import java.nio.channels.CancelledKeyException;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.SelectableChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.PriorityQueue;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+
+import org.eclipse.jdt.annotation.Nullable;
+
+import de.carne.boot.logging.Log;
+
+/**
+ * Shared I/O thread writing pending output of non-blocking Syslog connections.
+ * <p>
+ * A single selector is used to serve any number of connections. Connections hand over their pending output by invoking
+ * {@linkplain #requestWrite(Target)} and are called back as soon as their channel becomes writable. Delayed writes
+ * (e.g. for batching) are requested via {@linkplain #scheduleWrite(Target, long)}.
+ */
+final class SyslogChannelWriter {
+
+	private static final Log LOG = new Log();
+
+	/**
+	 * A connection with pending output.
+	 */
+	interface Target {
+
+		/**
+		 * Gets the channel to write to.
+		 *
+		 * @return the channel to write to.
+		 */
+		SelectableChannel channel();
+
+		/**
+		 * Writes as much pending output as possible without blocking.
+		 *
+		 * @return {@code true} if all pending output has been written.
+		 * @throws IOException if an I/O error occurs.
+		 */
+		boolean flushPending() throws IOException;
+
+		/**
+		 * Called if writing the pending output failed.
+		 *
+		 * @param exception the cause of the failure.
+		 */
+		void failed(IOException exception);
+
+	}
+
+	@Nullable
+	private static SyslogChannelWriter instance = null;
+
+	private final Selector selector;
+	private final Queue<Target> writeRequests = new ConcurrentLinkedQueue<>();
+	private final PriorityQueue<ScheduledWrite> scheduledWrites = new PriorityQueue<>(
+			Comparator.comparingLong(ScheduledWrite::deadline));
+
+	private SyslogChannelWriter() throws IOException {
+		this.selector = Selector.open();
+
+		Thread thread = new Thread(this::run, getClass().getSimpleName());
+
+		thread.setDaemon(true);
+		thread.start();
+	}
+
+	/**
+	 * Gets the shared {@linkplain SyslogChannelWriter} instance (starting it if necessary).
+	 *
+	 * @return the shared {@linkplain SyslogChannelWriter} instance.
+	 * @throws IOException if the I/O thread cannot be started.
+	 */
+	static synchronized SyslogChannelWriter get() throws IOException {
+		SyslogChannelWriter checkedInstance = instance;
+
+		if (checkedInstance == null) {
+			LOG.info("Starting Syslog I/O thread...");
+
+			instance = checkedInstance = new SyslogChannelWriter();
+		}
+		return checkedInstance;
+	}
+
+	/**
+	 * Requests the writing of pending output as soon as the target's channel becomes writable.
+	 *
+	 * @param target the target with pending output.
+	 */
+	public void requestWrite(Target target) {
+		this.writeRequests.add(target);
+		this.selector.wakeup();
+	}
+
+	/**
+	 * Requests the writing of pending output after the given delay.
+	 *
+	 * @param target the target with pending output.
+	 * @param delay the delay (in milliseconds) after which the pending output is written.
+	 */
+	public void scheduleWrite(Target target, long delay) {
+		long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(delay);
+
+		synchronized (this.scheduledWrites) {
+			this.scheduledWrites.add(new ScheduledWrite(deadline, target));
+		}
+		this.selector.wakeup();
+	}
+
+	private void run() {
+		while (this.selector.isOpen()) {
+			try {
+				long timeout = dispatchScheduledWrites();
+
+				registerWriteRequests();
+				this.selector.select(timeout);
+
+				Iterator<SelectionKey> selectedKeys = this.selector.selectedKeys().iterator();
+
+				while (selectedKeys.hasNext()) {
+					SelectionKey selectedKey = selectedKeys.next();
+
+					selectedKeys.remove();
+					writeSelected(selectedKey);
+				}
+			} catch (IOException e) {
+				LOG.error(e, "Syslog I/O thread failure");
+			}
+		}
+	}
+
+	private long dispatchScheduledWrites() {
+		long timeout = 0;
+
+		synchronized (this.scheduledWrites) {
+			long now = System.nanoTime();
+			ScheduledWrite scheduledWrite;
+
+			while ((scheduledWrite = this.scheduledWrites.peek()) != null && scheduledWrite.deadline() - now <= 0) {
+				this.scheduledWrites.remove();
+				this.writeRequests.add(scheduledWrite.target());
+			}
+			if (scheduledWrite != null) {
+				timeout = Math.max(TimeUnit.NANOSECONDS.toMillis(scheduledWrite.deadline() - now), 1);
+			}
+		}
+		return timeout;
+	}
+
+	private void registerWriteRequests() {
+		Target target;
+
+		while ((target = this.writeRequests.poll()) != null) {
+			SelectableChannel channel = target.channel();
+			SelectionKey key = channel.keyFor(this.selector);
+
+			try {
+				if (key != null && key.isValid()) {
+					key.interestOps(SelectionKey.OP_WRITE);
+				} else {
+					channel.register(this.selector, SelectionKey.OP_WRITE, target);
+				}
+			} catch (ClosedChannelException | CancelledKeyException e) {
+				target.failed(new IOException("Connection closed with pending output", e));
+			}
+		}
+	}
+
+	private void writeSelected(SelectionKey key) {
+		Target target = (Target) key.attachment();
+
+		try {
+			if (key.isValid() && key.isWritable() && target.flushPending()) {
+				key.interestOps(0);
+			}
+		} catch (CancelledKeyException e) {
+			target.failed(new IOException("Connection closed with pending output", e));
+		} catch (IOException e) {
+			key.cancel();
+			target.failed(e);
+		}
+	}
+
+	private static final class ScheduledWrite {
+
+		private final long deadline;
+		private final Target target;
+
+		ScheduledWrite(long deadline, Target target) {
+			this.deadline = deadline;
+			this.target = target;
+		}
+
+		long deadline() {
+			return this.deadline;
+		}
+
+		Target target() {
+			return this.target;
+		}
+
+	}
+
+}
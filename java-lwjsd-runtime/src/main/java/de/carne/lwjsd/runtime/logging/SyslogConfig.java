@@ -18,10 +18,13 @@ package de.carne.lwjsd.runtime.logging;
 
 import java.net.InetAddress;
 import java.net.UnknownHostException;
+import java.nio.file.Path;
 import java.util.Collections;
 import java.util.HashSet;
 import java.util.Set;
 
+import org.eclipse.jdt.annotation.Nullable;
+
 import de.carne.boot.Exceptions;
 
 /**
@@ -34,12 +37,39 @@ public final class SyslogConfig {
 	 */
 	public static final int DEFAULT_PORT = 514;
 
+	/**
+	 * Default batch linger time (in milliseconds).
+	 */
+	public static final long DEFAULT_BATCH_LINGER = 10;
+
+	/**
+	 * Default spool size limit (in bytes).
+	 */
+	public static final long DEFAULT_SPOOL_LIMIT = 64l * 1024 * 1024;
+
+	/**
+	 * Default spool age limit (in milliseconds).
+	 */
+	public static final long DEFAULT_SPOOL_MAX_AGE = 24l * 60 * 60 * 1000;
+
+	/**
+	 * Default spool replay rate (in messages per second).
+	 */
+	public static final int DEFAULT_SPOOL_REPLAY_RATE = 100;
+
 	private final String host;
 	private final int port;
 	private SyslogProtocol protocol = SyslogProtocol.RFC3164;
 	private Set<SyslogOption> options = new HashSet<>();
 	private String defaultMessageHost = defaultMessageHost();
 	private String defaultMessageApp = SyslogMessage.NIL;
+	private int batchSize = 0;
+	private long batchLinger = DEFAULT_BATCH_LINGER;
+	@Nullable
+	private Path spoolDirectory = null;
+	private long spoolLimit = DEFAULT_SPOOL_LIMIT;
+	private long spoolMaxAge = DEFAULT_SPOOL_MAX_AGE;
+	private int spoolReplayRate = DEFAULT_SPOOL_REPLAY_RATE;
 
 	/**
 	 * Construct {@linkplain SyslogConfig}.
@@ -188,6 +218,151 @@ public final class SyslogConfig {
 		return this.defaultMessageApp;
 	}
 
+	/**
+	 * Set the batch size to use for message sending.
+	 * <p>
+	 * If set to a value greater than {@code 0} and {@linkplain SyslogOption#OCTET_COUNTING_FRAMING} is enabled for a
+	 * TCP based transport, multiple messages are coalesced into a single write. The coalesced messages are written as
+	 * soon as the batch size is reached or the batch linger time has passed, whatever comes first.
+	 *
+	 * @param batchSize The batch size (in bytes) to use for message sending ({@code 0} to disable batching).
+	 * @return The updated {@linkplain SyslogConfig} object.
+	 * @see #setBatchLinger(long)
+	 */
+	public SyslogConfig setBatchSize(int batchSize) {
+		this.batchSize = Math.max(batchSize, 0);
+		return this;
+	}
+
+	/**
+	 * Get the batch size to use for message sending.
+	 *
+	 * @return The batch size (in bytes) to use for message sending ({@code 0} if batching is disabled).
+	 */
+	public int getBatchSize() {
+		return this.batchSize;
+	}
+
+	/**
+	 * Set the batch linger time to use for message sending.
+	 *
+	 * @param batchLinger The maximum time (in milliseconds) a message may be delayed for batching.
+	 * @return The updated {@linkplain SyslogConfig} object.
+	 * @see #setBatchSize(int)
+	 */
+	public SyslogConfig setBatchLinger(long batchLinger) {
+		this.batchLinger = Math.max(batchLinger, 0);
+		return this;
+	}
+
+	/**
+	 * Get the batch linger time to use for message sending.
+	 *
+	 * @return The maximum time (in milliseconds) a message may be delayed for batching.
+	 */
+	public long getBatchLinger() {
+		return this.batchLinger;
+	}
+
+	/**
+	 * Check whether message batching is enabled.
+	 *
+	 * @return {@code true} if message batching is enabled.
+	 */
+	public boolean isBatching() {
+		return this.batchSize > 0 && this.options.contains(SyslogOption.OCTET_COUNTING_FRAMING)
+				&& (this.options.contains(SyslogOption.TRANSPORT_TCP)
+						|| this.options.contains(SyslogOption.TRANSPORT_TCP_TLS));
+	}
+
+	/**
+	 * Set the spool directory to use for messages which could not be delivered.
+	 * <p>
+	 * If set, messages which could not be sent (after all retries) are spooled to disk and replayed as soon as the
+	 * destination becomes available again. Each destination requires its own spool directory.
+	 *
+	 * @param spoolDirectory The spool directory to use ({@code null} to disable spooling).
+	 * @return The updated {@linkplain SyslogConfig} object.
+	 */
+	public SyslogConfig setSpoolDirectory(@Nullable Path spoolDirectory) {
+		this.spoolDirectory = spoolDirectory;
+		return this;
+	}
+
+	/**
+	 * Get the spool directory to use for messages which could not be delivered.
+	 *
+	 * @return The spool directory to use ({@code null} if spooling is disabled).
+	 */
+	@Nullable
+	public Path getSpoolDirectory() {
+		return this.spoolDirectory;
+	}
+
+	/**
+	 * Set the spool size limit.
+	 * <p>
+	 * If the limit is reached, the oldest spooled messages are discarded.
+	 *
+	 * @param spoolLimit The maximum disk space (in bytes) to use for spooling.
+	 * @return The updated {@linkplain SyslogConfig} object.
+	 */
+	public SyslogConfig setSpoolLimit(long spoolLimit) {
+		this.spoolLimit = spoolLimit;
+		return this;
+	}
+
+	/**
+	 * Get the spool size limit.
+	 *
+	 * @return The maximum disk space (in bytes) to use for spooling.
+	 */
+	public long getSpoolLimit() {
+		return this.spoolLimit;
+	}
+
+	/**
+	 * Set the spool age limit.
+	 * <p>
+	 * Spooled messages older than this limit are discarded instead of being replayed.
+	 *
+	 * @param spoolMaxAge The maximum age (in milliseconds) of a spooled message ({@code 0} to disable the age limit).
+	 * @return The updated {@linkplain SyslogConfig} object.
+	 */
+	public SyslogConfig setSpoolMaxAge(long spoolMaxAge) {
+		this.spoolMaxAge = spoolMaxAge;
+		return this;
+	}
+
+	/**
+	 * Get the spool age limit.
+	 *
+	 * @return The maximum age (in milliseconds) of a spooled message ({@code 0} if the age limit is disabled).
+	 */
+	public long getSpoolMaxAge() {
+		return this.spoolMaxAge;
+	}
+
+	/**
+	 * Set the spool replay rate.
+	 *
+	 * @param spoolReplayRate The maximum number of spooled messages to replay per second.
+	 * @return The updated {@linkplain SyslogConfig} object.
+	 */
+	public SyslogConfig setSpoolReplayRate(int spoolReplayRate) {
+		this.spoolReplayRate = Math.max(spoolReplayRate, 1);
+		return this;
+	}
+
+	/**
+	 * Get the spool replay rate.
+	 *
+	 * @return The maximum number of spooled messages to replay per second.
+	 */
+	public int getSpoolReplayRate() {
+		return this.spoolReplayRate;
+	}
+
 	@Override
 	public String toString() {
 		StringBuilder buffer = new StringBuilder();
@@ -0,0 +1,66 @@
+/*
+ * Copyright (c) 2018-2021 Holger de Carne and contributors, All Rights Reserved.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.carne.lwjsd.runtime.logging;
+
+/**
+ * Per-thread context providing RFC 5424 structured data for log records.
+ * <p>
+ * The context parameters of the publishing thread are added to every log message created by
+ * {@linkplain SyslogHandler}. As handlers are invoked by the logging thread, parameters set via this class are
+ * effective for all log records logged by the current thread until they are removed.
+ */
+public final class SyslogContext {
+
+	private static final ThreadLocal<SyslogStructuredData> CONTEXT = ThreadLocal.withInitial(SyslogStructuredData::new);
+
+	private SyslogContext() {
+		// Prevent instantiation
+	}
+
+	/**
+	 * Sets a context parameter for the current thread.
+	 *
+	 * @param sdId the SD-ID of the SD-ELEMENT to set the parameter in.
+	 * @param name the parameter name.
+	 * @param value the parameter value.
+	 */
+	public static void put(String sdId, String name, String value) {
+		CONTEXT.get().set(SyslogSdId.of(sdId), name, value);
+	}
+
+	/**
+	 * Removes a context parameter for the current thread.
+	 *
+	 * @param sdId the SD-ID of the SD-ELEMENT to remove the parameter from.
+	 * @param name the parameter name.
+	 */
+	public static void remove(String sdId, String name) {
+		CONTEXT.get().remove(SyslogSdId.of(sdId), name);
+	}
+
+	/**
+	 * Removes all context parameters for the current thread.
+	 */
+	public static void clear() {
+		CONTEXT.remove();
+	}
+
+	static SyslogStructuredData get() {
+		return CONTEXT.get();
+	}
+
+}
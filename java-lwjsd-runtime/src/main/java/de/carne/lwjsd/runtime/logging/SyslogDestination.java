@@ -17,17 +17,32 @@
 package de.carne.lwjsd.runtime.logging;
 
 import java.io.Closeable;
+import java.io.EOFException;
 import java.io.IOException;
-import java.io.OutputStream;
-import java.net.DatagramPacket;
-import java.net.DatagramSocket;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
 import java.net.InetAddress;
 import java.net.InetSocketAddress;
-import java.net.Socket;
-import java.net.SocketAddress;
-
-import javax.net.SocketFactory;
-import javax.net.ssl.SSLSocketFactory;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.nio.channels.SelectableChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.security.GeneralSecurityException;
+import java.security.KeyStore;
+import java.security.KeyStoreException;
+import java.util.concurrent.TimeUnit;
+
+import javax.net.ssl.KeyManager;
+import javax.net.ssl.KeyManagerFactory;
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLEngine;
+import javax.net.ssl.SSLEngineResult;
+import javax.net.ssl.SSLException;
+import javax.net.ssl.SSLSessionContext;
+import javax.net.ssl.TrustManagerFactory;
 
 import org.eclipse.jdt.annotation.Nullable;
 
@@ -41,21 +56,55 @@ public final class SyslogDestination implements Closeable {
 
 	private static final Log LOG = new Log();
 
+	private static final int ENCODE_BUFFER_SIZE = 1024;
+
+	private static final String KEY_STORE_PROPERTY = "javax.net.ssl.keyStore";
+	private static final String KEY_STORE_TYPE_PROPERTY = "javax.net.ssl.keyStoreType";
+	private static final String KEY_STORE_PROVIDER_PROPERTY = "javax.net.ssl.keyStoreProvider";
+	private static final String KEY_STORE_PASSWORD_PROPERTY = "javax.net.ssl.keyStorePassword";
+	private static final String KEY_STORE_NONE = "NONE";
+
+	@Nullable
+	private static SSLContext sslContext = null;
+
 	private final SyslogConfig config;
 	@Nullable
 	private ConnectionHandler connection = null;
+	private boolean refreshing = false;
+	private long refreshRetryTime = 0;
+	@Nullable
+	private SyslogSpool spool;
+	private boolean closed = false;
 
 	/**
 	 * Construct {@linkplain SyslogDestination}.
+	 * <p>
+	 * If a spool directory is configured (see {@linkplain SyslogConfig#setSpoolDirectory(java.nio.file.Path)}), the
+	 * spool is opened right away and any messages left in the spool are replayed in the background.
 	 *
 	 * @param config The Syslog configuration to use.
 	 */
 	public SyslogDestination(SyslogConfig config) {
 		this.config = config;
+		this.spool = openSpool();
 	}
 
 	@Override
-	public synchronized void close() {
+	public void close() {
+		SyslogSpool checkedSpool;
+
+		synchronized (this) {
+			checkedSpool = this.spool;
+			this.spool = null;
+			this.closed = true;
+		}
+		if (checkedSpool != null) {
+			checkedSpool.close();
+		}
+		closeConnection();
+	}
+
+	private synchronized void closeConnection() {
 		LOG.info("Closing destination ''{0}''...", this);
 
 		ConnectionHandler checkedConnection = this.connection;
@@ -73,11 +122,68 @@ public final class SyslogDestination implements Closeable {
 
 	/**
 	 * Send a {@linkplain SyslogMessage} to this destination.
+	 * <p>
+	 * If a spool directory is configured (see {@linkplain SyslogConfig#setSpoolDirectory(java.nio.file.Path)}), a
+	 * message which cannot be sent is spooled for later replay instead of failing. While spooled messages are waiting
+	 * for replay, any new message is spooled as well, so messages are delivered in order and the replay thread is the
+	 * only one trying to reach the destination.
 	 *
 	 * @param message The message to send.
 	 * @throws IOException if an I/O error occurs while sending the message.
 	 */
 	public void send(SyslogMessage message) throws IOException {
+		SyslogSpool checkedSpool = getSpool();
+
+		if (checkedSpool == null) {
+			sendDirect(message);
+		} else if (!checkedSpool.appendIfSpooled(message)) {
+			try {
+				sendDirect(message);
+			} catch (IOException e) {
+				try {
+					checkedSpool.append(message);
+				} catch (IOException e2) {
+					e.addSuppressed(e2);
+					throw e;
+				}
+			}
+		}
+	}
+
+	/**
+	 * Get the number of messages waiting in this destination's spool.
+	 *
+	 * @return The number of messages waiting in this destination's spool ({@code 0} if spooling is disabled).
+	 */
+	public synchronized long spooledCount() {
+		SyslogSpool checkedSpool = this.spool;
+
+		return (checkedSpool != null ? checkedSpool.spooledCount() : 0);
+	}
+
+	@Nullable
+	private synchronized SyslogSpool getSpool() {
+		return this.spool;
+	}
+
+	@Nullable
+	private SyslogSpool openSpool() {
+		Path spoolDirectory = this.config.getSpoolDirectory();
+		SyslogSpool openedSpool = null;
+
+		if (spoolDirectory != null) {
+			try {
+				openedSpool = new SyslogSpool(SyslogSpool.class.getName() + " (" + this + ")", spoolDirectory,
+						this.config.getSpoolLimit(), this.config.getSpoolMaxAge(), this.config.getSpoolReplayRate(),
+						this::sendDirect);
+			} catch (IOException e) {
+				LOG.warning(e, "Failed to open spool ''{0}''; continuing without spooling", spoolDirectory);
+			}
+		}
+		return openedSpool;
+	}
+
+	private void sendDirect(SyslogMessage message) throws IOException {
 		IOException error = null;
 		int retry = 0;
 
@@ -108,27 +214,126 @@ public final class SyslogDestination implements Closeable {
 		if (checkedConnection == null) {
 			LOG.info("Opening connection to ''{0}''...", this);
 			this.connection = checkedConnection = openConnection();
-		} else if (Syslog.CONNECTION_TTL < checkedConnection.ageNanos() || checkedConnection.isStalled()) {
+		} else if (checkedConnection.isStalled()) {
 			LOG.info("Re-opening connection to ''{0}''...", this);
 			closeConnection(checkedConnection);
 			this.connection = checkedConnection = openConnection();
+		} else if (!this.refreshing
+				&& Syslog.CONNECTION_TTL - Syslog.CONNECTION_REFRESH_LEAD < checkedConnection.ageNanos()
+				&& System.nanoTime() - this.refreshRetryTime >= 0) {
+			// Make-before-break: the current connection is used until its replacement is ready
+			this.refreshing = true;
+
+			Thread refreshThread = new Thread(this::refreshConnection,
+					SyslogDestination.class.getSimpleName() + " refresh (" + this + ")");
+
+			refreshThread.setDaemon(true);
+			refreshThread.start();
 		}
 		return checkedConnection;
 	}
 
+	private void refreshConnection() {
+		LOG.info("Refreshing connection to ''{0}''...", this);
+
+		ConnectionHandler oldConnection = null;
+		ConnectionHandler newConnection = null;
+
+		try {
+			newConnection = openConnection();
+		} catch (IOException e) {
+			LOG.warning(e, "Failed to refresh connection to ''{0}''", this);
+		}
+		synchronized (this) {
+			this.refreshing = false;
+			if (newConnection == null) {
+				this.refreshRetryTime = System.nanoTime() + Syslog.CONNECTION_REFRESH_LEAD / 4;
+			} else if (this.closed) {
+				oldConnection = newConnection;
+			} else {
+				oldConnection = this.connection;
+				this.connection = newConnection;
+			}
+		}
+		if (oldConnection != null) {
+			closeConnection(oldConnection);
+		}
+	}
+
 	private ConnectionHandler openConnection() throws IOException {
 		ConnectionHandler checkedConnection;
+		boolean nonBlocking = this.config.hasOption(SyslogOption.NON_BLOCKING_IO) || this.config.isBatching();
 
 		if (this.config.hasOption(SyslogOption.TRANSPORT_TCP_TLS)) {
-			checkedConnection = new SocketConnectionHandler(this.config.host(), this.config.port(), true);
+			checkedConnection = new StreamChannelConnectionHandler(this.config.host(), this.config.port(), true,
+					nonBlocking);
 		} else if (this.config.hasOption(SyslogOption.TRANSPORT_TCP)) {
-			checkedConnection = new SocketConnectionHandler(this.config.host(), this.config.port(), false);
+			checkedConnection = new StreamChannelConnectionHandler(this.config.host(), this.config.port(), false,
+					nonBlocking);
 		} else {
-			checkedConnection = new DatagramSocketConnectionHandler(this.config.host(), this.config.port());
+			checkedConnection = new DatagramChannelConnectionHandler(this.config.host(), this.config.port());
 		}
 		return checkedConnection;
 	}
 
+	private static synchronized SSLContext getSslContext() throws GeneralSecurityException {
+		SSLContext checkedSslContext = sslContext;
+
+		if (checkedSslContext == null) {
+			// Dedicated context, so the session cache is not shared with (and evicted by) other TLS clients. Key and
+			// trust material are taken from the same system keystore/truststore the default context is using.
+			TrustManagerFactory trustManagerFactory = TrustManagerFactory
+					.getInstance(TrustManagerFactory.getDefaultAlgorithm());
+
+			trustManagerFactory.init((KeyStore) null);
+			checkedSslContext = SSLContext.getInstance("TLS");
+			checkedSslContext.init(getDefaultKeyManagers(), trustManagerFactory.getTrustManagers(), null);
+
+			SSLSessionContext sessionContext = checkedSslContext.getClientSessionContext();
+
+			sessionContext.setSessionCacheSize(Syslog.TLS_SESSION_CACHE_SIZE);
+			sessionContext.setSessionTimeout(Syslog.TLS_SESSION_TIMEOUT);
+			sslContext = checkedSslContext;
+		}
+		return checkedSslContext;
+	}
+
+	private static KeyManager[] getDefaultKeyManagers() throws GeneralSecurityException {
+		String keyStoreFile = System.getProperty(KEY_STORE_PROPERTY, "");
+		String keyStoreType = System.getProperty(KEY_STORE_TYPE_PROPERTY, KeyStore.getDefaultType());
+		String keyStoreProvider = System.getProperty(KEY_STORE_PROVIDER_PROPERTY, "");
+		char[] keyStorePassword = System.getProperty(KEY_STORE_PASSWORD_PROPERTY, "").toCharArray();
+		KeyStore keyStore = null;
+
+		if (!keyStoreFile.isEmpty()) {
+			keyStore = (keyStoreProvider.isEmpty() ? KeyStore.getInstance(keyStoreType)
+					: KeyStore.getInstance(keyStoreType, keyStoreProvider));
+			if (KEY_STORE_NONE.equals(keyStoreFile)) {
+				loadKeyStore(keyStore, null, keyStorePassword);
+			} else {
+				try (InputStream keyStoreStream = Files.newInputStream(Paths.get(keyStoreFile))) {
+					loadKeyStore(keyStore, keyStoreStream, keyStorePassword);
+				} catch (IOException e) {
+					throw new KeyStoreException("Failed to load key store: " + keyStoreFile, e);
+				}
+			}
+		}
+
+		KeyManagerFactory keyManagerFactory = KeyManagerFactory.getInstance(KeyManagerFactory.getDefaultAlgorithm());
+
+		keyManagerFactory.init(keyStore, keyStorePassword);
+		return keyManagerFactory.getKeyManagers();
+	}
+
+	private static void loadKeyStore(KeyStore keyStore, @Nullable InputStream keyStoreStream, char[] password)
+			throws GeneralSecurityException {
+		try {
+			keyStore.load(keyStoreStream, (password.length > 0 ? password : null));
+		} catch (IOException e) {
+			throw new KeyStoreException("Failed to load key store", e);
+		}
+	}
+
 	private void closeConnection(ConnectionHandler checkedConnection) {
 		try {
 			checkedConnection.close();
@@ -140,6 +345,8 @@ public final class SyslogDestination implements Closeable {
 	private abstract class ConnectionHandler implements Closeable {
 
 		private final long creationTime = System.nanoTime();
+		private final SyslogEncoder encoder = new SyslogEncoder(SyslogDestination.this.config);
+		private ByteBuffer buffer = ByteBuffer.allocateDirect(ENCODE_BUFFER_SIZE);
 
 		protected ConnectionHandler() {
 			// Nothing to do here
@@ -153,72 +360,364 @@ public final class SyslogDestination implements Closeable {
 
 		public abstract void sendMessage(SyslogMessage message, SyslogConfig messageConfig) throws IOException;
 
+		protected ByteBuffer encode(SyslogMessage message) {
+			this.buffer.clear();
+			this.buffer = this.encoder.encode(message, this.buffer);
+			this.buffer.flip();
+			return this.buffer;
+		}
+
 	}
 
-	private class DatagramSocketConnectionHandler extends ConnectionHandler {
+	private class DatagramChannelConnectionHandler extends ConnectionHandler {
 
-		private final InetAddress host;
-		private final int port;
-		private final DatagramSocket socket;
+		private final InetSocketAddress address;
+		private final DatagramChannel channel;
 
-		public DatagramSocketConnectionHandler(String host, int port) throws IOException {
-			this.host = InetAddress.getByName(host);
-			this.port = port;
-			this.socket = new DatagramSocket();
+		DatagramChannelConnectionHandler(String host, int port) throws IOException {
+			this.address = new InetSocketAddress(InetAddress.getByName(host), port);
+			this.channel = DatagramChannel.open();
 		}
 
 		@Override
-		public void close() {
-			this.socket.close();
+		public synchronized void close() throws IOException {
+			this.channel.close();
 		}
 
 		@Override
 		public boolean isStalled() {
-			return this.socket.isClosed();
+			return !this.channel.isOpen();
 		}
 
 		@Override
-		public void sendMessage(SyslogMessage message, SyslogConfig messageConfig) throws IOException {
-			byte[] encodedMessage = message.encode(messageConfig);
-			DatagramPacket packet = new DatagramPacket(encodedMessage, encodedMessage.length, this.host, this.port);
-
-			this.socket.send(packet);
+		public synchronized void sendMessage(SyslogMessage message, SyslogConfig messageConfig) throws IOException {
+			this.channel.send(encode(message), this.address);
 		}
 
 	}
 
-	private class SocketConnectionHandler extends ConnectionHandler {
+	private class StreamChannelConnectionHandler extends ConnectionHandler implements SyslogChannelWriter.Target {
+
+		private final SocketChannel channel;
+		@Nullable
+		private final SSLEngine engine;
+		private final boolean nonBlocking;
+		private final int batchSize;
+		private final long batchLinger;
+		private final ByteBuffer[] gatherBuffers = new ByteBuffer[2];
+		private ByteBuffer pending;
+		private ByteBuffer tlsBatch = ByteBuffer.allocate(0);
+		private boolean writeRequested = false;
+		private boolean writeScheduled = false;
+		@Nullable
+		private IOException failure = null;
+
+		StreamChannelConnectionHandler(String host, int port, boolean ssl, boolean nonBlocking) throws IOException {
+			this.channel = SocketChannel.open();
+			this.nonBlocking = nonBlocking;
+			this.batchSize = (SyslogDestination.this.config.isBatching() ? SyslogDestination.this.config.getBatchSize()
+					: 0);
+			this.batchLinger = SyslogDestination.this.config.getBatchLinger();
+			try {
+				this.channel.connect(new InetSocketAddress(host, port));
+				if (ssl) {
+					SSLEngine sslEngine = getSslContext().createSSLEngine(host, port);
+
+					sslEngine.setUseClientMode(true);
+					this.engine = sslEngine;
+					this.pending = ByteBuffer.allocateDirect(sslEngine.getSession().getPacketBufferSize());
+					handshake(sslEngine);
+				} else {
+					this.engine = null;
+					this.pending = ByteBuffer.allocateDirect(ENCODE_BUFFER_SIZE);
+				}
+				if (this.nonBlocking) {
+					this.channel.configureBlocking(false);
+				}
+			} catch (GeneralSecurityException e) {
+				IOException ioe = new IOException("Failed to setup TLS connection", e);
+
+				Closeables.safeClose(ioe, this.channel);
+				throw ioe;
+			} catch (IOException e) {
+				Closeables.safeClose(e, this.channel);
+				throw e;
+			}
+		}
 
-		private final Socket socket;
+		private void handshake(SSLEngine sslEngine) throws IOException {
+			ByteBuffer netIn = ByteBuffer.allocateDirect(sslEngine.getSession().getPacketBufferSize());
+			ByteBuffer appIn = ByteBuffer.allocate(sslEngine.getSession().getApplicationBufferSize());
+			ByteBuffer appOut = ByteBuffer.allocate(0);
+
+			sslEngine.beginHandshake();
+
+			SSLEngineResult.HandshakeStatus status = sslEngine.getHandshakeStatus();
+
+			while (status != SSLEngineResult.HandshakeStatus.FINISHED
+					&& status != SSLEngineResult.HandshakeStatus.NOT_HANDSHAKING) {
+				switch (status) {
+				case NEED_WRAP:
+					ensurePending(sslEngine.getSession().getPacketBufferSize());
+					status = checkResult(sslEngine.wrap(appOut, this.pending)).getHandshakeStatus();
+					writePending();
+					break;
+				case NEED_UNWRAP:
+				case NEED_UNWRAP_AGAIN:
+					netIn.flip();
+
+					SSLEngineResult result = checkResult(sslEngine.unwrap(netIn, appIn));
+
+					netIn.compact();
+					appIn.clear();
+					if (result.getStatus() == SSLEngineResult.Status.BUFFER_UNDERFLOW) {
+						if (!netIn.hasRemaining()) {
+							netIn = grow(netIn, netIn.capacity() * 2);
+						}
+						if (this.channel.read(netIn) < 0) {
+							throw new EOFException("Connection closed during TLS handshake");
+						}
+					} else if (result.getStatus() == SSLEngineResult.Status.BUFFER_OVERFLOW) {
+						appIn = ByteBuffer.allocate(appIn.capacity() * 2);
+					}
+					status = result.getHandshakeStatus();
+					break;
+				case NEED_TASK:
+					Runnable task;
+
+					while ((task = sslEngine.getDelegatedTask()) != null) {
+						task.run();
+					}
+					status = sslEngine.getHandshakeStatus();
+					break;
+				default:
+					throw new SSLException("Unexpected TLS handshake status: " + status);
+				}
+			}
+		}
 
-		SocketConnectionHandler(String host, int port, boolean ssl) throws IOException {
-			SocketAddress address = new InetSocketAddress(host, port);
+		private SSLEngineResult checkResult(SSLEngineResult result) throws SSLException {
+			if (result.getStatus() == SSLEngineResult.Status.CLOSED) {
+				throw new SSLException("TLS connection closed by peer");
+			}
+			return result;
+		}
 
-			this.socket = (ssl ? SSLSocketFactory.getDefault() : SocketFactory.getDefault()).createSocket();
+		@Override
+		public synchronized void close() throws IOException {
 			try {
-				this.socket.connect(address);
+				if (this.nonBlocking) {
+					SSLEngine sslEngine = this.engine;
+
+					if (sslEngine != null) {
+						wrapBatch(sslEngine, true);
+					}
+					awaitPending(this.pending.capacity());
+				} else {
+					SSLEngine sslEngine = this.engine;
+
+					if (sslEngine != null && this.failure == null && this.channel.isOpen()) {
+						sslEngine.closeOutbound();
+						ensurePending(sslEngine.getSession().getPacketBufferSize());
+						sslEngine.wrap(ByteBuffer.allocate(0), this.pending);
+						writePending();
+					}
+				}
 			} catch (IOException e) {
-				Closeables.safeClose(e, this.socket);
-				throw e;
+				LOG.warning(e, "Discarding {0} bytes of pending output for destination ''{1}''",
+						this.pending.position(), SyslogDestination.this);
+			} finally {
+				this.channel.close();
 			}
 		}
 
 		@Override
-		public void close() throws IOException {
-			this.socket.close();
+		public synchronized boolean isStalled() {
+			SSLEngine sslEngine = this.engine;
+
+			return !this.channel.isOpen() || !this.channel.isConnected() || this.failure != null
+					|| (sslEngine != null && sslEngine.isOutboundDone());
 		}
 
 		@Override
-		public boolean isStalled() {
-			return !this.socket.isConnected() || this.socket.isClosed() || this.socket.isOutputShutdown();
+		public synchronized void sendMessage(SyslogMessage message, SyslogConfig messageConfig) throws IOException {
+			checkFailure();
+
+			ByteBuffer encoded = encode(message);
+			SSLEngine sslEngine = this.engine;
+			boolean flush;
+
+			if (sslEngine != null) {
+				if (this.batchSize > 0) {
+					if (this.tlsBatch.remaining() < encoded.remaining()) {
+						this.tlsBatch = grow(this.tlsBatch, Math.max(this.tlsBatch.position() + encoded.remaining(),
+								this.tlsBatch.capacity() * 2));
+					}
+					this.tlsBatch.put(encoded);
+					flush = this.tlsBatch.position() >= this.batchSize;
+					if (flush) {
+						wrapBatch(sslEngine, true);
+					}
+				} else {
+					flush = true;
+					wrap(sslEngine, encoded, true);
+				}
+				if (flush) {
+					writePending();
+				}
+			} else if (!this.nonBlocking) {
+				flush = true;
+				while (encoded.hasRemaining()) {
+					this.channel.write(encoded);
+				}
+			} else if (this.pending.position() + encoded.remaining() < this.batchSize) {
+				flush = false;
+			} else if (this.pending.position() == 0) {
+				flush = true;
+				this.channel.write(encoded);
+			} else {
+				flush = true;
+				this.pending.flip();
+				this.gatherBuffers[0] = this.pending;
+				this.gatherBuffers[1] = encoded;
+				this.channel.write(this.gatherBuffers);
+				this.pending.compact();
+			}
+			if (encoded.hasRemaining()) {
+				ensurePending(encoded.remaining());
+				this.pending.put(encoded);
+			}
+			if (this.pending.position() > 0 || this.tlsBatch.position() > 0) {
+				requestWrite(flush);
+			}
+		}
+
+		private void requestWrite(boolean flush) throws IOException {
+			if (flush) {
+				if (!this.writeRequested) {
+					this.writeRequested = true;
+					SyslogChannelWriter.get().requestWrite(this);
+				}
+			} else if (!this.writeRequested && !this.writeScheduled) {
+				this.writeScheduled = true;
+				SyslogChannelWriter.get().scheduleWrite(this, this.batchLinger);
+			}
+		}
+
+		private void wrapBatch(SSLEngine sslEngine, boolean wait) throws IOException {
+			this.tlsBatch.flip();
+			wrap(sslEngine, this.tlsBatch, wait);
+			this.tlsBatch.compact();
+		}
+
+		private void wrap(SSLEngine sslEngine, ByteBuffer src, boolean wait) throws IOException {
+			int packetBufferSize = sslEngine.getSession().getPacketBufferSize();
+
+			while (src.hasRemaining() && (wait || reservePending(packetBufferSize))) {
+				ensurePending(packetBufferSize);
+				checkResult(sslEngine.wrap(src, this.pending));
+			}
 		}
 
 		@Override
-		public void sendMessage(SyslogMessage message, SyslogConfig messageConfig) throws IOException {
-			OutputStream out = this.socket.getOutputStream();
+		public SelectableChannel channel() {
+			return this.channel;
+		}
+
+		@Override
+		public synchronized boolean flushPending() throws IOException {
+			SSLEngine sslEngine = this.engine;
+
+			if (sslEngine != null) {
+				wrapBatch(sslEngine, false);
+			}
+			this.pending.flip();
+			this.channel.write(this.pending);
+			this.pending.compact();
+			this.writeRequested = this.pending.position() > 0 || this.tlsBatch.position() > 0;
+			this.writeScheduled = false;
+			notifyAll();
+			return !this.writeRequested;
+		}
+
+		@Override
+		public synchronized void failed(IOException exception) {
+			this.failure = exception;
+			this.writeRequested = false;
+			this.writeScheduled = false;
+			notifyAll();
+		}
+
+		private void checkFailure() throws IOException {
+			IOException checkedFailure = this.failure;
+
+			if (checkedFailure != null) {
+				throw new IOException("Failed to write pending output", checkedFailure);
+			}
+		}
+
+		private void writePending() throws IOException {
+			this.pending.flip();
+			if (this.nonBlocking) {
+				this.channel.write(this.pending);
+			} else {
+				while (this.pending.hasRemaining()) {
+					this.channel.write(this.pending);
+				}
+			}
+			this.pending.compact();
+		}
+
+		private void ensurePending(int required) throws IOException {
+			if (this.pending.remaining() < required) {
+				writePending();
+				if (!reservePending(required)) {
+					awaitPending(required);
+				}
+			}
+		}
+
+		private boolean reservePending(int required) {
+			if (this.pending.remaining() < required) {
+				int requiredCapacity = this.pending.position() + required;
+
+				if (requiredCapacity <= Syslog.PENDING_OUTPUT_LIMIT) {
+					this.pending = grow(this.pending, Math.max(requiredCapacity,
+							Math.min(this.pending.capacity() * 2, Syslog.PENDING_OUTPUT_LIMIT)));
+				}
+			}
+			return this.pending.remaining() >= required;
+		}
+
+		private void awaitPending(int required) throws IOException {
+			long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(Syslog.PENDING_OUTPUT_TIMEOUT);
+
+			if (this.pending.remaining() < required) {
+				requestWrite(true);
+			}
+			while (this.pending.remaining() < required) {
+				checkFailure();
+
+				long remaining = deadline - System.nanoTime();
+
+				if (remaining <= 0) {
+					throw new IOException("Timeout while waiting for pending output to be written");
+				}
+				try {
+					TimeUnit.NANOSECONDS.timedWait(this, remaining);
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					throw new InterruptedIOException(e.getMessage());
+				}
+			}
+		}
+
+		private ByteBuffer grow(ByteBuffer buffer, int capacity) {
+			ByteBuffer grown = ByteBuffer.allocateDirect(capacity);
 
-			message.encodeTo(out, messageConfig);
-			out.flush();
+			buffer.flip();
+			grown.put(buffer);
+			return grown;
 		}
 
 	}
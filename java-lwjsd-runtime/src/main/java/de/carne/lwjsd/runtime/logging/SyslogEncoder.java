@@ -0,0 +1,450 @@
+/*
+ * Copyright (c) 2018-2021 Holger de Carne and contributors, All Rights Reserved.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.carne.lwjsd.runtime.logging;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.Locale;
+
+import de.carne.boot.check.Check;
+
+/**
+ * Encodes {@linkplain SyslogMessage}s for a specific {@linkplain SyslogConfig} directly into a {@linkplain ByteBuffer}.
+ * <p>
+ * All constant parts of the message prologue are encoded once during construction and the formatted timestamp is
+ * cached per second. Structured data is written using the SD-ELEMENT and SD-PARAM names pre-encoded by
+ * {@linkplain SyslogSdId}. Hence encoding a message does not create any garbage as long as the target buffer is large
+ * enough. An encoder instance is not thread-safe.
+ */
+final class SyslogEncoder {
+
+	private static final int MAX_PRI = 191;
+	private static final byte[][] RFC3164_PRI_BYTES = new byte[MAX_PRI + 1][];
+	private static final byte[][] RFC5424_PRI_BYTES = new byte[MAX_PRI + 1][];
+
+	static {
+		for (int pri = 0; pri <= MAX_PRI; pri++) {
+			RFC3164_PRI_BYTES[pri] = ascii("<" + pri + ">");
+			RFC5424_PRI_BYTES[pri] = ascii("<" + pri + ">1 ");
+		}
+	}
+
+	private static final DateTimeFormatter RFC3164_TIMESTAMP_FORMAT = DateTimeFormatter.ofPattern("MMM dd HH:mm:ss",
+			Locale.US);
+	private static final DateTimeFormatter RFC5424_TIMESTAMP_FORMAT = DateTimeFormatter
+			.ofPattern("uuuu-MM-dd'T'HH:mm:ss", Locale.US).withZone(ZoneOffset.UTC);
+	private static final int RFC3164_TIMESTAMP_LENGTH = 15;
+	private static final int RFC5424_TIMESTAMP_LENGTH = 19;
+	private static final int RFC5424_SECFRAC_LENGTH = 8;
+	private static final byte[] UTF8_BOM_BYTES = { (byte) 0xef, (byte) 0xbb, (byte) 0xbf };
+	private static final byte[] NIL_SD_BYTES = ascii(" - ");
+	private static final byte SPACE = ' ';
+	private static final byte QUOTE = '"';
+	private static final byte ESCAPE = '\\';
+	private static final byte ELEMENT_END = ']';
+	private static final byte REPLACEMENT = '?';
+
+	private final SyslogProtocol protocol;
+	private final ZoneId zone = ZoneId.systemDefault();
+	private final boolean octetCounting;
+	private final byte[] trailer;
+	private final byte[] defaultHostBytes;
+	private final byte[] defaultAppBytes;
+	private final boolean defaultAppNil;
+	private final byte[] pidBytes;
+	private final byte[] rfc3164PidBytes;
+	private long cachedTimestampSecond = Long.MIN_VALUE;
+	private final byte[] cachedTimestampBytes;
+
+	/**
+	 * Constructs a new {@linkplain SyslogEncoder} instance.
+	 *
+	 * @param config the Syslog configuration to encode for.
+	 */
+	SyslogEncoder(SyslogConfig config) {
+		boolean tcp = config.hasOption(SyslogOption.TRANSPORT_TCP) || config.hasOption(SyslogOption.TRANSPORT_TCP_TLS);
+		String pid = Long.toString(ProcessHandle.current().pid());
+
+		this.protocol = config.getProtocol();
+		this.octetCounting = tcp && config.hasOption(SyslogOption.OCTET_COUNTING_FRAMING);
+		this.trailer = (tcp && !this.octetCounting ? ascii(Syslog.NON_TRANSPARENT_FRAMING_TRAILER) : new byte[0]);
+		this.defaultHostBytes = ascii(config.getDefaultMessageHost());
+		this.defaultAppBytes = ascii(config.getDefaultMessageApp());
+		this.defaultAppNil = SyslogMessage.NIL.equals(config.getDefaultMessageApp());
+		this.pidBytes = ascii(pid);
+		this.rfc3164PidBytes = ascii("[" + pid + "]: ");
+		switch (this.protocol) {
+		case RFC3164:
+			this.cachedTimestampBytes = new byte[RFC3164_TIMESTAMP_LENGTH];
+			break;
+		case RFC5424:
+			this.cachedTimestampBytes = new byte[RFC5424_TIMESTAMP_LENGTH];
+			break;
+		default:
+			throw Check.unexpected(this.protocol);
+		}
+	}
+
+	/**
+	 * Encodes a {@linkplain SyslogMessage} including any transport specific framing.
+	 * <p>
+	 * The encoded message is written starting at the buffer's current position. If the remaining space in the buffer
+	 * is not sufficient, a larger buffer (of the same kind and containing the buffer's current content) is allocated.
+	 *
+	 * @param message the {@linkplain SyslogMessage} to encode.
+	 * @param buffer the {@linkplain ByteBuffer} to encode into.
+	 * @return the buffer containing the encoded message (either the submitted one or a larger one).
+	 */
+	public ByteBuffer encode(SyslogMessage message, ByteBuffer buffer) {
+		int messageLength;
+
+		switch (this.protocol) {
+		case RFC3164:
+			messageLength = rfc3164Length(message);
+			break;
+		case RFC5424:
+			messageLength = rfc5424Length(message);
+			break;
+		default:
+			throw Check.unexpected(this.protocol);
+		}
+
+		int frameLength = messageLength + this.trailer.length
+				+ (this.octetCounting ? decimalLength(messageLength) + 1 : 0);
+		ByteBuffer target = ensureRemaining(buffer, frameLength);
+
+		if (this.octetCounting) {
+			putDecimal(target, messageLength);
+			target.put(SPACE);
+		}
+		switch (this.protocol) {
+		case RFC3164:
+			encodeRfc3164(message, target);
+			break;
+		case RFC5424:
+			encodeRfc5424(message, target);
+			break;
+		default:
+			throw Check.unexpected(this.protocol);
+		}
+		target.put(this.trailer);
+		return target;
+	}
+
+	private int rfc3164Length(SyslogMessage message) {
+		return RFC3164_PRI_BYTES[message.pri()].length + RFC3164_TIMESTAMP_LENGTH + 1 + hostLength(message) + 1
+				+ appLength(message) + (isAppNil(message) ? 1 : this.rfc3164PidBytes.length)
+				+ asciiLength(message.msg());
+	}
+
+	private void encodeRfc3164(SyslogMessage message, ByteBuffer buffer) {
+		buffer.put(RFC3164_PRI_BYTES[message.pri()]);
+		buffer.put(rfc3164Timestamp(message.timestamp()));
+		buffer.put(SPACE);
+		putHost(message, buffer);
+		buffer.put(SPACE);
+		putApp(message, buffer);
+		if (isAppNil(message)) {
+			buffer.put(SPACE);
+		} else {
+			buffer.put(this.rfc3164PidBytes);
+		}
+		putAscii(buffer, message.msg());
+	}
+
+	private int rfc5424Length(SyslogMessage message) {
+		return RFC5424_PRI_BYTES[message.pri()].length + RFC5424_TIMESTAMP_LENGTH + RFC5424_SECFRAC_LENGTH + 1
+				+ hostLength(message) + 1 + appLength(message) + 1 + this.pidBytes.length + 1
+				+ asciiLength(message.messageId()) + structuredDataLength(message) + UTF8_BOM_BYTES.length
+				+ utf8Length(message.msg());
+	}
+
+	private void encodeRfc5424(SyslogMessage message, ByteBuffer buffer) {
+		Instant timestamp = message.timestamp();
+
+		buffer.put(RFC5424_PRI_BYTES[message.pri()]);
+		buffer.put(rfc5424Timestamp(timestamp));
+		buffer.put((byte) '.');
+		putDecimal(buffer, timestamp.getNano() / 1000, 6);
+		buffer.put((byte) 'Z');
+		buffer.put(SPACE);
+		putHost(message, buffer);
+		buffer.put(SPACE);
+		putApp(message, buffer);
+		buffer.put(SPACE);
+		buffer.put(this.pidBytes);
+		buffer.put(SPACE);
+		putAscii(buffer, message.messageId());
+		putStructuredData(message, buffer);
+		buffer.put(UTF8_BOM_BYTES);
+		putUtf8(buffer, message.msg());
+	}
+
+	private int structuredDataLength(SyslogMessage message) {
+		SyslogStructuredData structuredData = message.structuredData();
+		int length;
+
+		if (structuredData != null && !structuredData.isEmpty()) {
+			int elementCount = structuredData.elementCount();
+			int paramCount = structuredData.paramCount();
+
+			length = 2 + elementCount;
+			for (int elementIndex = 0; elementIndex < elementCount; elementIndex++) {
+				length += structuredData.element(elementIndex).elementBytes().length;
+			}
+			for (int paramIndex = 0; paramIndex < paramCount; paramIndex++) {
+				length += structuredData.paramNameBytes(paramIndex).length
+						+ utf8Length(structuredData.paramValue(paramIndex), true) + 1;
+			}
+		} else {
+			length = NIL_SD_BYTES.length;
+		}
+		return length;
+	}
+
+	private void putStructuredData(SyslogMessage message, ByteBuffer buffer) {
+		SyslogStructuredData structuredData = message.structuredData();
+
+		if (structuredData != null && !structuredData.isEmpty()) {
+			int elementCount = structuredData.elementCount();
+			int paramCount = structuredData.paramCount();
+
+			buffer.put(SPACE);
+			for (int elementIndex = 0; elementIndex < elementCount; elementIndex++) {
+				buffer.put(structuredData.element(elementIndex).elementBytes());
+				for (int paramIndex = 0; paramIndex < paramCount; paramIndex++) {
+					if (structuredData.paramElement(paramIndex) == elementIndex) {
+						buffer.put(structuredData.paramNameBytes(paramIndex));
+						putUtf8(buffer, structuredData.paramValue(paramIndex), true);
+						buffer.put(QUOTE);
+					}
+				}
+				buffer.put(ELEMENT_END);
+			}
+			buffer.put(SPACE);
+		} else {
+			buffer.put(NIL_SD_BYTES);
+		}
+	}
+
+	private byte[] rfc3164Timestamp(Instant timestamp) {
+		long second = timestamp.getEpochSecond();
+
+		if (this.cachedTimestampSecond != second) {
+			putCachedTimestamp(RFC3164_TIMESTAMP_FORMAT.format(Instant.ofEpochSecond(second).atZone(this.zone)));
+			this.cachedTimestampSecond = second;
+		}
+		return this.cachedTimestampBytes;
+	}
+
+	private byte[] rfc5424Timestamp(Instant timestamp) {
+		long second = timestamp.getEpochSecond();
+
+		if (this.cachedTimestampSecond != second) {
+			putCachedTimestamp(RFC5424_TIMESTAMP_FORMAT.format(Instant.ofEpochSecond(second)));
+			this.cachedTimestampSecond = second;
+		}
+		return this.cachedTimestampBytes;
+	}
+
+	private void putCachedTimestamp(String timestamp) {
+		for (int charIndex = 0; charIndex < this.cachedTimestampBytes.length; charIndex++) {
+			this.cachedTimestampBytes[charIndex] = (charIndex < timestamp.length()
+					? asciiByte(timestamp.charAt(charIndex))
+					: SPACE);
+		}
+	}
+
+	private int hostLength(SyslogMessage message) {
+		return (SyslogMessage.NIL.equals(message.host()) ? this.defaultHostBytes.length
+				: asciiLength(message.host()));
+	}
+
+	private void putHost(SyslogMessage message, ByteBuffer buffer) {
+		if (SyslogMessage.NIL.equals(message.host())) {
+			buffer.put(this.defaultHostBytes);
+		} else {
+			putAscii(buffer, message.host());
+		}
+	}
+
+	private int appLength(SyslogMessage message) {
+		return (SyslogMessage.NIL.equals(message.app()) ? this.defaultAppBytes.length : asciiLength(message.app()));
+	}
+
+	private void putApp(SyslogMessage message, ByteBuffer buffer) {
+		if (SyslogMessage.NIL.equals(message.app())) {
+			buffer.put(this.defaultAppBytes);
+		} else {
+			putAscii(buffer, message.app());
+		}
+	}
+
+	private boolean isAppNil(SyslogMessage message) {
+		return SyslogMessage.NIL.equals(message.app()) && this.defaultAppNil;
+	}
+
+	private static ByteBuffer ensureRemaining(ByteBuffer buffer, int required) {
+		ByteBuffer target = buffer;
+
+		if (buffer.remaining() < required) {
+			int capacity = Math.max(buffer.capacity() * 2, buffer.position() + required);
+
+			target = (buffer.isDirect() ? ByteBuffer.allocateDirect(capacity) : ByteBuffer.allocate(capacity));
+			buffer.flip();
+			target.put(buffer);
+		}
+		return target;
+	}
+
+	static int decimalLength(int value) {
+		int length = 1;
+		int remaining = value;
+
+		while (remaining >= 10) {
+			remaining /= 10;
+			length++;
+		}
+		return length;
+	}
+
+	static void putDecimal(ByteBuffer buffer, int value) {
+		putDecimal(buffer, value, decimalLength(value));
+	}
+
+	private static void putDecimal(ByteBuffer buffer, int value, int digits) {
+		int position = buffer.position();
+		int remaining = value;
+
+		for (int digitIndex = digits - 1; digitIndex >= 0; digitIndex--) {
+			buffer.put(position + digitIndex, (byte) ('0' + (remaining % 10)));
+			remaining /= 10;
+		}
+		buffer.position(position + digits);
+	}
+
+	static int asciiLength(String value) {
+		int length = value.length();
+		int asciiLength = 0;
+
+		for (int charIndex = 0; charIndex < length; charIndex++) {
+			if (isSurrogatePair(value, charIndex)) {
+				charIndex++;
+			}
+			asciiLength++;
+		}
+		return asciiLength;
+	}
+
+	static void putAscii(ByteBuffer buffer, String value) {
+		int length = value.length();
+
+		for (int charIndex = 0; charIndex < length; charIndex++) {
+			if (isSurrogatePair(value, charIndex)) {
+				buffer.put(REPLACEMENT);
+				charIndex++;
+			} else {
+				buffer.put(asciiByte(value.charAt(charIndex)));
+			}
+		}
+	}
+
+	private static boolean isSurrogatePair(String value, int charIndex) {
+		return Character.isHighSurrogate(value.charAt(charIndex)) && charIndex + 1 < value.length()
+				&& Character.isLowSurrogate(value.charAt(charIndex + 1));
+	}
+
+	private static byte asciiByte(char c) {
+		return (c < 0x80 ? (byte) c : REPLACEMENT);
+	}
+
+	static int utf8Length(String value) {
+		return utf8Length(value, false);
+	}
+
+	private static int utf8Length(String value, boolean escape) {
+		int length = value.length();
+		int utf8Length = 0;
+
+		for (int charIndex = 0; charIndex < length; charIndex++) {
+			char c = value.charAt(charIndex);
+
+			if (c < 0x80) {
+				utf8Length += (escape && isEscaped(c) ? 2 : 1);
+			} else if (c < 0x800) {
+				utf8Length += 2;
+			} else if (isSurrogatePair(value, charIndex)) {
+				utf8Length += 4;
+				charIndex++;
+			} else if (Character.isSurrogate(c)) {
+				utf8Length++;
+			} else {
+				utf8Length += 3;
+			}
+		}
+		return utf8Length;
+	}
+
+	static void putUtf8(ByteBuffer buffer, String value) {
+		putUtf8(buffer, value, false);
+	}
+
+	private static void putUtf8(ByteBuffer buffer, String value, boolean escape) {
+		int length = value.length();
+
+		for (int charIndex = 0; charIndex < length; charIndex++) {
+			char c = value.charAt(charIndex);
+
+			if (c < 0x80) {
+				if (escape && isEscaped(c)) {
+					buffer.put(ESCAPE);
+				}
+				buffer.put((byte) c);
+			} else if (c < 0x800) {
+				buffer.put((byte) (0xc0 | (c >> 6)));
+				buffer.put((byte) (0x80 | (c & 0x3f)));
+			} else if (isSurrogatePair(value, charIndex)) {
+				int codePoint = Character.toCodePoint(c, value.charAt(charIndex + 1));
+
+				buffer.put((byte) (0xf0 | (codePoint >> 18)));
+				buffer.put((byte) (0x80 | ((codePoint >> 12) & 0x3f)));
+				buffer.put((byte) (0x80 | ((codePoint >> 6) & 0x3f)));
+				buffer.put((byte) (0x80 | (codePoint & 0x3f)));
+				charIndex++;
+			} else if (Character.isSurrogate(c)) {
+				buffer.put(REPLACEMENT);
+			} else {
+				buffer.put((byte) (0xe0 | (c >> 12)));
+				buffer.put((byte) (0x80 | ((c >> 6) & 0x3f)));
+				buffer.put((byte) (0x80 | (c & 0x3f)));
+			}
+		}
+	}
+
+	private static boolean isEscaped(char c) {
+		return c == QUOTE || c == ESCAPE || c == ELEMENT_END;
+	}
+
+	private static byte[] ascii(String value) {
+		return value.getBytes(StandardCharsets.US_ASCII);
+	}
+
+}
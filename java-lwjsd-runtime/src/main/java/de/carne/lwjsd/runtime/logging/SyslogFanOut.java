@@ -0,0 +1,221 @@
+/*
+ * Copyright (c) 2018-2021 Holger de Carne and contributors, All Rights Reserved.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.carne.lwjsd.runtime.logging;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.ErrorManager;
+
+import de.carne.boot.logging.Logs;
+
+/**
+ * Fan-out of {@linkplain SyslogMessage}s to multiple {@linkplain SyslogDestination}s.
+ * <p>
+ * Every destination is served by its own queue and background thread. Hence each destination has its own connection,
+ * retry state and {@linkplain SyslogOverflowPolicy}, and a slow or unavailable destination does not delay the sending
+ * to any other destination. After a failed send a destination is not retried before an exponentially increasing retry
+ * delay has passed (messages are queued meanwhile).
+ */
+public final class SyslogFanOut implements Closeable {
+
+	/**
+	 * Default time (in milliseconds) to block while a queue is full or being drained.
+	 */
+	public static final long DEFAULT_BLOCK_TIMEOUT = 1000;
+
+	private static final long MIN_RETRY_DELAY = 100;
+	private static final long MAX_RETRY_DELAY = 30000;
+
+	private final List<Target> targets = new CopyOnWriteArrayList<>();
+	private final long blockTimeout;
+	private volatile ErrorManager errorManager = Logs.DEFAULT_ERROR_MANAGER;
+
+	/**
+	 * Constructs a new {@linkplain SyslogFanOut} instance.
+	 */
+	public SyslogFanOut() {
+		this(DEFAULT_BLOCK_TIMEOUT);
+	}
+
+	/**
+	 * Constructs a new {@linkplain SyslogFanOut} instance.
+	 *
+	 * @param blockTimeout the maximum time (in milliseconds) to block while a queue is full or being drained.
+	 */
+	public SyslogFanOut(long blockTimeout) {
+		this.blockTimeout = blockTimeout;
+	}
+
+	/**
+	 * Adds a {@linkplain SyslogDestination} to this fan-out.
+	 * <p>
+	 * The destination is closed as soon as this fan-out is closed.
+	 *
+	 * @param destination the {@linkplain SyslogDestination} to add.
+	 * @param queueSize the maximum number of messages queued for this destination.
+	 * @param overflowPolicy the {@linkplain SyslogOverflowPolicy} to apply if the destination's queue is full.
+	 * @return the updated {@linkplain SyslogFanOut} object.
+	 */
+	public SyslogFanOut addTarget(SyslogDestination destination, int queueSize, SyslogOverflowPolicy overflowPolicy) {
+		this.targets.add(new Target(destination, queueSize, overflowPolicy));
+		return this;
+	}
+
+	/**
+	 * Queues a {@linkplain SyslogMessage} for all destinations.
+	 *
+	 * @param message the {@linkplain SyslogMessage} to send.
+	 */
+	public void send(SyslogMessage message) {
+		for (Target target : this.targets) {
+			target.queue.offer(message);
+		}
+	}
+
+	/**
+	 * Gets the number of messages dropped so far (summed up over all destinations).
+	 *
+	 * @return the number of messages dropped so far.
+	 */
+	public long droppedCount() {
+		long droppedCount = 0;
+
+		for (Target target : this.targets) {
+			droppedCount += target.queue.droppedCount();
+		}
+		return droppedCount;
+	}
+
+	/**
+	 * Gets the number of currently queued messages (summed up over all destinations).
+	 *
+	 * @return the number of currently queued messages.
+	 */
+	public int queueDepth() {
+		int queueDepth = 0;
+
+		for (Target target : this.targets) {
+			queueDepth += target.queue.depth();
+		}
+		return queueDepth;
+	}
+
+	/**
+	 * Waits until all queued messages have been sent to all destinations.
+	 *
+	 * @param timeoutMillis the maximum time (in milliseconds) to wait.
+	 * @return {@code true} if all queued messages have been sent; {@code false} if the timeout elapsed before.
+	 */
+	public boolean awaitDrained(long timeoutMillis) {
+		long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+		boolean isDrained = true;
+
+		for (Target target : this.targets) {
+			long remainingMillis = Math.max(TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime()), 0);
+
+			isDrained = target.queue.awaitDrained(remainingMillis) && isDrained;
+		}
+		return isDrained;
+	}
+
+	void setErrorManager(ErrorManager errorManager) {
+		this.errorManager = errorManager;
+	}
+
+	@Override
+	public void close() {
+		for (Target target : this.targets) {
+			target.cancelRetry();
+		}
+		for (Target target : this.targets) {
+			target.close();
+		}
+	}
+
+	@Override
+	public String toString() {
+		return this.targets.toString();
+	}
+
+	private final class Target implements Closeable {
+
+		private final SyslogDestination destination;
+		private final SyslogQueue queue;
+		private long retryDelay = 0;
+		private long retryTime = 0;
+		private boolean closed = false;
+
+		Target(SyslogDestination destination, int queueSize, SyslogOverflowPolicy overflowPolicy) {
+			this.destination = destination;
+			this.queue = new SyslogQueue(SyslogFanOut.class.getName() + " (" + destination + ")", queueSize,
+					overflowPolicy, SyslogFanOut.this.blockTimeout, this::send, this::reportError);
+		}
+
+		private void send(SyslogMessage message) throws IOException {
+			awaitRetry();
+			try {
+				this.destination.send(message);
+				this.retryDelay = 0;
+			} catch (IOException e) {
+				this.retryDelay = (this.retryDelay > 0 ? Math.min(this.retryDelay * 2, MAX_RETRY_DELAY)
+						: MIN_RETRY_DELAY);
+				this.retryTime = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(this.retryDelay);
+				throw e;
+			}
+		}
+
+		private synchronized void awaitRetry() {
+			if (this.retryDelay > 0) {
+				try {
+					long remaining;
+
+					while (!this.closed && (remaining = this.retryTime - System.nanoTime()) > 0) {
+						TimeUnit.NANOSECONDS.timedWait(this, remaining);
+					}
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+			}
+		}
+
+		private void reportError(SyslogMessage message, Exception exception) {
+			SyslogFanOut.this.errorManager.error("Failed to send syslog message to destination: " + this.destination
+					+ " (next retry in " + this.retryDelay + " ms)", exception, ErrorManager.WRITE_FAILURE);
+		}
+
+		synchronized void cancelRetry() {
+			this.closed = true;
+			notifyAll();
+		}
+
+		@Override
+		public void close() {
+			this.queue.close();
+			this.destination.close();
+		}
+
+		@Override
+		public String toString() {
+			return this.destination.toString();
+		}
+
+	}
+
+}
@@ -17,6 +17,7 @@
 package de.carne.lwjsd.runtime.logging;
 
 import java.io.IOException;
+import java.time.Instant;
 import java.util.logging.ErrorManager;
 import java.util.logging.Formatter;
 import java.util.logging.Handler;
@@ -32,12 +33,61 @@ import de.carne.io.Closeables;
 
 /**
  * {@linkplain Handler} implementation providing Syslog support.
+ * <p>
+ * By default log records are sent synchronously by the logging thread. If asynchronous sending is enabled, log records
+ * are queued and sent by a background thread. The following {@linkplain LogManager} properties are evaluated:
+ * <ul>
+ * <li>{@code de.carne.lwjsd.runtime.logging.SyslogHandler.facility}: the {@linkplain SyslogMessage.Facility} to use
+ * (default {@code FAC_USER})</li>
+ * <li>{@code de.carne.lwjsd.runtime.logging.SyslogHandler.async}: whether to enable asynchronous sending (default
+ * {@code false})</li>
+ * <li>{@code de.carne.lwjsd.runtime.logging.SyslogHandler.queueSize}: the maximum number of queued log records
+ * (default {@code 1024})</li>
+ * <li>{@code de.carne.lwjsd.runtime.logging.SyslogHandler.overflowPolicy}: the {@linkplain SyslogOverflowPolicy} to
+ * apply if the queue is full (default {@code DROP_OLDEST})</li>
+ * <li>{@code de.carne.lwjsd.runtime.logging.SyslogHandler.blockTimeout}: the maximum time (in milliseconds) to block
+ * while the queue is full or being drained (default {@code 1000})</li>
+ * <li>{@code de.carne.lwjsd.runtime.logging.SyslogHandler.rateLimit}: the number of log records per second a single
+ * logger may publish (default {@code 0}, i.e. no rate limit)</li>
+ * <li>{@code de.carne.lwjsd.runtime.logging.SyslogHandler.rateBurst}: the number of log records a single logger may
+ * publish in a burst (default: same as {@code rateLimit})</li>
+ * <li>{@code de.carne.lwjsd.runtime.logging.SyslogHandler.rateLimitExempt}: the minimum
+ * {@linkplain SyslogMessage.Severity} of log records not subject to rate limiting (default {@code SEV_ERR})</li>
+ * <li>{@code de.carne.lwjsd.runtime.logging.SyslogHandler.collapseDuplicates}: whether to collapse consecutive
+ * duplicate log records of a logger into a {@code "last message repeated N times"} summary (default
+ * {@code false})</li>
+ * <li>{@code de.carne.lwjsd.runtime.logging.SyslogHandler.collapseWindow}: the maximum time (in milliseconds) to
+ * collapse duplicate log records before a summary is sent (default {@code 30000})</li>
+ * <li>{@code de.carne.lwjsd.runtime.logging.SyslogHandler.structuredDataId}: the SD-ID to use for sending the log
+ * record parameters as RFC 5424 structured data (default: none, i.e. parameters are not sent as structured data)</li>
+ * </ul>
+ * For sub-classes the property names are prefixed with the sub-class' name instead.
+ * Any parameters set via {@linkplain SyslogContext} are sent as structured data as well. The log record parameters
+ * are named after their index (i.e. {@code "0"}, {@code "1"}, ...) matching the message format's placeholders.
+ * Rate limiting and duplicate suppression are applied to the raw log record, i.e. suppressed log records are neither
+ * formatted nor encoded. Log records are considered duplicates if their level and their un-formatted message are
+ * identical; parameters are not taken into account.
+ * Additionally a {@linkplain SyslogFanOut} can be set to send log records to further destinations, each of them with
+ * its own queue (see {@linkplain #setFanOut(SyslogFanOut)}).
  */
 public class SyslogHandler extends Handler {
 
+	private static final int DEFAULT_QUEUE_SIZE = 1024;
+	private static final long DEFAULT_BLOCK_TIMEOUT = 1000;
+	private static final long DEFAULT_COLLAPSE_WINDOW = 30000;
+	private static final String[] PARAMETER_NAMES = { "0", "1", "2", "3", "4", "5", "6", "7", "8", "9" };
+
 	@Nullable
 	private SyslogDestination destination = null;
+	@Nullable
+	private SyslogFanOut fanOut = null;
 	private final SyslogMessage.Facility facility;
+	private final long blockTimeout;
+	@Nullable
+	private final SyslogQueue queue;
+	private final SyslogLimiter limiter = new SyslogLimiter(this::sendSummary);
+	@Nullable
+	private volatile String structuredDataId;
 
 	/**
 	 * Constructs a new {@linkplain SyslogHandler} instance.
@@ -52,12 +102,50 @@ public class SyslogHandler extends Handler {
 	 * @param destination the initial {@linkplain SyslogDestination} to use for sending log messages.
 	 */
 	public SyslogHandler(@Nullable SyslogDestination destination) {
-		LogManager manager = LogManager.getLogManager();
+		this(destination, LogManager.getLogManager(), 0, null);
+	}
+
+	/**
+	 * Constructs a new asynchronous {@linkplain SyslogHandler} instance.
+	 *
+	 * @param destination the initial {@linkplain SyslogDestination} to use for sending log messages.
+	 * @param queueSize the maximum number of queued log records.
+	 * @param overflowPolicy the {@linkplain SyslogOverflowPolicy} to apply if the queue is full.
+	 */
+	public SyslogHandler(@Nullable SyslogDestination destination, int queueSize,
+			SyslogOverflowPolicy overflowPolicy) {
+		this(destination, LogManager.getLogManager(), queueSize, overflowPolicy);
+	}
+
+	private SyslogHandler(@Nullable SyslogDestination destination, LogManager manager, int queueSize,
+			@Nullable SyslogOverflowPolicy overflowPolicy) {
 		String propertyBase = getClass().getName();
-		SyslogMessage.Facility defaultFacility = SyslogMessage.Facility.FAC_USER;
+		int effectiveQueueSize = queueSize;
+		SyslogOverflowPolicy effectiveOverflowPolicy = overflowPolicy;
 
-		this.facility = getFacilityProperty(manager, propertyBase + ".facility", defaultFacility);
+		if (effectiveOverflowPolicy == null) {
+			// No explicit queue setup; use the configured one
+			effectiveQueueSize = (getBooleanProperty(manager, propertyBase + ".async", false)
+					? getIntProperty(manager, propertyBase + ".queueSize", DEFAULT_QUEUE_SIZE)
+					: 0);
+			effectiveOverflowPolicy = getEnumProperty(manager, propertyBase + ".overflowPolicy",
+					SyslogOverflowPolicy.DROP_OLDEST);
+		}
+		this.facility = getEnumProperty(manager, propertyBase + ".facility", SyslogMessage.Facility.FAC_USER);
+		this.blockTimeout = getLongProperty(manager, propertyBase + ".blockTimeout", DEFAULT_BLOCK_TIMEOUT);
 		this.destination = destination;
+		this.queue = (effectiveQueueSize > 0
+				? new SyslogQueue(propertyBase, effectiveQueueSize, effectiveOverflowPolicy, this.blockTimeout, this::sendQueued,
+						this::reportQueuedError)
+				: null);
+
+		int rateLimit = getIntProperty(manager, propertyBase + ".rateLimit", 0);
+
+		this.limiter.setRateLimit(rateLimit, getIntProperty(manager, propertyBase + ".rateBurst", rateLimit),
+				getEnumProperty(manager, propertyBase + ".rateLimitExempt", SyslogMessage.Severity.SEV_ERR));
+		this.limiter.setCollapseDuplicates(getBooleanProperty(manager, propertyBase + ".collapseDuplicates", false),
+				getLongProperty(manager, propertyBase + ".collapseWindow", DEFAULT_COLLAPSE_WINDOW));
+		this.structuredDataId = manager.getProperty(propertyBase + ".structuredDataId");
 		setFormatter(new Formatter() {
 			@Override
 			public String format(@Nullable LogRecord record) {
@@ -66,6 +154,74 @@ public class SyslogHandler extends Handler {
 		});
 	}
 
+	/**
+	 * Gets the number of log records dropped due to a full queue.
+	 *
+	 * @return the number of log records dropped due to a full queue (always {@code 0} for a synchronous handler).
+	 */
+	public long droppedCount() {
+		SyslogQueue checkedQueue = this.queue;
+		SyslogFanOut checkedFanOut = this.fanOut;
+
+		return (checkedQueue != null ? checkedQueue.droppedCount() : 0)
+				+ (checkedFanOut != null ? checkedFanOut.droppedCount() : 0);
+	}
+
+	/**
+	 * Gets the number of currently queued log records.
+	 *
+	 * @return the number of currently queued log records (always {@code 0} for a synchronous handler).
+	 */
+	public int queueDepth() {
+		SyslogQueue checkedQueue = this.queue;
+		SyslogFanOut checkedFanOut = this.fanOut;
+
+		return (checkedQueue != null ? checkedQueue.depth() : 0)
+				+ (checkedFanOut != null ? checkedFanOut.queueDepth() : 0);
+	}
+
+	/**
+	 * Gets the number of log records suppressed due to rate limiting or duplicate suppression.
+	 *
+	 * @return the number of log records suppressed due to rate limiting or duplicate suppression.
+	 */
+	public long suppressedCount() {
+		return this.limiter.suppressedCount();
+	}
+
+	/**
+	 * Sets the per-logger rate limit.
+	 *
+	 * @param rateLimit the number of log records per second a single logger may publish ({@code 0} disables rate
+	 * limiting).
+	 * @param rateBurst the number of log records a single logger may publish in a burst.
+	 * @param rateLimitExempt the minimum {@linkplain SyslogMessage.Severity} of log records not subject to rate
+	 * limiting.
+	 */
+	public void setRateLimit(int rateLimit, int rateBurst, SyslogMessage.Severity rateLimitExempt) {
+		this.limiter.setRateLimit(rateLimit, rateBurst, rateLimitExempt);
+	}
+
+	/**
+	 * Sets whether to collapse consecutive duplicate log records of a logger.
+	 *
+	 * @param collapseDuplicates whether to collapse consecutive duplicate log records.
+	 * @param collapseWindow the maximum time (in milliseconds) to collapse duplicate log records before a summary is
+	 * sent.
+	 */
+	public void setCollapseDuplicates(boolean collapseDuplicates, long collapseWindow) {
+		this.limiter.setCollapseDuplicates(collapseDuplicates, collapseWindow);
+	}
+
+	/**
+	 * Sets the SD-ID to use for sending the log record parameters as RFC 5424 structured data.
+	 *
+	 * @param structuredDataId the SD-ID to use (may be {@code null} to not send the log record parameters).
+	 */
+	public void setStructuredDataId(@Nullable String structuredDataId) {
+		this.structuredDataId = structuredDataId;
+	}
+
 	/**
 	 * Sets the {@linkplain SyslogDestination} receiving the log message.
 	 *
@@ -80,8 +236,39 @@ public class SyslogHandler extends Handler {
 		return oldDestination;
 	}
 
+	/**
+	 * Sets the {@linkplain SyslogFanOut} receiving the log message in addition to this handler's
+	 * {@linkplain SyslogDestination}.
+	 *
+	 * @param fanOut the {@linkplain SyslogFanOut} to set (may be {@code null}).
+	 * @return the previous {@linkplain SyslogFanOut} (may be {@code null}).
+	 */
+	@Nullable
+	public synchronized SyslogFanOut setFanOut(@Nullable SyslogFanOut fanOut) {
+		SyslogFanOut oldFanOut = this.fanOut;
+
+		if (fanOut != null) {
+			fanOut.setErrorManager(getErrorManager());
+		}
+		this.fanOut = fanOut;
+		return oldFanOut;
+	}
+
 	@Override
 	public void close() {
+		this.limiter.flush();
+
+		SyslogQueue checkedQueue = this.queue;
+
+		if (checkedQueue != null) {
+			checkedQueue.close();
+		}
+
+		SyslogFanOut checkedFanOut = this.fanOut;
+
+		if (checkedFanOut != null) {
+			checkedFanOut.close();
+		}
 		try {
 			Closeables.close(this.destination);
 		} catch (IOException e) {
@@ -92,18 +279,67 @@ public class SyslogHandler extends Handler {
 
 	@Override
 	public void flush() {
-		// Nothing to do here
+		this.limiter.flush();
+
+		SyslogQueue checkedQueue = this.queue;
+
+		if (checkedQueue != null && !checkedQueue.awaitDrained(this.blockTimeout)) {
+			getErrorManager().error("Failed to drain syslog queue: " + checkedQueue, null, ErrorManager.FLUSH_FAILURE);
+		}
+
+		SyslogFanOut checkedFanOut = this.fanOut;
+
+		if (checkedFanOut != null && !checkedFanOut.awaitDrained(this.blockTimeout)) {
+			getErrorManager().error("Failed to drain syslog fan-out: " + checkedFanOut, null,
+					ErrorManager.FLUSH_FAILURE);
+		}
 	}
 
 	@Override
 	public void publish(@Nullable LogRecord record) {
-		SyslogDestination checkedDestination = this.destination;
-
-		if (record != null && checkedDestination != null) {
+		if (record != null && (this.destination != null || this.fanOut != null)) {
 			SyslogMessage.Severity severity = level2Severity(record.getLevel());
-			String msg = getFormatter().format(record);
-			SyslogMessage message = new SyslogMessage(severity, this.facility, record.getInstant(), msg);
 
+			if (!this.limiter.isEnabled() || this.limiter.admit(record, severity)) {
+				String msg = getFormatter().format(record);
+				SyslogMessage message = new SyslogMessage(severity, this.facility, record.getInstant(), msg);
+
+				message.addStructuredData(SyslogContext.get());
+				addParameters(message, record);
+				send(message);
+			}
+		}
+	}
+
+	private void addParameters(SyslogMessage message, LogRecord record) {
+		String checkedStructuredDataId = this.structuredDataId;
+		Object[] parameters = record.getParameters();
+
+		if (checkedStructuredDataId != null && parameters != null) {
+			for (int parameterIndex = 0; parameterIndex < parameters.length; parameterIndex++) {
+				String name = (parameterIndex < PARAMETER_NAMES.length ? PARAMETER_NAMES[parameterIndex]
+						: Integer.toString(parameterIndex));
+
+				message.addStructuredData(checkedStructuredDataId, name, String.valueOf(parameters[parameterIndex]));
+			}
+		}
+	}
+
+	private void sendSummary(SyslogMessage.Severity severity, String msg) {
+		send(new SyslogMessage(severity, this.facility, Instant.now(), msg));
+	}
+
+	private void send(SyslogMessage message) {
+		SyslogDestination checkedDestination = this.destination;
+		SyslogFanOut checkedFanOut = this.fanOut;
+		SyslogQueue checkedQueue = this.queue;
+
+		if (checkedFanOut != null) {
+			checkedFanOut.send(message);
+		}
+		if (checkedQueue != null) {
+			checkedQueue.offer(message);
+		} else if (checkedDestination != null) {
 			try {
 				checkedDestination.send(message);
 			} catch (IOException e) {
@@ -113,16 +349,52 @@ public class SyslogHandler extends Handler {
 		}
 	}
 
-	private static SyslogMessage.Facility getFacilityProperty(LogManager manager, String name,
-			SyslogMessage.Facility defaultValue) {
+	private void sendQueued(SyslogMessage message) throws IOException {
+		SyslogDestination checkedDestination = this.destination;
+
+		if (checkedDestination != null) {
+			checkedDestination.send(message);
+		}
+	}
+
+	private void reportQueuedError(SyslogMessage message, Exception exception) {
+		getErrorManager().error("Failed to send syslog message to destination: " + this.destination, exception,
+				ErrorManager.WRITE_FAILURE);
+	}
+
+	private static <T extends Enum<T>> T getEnumProperty(LogManager manager, String name, T defaultValue) {
 		String property = manager.getProperty(name);
-		SyslogMessage.Facility propertyValue = defaultValue;
+		T propertyValue = defaultValue;
 
 		if (property != null) {
 			try {
-				propertyValue = SyslogMessage.Facility.valueOf(property);
+				propertyValue = Enum.valueOf(defaultValue.getDeclaringClass(), property.trim());
 			} catch (IllegalArgumentException e) {
-				Logs.DEFAULT_ERROR_MANAGER.error("Invalid int property " + name, e, ErrorManager.GENERIC_FAILURE);
+				Logs.DEFAULT_ERROR_MANAGER.error("Invalid enum property " + name, e, ErrorManager.GENERIC_FAILURE);
+			}
+		}
+		return propertyValue;
+	}
+
+	private static boolean getBooleanProperty(LogManager manager, String name, boolean defaultValue) {
+		String property = manager.getProperty(name);
+
+		return (property != null ? Boolean.parseBoolean(property.trim()) : defaultValue);
+	}
+
+	private static int getIntProperty(LogManager manager, String name, int defaultValue) {
+		return (int) getLongProperty(manager, name, defaultValue);
+	}
+
+	private static long getLongProperty(LogManager manager, String name, long defaultValue) {
+		String property = manager.getProperty(name);
+		long propertyValue = defaultValue;
+
+		if (property != null) {
+			try {
+				propertyValue = Long.parseLong(property.trim());
+			} catch (NumberFormatException e) {
+				Logs.DEFAULT_ERROR_MANAGER.error("Invalid number property " + name, e, ErrorManager.GENERIC_FAILURE);
 			}
 		}
 		return propertyValue;
@@ -0,0 +1,439 @@
+/*
+ * Copyright (c) 2018-2021 Holger de Carne and contributors, All Rights Reserved.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.carne.lwjsd.runtime.logging;
+
+import java.net.SocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+import org.eclipse.jdt.annotation.Nullable;
+import org.glassfish.grizzly.Buffer;
+
+/**
+ * A batch of received Syslog records.
+ * <p>
+ * The raw record bytes are kept in a single backing array and the record fields are parsed in place, i.e. a record
+ * field is identified by its offset and length within the backing array. Fields are only decoded to
+ * {@linkplain String}s if explicitly requested via {@linkplain #fieldString(int, Field)}. A batch instance is only
+ * valid during the {@linkplain SyslogIngestSink#receive(SyslogIngestBatch)} call it has been submitted to, as it is
+ * re-used afterwards.
+ */
+public final class SyslogIngestBatch {
+
+	/**
+	 * The record fields.
+	 */
+	public enum Field {
+
+		/**
+		 * The record timestamp.
+		 */
+		TIMESTAMP,
+
+		/**
+		 * The record host name.
+		 */
+		HOST,
+
+		/**
+		 * The record application name (respectively the tag for RFC3164 records).
+		 */
+		APP,
+
+		/**
+		 * The record process id.
+		 */
+		PROC_ID,
+
+		/**
+		 * The record message id (RFC5424 only).
+		 */
+		MSG_ID,
+
+		/**
+		 * The record structured data (RFC5424 only).
+		 */
+		STRUCTURED_DATA,
+
+		/**
+		 * The record message.
+		 */
+		MSG
+
+	}
+
+	private static final Field[] FIELDS = Field.values();
+
+	private static final int INDEX_FRAME_OFFSET = 0;
+	private static final int INDEX_FRAME_LENGTH = 1;
+	private static final int INDEX_PRI = 2;
+	private static final int INDEX_PROTOCOL = 3;
+	private static final int INDEX_FIELDS = 4;
+	private static final int INDEX_STRIDE = INDEX_FIELDS + 2 * FIELDS.length;
+
+	private static final int DEFAULT_PRI = (SyslogMessage.Facility.FAC_USER.fac() << 3)
+			| SyslogMessage.Severity.SEV_NOTICE.sev();
+	private static final int MAX_PRI = 191;
+	private static final int MAX_TAG_LENGTH = 32;
+	private static final int RFC3164_TIMESTAMP_LENGTH = 15;
+
+	private final int capacity;
+	private final int dataCapacity;
+	private byte[] data;
+	private int dataLength = 0;
+	private final int[] index;
+	private final @Nullable SocketAddress[] sources;
+	private int size = 0;
+
+	SyslogIngestBatch(int capacity, int dataCapacity) {
+		this.capacity = capacity;
+		this.dataCapacity = dataCapacity;
+		this.data = new byte[dataCapacity];
+		this.index = new int[capacity * INDEX_STRIDE];
+		this.sources = new SocketAddress[capacity];
+	}
+
+	/**
+	 * Gets the number of records in this batch.
+	 *
+	 * @return the number of records in this batch.
+	 */
+	public int size() {
+		return this.size;
+	}
+
+	/**
+	 * Gets the address a record has been received from.
+	 *
+	 * @param record the record index.
+	 * @return the address the record has been received from (may be {@code null} if unknown).
+	 */
+	@Nullable
+	public SocketAddress source(int record) {
+		checkRecord(record);
+		return this.sources[record];
+	}
+
+	/**
+	 * Gets the {@linkplain SyslogProtocol} of a record.
+	 *
+	 * @param record the record index.
+	 * @return the {@linkplain SyslogProtocol} of the record.
+	 */
+	public SyslogProtocol protocol(int record) {
+		return (indexValue(record, INDEX_PROTOCOL) != 0 ? SyslogProtocol.RFC5424 : SyslogProtocol.RFC3164);
+	}
+
+	/**
+	 * Gets the priority value of a record.
+	 * <p>
+	 * Records without a valid priority value are assigned the default priority {@code user.notice}.
+	 *
+	 * @param record the record index.
+	 * @return the priority value of the record.
+	 */
+	public int pri(int record) {
+		return indexValue(record, INDEX_PRI);
+	}
+
+	/**
+	 * Gets the {@linkplain SyslogMessage.Severity} of a record.
+	 *
+	 * @param record the record index.
+	 * @return the {@linkplain SyslogMessage.Severity} of the record.
+	 */
+	public SyslogMessage.Severity severity(int record) {
+		return SyslogMessage.Severity.fromSev(pri(record) & 0x7);
+	}
+
+	/**
+	 * Gets the {@linkplain SyslogMessage.Facility} of a record.
+	 *
+	 * @param record the record index.
+	 * @return the {@linkplain SyslogMessage.Facility} of the record (may be {@code null} if the facility is not one
+	 *         of the known facilities).
+	 */
+	public SyslogMessage.@Nullable Facility facility(int record) {
+		SyslogMessage.@Nullable Facility facility;
+
+		try {
+			facility = SyslogMessage.Facility.fromFac(pri(record) >> 3);
+		} catch (IllegalArgumentException e) {
+			facility = null;
+		}
+		return facility;
+	}
+
+	/**
+	 * Gets the raw bytes of a record (excluding any framing).
+	 *
+	 * @param record the record index.
+	 * @return a read-only {@linkplain ByteBuffer} containing the raw bytes of the record.
+	 */
+	public ByteBuffer frame(int record) {
+		return slice(indexValue(record, INDEX_FRAME_OFFSET), indexValue(record, INDEX_FRAME_LENGTH));
+	}
+
+	/**
+	 * Gets the raw bytes of a record field.
+	 *
+	 * @param record the record index.
+	 * @param field the {@linkplain Field} to get.
+	 * @return a read-only {@linkplain ByteBuffer} containing the raw field bytes (empty if the field is not set).
+	 */
+	public ByteBuffer field(int record, Field field) {
+		int fieldIndex = INDEX_FIELDS + 2 * field.ordinal();
+
+		return slice(indexValue(record, fieldIndex), indexValue(record, fieldIndex + 1));
+	}
+
+	/**
+	 * Decodes a record field.
+	 *
+	 * @param record the record index.
+	 * @param field the {@linkplain Field} to decode.
+	 * @return the decoded field (empty if the field is not set).
+	 */
+	public String fieldString(int record, Field field) {
+		int fieldIndex = INDEX_FIELDS + 2 * field.ordinal();
+
+		return new String(this.data, indexValue(record, fieldIndex), indexValue(record, fieldIndex + 1),
+				StandardCharsets.UTF_8);
+	}
+
+	@Override
+	public String toString() {
+		return "[" + this.size + " records, " + this.dataLength + " bytes]";
+	}
+
+	boolean isEmpty() {
+		return this.size == 0;
+	}
+
+	boolean isFull() {
+		return this.size >= this.capacity || this.dataLength >= this.dataCapacity;
+	}
+
+	void clear() {
+		Arrays.fill(this.sources, 0, this.size, null);
+		this.dataLength = 0;
+		this.size = 0;
+	}
+
+	void add(Buffer buffer, int offset, int length, @Nullable SocketAddress source) {
+		if (this.data.length - this.dataLength < length) {
+			this.data = Arrays.copyOf(this.data, Math.max(this.dataLength + length, this.data.length * 2));
+		}
+
+		int position = buffer.position();
+
+		buffer.position(offset);
+		buffer.get(this.data, this.dataLength, length);
+		buffer.position(position);
+		this.sources[this.size] = source;
+		parseRecord(this.size * INDEX_STRIDE, this.dataLength, this.dataLength + length);
+		this.dataLength += length;
+		this.size++;
+	}
+
+	private void checkRecord(int record) {
+		if (record < 0 || record >= this.size) {
+			throw new IndexOutOfBoundsException("Invalid record index: " + record);
+		}
+	}
+
+	private int indexValue(int record, int indexOffset) {
+		checkRecord(record);
+		return this.index[record * INDEX_STRIDE + indexOffset];
+	}
+
+	private ByteBuffer slice(int offset, int length) {
+		return ByteBuffer.wrap(this.data, offset, length).slice().asReadOnlyBuffer();
+	}
+
+	private void parseRecord(int base, int start, int end) {
+		Arrays.fill(this.index, base, base + INDEX_STRIDE, 0);
+		this.index[base + INDEX_FRAME_OFFSET] = start;
+		this.index[base + INDEX_FRAME_LENGTH] = end - start;
+
+		int trimmedEnd = end;
+
+		while (trimmedEnd > start && isTrailer(this.data[trimmedEnd - 1])) {
+			trimmedEnd--;
+		}
+
+		int position = parsePri(base, start, trimmedEnd);
+
+		if (position == start) {
+			// No valid PRI; the whole record is considered as message
+			setField(base, Field.MSG, start, trimmedEnd);
+		} else if (position + 1 < trimmedEnd && isDigit(this.data[position]) && this.data[position] != '0'
+				&& this.data[position + 1] == ' ') {
+			this.index[base + INDEX_PROTOCOL] = 1;
+			parseRfc5424(base, position + 2, trimmedEnd);
+		} else {
+			parseRfc3164(base, position, trimmedEnd);
+		}
+	}
+
+	private int parsePri(int base, int start, int end) {
+		int pri = DEFAULT_PRI;
+		int position = start;
+
+		if (position < end && this.data[position] == '<') {
+			int digitPosition = position + 1;
+			int value = 0;
+
+			while (digitPosition < end && digitPosition - position <= 3 && isDigit(this.data[digitPosition])) {
+				value = value * 10 + (this.data[digitPosition] - '0');
+				digitPosition++;
+			}
+			if (digitPosition > position + 1 && digitPosition < end && this.data[digitPosition] == '>'
+					&& value <= MAX_PRI) {
+				pri = value;
+				position = digitPosition + 1;
+			}
+		}
+		this.index[base + INDEX_PRI] = pri;
+		return position;
+	}
+
+	private void parseRfc5424(int base, int start, int end) {
+		int position = parseToken(base, Field.TIMESTAMP, start, end);
+
+		position = parseToken(base, Field.HOST, position, end);
+		position = parseToken(base, Field.APP, position, end);
+		position = parseToken(base, Field.PROC_ID, position, end);
+		position = parseToken(base, Field.MSG_ID, position, end);
+		position = parseStructuredData(base, position, end);
+		if (position < end && this.data[position] == ' ') {
+			position++;
+		}
+		// Skip UTF-8 BOM
+		if (end - position >= 3 && this.data[position] == (byte) 0xef && this.data[position + 1] == (byte) 0xbb
+				&& this.data[position + 2] == (byte) 0xbf) {
+			position += 3;
+		}
+		setField(base, Field.MSG, position, end);
+	}
+
+	private int parseToken(int base, Field field, int start, int end) {
+		int position = start;
+
+		while (position < end && this.data[position] != ' ') {
+			position++;
+		}
+		if (position - start != 1 || this.data[start] != '-') {
+			setField(base, field, start, position);
+		}
+		return (position < end ? position + 1 : position);
+	}
+
+	private int parseStructuredData(int base, int start, int end) {
+		int position = start;
+
+		if (position < end && this.data[position] == '-') {
+			position++;
+		} else {
+			while (position < end && this.data[position] == '[') {
+				boolean quoted = false;
+
+				position++;
+				while (position < end) {
+					byte b = this.data[position++];
+
+					if (quoted) {
+						if (b == '\\') {
+							position++;
+						} else if (b == '"') {
+							quoted = false;
+						}
+					} else if (b == '"') {
+						quoted = true;
+					} else if (b == ']') {
+						break;
+					}
+				}
+			}
+			position = Math.min(position, end);
+			setField(base, Field.STRUCTURED_DATA, start, position);
+		}
+		return position;
+	}
+
+	private void parseRfc3164(int base, int start, int end) {
+		int position = start;
+
+		if (isRfc3164Timestamp(position, end)) {
+			setField(base, Field.TIMESTAMP, position, position + RFC3164_TIMESTAMP_LENGTH);
+			position = parseToken(base, Field.HOST, position + RFC3164_TIMESTAMP_LENGTH + 1, end);
+		}
+
+		int tagEnd = position;
+
+		while (tagEnd < end && tagEnd - position < MAX_TAG_LENGTH && isTagChar(this.data[tagEnd])) {
+			tagEnd++;
+		}
+		if (tagEnd > position && tagEnd < end && (this.data[tagEnd] == ':' || this.data[tagEnd] == '[')) {
+			setField(base, Field.APP, position, tagEnd);
+			position = tagEnd;
+			if (this.data[position] == '[') {
+				int procIdEnd = position + 1;
+
+				while (procIdEnd < end && this.data[procIdEnd] != ']') {
+					procIdEnd++;
+				}
+				setField(base, Field.PROC_ID, position + 1, procIdEnd);
+				position = Math.min(procIdEnd + 1, end);
+			}
+			if (position < end && this.data[position] == ':') {
+				position++;
+			}
+			if (position < end && this.data[position] == ' ') {
+				position++;
+			}
+		}
+		setField(base, Field.MSG, position, end);
+	}
+
+	private boolean isRfc3164Timestamp(int start, int end) {
+		return end - start > RFC3164_TIMESTAMP_LENGTH && this.data[start + 3] == ' ' && this.data[start + 6] == ' '
+				&& this.data[start + 9] == ':' && this.data[start + 12] == ':'
+				&& this.data[start + RFC3164_TIMESTAMP_LENGTH] == ' ';
+	}
+
+	private void setField(int base, Field field, int start, int end) {
+		int fieldIndex = base + INDEX_FIELDS + 2 * field.ordinal();
+
+		this.index[fieldIndex] = start;
+		this.index[fieldIndex + 1] = end - start;
+	}
+
+	private static boolean isTrailer(byte b) {
+		return b == '\n' || b == '\r' || b == 0;
+	}
+
+	private static boolean isDigit(byte b) {
+		return '0' <= b && b <= '9';
+	}
+
+	private static boolean isTagChar(byte b) {
+		return b != ' ' && b != ':' && b != '[';
+	}
+
+}
@@ -0,0 +1,418 @@
+/*
+ * Copyright (c) 2018-2021 Holger de Carne and contributors, All Rights Reserved.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.carne.lwjsd.runtime.logging;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.SocketAddress;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.eclipse.jdt.annotation.Nullable;
+import org.glassfish.grizzly.Buffer;
+import org.glassfish.grizzly.filterchain.BaseFilter;
+import org.glassfish.grizzly.filterchain.FilterChainBuilder;
+import org.glassfish.grizzly.filterchain.FilterChainContext;
+import org.glassfish.grizzly.filterchain.NextAction;
+import org.glassfish.grizzly.filterchain.TransportFilter;
+import org.glassfish.grizzly.nio.NIOTransport;
+import org.glassfish.grizzly.nio.transport.TCPNIOTransport;
+import org.glassfish.grizzly.nio.transport.TCPNIOTransportBuilder;
+import org.glassfish.grizzly.nio.transport.UDPNIOTransport;
+import org.glassfish.grizzly.nio.transport.UDPNIOTransportBuilder;
+
+import de.carne.boot.logging.Log;
+import de.carne.lwjsd.api.Service;
+import de.carne.lwjsd.api.ServiceContext;
+import de.carne.lwjsd.api.ServiceException;
+import de.carne.util.SystemProperties;
+
+/**
+ * {@linkplain Service} receiving Syslog records via UDP and/or TCP.
+ * <p>
+ * TCP streams may use octet-counting as well as non-transparent (LF terminated) framing. Frames are reassembled
+ * across read boundaries and parsed in place (see {@linkplain SyslogIngestBatch}). The received records are forwarded
+ * in batches to the {@linkplain SyslogIngestSink} set via {@linkplain #setSink(SyslogIngestSink)}. A batch is forwarded
+ * as soon as it is full or the configured linger time has passed since its first record has been received.
+ * <p>
+ * Batches are forwarded in order by a single delivery thread, so a slow sink does not block the network reads. Only if
+ * the configured number of full batches is waiting for delivery, receiving is paused until the sink catches up.
+ * <p>
+ * The service is configured via the following system properties (all prefixed with this class' name):
+ * <ul>
+ * <li>{@code .HOST}: the host address to listen on (default {@code localhost})</li>
+ * <li>{@code .PORT}: the port to listen on (default {@code 514})</li>
+ * <li>{@code .UDP}/{@code .TCP}: whether to listen for UDP/TCP (default {@code true})</li>
+ * <li>{@code .BATCH_SIZE}: the maximum number of records per batch (default {@code 256})</li>
+ * <li>{@code .BATCH_LINGER}: the maximum time (in milliseconds) a record is delayed for batching (default
+ * {@code 100})</li>
+ * <li>{@code .PENDING_BATCHES}: the maximum number of full batches waiting for delivery (default {@code 16})</li>
+ * <li>{@code .MAX_FRAME_SIZE}: the maximum size of a single record (default {@code 65536})</li>
+ * </ul>
+ */
+public class SyslogIngestService implements Service {
+
+	private static final Log LOG = new Log();
+
+	private static final String DEFAULT_HOST = SystemProperties.value(".HOST", "localhost");
+	private static final int DEFAULT_PORT = SystemProperties.intValue(".PORT", SyslogConfig.DEFAULT_PORT);
+	private static final boolean DEFAULT_UDP = SystemProperties.booleanValue(".UDP", true);
+	private static final boolean DEFAULT_TCP = SystemProperties.booleanValue(".TCP", true);
+	private static final int BATCH_SIZE = SystemProperties.intValue(".BATCH_SIZE", 256);
+	private static final long BATCH_LINGER = SystemProperties.longValue(".BATCH_LINGER", 100);
+	private static final int PENDING_BATCHES = SystemProperties.intValue(".PENDING_BATCHES", 16);
+	private static final int MAX_FRAME_SIZE = SystemProperties.intValue(".MAX_FRAME_SIZE", 64 * 1024);
+
+	private static final int BATCH_DATA_SIZE = 256 * 1024;
+
+	private final String host;
+	private final int port;
+	private final boolean udp;
+	private final boolean tcp;
+	private final long batchLingerNanos = TimeUnit.MILLISECONDS.toNanos(BATCH_LINGER);
+	private final Object batchLock = new Object();
+	private final Deque<SyslogIngestBatch> pendingBatches = new ArrayDeque<>();
+	private final Deque<SyslogIngestBatch> freeBatches = new ArrayDeque<>();
+	private SyslogIngestBatch batch = new SyslogIngestBatch(BATCH_SIZE, BATCH_DATA_SIZE);
+	private long batchStartNanos = 0;
+	private boolean running = false;
+	private volatile SyslogIngestSink sink = batch -> {
+		// Discard by default
+	};
+	private final AtomicLong receivedCount = new AtomicLong();
+	private final List<NIOTransport> transports = new ArrayList<>();
+	@Nullable
+	private Thread deliverer = null;
+
+	/**
+	 * Constructs a new {@linkplain SyslogIngestService} instance using the system property based configuration.
+	 */
+	public SyslogIngestService() {
+		this(DEFAULT_HOST, DEFAULT_PORT, DEFAULT_UDP, DEFAULT_TCP);
+	}
+
+	/**
+	 * Constructs a new {@linkplain SyslogIngestService} instance.
+	 *
+	 * @param host the host address to listen on.
+	 * @param port the port to listen on.
+	 * @param udp whether to listen for UDP.
+	 * @param tcp whether to listen for TCP.
+	 */
+	protected SyslogIngestService(String host, int port, boolean udp, boolean tcp) {
+		this.host = host;
+		this.port = port;
+		this.udp = udp;
+		this.tcp = tcp;
+	}
+
+	/**
+	 * Sets the {@linkplain SyslogIngestSink} to forward the received records to.
+	 *
+	 * @param sink the {@linkplain SyslogIngestSink} to use.
+	 */
+	public void setSink(SyslogIngestSink sink) {
+		this.sink = sink;
+	}
+
+	/**
+	 * Gets the number of records received so far.
+	 *
+	 * @return the number of records received so far.
+	 */
+	public long receivedCount() {
+		return this.receivedCount.get();
+	}
+
+	@Override
+	public synchronized void start(ServiceContext context) throws ServiceException {
+		LOG.info("Starting Syslog ingest on {0}:{1} (udp: {2}, tcp: {3})...", this.host, this.port, this.udp,
+				this.tcp);
+
+		synchronized (this.batchLock) {
+			this.running = true;
+		}
+
+		Thread delivererThread = new Thread(this::deliverBatches, toString() + " (delivery)");
+
+		delivererThread.setDaemon(true);
+		delivererThread.start();
+		this.deliverer = delivererThread;
+		try {
+			if (this.udp) {
+				UDPNIOTransport udpTransport = UDPNIOTransportBuilder.newInstance().build();
+
+				this.transports.add(udpTransport);
+				udpTransport.setProcessor(
+						FilterChainBuilder.stateless().add(new TransportFilter()).add(new UdpFrameFilter()).build());
+				udpTransport.bind(this.host, this.port);
+				udpTransport.start();
+			}
+			if (this.tcp) {
+				TCPNIOTransport tcpTransport = TCPNIOTransportBuilder.newInstance().build();
+
+				this.transports.add(tcpTransport);
+				tcpTransport.setProcessor(
+						FilterChainBuilder.stateless().add(new TransportFilter()).add(new TcpFrameFilter()).build());
+				tcpTransport.bind(this.host, this.port);
+				tcpTransport.start();
+			}
+		} catch (IOException e) {
+			stop(context);
+			throw new ServiceException(e, "Failed to start Syslog ingest on {0}:{1}", this.host, this.port);
+		}
+	}
+
+	@Override
+	public synchronized void stop(ServiceContext context) throws ServiceException {
+		LOG.info("Stopping Syslog ingest on {0}:{1}...", this.host, this.port);
+
+		IOException stopException = null;
+
+		for (NIOTransport transport : this.transports) {
+			try {
+				transport.shutdownNow();
+			} catch (IOException e) {
+				if (stopException == null) {
+					stopException = e;
+				} else {
+					stopException.addSuppressed(e);
+				}
+			}
+		}
+		this.transports.clear();
+		synchronized (this.batchLock) {
+			this.running = false;
+			this.batchLock.notifyAll();
+		}
+
+		// The delivery thread forwards any remaining records before it terminates
+		Thread delivererThread = this.deliverer;
+
+		if (delivererThread != null) {
+			try {
+				delivererThread.join();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+			this.deliverer = null;
+		}
+		if (stopException != null) {
+			throw new ServiceException(stopException, "Failed to stop Syslog ingest on {0}:{1}", this.host,
+					this.port);
+		}
+	}
+
+	@Override
+	public String toString() {
+		return getClass().getSimpleName() + " (" + this.host + ":" + this.port + ")";
+	}
+
+	private void add(Buffer buffer, int offset, int length, @Nullable SocketAddress source)
+			throws InterruptedIOException {
+		synchronized (this.batchLock) {
+			if (this.batch.isEmpty()) {
+				this.batchStartNanos = System.nanoTime();
+				this.batchLock.notifyAll();
+			}
+			this.batch.add(buffer, offset, length, source);
+			if (this.batch.isFull()) {
+				try {
+					while (this.running && this.pendingBatches.size() >= PENDING_BATCHES) {
+						this.batchLock.wait();
+					}
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					throw new InterruptedIOException("Interrupted while waiting for batch delivery");
+				}
+				this.pendingBatches.addLast(swapBatch());
+				this.batchLock.notifyAll();
+			}
+		}
+		this.receivedCount.incrementAndGet();
+	}
+
+	private SyslogIngestBatch swapBatch() {
+		SyslogIngestBatch swappedBatch = this.batch;
+		SyslogIngestBatch freeBatch = this.freeBatches.poll();
+
+		this.batch = (freeBatch != null ? freeBatch : new SyslogIngestBatch(BATCH_SIZE, BATCH_DATA_SIZE));
+		return swappedBatch;
+	}
+
+	private void deliver(SyslogIngestBatch deliverBatch) {
+		// Only invoked by the delivery thread; hence the sink receives one batch at a time
+		try {
+			this.sink.receive(deliverBatch);
+		} catch (IOException | RuntimeException e) {
+			LOG.warning(e, "Syslog ingest sink failed to receive batch {0}", deliverBatch);
+		}
+		deliverBatch.clear();
+		synchronized (this.batchLock) {
+			this.freeBatches.push(deliverBatch);
+		}
+	}
+
+	private void deliverBatches() {
+		try {
+			SyslogIngestBatch deliverBatch;
+
+			while ((deliverBatch = awaitBatch()) != null) {
+				deliver(deliverBatch);
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	private @Nullable SyslogIngestBatch awaitBatch() throws InterruptedException {
+		SyslogIngestBatch nextBatch = null;
+
+		synchronized (this.batchLock) {
+			// Full batches are always delivered before the current one to keep the record order
+			while (nextBatch == null && (this.running || !this.pendingBatches.isEmpty() || !this.batch.isEmpty())) {
+				nextBatch = this.pendingBatches.poll();
+				if (nextBatch != null) {
+					this.batchLock.notifyAll();
+				} else if (this.batch.isEmpty()) {
+					this.batchLock.wait();
+				} else {
+					long remaining = this.batchStartNanos + this.batchLingerNanos - System.nanoTime();
+
+					if (!this.running || remaining <= 0) {
+						nextBatch = swapBatch();
+					} else {
+						TimeUnit.NANOSECONDS.timedWait(this.batchLock, remaining);
+					}
+				}
+			}
+		}
+		return nextBatch;
+	}
+
+	private static @Nullable SocketAddress toSocketAddress(@Nullable Object address) {
+		return (address instanceof SocketAddress ? (SocketAddress) address : null);
+	}
+
+	private static boolean isDigit(byte b) {
+		return '0' <= b && b <= '9';
+	}
+
+	private class UdpFrameFilter extends BaseFilter {
+
+		UdpFrameFilter() {
+			// Nothing to do here
+		}
+
+		@Override
+		public NextAction handleRead(@Nullable FilterChainContext ctx) throws IOException {
+			FilterChainContext checkedCtx = Objects.requireNonNull(ctx);
+			Buffer buffer = checkedCtx.getMessage();
+
+			if (buffer.hasRemaining()) {
+				add(buffer, buffer.position(), Math.min(buffer.remaining(), MAX_FRAME_SIZE),
+						toSocketAddress(checkedCtx.getAddress()));
+			}
+			buffer.tryDispose();
+			return checkedCtx.getStopAction();
+		}
+
+	}
+
+	private class TcpFrameFilter extends BaseFilter {
+
+		TcpFrameFilter() {
+			// Nothing to do here
+		}
+
+		@Override
+		public NextAction handleRead(@Nullable FilterChainContext ctx) throws IOException {
+			FilterChainContext checkedCtx = Objects.requireNonNull(ctx);
+			Buffer buffer = checkedCtx.getMessage();
+			SocketAddress source = toSocketAddress(checkedCtx.getConnection().getPeerAddress());
+			int position = buffer.position();
+			int limit = buffer.limit();
+			boolean invalid = false;
+			boolean incomplete = false;
+
+			while (position < limit && !invalid && !incomplete) {
+				byte first = buffer.get(position);
+
+				if (isDigit(first)) {
+					// Octet-counting framing
+					int countEnd = position;
+					int count = 0;
+
+					while (countEnd < limit && count <= MAX_FRAME_SIZE && isDigit(buffer.get(countEnd))) {
+						count = count * 10 + (buffer.get(countEnd) - '0');
+						countEnd++;
+					}
+					if (count > MAX_FRAME_SIZE || (countEnd < limit && buffer.get(countEnd) != ' ')) {
+						invalid = true;
+					} else if (countEnd + 1 + count > limit) {
+						incomplete = true;
+					} else {
+						add(buffer, countEnd + 1, count, source);
+						position = countEnd + 1 + count;
+					}
+				} else if (first == '\n' || first == '\r' || first == 0 || first == ' ') {
+					position++;
+				} else {
+					// Non-transparent framing
+					int frameEnd = position;
+
+					while (frameEnd < limit && buffer.get(frameEnd) != '\n' && buffer.get(frameEnd) != 0) {
+						frameEnd++;
+					}
+					if (frameEnd < limit) {
+						add(buffer, position, frameEnd - position, source);
+						position = frameEnd + 1;
+					} else if (frameEnd - position >= MAX_FRAME_SIZE) {
+						add(buffer, position, MAX_FRAME_SIZE, source);
+						position += MAX_FRAME_SIZE;
+					} else {
+						incomplete = true;
+					}
+				}
+			}
+
+			NextAction nextAction;
+
+			if (invalid) {
+				LOG.warning("Invalid Syslog frame received from ''{0}''; closing connection", source);
+				buffer.tryDispose();
+				checkedCtx.getConnection().closeSilently();
+				nextAction = checkedCtx.getStopAction();
+			} else if (position < limit) {
+				// Keep the incomplete frame; it is completed with the next read
+				buffer.position(position);
+				nextAction = checkedCtx.getStopAction(buffer);
+			} else {
+				buffer.tryDispose();
+				nextAction = checkedCtx.getStopAction();
+			}
+			return nextAction;
+		}
+
+	}
+
+}
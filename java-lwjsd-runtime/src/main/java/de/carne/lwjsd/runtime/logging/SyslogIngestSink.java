@@ -0,0 +1,37 @@
+/*
+ * Copyright (c) 2018-2021 Holger de Carne and contributors, All Rights Reserved.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.carne.lwjsd.runtime.logging;
+
+import java.io.IOException;
+
+/**
+ * Sink interface receiving the records collected by a {@linkplain SyslogIngestService}.
+ */
+@FunctionalInterface
+public interface SyslogIngestSink {
+
+	/**
+	 * Receives a batch of records.
+	 * <p>
+	 * The submitted {@linkplain SyslogIngestBatch} is only valid during this call. Batches are submitted one at a time.
+	 *
+	 * @param batch the {@linkplain SyslogIngestBatch} to receive.
+	 * @throws IOException if an I/O error occurs while processing the batch.
+	 */
+	void receive(SyslogIngestBatch batch) throws IOException;
+
+}
@@ -0,0 +1,340 @@
+/*
+ * Copyright (c) 2018-2021 Holger de Carne and contributors, All Rights Reserved.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.carne.lwjsd.runtime.logging;
+
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+import java.util.logging.LogRecord;
+
+import org.eclipse.jdt.annotation.Nullable;
+
+/**
+ * Per-logger rate limiting and duplicate suppression for {@linkplain SyslogHandler}.
+ * <p>
+ * Both checks are based on the raw {@linkplain LogRecord} (logger name, level and un-formatted message), i.e. they are
+ * applied before any formatting or encoding takes place. Rate limiting uses a token bucket per logger. Records with a
+ * severity at or above the configured exemption severity are never rate limited. Duplicate suppression collapses
+ * consecutive records of a logger with identical level and message format into a single
+ * {@code "last message repeated N times"} summary. The summary is submitted as soon as the run of duplicates ends or the
+ * collapse window expires. The latter is triggered by a shared timer thread, so a burst followed by silence is
+ * summarized without waiting for the next record.
+ */
+public final class SyslogLimiter {
+
+	/**
+	 * Receiver of the summaries created by a {@linkplain SyslogLimiter}.
+	 */
+	@FunctionalInterface
+	public interface SummarySink {
+
+		/**
+		 * Submits a summary message.
+		 *
+		 * @param severity the {@linkplain SyslogMessage.Severity} of the summary.
+		 * @param msg the summary message.
+		 */
+		void summary(SyslogMessage.Severity severity, String msg);
+
+	}
+
+	@Nullable
+	private static ScheduledExecutorService timer = null;
+
+	private final SummarySink summarySink;
+	private final LongSupplier nanoClock;
+	private final Map<String, LoggerState> loggerStates = new ConcurrentHashMap<>();
+	private volatile int rateLimit = 0;
+	private volatile int rateBurst = 0;
+	private volatile SyslogMessage.Severity rateLimitExempt = SyslogMessage.Severity.SEV_ERR;
+	private volatile boolean collapseDuplicates = false;
+	private volatile long collapseWindowNanos = TimeUnit.SECONDS.toNanos(30);
+	private volatile long suppressedCount = 0;
+
+	/**
+	 * Constructs a new {@linkplain SyslogLimiter} instance.
+	 *
+	 * @param summarySink the {@linkplain SummarySink} to submit the summaries to.
+	 */
+	public SyslogLimiter(SummarySink summarySink) {
+		this(summarySink, System::nanoTime);
+	}
+
+	/**
+	 * Constructs a new {@linkplain SyslogLimiter} instance using a specific clock.
+	 *
+	 * @param summarySink the {@linkplain SummarySink} to submit the summaries to.
+	 * @param nanoClock the clock to use (in nanoseconds; see {@linkplain System#nanoTime()}).
+	 */
+	public SyslogLimiter(SummarySink summarySink, LongSupplier nanoClock) {
+		this.summarySink = summarySink;
+		this.nanoClock = nanoClock;
+	}
+
+	/**
+	 * Sets the rate limit to apply per logger.
+	 * <p>
+	 * Any pending summary is submitted before the new setting becomes effective.
+	 *
+	 * @param rateLimit the number of records per second a single logger may publish ({@code 0} disables rate limiting).
+	 * @param rateBurst the number of records a single logger may publish in a burst.
+	 * @param rateLimitExempt the minimum severity of records not subject to rate limiting.
+	 */
+	public void setRateLimit(int rateLimit, int rateBurst, SyslogMessage.Severity rateLimitExempt) {
+		this.rateLimit = Math.max(rateLimit, 0);
+		this.rateBurst = Math.max(rateBurst, 1);
+		this.rateLimitExempt = rateLimitExempt;
+		flush();
+		this.loggerStates.clear();
+	}
+
+	/**
+	 * Sets whether to collapse consecutive duplicate records.
+	 *
+	 * @param collapseDuplicates whether to collapse consecutive duplicate records.
+	 * @param collapseWindow the maximum time (in milliseconds) to collapse duplicates before a summary is published.
+	 */
+	public void setCollapseDuplicates(boolean collapseDuplicates, long collapseWindow) {
+		this.collapseDuplicates = collapseDuplicates;
+		this.collapseWindowNanos = TimeUnit.MILLISECONDS.toNanos(collapseWindow);
+	}
+
+	/**
+	 * Checks whether this instance is enabled at all.
+	 *
+	 * @return {@code true} if rate limiting or duplicate suppression is enabled.
+	 */
+	public boolean isEnabled() {
+		return this.rateLimit > 0 || this.collapseDuplicates;
+	}
+
+	/**
+	 * Gets the number of records suppressed so far.
+	 *
+	 * @return the number of records suppressed so far.
+	 */
+	public long suppressedCount() {
+		return this.suppressedCount;
+	}
+
+	/**
+	 * Checks whether a {@linkplain LogRecord} is to be published.
+	 * <p>
+	 * Any summary becoming due (e.g. because a run of duplicates has ended) is submitted before this function returns
+	 * and therefore before the record itself is published.
+	 *
+	 * @param record the {@linkplain LogRecord} to check.
+	 * @param severity the {@linkplain SyslogMessage.Severity} of the record.
+	 * @return {@code true} if the record is to be published.
+	 */
+	public boolean admit(LogRecord record, SyslogMessage.Severity severity) {
+		String loggerName = Objects.toString(record.getLoggerName(), "");
+		LoggerState loggerState = this.loggerStates.computeIfAbsent(loggerName, LoggerState::new);
+
+		return loggerState.admit(record, severity);
+	}
+
+	/**
+	 * Submits all pending summaries.
+	 */
+	public void flush() {
+		for (LoggerState loggerState : this.loggerStates.values()) {
+			loggerState.flush();
+		}
+	}
+
+	/**
+	 * Submits the duplicate summaries whose collapse window has expired.
+	 * <p>
+	 * This function is invoked automatically by the timer as soon as a collapse window expires.
+	 */
+	public void expire() {
+		for (LoggerState loggerState : this.loggerStates.values()) {
+			loggerState.expire();
+		}
+	}
+
+	synchronized void countSuppressed() {
+		this.suppressedCount++;
+	}
+
+	private static synchronized ScheduledExecutorService getTimer() {
+		ScheduledExecutorService checkedTimer = timer;
+
+		if (checkedTimer == null) {
+			checkedTimer = timer = Executors.newSingleThreadScheduledExecutor(runnable -> {
+				Thread thread = new Thread(runnable, SyslogLimiter.class.getSimpleName() + " timer");
+
+				thread.setDaemon(true);
+				return thread;
+			});
+		}
+		return checkedTimer;
+	}
+
+	private final class LoggerState {
+
+		private final String loggerName;
+		private long lastRefill = SyslogLimiter.this.nanoClock.getAsLong();
+		private double tokens = SyslogLimiter.this.rateBurst;
+		private int rateLimited = 0;
+		@Nullable
+		private String lastFormat = null;
+		private int lastLevel = 0;
+		private int lastFingerprint = 0;
+		private SyslogMessage.Severity lastSeverity = SyslogMessage.Severity.SEV_INFO;
+		private long lastPublished = 0;
+		private int repeated = 0;
+
+		LoggerState(String loggerName) {
+			this.loggerName = loggerName;
+		}
+
+		boolean admit(LogRecord record, SyslogMessage.Severity severity) {
+			long now = SyslogLimiter.this.nanoClock.getAsLong();
+			String format = Objects.toString(record.getMessage(), "");
+			int level = record.getLevel().intValue();
+			boolean admitted;
+			int repeatedSummary = 0;
+			SyslogMessage.Severity repeatedSeverity = severity;
+			int rateLimitedSummary = 0;
+			long expiryDelay = -1;
+
+			synchronized (this) {
+				boolean duplicate = SyslogLimiter.this.collapseDuplicates && isDuplicate(format, level);
+
+				if (duplicate && now - this.lastPublished < SyslogLimiter.this.collapseWindowNanos) {
+					this.repeated++;
+					if (this.repeated == 1) {
+						expiryDelay = this.lastPublished + SyslogLimiter.this.collapseWindowNanos - now;
+					}
+					admitted = false;
+				} else {
+					repeatedSummary = this.repeated;
+					repeatedSeverity = this.lastSeverity;
+					this.repeated = 0;
+					admitted = acquireToken(severity, now);
+					if (admitted) {
+						rateLimitedSummary = this.rateLimited;
+						this.rateLimited = 0;
+						this.lastFormat = format;
+						this.lastLevel = level;
+						this.lastFingerprint = format.hashCode();
+						this.lastSeverity = severity;
+						this.lastPublished = now;
+					} else {
+						this.rateLimited++;
+					}
+				}
+			}
+			if (!admitted) {
+				countSuppressed();
+			}
+			if (expiryDelay >= 0) {
+				// A new run of duplicates has started; make sure it is summarized even if no further record arrives
+				getTimer().schedule(this::expire, expiryDelay, TimeUnit.NANOSECONDS);
+			}
+			submitSummaries(repeatedSummary, repeatedSeverity, rateLimitedSummary);
+			return admitted;
+		}
+
+		void flush() {
+			int repeatedSummary;
+			SyslogMessage.Severity repeatedSeverity;
+			int rateLimitedSummary;
+
+			synchronized (this) {
+				repeatedSummary = this.repeated;
+				repeatedSeverity = this.lastSeverity;
+				rateLimitedSummary = this.rateLimited;
+				this.repeated = 0;
+				this.rateLimited = 0;
+				// Further duplicates start a new run
+				this.lastFormat = null;
+			}
+			submitSummaries(repeatedSummary, repeatedSeverity, rateLimitedSummary);
+		}
+
+		void expire() {
+			int repeatedSummary = 0;
+			SyslogMessage.Severity repeatedSeverity;
+
+			synchronized (this) {
+				repeatedSeverity = this.lastSeverity;
+				if (this.repeated > 0 && SyslogLimiter.this.nanoClock.getAsLong()
+						- this.lastPublished >= SyslogLimiter.this.collapseWindowNanos) {
+					repeatedSummary = this.repeated;
+					this.repeated = 0;
+					// Further duplicates start a new run
+					this.lastFormat = null;
+				}
+			}
+			submitSummaries(repeatedSummary, repeatedSeverity, 0);
+		}
+
+		private void submitSummaries(int repeatedSummary, SyslogMessage.Severity repeatedSeverity,
+				int rateLimitedSummary) {
+			if (repeatedSummary > 0) {
+				SyslogLimiter.this.summarySink.summary(repeatedSeverity, repeatedMessage(repeatedSummary));
+			}
+			if (rateLimitedSummary > 0) {
+				SyslogLimiter.this.summarySink.summary(SyslogMessage.Severity.SEV_WARNING,
+						rateLimitedMessage(rateLimitedSummary));
+			}
+		}
+
+		private boolean isDuplicate(String format, int level) {
+			String checkedLastFormat = this.lastFormat;
+
+			// Compare the cached string hashes first to rule out most non-duplicates cheaply
+			return checkedLastFormat != null && this.lastLevel == level && this.lastFingerprint == format.hashCode()
+					&& checkedLastFormat.equals(format);
+		}
+
+		private boolean acquireToken(SyslogMessage.Severity severity, long now) {
+			int checkedRateLimit = SyslogLimiter.this.rateLimit;
+			boolean acquired = true;
+
+			if (checkedRateLimit > 0 && severity.sev() > SyslogLimiter.this.rateLimitExempt.sev()) {
+				double refill = (now - this.lastRefill) * checkedRateLimit / 1000000000.0;
+
+				this.tokens = Math.min(this.tokens + refill, SyslogLimiter.this.rateBurst);
+				this.lastRefill = now;
+				if (this.tokens >= 1.0) {
+					this.tokens -= 1.0;
+				} else {
+					acquired = false;
+				}
+			}
+			return acquired;
+		}
+
+		private String repeatedMessage(int count) {
+			return "last message repeated " + count + " times";
+		}
+
+		private String rateLimitedMessage(int count) {
+			return count + " messages of logger '" + this.loggerName + "' suppressed by rate limit";
+		}
+
+	}
+
+}
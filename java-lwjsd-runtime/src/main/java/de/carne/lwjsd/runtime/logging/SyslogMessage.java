@@ -16,17 +16,13 @@
  */
 package de.carne.lwjsd.runtime.logging;
 
-import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.OutputStream;
-import java.nio.charset.StandardCharsets;
+import java.nio.ByteBuffer;
 import java.time.Instant;
-import java.time.ZoneId;
-import java.time.ZonedDateTime;
-import java.time.format.DateTimeFormatter;
-import java.util.Locale;
+import java.util.Arrays;
 
-import de.carne.boot.check.Check;
+import org.eclipse.jdt.annotation.Nullable;
 
 /**
  * Syslog message object that can be sent via a {@linkplain SyslogDestination}.
@@ -93,6 +89,22 @@ public final class SyslogMessage {
 			return this.sev;
 		}
 
+		/**
+		 * Gets the {@linkplain Severity} for an {@code int} value.
+		 *
+		 * @param sev the {@code int} value to get the {@linkplain Severity} for.
+		 * @return the {@linkplain Severity} for the submitted {@code int} value.
+		 * @throws IllegalArgumentException if the submitted value is not a valid severity value.
+		 */
+		public static Severity fromSev(int sev) {
+			Severity[] severities = values();
+
+			if (sev < 0 || sev >= severities.length || severities[sev].sev != sev) {
+				throw new IllegalArgumentException("Invalid severity value: " + sev);
+			}
+			return severities[sev];
+		}
+
 	}
 
 	/**
@@ -209,6 +221,28 @@ public final class SyslogMessage {
 			return this.fac;
 		}
 
+		/**
+		 * Gets the {@linkplain Facility} for an {@code int} value.
+		 *
+		 * @param fac the {@code int} value to get the {@linkplain Facility} for.
+		 * @return the {@linkplain Facility} for the submitted {@code int} value.
+		 * @throws IllegalArgumentException if the submitted value is not a valid facility value.
+		 */
+		public static Facility fromFac(int fac) {
+			Facility facility = null;
+
+			for (Facility candidate : values()) {
+				if (candidate.fac == fac) {
+					facility = candidate;
+					break;
+				}
+			}
+			if (facility == null) {
+				throw new IllegalArgumentException("Invalid facility value: " + fac);
+			}
+			return facility;
+		}
+
 	}
 
 	/**
@@ -218,12 +252,16 @@ public final class SyslogMessage {
 
 	private static final int DEFAULT_MESSAGE_SIZE = 1024;
 
+	private final Severity severity;
+	private final Facility facility;
 	private final int pri;
 	private final Instant timestamp;
 	private final String msg;
 	private String host = NIL;
 	private String app = NIL;
 	private String msgid = NIL;
+	@Nullable
+	private SyslogStructuredData structuredData = null;
 
 	/**
 	 * Construct {@linkplain SyslogMessage}.
@@ -234,11 +272,60 @@ public final class SyslogMessage {
 	 * @param msg The message text.
 	 */
 	public SyslogMessage(Severity severity, Facility facility, Instant timestamp, String msg) {
+		this.severity = severity;
+		this.facility = facility;
 		this.pri = (severity.sev() & 0x7) | ((facility.fac() & 0x7f) << 3);
 		this.timestamp = timestamp;
 		this.msg = msg;
 	}
 
+	/**
+	 * Get the message {@linkplain Severity}.
+	 *
+	 * @return The message {@linkplain Severity}.
+	 */
+	public Severity severity() {
+		return this.severity;
+	}
+
+	/**
+	 * Get the message {@linkplain Facility}.
+	 *
+	 * @return The message {@linkplain Facility}.
+	 */
+	public Facility facility() {
+		return this.facility;
+	}
+
+	int pri() {
+		return this.pri;
+	}
+
+	Instant timestamp() {
+		return this.timestamp;
+	}
+
+	String msg() {
+		return this.msg;
+	}
+
+	String host() {
+		return this.host;
+	}
+
+	String app() {
+		return this.app;
+	}
+
+	String messageId() {
+		return this.msgid;
+	}
+
+	@Nullable
+	SyslogStructuredData structuredData() {
+		return this.structuredData;
+	}
+
 	/**
 	 * Set the message host name.
 	 *
@@ -272,6 +359,38 @@ public final class SyslogMessage {
 		return this;
 	}
 
+	/**
+	 * Add a structured data parameter.
+	 * <p>
+	 * Structured data is only encoded for {@linkplain SyslogProtocol#RFC5424} messages. Parameters with the same SD-ID
+	 * are encoded into a single SD-ELEMENT.
+	 *
+	 * @param sdId The SD-ID of the SD-ELEMENT to add the parameter to.
+	 * @param name The parameter name.
+	 * @param value The parameter value.
+	 * @return The updated {@linkplain SyslogMessage}.
+	 */
+	public SyslogMessage addStructuredData(String sdId, String name, String value) {
+		getStructuredData().add(SyslogSdId.of(sdId), name, value);
+		return this;
+	}
+
+	SyslogMessage addStructuredData(SyslogStructuredData data) {
+		if (!data.isEmpty()) {
+			getStructuredData().addAll(data);
+		}
+		return this;
+	}
+
+	private SyslogStructuredData getStructuredData() {
+		SyslogStructuredData checkedStructuredData = this.structuredData;
+
+		if (checkedStructuredData == null) {
+			checkedStructuredData = this.structuredData = new SyslogStructuredData();
+		}
+		return checkedStructuredData;
+	}
+
 	/**
 	 * Encode the message to bytes.
 	 * <p>
@@ -283,10 +402,9 @@ public final class SyslogMessage {
 	 * @throws IOException if an I/O error occurs during encoding.
 	 */
 	public byte[] encode(SyslogConfig config) throws IOException {
-		ByteArrayOutputStream buffer = new ByteArrayOutputStream(DEFAULT_MESSAGE_SIZE);
+		ByteBuffer buffer = new SyslogEncoder(config).encode(this, ByteBuffer.allocate(DEFAULT_MESSAGE_SIZE));
 
-		encodeTo(buffer, config);
-		return buffer.toByteArray();
+		return Arrays.copyOf(buffer.array(), buffer.position());
 	}
 
 	/**
@@ -300,120 +418,9 @@ public final class SyslogMessage {
 	 * @throws IOException if an I/O error occurs during encoding.
 	 */
 	public void encodeTo(OutputStream out, SyslogConfig config) throws IOException {
-		SyslogProtocol protocol = config.getProtocol();
-
-		switch (protocol) {
-		case RFC3164:
-			encodeRfc3164To(out, config);
-			break;
-		case RFC5424:
-			encodeRfc5424To(out, config);
-			break;
-		default:
-			throw Check.unexpected(protocol);
-		}
-	}
-
-	private static final DateTimeFormatter RFC_3164_TIMESTAMP_FORMAT = DateTimeFormatter.ofPattern("MMM dd HH:mm:ss",
-			Locale.US);
-
-	private void encodeRfc3164To(OutputStream out, SyslogConfig config) throws IOException {
-		StringBuilder prologue = new StringBuilder();
-
-		prologue.append('<');
-		prologue.append(Integer.toString(this.pri));
-		prologue.append('>');
-
-		ZonedDateTime messageTimestamp = this.timestamp.atZone(ZoneId.systemDefault());
-
-		prologue.append(RFC_3164_TIMESTAMP_FORMAT.format(messageTimestamp));
-		prologue.append(' ');
-
-		String messageHost = (!NIL.equals(this.host) ? this.host : config.getDefaultMessageHost());
-
-		prologue.append(messageHost);
-		prologue.append(' ');
+		ByteBuffer buffer = new SyslogEncoder(config).encode(this, ByteBuffer.allocate(DEFAULT_MESSAGE_SIZE));
 
-		String messageApp = (!NIL.equals(this.app) ? this.app : config.getDefaultMessageApp());
-
-		prologue.append(messageApp);
-		if (!NIL.equals(messageApp)) {
-			prologue.append('[');
-			prologue.append(Long.toString(ProcessHandle.current().pid()));
-			prologue.append("]: ");
-		} else {
-			prologue.append(' ');
-		}
-		if (config.hasOption(SyslogOption.TRANSPORT_TCP) || config.hasOption(SyslogOption.TRANSPORT_TCP_TLS)) {
-			if (config.hasOption(SyslogOption.OCTET_COUNTING_FRAMING)) {
-				byte[] prologueBytes = prologue.toString().getBytes(StandardCharsets.US_ASCII);
-				byte[] msgBytes = this.msg.getBytes(StandardCharsets.US_ASCII);
-				StringBuilder octetCount = new StringBuilder();
-
-				octetCount.append(Integer.toString(prologueBytes.length + msgBytes.length));
-				octetCount.append(' ');
-				out.write(octetCount.toString().getBytes(StandardCharsets.US_ASCII));
-				out.write(prologueBytes);
-				out.write(msgBytes);
-			} else {
-				out.write(prologue.toString().getBytes(StandardCharsets.US_ASCII));
-				out.write(this.msg.getBytes(StandardCharsets.US_ASCII));
-				out.write(Syslog.NON_TRANSPARENT_FRAMING_TRAILER.getBytes(StandardCharsets.US_ASCII));
-			}
-		} else {
-			out.write(prologue.toString().getBytes(StandardCharsets.US_ASCII));
-			out.write(this.msg.getBytes(StandardCharsets.US_ASCII));
-		}
-	}
-
-	private static final DateTimeFormatter RFC_5425_TIMESTAMP_FORMAT = DateTimeFormatter.ISO_INSTANT;
-	private static final byte[] UTF8_BOM_BYTES = { (byte) 0xef, (byte) 0xbb, (byte) 0xbf };
-
-	private void encodeRfc5424To(OutputStream out, SyslogConfig config) throws IOException {
-		StringBuilder prologue = new StringBuilder();
-
-		prologue.append('<');
-		prologue.append(Integer.toString(this.pri));
-		prologue.append(">1 ");
-		prologue.append(RFC_5425_TIMESTAMP_FORMAT.format(this.timestamp));
-		prologue.append(' ');
-
-		String messageHost = (!NIL.equals(this.host) ? this.host : config.getDefaultMessageHost());
-
-		prologue.append(messageHost);
-		prologue.append(' ');
-
-		String messageApp = (!NIL.equals(this.app) ? this.app : config.getDefaultMessageApp());
-
-		prologue.append(messageApp);
-		prologue.append(' ');
-		prologue.append(Long.toString(ProcessHandle.current().pid()));
-		prologue.append(' ');
-		prologue.append(this.msgid);
-		prologue.append(" - ");
-		if (config.hasOption(SyslogOption.TRANSPORT_TCP) || config.hasOption(SyslogOption.TRANSPORT_TCP_TLS)) {
-			if (config.hasOption(SyslogOption.OCTET_COUNTING_FRAMING)) {
-				byte[] prologueBytes = prologue.toString().getBytes(StandardCharsets.US_ASCII);
-				byte[] msgBytes = this.msg.getBytes(StandardCharsets.UTF_8);
-				StringBuilder octetCount = new StringBuilder();
-
-				octetCount.append(Integer.toString(prologueBytes.length + UTF8_BOM_BYTES.length + msgBytes.length));
-				octetCount.append(' ');
-				out.write(octetCount.toString().getBytes(StandardCharsets.US_ASCII));
-				out.write(prologueBytes);
-				out.write(UTF8_BOM_BYTES);
-				out.write(msgBytes);
-			} else {
-				out.write(prologue.toString().getBytes(StandardCharsets.US_ASCII));
-				out.write(UTF8_BOM_BYTES);
-				out.write(this.msg.getBytes(StandardCharsets.UTF_8));
-				out.write(Syslog.NON_TRANSPARENT_FRAMING_TRAILER.getBytes(StandardCharsets.US_ASCII));
-			}
-		} else {
-			out.write(prologue.toString().getBytes(StandardCharsets.US_ASCII));
-			out.write(UTF8_BOM_BYTES);
-			out.write(this.msg.getBytes(StandardCharsets.UTF_8));
-		}
+		out.write(buffer.array(), 0, buffer.position());
 	}
 
 }
@@ -34,6 +34,12 @@ public enum SyslogOption {
 	/**
 	 * Use octect-counting framing for TCP based transports (default is to use non-transparent-framing).
 	 */
-	OCTET_COUNTING_FRAMING
+	OCTET_COUNTING_FRAMING,
+
+	/**
+	 * Use non-blocking I/O for TCP based transports (default is to use blocking I/O). Output that cannot be written
+	 * immediately is handed over to a shared I/O thread.
+	 */
+	NON_BLOCKING_IO
 
 }
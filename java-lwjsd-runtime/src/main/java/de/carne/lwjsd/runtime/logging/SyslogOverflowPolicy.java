@@ -0,0 +1,41 @@
+/*
+ * Copyright (c) 2018-2021 Holger de Carne and contributors, All Rights Reserved.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.carne.lwjsd.runtime.logging;
+
+/**
+ * The available policies for handling a full Syslog message queue.
+ */
+public enum SyslogOverflowPolicy {
+
+	/**
+	 * Drop the oldest queued message to make room for the new one.
+	 */
+	DROP_OLDEST,
+
+	/**
+	 * Drop debug messages first (either the new one or the oldest queued one) and fall back to
+	 * {@linkplain #DROP_OLDEST} if there is no debug message to drop.
+	 */
+	DROP_DEBUG_FIRST,
+
+	/**
+	 * Block the logging thread until there is room for the new message or the configured timeout has elapsed (in
+	 * which case the new message is dropped).
+	 */
+	BLOCK
+
+}
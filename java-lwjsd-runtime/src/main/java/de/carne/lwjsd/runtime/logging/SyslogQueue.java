@@ -0,0 +1,291 @@
+/*
+ * Copyright (c) 2018-2021 Holger de Carne and contributors, All Rights Reserved.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.carne.lwjsd.runtime.logging;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.eclipse.jdt.annotation.Nullable;
+
+/**
+ * Bounded queue of {@linkplain SyslogMessage}s drained by a single background thread.
+ * <p>
+ * The queue is backed by a pre-allocated ring buffer. If the ring buffer is full, new messages are handled according to
+ * the configured {@linkplain SyslogOverflowPolicy}.
+ */
+final class SyslogQueue implements Closeable {
+
+	@FunctionalInterface
+	interface Sink {
+
+		void send(SyslogMessage message) throws IOException;
+
+	}
+
+	@FunctionalInterface
+	interface ErrorHandler {
+
+		void error(SyslogMessage message, Exception exception);
+
+	}
+
+	private final ReentrantLock lock = new ReentrantLock();
+	private final Condition notEmpty = this.lock.newCondition();
+	private final Condition notFull = this.lock.newCondition();
+	private final Condition drained = this.lock.newCondition();
+	private final @Nullable SyslogMessage[] ring;
+	private final SyslogOverflowPolicy overflowPolicy;
+	private final long blockTimeoutNanos;
+	private final Sink sink;
+	private final ErrorHandler errorHandler;
+	private final Thread drainer;
+	private int head = 0;
+	private int count = 0;
+	private boolean sending = false;
+	private boolean closed = false;
+	private long droppedCount = 0;
+
+	SyslogQueue(String name, int capacity, SyslogOverflowPolicy overflowPolicy, long blockTimeoutMillis, Sink sink,
+			ErrorHandler errorHandler) {
+		this.ring = new SyslogMessage[Math.max(capacity, 1)];
+		this.overflowPolicy = overflowPolicy;
+		this.blockTimeoutNanos = TimeUnit.MILLISECONDS.toNanos(blockTimeoutMillis);
+		this.sink = sink;
+		this.errorHandler = errorHandler;
+		this.drainer = new Thread(this::drain, name);
+		this.drainer.setDaemon(true);
+		this.drainer.start();
+	}
+
+	/**
+	 * Queues a {@linkplain SyslogMessage} for sending.
+	 *
+	 * @param message the {@linkplain SyslogMessage} to queue.
+	 * @return {@code true} if the message has been queued; {@code false} if it has been dropped.
+	 */
+	public boolean offer(SyslogMessage message) {
+		boolean queued = false;
+
+		this.lock.lock();
+		try {
+			if (!this.closed && (this.count < this.ring.length || makeRoom(message))) {
+				this.ring[(this.head + this.count) % this.ring.length] = message;
+				this.count++;
+				this.notEmpty.signal();
+				queued = true;
+			} else {
+				this.droppedCount++;
+			}
+		} finally {
+			this.lock.unlock();
+		}
+		return queued;
+	}
+
+	/**
+	 * Gets the number of messages dropped so far.
+	 *
+	 * @return the number of messages dropped so far.
+	 */
+	public long droppedCount() {
+		this.lock.lock();
+		try {
+			return this.droppedCount;
+		} finally {
+			this.lock.unlock();
+		}
+	}
+
+	/**
+	 * Gets the number of currently queued messages.
+	 *
+	 * @return the number of currently queued messages.
+	 */
+	public int depth() {
+		this.lock.lock();
+		try {
+			return this.count;
+		} finally {
+			this.lock.unlock();
+		}
+	}
+
+	/**
+	 * Waits until all queued messages have been sent.
+	 *
+	 * @param timeoutMillis the maximum time (in milliseconds) to wait.
+	 * @return {@code true} if all queued messages have been sent; {@code false} if the timeout elapsed before.
+	 */
+	public boolean awaitDrained(long timeoutMillis) {
+		boolean isDrained;
+
+		this.lock.lock();
+		try {
+			long remainingNanos = TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+
+			while ((this.count > 0 || this.sending) && remainingNanos > 0) {
+				remainingNanos = this.drained.awaitNanos(remainingNanos);
+			}
+			isDrained = this.count == 0 && !this.sending;
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			isDrained = false;
+		} finally {
+			this.lock.unlock();
+		}
+		return isDrained;
+	}
+
+	@Override
+	public void close() {
+		awaitDrained(TimeUnit.NANOSECONDS.toMillis(this.blockTimeoutNanos));
+		this.lock.lock();
+		try {
+			this.closed = true;
+			this.droppedCount += this.count;
+			while (this.count > 0) {
+				removeHead();
+			}
+			this.notEmpty.signalAll();
+			this.notFull.signalAll();
+		} finally {
+			this.lock.unlock();
+		}
+		try {
+			this.drainer.join(TimeUnit.NANOSECONDS.toMillis(this.blockTimeoutNanos));
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	@Override
+	public String toString() {
+		return this.drainer.getName();
+	}
+
+	private boolean makeRoom(SyslogMessage message) {
+		boolean roomMade = false;
+
+		switch (this.overflowPolicy) {
+		case DROP_OLDEST:
+			removeHead();
+			this.droppedCount++;
+			roomMade = true;
+			break;
+		case DROP_DEBUG_FIRST:
+			if (message.severity() != SyslogMessage.Severity.SEV_DEBUG) {
+				if (!removeOldestDebug()) {
+					removeHead();
+				}
+				this.droppedCount++;
+				roomMade = true;
+			}
+			break;
+		case BLOCK:
+			roomMade = awaitNotFull();
+			break;
+		}
+		return roomMade;
+	}
+
+	private boolean removeOldestDebug() {
+		boolean removed = false;
+
+		for (int index = 0; index < this.count; index++) {
+			SyslogMessage queued = this.ring[(this.head + index) % this.ring.length];
+
+			if (queued != null && queued.severity() == SyslogMessage.Severity.SEV_DEBUG) {
+				// Close the gap by moving the newer messages one slot towards the head
+				for (int moveIndex = index + 1; moveIndex < this.count; moveIndex++) {
+					this.ring[(this.head + moveIndex - 1) % this.ring.length] = this.ring[(this.head + moveIndex)
+							% this.ring.length];
+				}
+				this.count--;
+				this.ring[(this.head + this.count) % this.ring.length] = null;
+				removed = true;
+				break;
+			}
+		}
+		return removed;
+	}
+
+	private boolean awaitNotFull() {
+		long remainingNanos = this.blockTimeoutNanos;
+
+		try {
+			while (!this.closed && this.count == this.ring.length && remainingNanos > 0) {
+				remainingNanos = this.notFull.awaitNanos(remainingNanos);
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		return !this.closed && this.count < this.ring.length;
+	}
+
+	private @Nullable SyslogMessage removeHead() {
+		SyslogMessage message = this.ring[this.head];
+
+		this.ring[this.head] = null;
+		this.head = (this.head + 1) % this.ring.length;
+		this.count--;
+		this.notFull.signal();
+		return message;
+	}
+
+	private @Nullable SyslogMessage take() throws InterruptedException {
+		SyslogMessage message = null;
+
+		this.lock.lock();
+		try {
+			this.sending = false;
+			if (this.count == 0) {
+				this.drained.signalAll();
+			}
+			while (!this.closed && this.count == 0) {
+				this.notEmpty.await();
+			}
+			if (this.count > 0) {
+				message = removeHead();
+				this.sending = true;
+			}
+		} finally {
+			this.lock.unlock();
+		}
+		return message;
+	}
+
+	private void drain() {
+		try {
+			SyslogMessage message;
+
+			while ((message = take()) != null) {
+				try {
+					this.sink.send(message);
+				} catch (IOException | RuntimeException e) {
+					// Never let a failing message end the drainer; any further message would be lost otherwise
+					this.errorHandler.error(message, e);
+				}
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+}
@@ -0,0 +1,123 @@
+/*
+ * Copyright (c) 2018-2021 Holger de Carne and contributors, All Rights Reserved.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.carne.lwjsd.runtime.logging;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * RFC 5424 SD-ID with pre-encoded element and parameter name bytes.
+ * <p>
+ * Instances as well as the encoded parameter names of an instance are cached, hence encoding the constant parts of a
+ * SD-ELEMENT boils down to copying pre-encoded bytes. Invalid SD-NAME characters are replaced by {@code '_'} and names
+ * exceeding the maximum length are truncated.
+ */
+final class SyslogSdId {
+
+	private static final int MAX_NAME_LENGTH = 32;
+	private static final int CACHE_LIMIT = 1024;
+	private static final Map<String, SyslogSdId> SD_IDS = new ConcurrentHashMap<>();
+
+	private final String id;
+	private final byte[] elementBytes;
+	private final Map<String, byte[]> paramNameBytes = new ConcurrentHashMap<>();
+
+	private SyslogSdId(String id) {
+		this.id = id;
+		this.elementBytes = ascii("[" + sdName(id));
+	}
+
+	/**
+	 * Gets the {@linkplain SyslogSdId} instance for a specific SD-ID.
+	 *
+	 * @param id the SD-ID to get the instance for.
+	 * @return the {@linkplain SyslogSdId} instance for the submitted SD-ID.
+	 */
+	public static SyslogSdId of(String id) {
+		SyslogSdId sdId = SD_IDS.get(id);
+
+		if (sdId == null) {
+			sdId = new SyslogSdId(id);
+			if (SD_IDS.size() < CACHE_LIMIT) {
+				SD_IDS.putIfAbsent(id, sdId);
+			}
+		}
+		return sdId;
+	}
+
+	/**
+	 * Gets the SD-ID.
+	 *
+	 * @return the SD-ID.
+	 */
+	public String id() {
+		return this.id;
+	}
+
+	/**
+	 * Gets the encoded SD-ELEMENT prologue (i.e. {@code "[<SD-ID>"}).
+	 *
+	 * @return the encoded SD-ELEMENT prologue.
+	 */
+	public byte[] elementBytes() {
+		return this.elementBytes;
+	}
+
+	/**
+	 * Gets the encoded SD-PARAM prologue (i.e. {@code " <PARAM-NAME>=\""}) for a specific parameter name.
+	 *
+	 * @param name the parameter name to get the encoded prologue for.
+	 * @return the encoded SD-PARAM prologue.
+	 */
+	public byte[] paramNameBytes(String name) {
+		byte[] nameBytes = this.paramNameBytes.get(name);
+
+		if (nameBytes == null) {
+			nameBytes = ascii(" " + sdName(name) + "=\"");
+			if (this.paramNameBytes.size() < CACHE_LIMIT) {
+				this.paramNameBytes.putIfAbsent(name, nameBytes);
+			}
+		}
+		return nameBytes;
+	}
+
+	@Override
+	public String toString() {
+		return this.id;
+	}
+
+	private static String sdName(String name) {
+		int nameLength = Math.min(name.length(), MAX_NAME_LENGTH);
+		StringBuilder sdName = new StringBuilder(nameLength);
+
+		for (int charIndex = 0; charIndex < nameLength; charIndex++) {
+			char c = name.charAt(charIndex);
+
+			sdName.append(c > ' ' && c < 0x7f && c != '=' && c != ']' && c != '"' ? c : '_');
+		}
+		if (sdName.length() == 0) {
+			sdName.append('_');
+		}
+		return sdName.toString();
+	}
+
+	private static byte[] ascii(String value) {
+		return value.getBytes(StandardCharsets.US_ASCII);
+	}
+
+}
@@ -0,0 +1,601 @@
+/*
+ * Copyright (c) 2018-2021 Holger de Carne and contributors, All Rights Reserved.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.carne.lwjsd.runtime.logging;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32;
+
+import org.eclipse.jdt.annotation.Nullable;
+
+import de.carne.boot.logging.Log;
+
+/**
+ * Disk-backed spool for {@linkplain SyslogMessage}s which could not be delivered.
+ * <p>
+ * Spooled messages are appended to memory-mapped segment files and replayed in order by a background thread at a
+ * throttled rate. Replayed messages are marked as consumed in place, so a restarted spool continues with the first
+ * message not yet replayed. Messages exceeding the configured age are discarded during replay and the oldest segment
+ * is discarded if the configured disk limit is reached.
+ * <p>
+ * Each record carries a checksum. Recovery of a segment stops at the first record failing the check (e.g. due to a
+ * torn write during a crash) and any following record of the segment is discarded. Segment files are unmapped before
+ * they are deleted.
+ */
+final class SyslogSpool implements Closeable {
+
+	private static final Log LOG = new Log();
+
+	/**
+	 * The size of a single spool segment.
+	 */
+	static final int SEGMENT_SIZE = 1024 * 1024;
+
+	private static final String SEGMENT_SUFFIX = ".spool";
+	private static final int RECORD_CHECKSUM_OFFSET = Integer.BYTES;
+	private static final int RECORD_HEADER_SIZE = RECORD_CHECKSUM_OFFSET + Integer.BYTES;
+	private static final long MIN_RETRY_DELAY = 1000;
+	private static final long MAX_RETRY_DELAY = 30000;
+
+	@FunctionalInterface
+	interface Sender {
+
+		void send(SyslogMessage message) throws IOException;
+
+	}
+
+	private final Path directory;
+	private final int segmentLimit;
+	private final long maxAgeMillis;
+	private final long replayIntervalNanos;
+	private final Sender sender;
+	private final Deque<Segment> segments = new ArrayDeque<>();
+	private final Thread replayer;
+	@Nullable
+	private Segment replaySegment = null;
+	private long nextSegmentIndex = 0;
+	private long spooledCount = 0;
+	private long droppedCount = 0;
+	private boolean closed = false;
+
+	SyslogSpool(String name, Path directory, long sizeLimit, long maxAgeMillis, int replayRate, Sender sender)
+			throws IOException {
+		this.directory = directory;
+		this.segmentLimit = (int) Math.max(sizeLimit / SEGMENT_SIZE, 2);
+		this.maxAgeMillis = maxAgeMillis;
+		this.replayIntervalNanos = TimeUnit.SECONDS.toNanos(1) / Math.max(replayRate, 1);
+		this.sender = sender;
+		Files.createDirectories(directory);
+		recoverSegments();
+		this.replayer = new Thread(this::replay, name);
+		this.replayer.setDaemon(true);
+		this.replayer.start();
+	}
+
+	/**
+	 * Appends a {@linkplain SyslogMessage} to the spool.
+	 *
+	 * @param message the {@linkplain SyslogMessage} to append.
+	 * @throws IOException if an I/O error occurs while appending the message.
+	 */
+	public synchronized void append(SyslogMessage message) throws IOException {
+		if (this.closed) {
+			throw new IOException("Spool closed: " + this.directory);
+		}
+
+		byte[] record = encodeRecord(message);
+
+		if (record.length + 2 * RECORD_HEADER_SIZE > SEGMENT_SIZE) {
+			throw new IOException("Message exceeds spool segment size: " + record.length);
+		}
+
+		Segment segment = this.segments.peekLast();
+
+		if (segment == null || segment.writeRemaining() < record.length + 2 * RECORD_HEADER_SIZE) {
+			Path segmentPath = this.directory.resolve(String.format("%016x%s", this.nextSegmentIndex, SEGMENT_SUFFIX));
+
+			if (this.segments.size() >= this.segmentLimit) {
+				dropOldestSegment();
+			}
+			segment = openSegment(segmentPath, true);
+			this.nextSegmentIndex++;
+			this.segments.addLast(segment);
+		}
+		segment.write(record);
+		this.spooledCount++;
+		notifyAll();
+	}
+
+	/**
+	 * Appends a {@linkplain SyslogMessage} to the spool if there are any messages waiting for replay.
+	 * <p>
+	 * As long as messages are waiting for replay, new messages have to be spooled as well to keep the delivery order.
+	 * The message currently being replayed is still counted as waiting.
+	 *
+	 * @param message the {@linkplain SyslogMessage} to append.
+	 * @return {@code true} if the message has been appended.
+	 * @throws IOException if an I/O error occurs while appending the message.
+	 */
+	public synchronized boolean appendIfSpooled(SyslogMessage message) throws IOException {
+		boolean spooled = this.spooledCount > 0;
+
+		if (spooled) {
+			append(message);
+		}
+		return spooled;
+	}
+
+	/**
+	 * Gets the number of messages currently waiting for replay.
+	 *
+	 * @return the number of messages currently waiting for replay.
+	 */
+	public synchronized long spooledCount() {
+		return this.spooledCount;
+	}
+
+	/**
+	 * Gets the number of spooled messages discarded due to the configured disk limit or age limit.
+	 *
+	 * @return the number of spooled messages discarded so far.
+	 */
+	public synchronized long droppedCount() {
+		return this.droppedCount;
+	}
+
+	@Override
+	public void close() {
+		synchronized (this) {
+			this.closed = true;
+			notifyAll();
+		}
+		try {
+			this.replayer.join();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		synchronized (this) {
+			for (Segment segment : this.segments) {
+				segment.force();
+				segment.unmap();
+			}
+			this.segments.clear();
+			if (this.spooledCount > 0) {
+				LOG.notice("{0} message(s) left in spool ''{1}''", this.spooledCount, this.directory);
+			}
+		}
+	}
+
+	@Override
+	public String toString() {
+		return this.directory.toString();
+	}
+
+	private void recoverSegments() throws IOException {
+		List<Path> segmentPaths = new ArrayList<>();
+
+		try (DirectoryStream<Path> segmentFiles = Files.newDirectoryStream(this.directory, "*" + SEGMENT_SUFFIX)) {
+			segmentFiles.forEach(segmentPaths::add);
+		}
+		Collections.sort(segmentPaths);
+		for (Path segmentPath : segmentPaths) {
+			String segmentFileName = segmentPath.getFileName().toString();
+
+			try {
+				long segmentIndex = Long.parseLong(
+						segmentFileName.substring(0, segmentFileName.length() - SEGMENT_SUFFIX.length()), 16);
+				Segment segment = openSegment(segmentPath, false);
+
+				this.nextSegmentIndex = Math.max(this.nextSegmentIndex, segmentIndex + 1);
+				if (segment.recordCount() > 0) {
+					this.segments.addLast(segment);
+					this.spooledCount += segment.recordCount();
+				} else {
+					deleteSegment(segment);
+				}
+			} catch (NumberFormatException e) {
+				LOG.warning(e, "Ignoring unexpected spool file ''{0}''", segmentPath);
+			}
+		}
+		if (this.spooledCount > 0) {
+			LOG.notice("Recovered {0} message(s) from spool ''{1}''", this.spooledCount, this.directory);
+		}
+	}
+
+	private Segment openSegment(Path segmentPath, boolean create) throws IOException {
+		MappedByteBuffer buffer;
+
+		try (FileChannel channel = (create
+				? FileChannel.open(segmentPath, StandardOpenOption.CREATE_NEW, StandardOpenOption.READ,
+						StandardOpenOption.WRITE)
+				: FileChannel.open(segmentPath, StandardOpenOption.READ, StandardOpenOption.WRITE))) {
+			buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, (create ? SEGMENT_SIZE : channel.size()));
+		}
+		return new Segment(segmentPath, buffer);
+	}
+
+	private void dropOldestSegment() throws IOException {
+		Segment segment = this.segments.removeFirst();
+		long segmentRecordCount = segment.recordCount();
+
+		LOG.warning("Spool ''{0}'' limit reached; discarding {1} message(s)", this.directory, segmentRecordCount);
+		this.spooledCount -= segmentRecordCount;
+		this.droppedCount += segmentRecordCount;
+		deleteSegment(segment);
+	}
+
+	private void deleteSegment(Segment segment) throws IOException {
+		// The segment must not be accessed afterwards, which is ensured by only accessing segments while holding the
+		// spool lock and removing them from the segment list before
+		segment.unmap();
+		Files.delete(segment.path());
+	}
+
+	private synchronized @Nullable SyslogMessage awaitNext() throws InterruptedException, IOException {
+		SyslogMessage message = null;
+
+		while (!this.closed && message == null) {
+			Segment segment = this.segments.peekFirst();
+
+			this.replaySegment = segment;
+			if (segment == null) {
+				wait();
+			} else if (segment.readRemaining()) {
+				try {
+					message = decodeRecord(segment.peek());
+					if (this.maxAgeMillis > 0
+							&& message.timestamp().toEpochMilli() + this.maxAgeMillis < System.currentTimeMillis()) {
+						message = null;
+					}
+				} catch (IOException e) {
+					LOG.warning(e, "Discarding corrupted record in spool ''{0}''", this.directory);
+				}
+				if (message == null) {
+					consumeNext();
+					this.droppedCount++;
+				}
+			} else if (segment != this.segments.peekLast()) {
+				this.segments.removeFirst();
+				this.replaySegment = null;
+				deleteSegment(segment);
+			} else {
+				wait();
+			}
+		}
+		return message;
+	}
+
+	private synchronized void consumeNext() {
+		Segment segment = this.segments.peekFirst();
+
+		// The replayed segment may have been discarded meanwhile due to the disk limit
+		if (segment != null && segment == this.replaySegment) {
+			segment.consume();
+			this.spooledCount--;
+		}
+	}
+
+	private synchronized boolean awaitNanos(long nanos) throws InterruptedException {
+		long deadline = System.nanoTime() + nanos;
+		long remaining;
+
+		while (!this.closed && (remaining = deadline - System.nanoTime()) > 0) {
+			TimeUnit.NANOSECONDS.timedWait(this, remaining);
+		}
+		return !this.closed;
+	}
+
+	private void replay() {
+		long retryDelay = 0;
+
+		try {
+			SyslogMessage message;
+
+			while ((message = awaitNext()) != null) {
+				try {
+					this.sender.send(message);
+					consumeNext();
+					retryDelay = 0;
+					awaitNanos(this.replayIntervalNanos);
+				} catch (IOException e) {
+					retryDelay = (retryDelay > 0 ? Math.min(retryDelay * 2, MAX_RETRY_DELAY) : MIN_RETRY_DELAY);
+					LOG.debug(e, "Spool replay to ''{0}'' failed; retrying in {1} ms", this.directory, retryDelay);
+					awaitNanos(TimeUnit.MILLISECONDS.toNanos(retryDelay));
+				} catch (RuntimeException e) {
+					// Unexpected failure; keep the replay thread alive as the spool would otherwise fill up silently
+					retryDelay = (retryDelay > 0 ? Math.min(retryDelay * 2, MAX_RETRY_DELAY) : MIN_RETRY_DELAY);
+					LOG.warning(e, "Spool replay to ''{0}'' failed unexpectedly; retrying in {1} ms", this.directory,
+							retryDelay);
+					awaitNanos(TimeUnit.MILLISECONDS.toNanos(retryDelay));
+				}
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		} catch (IOException e) {
+			LOG.error(e, "Spool replay from ''{0}'' failed", this.directory);
+		}
+	}
+
+	private static byte[] encodeRecord(SyslogMessage message) {
+		byte[] msg = message.msg().getBytes(StandardCharsets.UTF_8);
+		byte[] host = message.host().getBytes(StandardCharsets.UTF_8);
+		byte[] app = message.app().getBytes(StandardCharsets.UTF_8);
+		byte[] messageId = message.messageId().getBytes(StandardCharsets.UTF_8);
+		byte[][] params = encodeStructuredData(message.structuredData());
+		int paramsLength = 0;
+
+		for (byte[] param : params) {
+			paramsLength += Integer.BYTES + param.length;
+		}
+
+		ByteBuffer record = ByteBuffer.allocate(Long.BYTES + 3 * Integer.BYTES + 4 * Integer.BYTES + msg.length
+				+ host.length + app.length + messageId.length + Integer.BYTES + paramsLength);
+
+		record.putLong(message.timestamp().getEpochSecond());
+		record.putInt(message.timestamp().getNano());
+		record.putInt(message.severity().sev());
+		record.putInt(message.facility().fac());
+		putBytes(record, msg);
+		putBytes(record, host);
+		putBytes(record, app);
+		putBytes(record, messageId);
+		record.putInt(params.length / 3);
+		for (byte[] param : params) {
+			putBytes(record, param);
+		}
+		return record.array();
+	}
+
+	private static byte[][] encodeStructuredData(@Nullable SyslogStructuredData structuredData) {
+		int paramCount = (structuredData != null ? structuredData.paramCount() : 0);
+		byte[][] params = new byte[paramCount * 3][];
+
+		if (structuredData != null) {
+			for (int paramIndex = 0; paramIndex < paramCount; paramIndex++) {
+				String sdId = structuredData.element(structuredData.paramElement(paramIndex)).id();
+
+				params[paramIndex * 3] = sdId.getBytes(StandardCharsets.UTF_8);
+				params[paramIndex * 3 + 1] = structuredData.paramName(paramIndex).getBytes(StandardCharsets.UTF_8);
+				params[paramIndex * 3 + 2] = structuredData.paramValue(paramIndex).getBytes(StandardCharsets.UTF_8);
+			}
+		}
+		return params;
+	}
+
+	private static void putBytes(ByteBuffer record, byte[] bytes) {
+		record.putInt(bytes.length);
+		record.put(bytes);
+	}
+
+	private static SyslogMessage decodeRecord(ByteBuffer record) throws IOException {
+		SyslogMessage message;
+
+		try {
+			Instant timestamp = Instant.ofEpochSecond(record.getLong(), record.getInt());
+			SyslogMessage.Severity severity = SyslogMessage.Severity.fromSev(record.getInt());
+			SyslogMessage.Facility facility = SyslogMessage.Facility.fromFac(record.getInt());
+
+			message = new SyslogMessage(severity, facility, timestamp, getString(record));
+			message.setHost(getString(record)).setApp(getString(record)).setMessageId(getString(record));
+			// Records spooled by previous versions do not contain any structured data
+			if (record.hasRemaining()) {
+				int paramCount = record.getInt();
+
+				for (int paramIndex = 0; paramIndex < paramCount; paramIndex++) {
+					message.addStructuredData(getString(record), getString(record), getString(record));
+				}
+			}
+		} catch (RuntimeException e) {
+			throw new IOException("Corrupted spool record", e);
+		}
+		return message;
+	}
+
+	private static String getString(ByteBuffer record) {
+		byte[] bytes = new byte[record.getInt()];
+
+		record.get(bytes);
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+
+	/*
+	 * A segment is a sequence of records, each of them prefixed with its length and the CRC32 checksum of the record
+	 * data. A positive length marks a pending record, a negative length marks a consumed record and a zero length marks
+	 * the end of the segment.
+	 */
+	private static final class Segment {
+
+		private final Path path;
+		private final MappedByteBuffer buffer;
+		private int readPosition = 0;
+		private int writePosition = 0;
+		private long recordCount = 0;
+
+		Segment(Path path, MappedByteBuffer buffer) {
+			this.path = path;
+			this.buffer = buffer;
+			scan();
+		}
+
+		private void scan() {
+			int position = 0;
+			boolean pendingSeen = false;
+
+			while (position + RECORD_HEADER_SIZE <= this.buffer.limit()) {
+				int recordLength = this.buffer.getInt(position);
+				int recordSize = RECORD_HEADER_SIZE + Math.abs(recordLength);
+
+				if (recordLength == 0 || recordLength == Integer.MIN_VALUE
+						|| recordSize > this.buffer.limit() - position) {
+					break;
+				}
+				if (recordLength > 0) {
+					if (this.buffer.getInt(position + RECORD_CHECKSUM_OFFSET) != checksum(position, recordLength)) {
+						LOG.warning("Discarding corrupted record(s) at offset {0} of spool segment ''{1}''", position,
+								this.path);
+						break;
+					}
+					this.recordCount++;
+					pendingSeen = true;
+				} else if (!pendingSeen) {
+					this.readPosition = position + recordSize;
+				}
+				position += recordSize;
+			}
+			this.writePosition = position;
+			// Clear any remains of a torn write, so they are not mistaken for records once the segment is appended to
+			for (int clearPosition = position; clearPosition < this.buffer.limit(); clearPosition++) {
+				if (this.buffer.get(clearPosition) != 0) {
+					this.buffer.put(clearPosition, (byte) 0);
+				}
+			}
+		}
+
+		private int checksum(int position, int recordLength) {
+			ByteBuffer record = this.buffer.duplicate();
+			CRC32 crc = new CRC32();
+
+			record.position(position + RECORD_HEADER_SIZE);
+			record.limit(position + RECORD_HEADER_SIZE + recordLength);
+			crc.update(record);
+			return (int) crc.getValue();
+		}
+
+		Path path() {
+			return this.path;
+		}
+
+		long recordCount() {
+			return this.recordCount;
+		}
+
+		int writeRemaining() {
+			return this.buffer.limit() - this.writePosition;
+		}
+
+		void write(byte[] record) {
+			ByteBuffer writeBuffer = this.buffer.duplicate();
+			CRC32 crc = new CRC32();
+
+			writeBuffer.position(this.writePosition + RECORD_HEADER_SIZE);
+			writeBuffer.put(record);
+			crc.update(record);
+			this.buffer.putInt(this.writePosition + RECORD_CHECKSUM_OFFSET, (int) crc.getValue());
+			// Publish the record length last, so a partially written record is never considered valid
+			this.buffer.putInt(this.writePosition, record.length);
+			this.writePosition += RECORD_HEADER_SIZE + record.length;
+			this.recordCount++;
+		}
+
+		boolean readRemaining() {
+			return this.readPosition < this.writePosition;
+		}
+
+		ByteBuffer peek() {
+			ByteBuffer readBuffer = this.buffer.duplicate();
+			int recordLength = this.buffer.getInt(this.readPosition);
+
+			readBuffer.position(this.readPosition + RECORD_HEADER_SIZE);
+			readBuffer.limit(this.readPosition + RECORD_HEADER_SIZE + recordLength);
+			return readBuffer.slice();
+		}
+
+		void consume() {
+			int recordLength = this.buffer.getInt(this.readPosition);
+
+			this.buffer.putInt(this.readPosition, -recordLength);
+			this.readPosition += RECORD_HEADER_SIZE + recordLength;
+			this.recordCount--;
+		}
+
+		void force() {
+			this.buffer.force();
+		}
+
+		void unmap() {
+			Unmapper.unmap(this.buffer);
+		}
+
+	}
+
+	/*
+	 * A mapped buffer is only unmapped by the garbage collector, which keeps the file's disk space allocated (and the
+	 * file undeletable on Windows) until then. Hence the mapping is released explicitly via the JDK's internal cleaner
+	 * if accessible (jdk.unsupported module) and left to the garbage collector otherwise.
+	 */
+	private static final class Unmapper {
+
+		@Nullable
+		private static final Object UNSAFE;
+		@Nullable
+		private static final Method INVOKE_CLEANER;
+
+		static {
+			Object unsafe = null;
+			Method invokeCleaner = null;
+
+			try {
+				Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+				Field theUnsafe = unsafeClass.getDeclaredField("theUnsafe");
+
+				theUnsafe.setAccessible(true);
+				unsafe = theUnsafe.get(null);
+				invokeCleaner = unsafeClass.getMethod("invokeCleaner", ByteBuffer.class);
+			} catch (ReflectiveOperationException | RuntimeException e) {
+				LOG.debug(e, "Explicit unmapping of spool segments not available");
+			}
+			UNSAFE = unsafe;
+			INVOKE_CLEANER = invokeCleaner;
+		}
+
+		private Unmapper() {
+			// Prevent instantiation
+		}
+
+		static void unmap(MappedByteBuffer buffer) {
+			Object unsafe = UNSAFE;
+			Method invokeCleaner = INVOKE_CLEANER;
+
+			if (unsafe != null && invokeCleaner != null) {
+				try {
+					invokeCleaner.invoke(unsafe, buffer);
+				} catch (ReflectiveOperationException | RuntimeException e) {
+					LOG.debug(e, "Failed to unmap spool segment");
+				}
+			}
+		}
+
+	}
+
+}
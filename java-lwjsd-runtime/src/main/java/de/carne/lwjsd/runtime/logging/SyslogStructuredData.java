@@ -0,0 +1,245 @@
+/*
+ * Copyright (c) 2018-2021 Holger de Carne and contributors, All Rights Reserved.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.carne.lwjsd.runtime.logging;
+
+import java.util.Arrays;
+
+/**
+ * Mutable list of RFC 5424 SD-PARAMs grouped into SD-ELEMENTs.
+ * <p>
+ * Elements are encoded in the order of their first parameter's insertion. Parameters are kept in flat arrays together
+ * with their pre-encoded names (see {@linkplain SyslogSdId#paramNameBytes(String)}), hence copying and encoding
+ * structured data does not involve any per-parameter objects.
+ */
+final class SyslogStructuredData {
+
+	private static final int INITIAL_CAPACITY = 4;
+
+	private SyslogSdId[] elements = new SyslogSdId[INITIAL_CAPACITY];
+	private int elementCount = 0;
+	private int[] paramElements = new int[INITIAL_CAPACITY];
+	private String[] paramNames = new String[INITIAL_CAPACITY];
+	private byte[][] paramNameBytes = new byte[INITIAL_CAPACITY][];
+	private String[] paramValues = new String[INITIAL_CAPACITY];
+	private int paramCount = 0;
+
+	/**
+	 * Checks whether any parameter has been added.
+	 *
+	 * @return {@code true} if no parameter has been added.
+	 */
+	public boolean isEmpty() {
+		return this.paramCount == 0;
+	}
+
+	/**
+	 * Adds a parameter.
+	 *
+	 * @param sdId the SD-ID of the element to add the parameter to.
+	 * @param name the parameter name.
+	 * @param value the parameter value.
+	 */
+	public void add(SyslogSdId sdId, String name, String value) {
+		add(elementIndex(sdId), name, sdId.paramNameBytes(name), value);
+	}
+
+	/**
+	 * Sets a parameter (replacing any existing parameter with the same SD-ID and name).
+	 *
+	 * @param sdId the SD-ID of the element to set the parameter in.
+	 * @param name the parameter name.
+	 * @param value the parameter value.
+	 */
+	public void set(SyslogSdId sdId, String name, String value) {
+		int elementIndex = elementIndex(sdId);
+		int paramIndex = paramIndex(elementIndex, name);
+
+		if (paramIndex >= 0) {
+			this.paramValues[paramIndex] = value;
+		} else {
+			add(elementIndex, name, sdId.paramNameBytes(name), value);
+		}
+	}
+
+	/**
+	 * Removes a parameter.
+	 *
+	 * @param sdId the SD-ID of the element to remove the parameter from.
+	 * @param name the parameter name.
+	 */
+	public void remove(SyslogSdId sdId, String name) {
+		int elementIndex = findElement(sdId.id());
+		int paramIndex = (elementIndex >= 0 ? paramIndex(elementIndex, name) : -1);
+
+		if (paramIndex >= 0) {
+			int tail = this.paramCount - paramIndex - 1;
+
+			System.arraycopy(this.paramElements, paramIndex + 1, this.paramElements, paramIndex, tail);
+			System.arraycopy(this.paramNames, paramIndex + 1, this.paramNames, paramIndex, tail);
+			System.arraycopy(this.paramNameBytes, paramIndex + 1, this.paramNameBytes, paramIndex, tail);
+			System.arraycopy(this.paramValues, paramIndex + 1, this.paramValues, paramIndex, tail);
+			this.paramCount--;
+			if (paramIndex(elementIndex) < 0) {
+				removeElement(elementIndex);
+			}
+		}
+	}
+
+	/**
+	 * Removes all parameters.
+	 */
+	public void clear() {
+		this.elementCount = 0;
+		this.paramCount = 0;
+	}
+
+	/**
+	 * Adds all parameters of another instance.
+	 *
+	 * @param structuredData the instance to add the parameters from.
+	 */
+	public void addAll(SyslogStructuredData structuredData) {
+		for (int paramIndex = 0; paramIndex < structuredData.paramCount; paramIndex++) {
+			add(elementIndex(structuredData.elements[structuredData.paramElements[paramIndex]]),
+					structuredData.paramNames[paramIndex], structuredData.paramNameBytes[paramIndex],
+					structuredData.paramValues[paramIndex]);
+		}
+	}
+
+	int elementCount() {
+		return this.elementCount;
+	}
+
+	SyslogSdId element(int elementIndex) {
+		return this.elements[elementIndex];
+	}
+
+	int paramCount() {
+		return this.paramCount;
+	}
+
+	int paramElement(int paramIndex) {
+		return this.paramElements[paramIndex];
+	}
+
+	String paramName(int paramIndex) {
+		return this.paramNames[paramIndex];
+	}
+
+	byte[] paramNameBytes(int paramIndex) {
+		return this.paramNameBytes[paramIndex];
+	}
+
+	String paramValue(int paramIndex) {
+		return this.paramValues[paramIndex];
+	}
+
+	private void add(int elementIndex, String name, byte[] nameBytes, String value) {
+		if (this.paramCount == this.paramNames.length) {
+			int capacity = this.paramCount * 2;
+
+			this.paramElements = Arrays.copyOf(this.paramElements, capacity);
+			this.paramNames = Arrays.copyOf(this.paramNames, capacity);
+			this.paramNameBytes = Arrays.copyOf(this.paramNameBytes, capacity);
+			this.paramValues = Arrays.copyOf(this.paramValues, capacity);
+		}
+		this.paramElements[this.paramCount] = elementIndex;
+		this.paramNames[this.paramCount] = name;
+		this.paramNameBytes[this.paramCount] = nameBytes;
+		this.paramValues[this.paramCount] = value;
+		this.paramCount++;
+	}
+
+	private int elementIndex(SyslogSdId sdId) {
+		int elementIndex = findElement(sdId.id());
+
+		if (elementIndex < 0) {
+			if (this.elementCount == this.elements.length) {
+				this.elements = Arrays.copyOf(this.elements, this.elementCount * 2);
+			}
+			elementIndex = this.elementCount;
+			this.elements[elementIndex] = sdId;
+			this.elementCount++;
+		}
+		return elementIndex;
+	}
+
+	private int findElement(String id) {
+		int elementIndex = -1;
+
+		for (int index = 0; index < this.elementCount; index++) {
+			if (this.elements[index].id().equals(id)) {
+				elementIndex = index;
+				break;
+			}
+		}
+		return elementIndex;
+	}
+
+	private void removeElement(int elementIndex) {
+		System.arraycopy(this.elements, elementIndex + 1, this.elements, elementIndex,
+				this.elementCount - elementIndex - 1);
+		this.elementCount--;
+		for (int paramIndex = 0; paramIndex < this.paramCount; paramIndex++) {
+			if (this.paramElements[paramIndex] > elementIndex) {
+				this.paramElements[paramIndex]--;
+			}
+		}
+	}
+
+	private int paramIndex(int elementIndex) {
+		int paramIndex = -1;
+
+		for (int index = 0; index < this.paramCount; index++) {
+			if (this.paramElements[index] == elementIndex) {
+				paramIndex = index;
+				break;
+			}
+		}
+		return paramIndex;
+	}
+
+	private int paramIndex(int elementIndex, String name) {
+		int paramIndex = -1;
+
+		for (int index = 0; index < this.paramCount; index++) {
+			if (this.paramElements[index] == elementIndex && this.paramNames[index].equals(name)) {
+				paramIndex = index;
+				break;
+			}
+		}
+		return paramIndex;
+	}
+
+	@Override
+	public String toString() {
+		StringBuilder buffer = new StringBuilder();
+
+		for (int elementIndex = 0; elementIndex < this.elementCount; elementIndex++) {
+			buffer.append('[').append(this.elements[elementIndex]);
+			for (int paramIndex = 0; paramIndex < this.paramCount; paramIndex++) {
+				if (this.paramElements[paramIndex] == elementIndex) {
+					buffer.append(' ').append(this.paramNames[paramIndex]).append("=\"")
+							.append(this.paramValues[paramIndex]).append('"');
+				}
+			}
+			buffer.append(']');
+		}
+		return buffer.toString();
+	}
+
+}
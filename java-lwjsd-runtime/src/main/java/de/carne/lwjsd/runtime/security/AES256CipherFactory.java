@@ -16,15 +16,22 @@
  */
 package de.carne.lwjsd.runtime.security;
 
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
 import java.security.GeneralSecurityException;
 import java.security.spec.KeySpec;
 
+import javax.crypto.AEADBadTagException;
+import javax.crypto.Mac;
 import javax.crypto.SecretKey;
 import javax.crypto.SecretKeyFactory;
+import javax.crypto.ShortBufferException;
 import javax.crypto.spec.GCMParameterSpec;
 import javax.crypto.spec.PBEKeySpec;
 import javax.crypto.spec.SecretKeySpec;
 
+import org.eclipse.jdt.annotation.Nullable;
+
 /**
  * {@linkplain CipherFactory} implementation providing AES256 cipher.
  */
@@ -36,6 +43,16 @@ public class AES256CipherFactory extends CipherFactory {
 	private static final int SALT_LENGTH = 8;
 	private static final int IV_LENGTH = 12;
 	private static final int GCM_TLEN = 128;
+	private static final int TAG_LENGTH = GCM_TLEN / 8;
+	private static final String SEGMENT_KEY_ALG = "HmacSHA256";
+	private static final byte[] SEGMENT_KEY_INFO = "lwjsd-segment-key".getBytes(StandardCharsets.US_ASCII);
+
+	// Cipher instances are re-initialized for every operation, hence they can be shared per thread. After each
+	// operation they are re-initialized with a dummy key, so no cached instance keeps a key beyond its use (and
+	// especially not beyond the owning cipher's close).
+	private static final ThreadLocal<javax.crypto.@Nullable Cipher> CIPHER = new ThreadLocal<>();
+	private static final ThreadLocal<byte[]> IV = ThreadLocal.withInitial(() -> new byte[IV_LENGTH]);
+	private static final SecretKeySpec CLEAR_KEY_SPEC = new SecretKeySpec(new byte[32], KEY_ALG);
 
 	/**
 	 * Cipher name.
@@ -92,36 +109,116 @@ public class AES256CipherFactory extends CipherFactory {
 		return ByteSecret.wrap(encoded);
 	}
 
-	byte[] cipherEncrypt0(SecretKeySpec secretKeySpec, byte[] decrypted) throws GeneralSecurityException {
-		byte[] iv = new byte[IV_LENGTH];
+	int cipherEncryptedLength0(int dataLength) {
+		return IV_LENGTH + dataLength + TAG_LENGTH;
+	}
 
-		getRandom().nextBytes(iv);
+	int cipherDecryptedLength0(int encryptedLength) {
+		return encryptedLength - IV_LENGTH - TAG_LENGTH;
+	}
 
-		GCMParameterSpec gcmParameterSpec = new GCMParameterSpec(GCM_TLEN, iv);
-		javax.crypto.Cipher cipher = javax.crypto.Cipher.getInstance(CIPHER_ALG);
+	void cipherEncrypt0(SecretKeySpec secretKeySpec, ByteBuffer data, ByteBuffer encrypted)
+			throws GeneralSecurityException {
+		int encryptedLength = cipherEncryptedLength0(data.remaining());
 
-		cipher.init(javax.crypto.Cipher.ENCRYPT_MODE, secretKeySpec, gcmParameterSpec);
+		if (encrypted.remaining() < encryptedLength) {
+			throw new ShortBufferException("Insufficient output buffer space (required: " + encryptedLength + ")");
+		}
+		// The IV is written ahead of the encrypted data; hence an overlapping output would overwrite pending input
+		checkDisjoint(data, encrypted, encryptedLength);
 
-		byte[] encryptedData = cipher.doFinal(decrypted);
-		byte[] encrypted = new byte[iv.length + encryptedData.length];
+		byte[] iv = IV.get();
 
-		System.arraycopy(iv, 0, encrypted, 0, iv.length);
-		System.arraycopy(encryptedData, 0, encrypted, iv.length, encryptedData.length);
-		return encrypted;
+		nextNonce(iv);
+
+		javax.crypto.Cipher cipher = getCipher();
+
+		try {
+			cipher.init(javax.crypto.Cipher.ENCRYPT_MODE, secretKeySpec, new GCMParameterSpec(GCM_TLEN, iv));
+			encrypted.put(iv);
+			cipher.doFinal(data, encrypted);
+		} finally {
+			clearCipher(cipher);
+		}
 	}
 
-	byte[] cipherDecrypt0(SecretKeySpec secretKeySpec, byte[] data) throws GeneralSecurityException {
-		GCMParameterSpec gcmParameterSpec = new GCMParameterSpec(GCM_TLEN, data, 0, IV_LENGTH);
-		javax.crypto.Cipher cipher = javax.crypto.Cipher.getInstance(CIPHER_ALG);
+	void cipherDecrypt0(SecretKeySpec secretKeySpec, ByteBuffer encrypted, ByteBuffer data)
+			throws GeneralSecurityException {
+		int dataLength = cipherDecryptedLength0(encrypted.remaining());
 
-		cipher.init(javax.crypto.Cipher.DECRYPT_MODE, secretKeySpec, gcmParameterSpec);
-		return cipher.doFinal(data, IV_LENGTH, data.length - IV_LENGTH);
+		if (dataLength < 0) {
+			throw new AEADBadTagException("Invalid encrypted data length: " + encrypted.remaining());
+		}
+		if (data.remaining() < dataLength) {
+			throw new ShortBufferException("Insufficient output buffer space (required: " + dataLength + ")");
+		}
+		checkDisjoint(encrypted, data, dataLength);
+
+		byte[] iv = IV.get();
+
+		encrypted.get(iv);
+
+		javax.crypto.Cipher cipher = getCipher();
+
+		try {
+			cipher.init(javax.crypto.Cipher.DECRYPT_MODE, secretKeySpec, new GCMParameterSpec(GCM_TLEN, iv));
+			cipher.doFinal(encrypted, data);
+		} finally {
+			clearCipher(cipher);
+		}
+	}
+
+	Cipher.SegmentCipher cipherSegmentCipher0(SecretKeySpec secretKeySpec, byte[] salt)
+			throws GeneralSecurityException {
+		Mac mac = Mac.getInstance(SEGMENT_KEY_ALG);
+
+		mac.init(secretKeySpec);
+		mac.update(SEGMENT_KEY_INFO);
+
+		SecretKeySpec segmentKeySpec;
+
+		try (ByteSecret segmentKey = ByteSecret.wrap(mac.doFinal(salt))) {
+			segmentKeySpec = new SecretKeySpec(segmentKey.get(), KEY_ALG);
+		}
+		return new AES256SegmentCipher(segmentKeySpec);
 	}
 
 	void cipherClose0(SecretKeySpec secretKeySpec) {
 		safeDestroy(secretKeySpec);
 	}
 
+	private static javax.crypto.Cipher getCipher() throws GeneralSecurityException {
+		javax.crypto.Cipher cipher = CIPHER.get();
+
+		if (cipher == null) {
+			cipher = javax.crypto.Cipher.getInstance(CIPHER_ALG);
+			CIPHER.set(cipher);
+		}
+		return cipher;
+	}
+
+	private static void clearCipher(javax.crypto.Cipher cipher) throws GeneralSecurityException {
+		byte[] iv = IV.get();
+
+		// Encrypt mode also replaces the key remembered for the GCM IV reuse check
+		nextNonce(iv);
+		cipher.init(javax.crypto.Cipher.ENCRYPT_MODE, CLEAR_KEY_SPEC, new GCMParameterSpec(GCM_TLEN, iv));
+	}
+
+	private static void checkDisjoint(ByteBuffer input, ByteBuffer output, int outputLength) {
+		// Only heap buffers can be checked; for direct buffers the restriction is documented in Cipher
+		if (input.hasArray() && output.hasArray() && input.array() == output.array()) {
+			int inputStart = input.arrayOffset() + input.position();
+			int inputEnd = inputStart + input.remaining();
+			int outputStart = output.arrayOffset() + output.position();
+			int outputEnd = outputStart + outputLength;
+
+			if (inputStart < outputEnd && outputStart < inputEnd) {
+				throw new IllegalArgumentException("In-place encryption/decryption is not supported");
+			}
+		}
+	}
+
 	private class AES256Cipher extends Cipher {
 
 		private final byte[] salt;
@@ -142,14 +239,45 @@ public class AES256CipherFactory extends CipherFactory {
 			return cipherGetEncoded0(this.salt, this.secretKeySpec);
 		}
 
+		@Override
+		public int encryptedLength(int dataLength) {
+			return cipherEncryptedLength0(dataLength);
+		}
+
+		@Override
+		public int decryptedLength(int encryptedLength) {
+			return cipherDecryptedLength0(encryptedLength);
+		}
+
+		@Override
+		public void encrypt(ByteBuffer data, ByteBuffer encrypted) throws GeneralSecurityException {
+			cipherEncrypt0(this.secretKeySpec, data, encrypted);
+		}
+
 		@Override
 		public byte[] encrypt(byte[] data) throws GeneralSecurityException {
-			return cipherEncrypt0(this.secretKeySpec, data);
+			byte[] encrypted = new byte[cipherEncryptedLength0(data.length)];
+
+			cipherEncrypt0(this.secretKeySpec, ByteBuffer.wrap(data), ByteBuffer.wrap(encrypted));
+			return encrypted;
+		}
+
+		@Override
+		public void decrypt(ByteBuffer encrypted, ByteBuffer data) throws GeneralSecurityException {
+			cipherDecrypt0(this.secretKeySpec, encrypted, data);
 		}
 
 		@Override
 		public byte[] decrypt(byte[] encrypted) throws GeneralSecurityException {
-			return cipherDecrypt0(this.secretKeySpec, encrypted);
+			byte[] data = new byte[Math.max(cipherDecryptedLength0(encrypted.length), 0)];
+
+			cipherDecrypt0(this.secretKeySpec, ByteBuffer.wrap(encrypted), ByteBuffer.wrap(data));
+			return data;
+		}
+
+		@Override
+		protected SegmentCipher segmentCipher(byte[] salt) throws GeneralSecurityException {
+			return cipherSegmentCipher0(this.secretKeySpec, salt);
 		}
 
 		@Override
@@ -159,4 +287,54 @@ public class AES256CipherFactory extends CipherFactory {
 
 	}
 
+	private class AES256SegmentCipher implements Cipher.SegmentCipher {
+
+		private final SecretKeySpec segmentKeySpec;
+
+		AES256SegmentCipher(SecretKeySpec segmentKeySpec) {
+			this.segmentKeySpec = segmentKeySpec;
+		}
+
+		@Override
+		public int overhead() {
+			return TAG_LENGTH;
+		}
+
+		@Override
+		public void encrypt(byte[] nonce, byte[] aad, ByteBuffer data, ByteBuffer encrypted)
+				throws GeneralSecurityException {
+			javax.crypto.Cipher cipher = getCipher();
+
+			try {
+				cipher.init(javax.crypto.Cipher.ENCRYPT_MODE, this.segmentKeySpec,
+						new GCMParameterSpec(GCM_TLEN, nonce));
+				cipher.updateAAD(aad);
+				cipher.doFinal(data, encrypted);
+			} finally {
+				clearCipher(cipher);
+			}
+		}
+
+		@Override
+		public void decrypt(byte[] nonce, byte[] aad, ByteBuffer encrypted, ByteBuffer data)
+				throws GeneralSecurityException {
+			javax.crypto.Cipher cipher = getCipher();
+
+			try {
+				cipher.init(javax.crypto.Cipher.DECRYPT_MODE, this.segmentKeySpec,
+						new GCMParameterSpec(GCM_TLEN, nonce));
+				cipher.updateAAD(aad);
+				cipher.doFinal(encrypted, data);
+			} finally {
+				clearCipher(cipher);
+			}
+		}
+
+		@Override
+		public void close() {
+			cipherClose0(this.segmentKeySpec);
+		}
+
+	}
+
 }
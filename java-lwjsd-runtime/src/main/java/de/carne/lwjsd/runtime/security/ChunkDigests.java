@@ -0,0 +1,300 @@
+/*
+ * Copyright (c) 2018-2021 Holger de Carne and contributors, All Rights Reserved.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.carne.lwjsd.runtime.security;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.IntStream;
+
+import de.carne.boot.Exceptions;
+
+/**
+ * The SHA-256 digests of the fixed size chunks of some data as well as the Merkle tree root derived from them.
+ * <p>
+ * Leaf and node digests are domain separated (prefix {@code 0x00} resp. {@code 0x01}). Empty data is treated as a
+ * single empty chunk.
+ */
+final class ChunkDigests {
+
+	static final int DIGEST_LENGTH = 32;
+
+	private static final String DIGEST_ALG = "SHA-256";
+	private static final byte LEAF_PREFIX = 0x00;
+	private static final byte NODE_PREFIX = 0x01;
+
+	// Shared per thread digest
+	private static final ThreadLocal<MessageDigest> DIGEST = ThreadLocal.withInitial(() -> {
+		MessageDigest digest;
+
+		try {
+			digest = MessageDigest.getInstance(DIGEST_ALG);
+		} catch (NoSuchAlgorithmException e) {
+			throw Exceptions.toRuntime(e);
+		}
+		return digest;
+	});
+
+	private final int chunkSize;
+	private final long dataLength;
+	private final byte[] digests;
+
+	ChunkDigests(int chunkSize, long dataLength, byte[] digests) {
+		this.chunkSize = chunkSize;
+		this.dataLength = dataLength;
+		this.digests = digests;
+	}
+
+	/**
+	 * Computes the chunk digests of a data stream.
+	 *
+	 * @param data the data stream to digest.
+	 * @param chunkSize the chunk size to use.
+	 * @return the computed chunk digests.
+	 * @throws IOException if an I/O error occurs.
+	 */
+	public static ChunkDigests compute(InputStream data, int chunkSize) throws IOException {
+		byte[] chunk = new byte[chunkSize];
+		ByteBuffer digests = ByteBuffer.allocate(DIGEST_LENGTH * 16);
+		long dataLength = 0;
+		int chunkLength;
+
+		do {
+			chunkLength = data.readNBytes(chunk, 0, chunkSize);
+			if (chunkLength > 0 || dataLength == 0) {
+				if (!digests.hasRemaining()) {
+					digests = ByteBuffer.allocate(digests.capacity() * 2).put(digests.flip());
+				}
+				digests.put(leafDigest(ByteBuffer.wrap(chunk, 0, chunkLength)));
+				dataLength += chunkLength;
+			}
+		} while (chunkLength == chunkSize);
+		return new ChunkDigests(chunkSize, dataLength, Arrays.copyOf(digests.array(), digests.position()));
+	}
+
+	/**
+	 * Computes the chunk digests of a file.
+	 * <p>
+	 * The file is memory mapped and the chunks are digested in parallel using a dedicated set of worker threads (the
+	 * mapped I/O may block and must therefore not run on the common pool).
+	 *
+	 * @param file the file to digest.
+	 * @param chunkSize the chunk size to use.
+	 * @return the computed chunk digests.
+	 * @throws IOException if an I/O error occurs.
+	 */
+	public static ChunkDigests compute(Path file, int chunkSize) throws IOException {
+		ChunkDigests chunkDigests;
+
+		try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+			long dataLength = channel.size();
+			int chunkCount = chunkCount(dataLength, chunkSize);
+			byte[] digests = new byte[chunkCount * DIGEST_LENGTH];
+			int taskCount = Math.min(chunkCount, Workers.THREAD_COUNT);
+
+			if (taskCount <= 1) {
+				digestChunks(channel, dataLength, chunkSize, 0, chunkCount, digests);
+			} else {
+				List<Future<?>> tasks = new ArrayList<>(taskCount);
+
+				try {
+					for (int taskIndex = 0; taskIndex < taskCount; taskIndex++) {
+						int firstChunk = (int) ((long) chunkCount * taskIndex / taskCount);
+						int lastChunk = (int) ((long) chunkCount * (taskIndex + 1) / taskCount);
+
+						tasks.add(Workers.EXECUTOR.submit(() -> {
+							digestChunks(channel, dataLength, chunkSize, firstChunk, lastChunk, digests);
+							return null;
+						}));
+					}
+					for (Future<?> task : tasks) {
+						task.get();
+					}
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					throw new InterruptedIOException("Interrupted while digesting file: " + file);
+				} catch (ExecutionException e) {
+					Throwable cause = e.getCause();
+
+					if (cause instanceof IOException) {
+						throw (IOException) cause;
+					}
+					throw Exceptions.toRuntime(e);
+				} finally {
+					for (Future<?> task : tasks) {
+						task.cancel(false);
+					}
+				}
+			}
+			chunkDigests = new ChunkDigests(chunkSize, dataLength, digests);
+		}
+		return chunkDigests;
+	}
+
+	private static void digestChunks(FileChannel channel, long dataLength, int chunkSize, int firstChunk, int lastChunk,
+			byte[] digests) throws IOException {
+		for (int chunkIndex = firstChunk; chunkIndex < lastChunk; chunkIndex++) {
+			long chunkPosition = (long) chunkIndex * chunkSize;
+			long chunkLength = Math.min(chunkSize, dataLength - chunkPosition);
+			MappedByteBuffer chunk = channel.map(FileChannel.MapMode.READ_ONLY, chunkPosition, chunkLength);
+
+			System.arraycopy(leafDigest(chunk), 0, digests, chunkIndex * DIGEST_LENGTH, DIGEST_LENGTH);
+		}
+	}
+
+	/**
+	 * Gets the number of chunks required for a specific data length.
+	 *
+	 * @param dataLength the data length.
+	 * @param chunkSize the chunk size.
+	 * @return the number of chunks.
+	 * @throws IOException if the data length exceeds the supported number of chunks.
+	 */
+	public static int chunkCount(long dataLength, int chunkSize) throws IOException {
+		long chunkCount = Math.max((dataLength + chunkSize - 1) / chunkSize, 1);
+
+		if (chunkCount > Integer.MAX_VALUE / DIGEST_LENGTH) {
+			throw new IOException("Data length exceeds maximum chunk count: " + dataLength);
+		}
+		return (int) chunkCount;
+	}
+
+	/**
+	 * Gets the chunk size.
+	 *
+	 * @return the chunk size.
+	 */
+	public int chunkSize() {
+		return this.chunkSize;
+	}
+
+	/**
+	 * Gets the total data length.
+	 *
+	 * @return the total data length.
+	 */
+	public long dataLength() {
+		return this.dataLength;
+	}
+
+	/**
+	 * Gets the number of chunks.
+	 *
+	 * @return the number of chunks.
+	 */
+	public int chunkCount() {
+		return this.digests.length / DIGEST_LENGTH;
+	}
+
+	/**
+	 * Gets the concatenated chunk digests.
+	 *
+	 * @return the concatenated chunk digests.
+	 */
+	public byte[] digests() {
+		return this.digests;
+	}
+
+	/**
+	 * Computes the Merkle tree root of the chunk digests.
+	 *
+	 * @return the Merkle tree root.
+	 */
+	public byte[] root() {
+		MessageDigest digest = DIGEST.get();
+		byte[] level = this.digests;
+		int levelCount = chunkCount();
+
+		while (levelCount > 1) {
+			int nextLevelCount = (levelCount + 1) / 2;
+			byte[] nextLevel = new byte[nextLevelCount * DIGEST_LENGTH];
+
+			for (int nodeIndex = 0; nodeIndex < nextLevelCount; nodeIndex++) {
+				int leftOffset = nodeIndex * 2 * DIGEST_LENGTH;
+
+				if (nodeIndex * 2 + 1 < levelCount) {
+					digest.update(NODE_PREFIX);
+					digest.update(level, leftOffset, 2 * DIGEST_LENGTH);
+					System.arraycopy(digest.digest(), 0, nextLevel, nodeIndex * DIGEST_LENGTH, DIGEST_LENGTH);
+				} else {
+					// Odd node is promoted as is
+					System.arraycopy(level, leftOffset, nextLevel, nodeIndex * DIGEST_LENGTH, DIGEST_LENGTH);
+				}
+			}
+			level = nextLevel;
+			levelCount = nextLevelCount;
+		}
+		return Arrays.copyOf(level, DIGEST_LENGTH);
+	}
+
+	/**
+	 * Determines the chunks whose digests differ from the ones of another instance.
+	 *
+	 * @param other the instance to compare with.
+	 * @return the indices of the differing chunks (including chunks only present in one of the instances).
+	 */
+	public int[] mismatches(ChunkDigests other) {
+		int maxChunkCount = Math.max(chunkCount(), other.chunkCount());
+
+		return IntStream.range(0, maxChunkCount).filter(chunkIndex -> !chunkEquals(other, chunkIndex)).toArray();
+	}
+
+	private boolean chunkEquals(ChunkDigests other, int chunkIndex) {
+		int offset = chunkIndex * DIGEST_LENGTH;
+
+		return offset < this.digests.length && offset < other.digests.length
+				&& Arrays.equals(this.digests, offset, offset + DIGEST_LENGTH, other.digests, offset,
+						offset + DIGEST_LENGTH);
+	}
+
+	private static byte[] leafDigest(ByteBuffer chunk) {
+		MessageDigest digest = DIGEST.get();
+
+		digest.update(LEAF_PREFIX);
+		digest.update(chunk);
+		return digest.digest();
+	}
+
+	// Shared worker threads for file digesting
+	private static final class Workers {
+
+		static final int THREAD_COUNT = Runtime.getRuntime().availableProcessors();
+
+		static final ExecutorService EXECUTOR = Executors.newFixedThreadPool(THREAD_COUNT, runnable -> {
+			Thread thread = new Thread(runnable, ChunkDigests.class.getSimpleName() + " worker");
+
+			thread.setDaemon(true);
+			return thread;
+		});
+
+	}
+
+}
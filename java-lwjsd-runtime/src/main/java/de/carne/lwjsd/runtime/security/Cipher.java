@@ -16,13 +16,89 @@
  */
 package de.carne.lwjsd.runtime.security;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.SeekableByteChannel;
+import java.nio.channels.WritableByteChannel;
 import java.security.GeneralSecurityException;
+import java.security.NoSuchAlgorithmException;
+import java.util.concurrent.ExecutorService;
+
+import javax.crypto.ShortBufferException;
 
 /**
  * Base class for all kind of ciphers.
+ * <p>
+ * Besides the one-shot encryption of in-memory data, ciphers support streaming encryption of arbitrary large data.
+ * Streamed data is split into fixed size segments, each of them authenticated on its own. Hence streams are
+ * processed with constant memory, encrypted streams can be decrypted at random positions (see
+ * {@linkplain #decryptingChannel(SeekableByteChannel)}) and segments can be processed in parallel (see
+ * {@linkplain #encrypt(ReadableByteChannel, WritableByteChannel, ExecutorService)}).
+ * <p>
+ * Sub-classes only have to implement the {@code byte[]} based {@linkplain #encrypt(byte[])} and
+ * {@linkplain #decrypt(byte[])} functions. The {@linkplain ByteBuffer} based functions fall back to these by default
+ * and should be overridden to avoid the intermediate copies. Streaming encryption requires an implementation of
+ * {@linkplain #segmentCipher(byte[])}.
  */
 public abstract class Cipher extends Secret {
 
+	/**
+	 * The default segment size used for streaming encryption.
+	 */
+	public static final int DEFAULT_SEGMENT_SIZE = CipherChannels.DEFAULT_SEGMENT_SIZE;
+
+	/**
+	 * The maximum segment size supported for streaming encryption.
+	 */
+	public static final int MAX_SEGMENT_SIZE = CipherChannels.MAX_SEGMENT_SIZE;
+
+	/**
+	 * Authenticated encryption primitive used for streaming encryption.
+	 * <p>
+	 * A segment cipher is derived per encrypted stream and is invoked with a unique nonce per segment. Instances must
+	 * be thread-safe as segments may be processed in parallel.
+	 */
+	protected interface SegmentCipher {
+
+		/**
+		 * Gets the number of bytes added to each encrypted segment (e.g. the authentication tag).
+		 *
+		 * @return the number of bytes added to each encrypted segment.
+		 */
+		int overhead();
+
+		/**
+		 * Encrypts a single segment.
+		 *
+		 * @param nonce the segment nonce.
+		 * @param aad the additional data to authenticate.
+		 * @param data the buffer containing the segment data to encrypt.
+		 * @param encrypted the buffer to write the encrypted segment to.
+		 * @throws GeneralSecurityException if an security error occurs.
+		 */
+		void encrypt(byte[] nonce, byte[] aad, ByteBuffer data, ByteBuffer encrypted) throws GeneralSecurityException;
+
+		/**
+		 * Decrypts a single segment.
+		 *
+		 * @param nonce the segment nonce.
+		 * @param aad the additional data to authenticate.
+		 * @param encrypted the buffer containing the encrypted segment to decrypt.
+		 * @param data the buffer to write the decrypted segment data to.
+		 * @throws GeneralSecurityException if an security error occurs (e.g. authentication failed).
+		 */
+		void decrypt(byte[] nonce, byte[] aad, ByteBuffer encrypted, ByteBuffer data) throws GeneralSecurityException;
+
+		/**
+		 * Discards any key material held by this instance.
+		 */
+		void close();
+
+	}
+
 	@Override
 	public final SecretsProvider provider() {
 		return factory();
@@ -35,12 +111,71 @@ public abstract class Cipher extends Secret {
 	 */
 	public abstract CipherFactory factory();
 
+	/**
+	 * Gets the number of bytes required to store the encrypted representation of a specific number of data bytes.
+	 * <p>
+	 * The default implementation determines the length by encrypting the corresponding number of zero bytes.
+	 *
+	 * @param dataLength the number of data bytes to encrypt.
+	 * @return the number of bytes required to store the encrypted data.
+	 */
+	public int encryptedLength(int dataLength) {
+		try {
+			return encrypt(new byte[dataLength]).length;
+		} catch (GeneralSecurityException e) {
+			throw new IllegalStateException("Failed to determine encrypted length", e);
+		}
+	}
+
+	/**
+	 * Gets the number of bytes resulting from the decryption of a specific number of encrypted bytes.
+	 * <p>
+	 * The default implementation assumes a constant encryption overhead (see {@linkplain #encryptedLength(int)}).
+	 *
+	 * @param encryptedLength the number of encrypted bytes to decrypt.
+	 * @return the number of resulting data bytes (may be negative if the submitted number of bytes is too small to be a
+	 * valid encryption result).
+	 */
+	public int decryptedLength(int encryptedLength) {
+		return encryptedLength - encryptedLength(0);
+	}
+
+	/**
+	 * Encrypts the remaining bytes of a data buffer.
+	 * <p>
+	 * The encrypted data is written to the target buffer starting at its current position. The buffer must provide at
+	 * least {@linkplain #encryptedLength(int)} remaining bytes and must not share its content with the data buffer
+	 * (i.e. in-place encryption is not supported). On return the positions of both buffers have been advanced by the
+	 * number of consumed resp. written bytes.
+	 * <p>
+	 * The default implementation copies the data and invokes {@linkplain #encrypt(byte[])}.
+	 *
+	 * @param data the buffer containing the data bytes to encrypt.
+	 * @param encrypted the buffer to write the encrypted data to.
+	 * @throws GeneralSecurityException if an security error occurs.
+	 */
+	public void encrypt(ByteBuffer data, ByteBuffer encrypted) throws GeneralSecurityException {
+		byte[] encryptedBytes;
+
+		try (ByteSecret dataBytes = ByteSecret.wrap(new byte[data.remaining()])) {
+			data.duplicate().get(dataBytes.get());
+			encryptedBytes = encrypt(dataBytes.get());
+		}
+		if (encrypted.remaining() < encryptedBytes.length) {
+			throw new ShortBufferException(
+					"Insufficient output buffer space (required: " + encryptedBytes.length + ")");
+		}
+		data.position(data.limit());
+		encrypted.put(encryptedBytes);
+	}
+
 	/**
 	 * Encrypts data bytes.
 	 *
 	 * @param data the data bytes to encrypt.
 	 * @return the encrypted data.
 	 * @throws GeneralSecurityException if an security error occurs.
+	 * @see #encrypt(ByteBuffer, ByteBuffer)
 	 */
 	public abstract byte[] encrypt(byte[] data) throws GeneralSecurityException;
 
@@ -69,15 +204,166 @@ public abstract class Cipher extends Secret {
 		return encrypted;
 	}
 
+	/**
+	 * Creates a {@linkplain ReadableByteChannel} providing the encrypted stream of a data channel.
+	 * <p>
+	 * The data channel is expected to be blocking. Closing the returned channel also closes the data channel.
+	 *
+	 * @param data the channel providing the data to encrypt.
+	 * @return the channel providing the encrypted data.
+	 * @see #decryptingChannel(ReadableByteChannel)
+	 */
+	public ReadableByteChannel encryptingChannel(ReadableByteChannel data) {
+		return encryptingChannel(data, DEFAULT_SEGMENT_SIZE);
+	}
+
+	/**
+	 * Creates a {@linkplain ReadableByteChannel} providing the encrypted stream of a data channel.
+	 * <p>
+	 * The data channel is expected to be blocking. Closing the returned channel also closes the data channel.
+	 *
+	 * @param data the channel providing the data to encrypt.
+	 * @param segmentSize the segment size to use.
+	 * @return the channel providing the encrypted data.
+	 * @see #decryptingChannel(ReadableByteChannel)
+	 */
+	public ReadableByteChannel encryptingChannel(ReadableByteChannel data, int segmentSize) {
+		return CipherChannels.encryptingChannel(this, data, segmentSize);
+	}
+
+	/**
+	 * Creates an {@linkplain InputStream} providing the encrypted stream of a data stream.
+	 * <p>
+	 * Closing the returned stream also closes the data stream.
+	 *
+	 * @param data the stream providing the data to encrypt.
+	 * @return the stream providing the encrypted data.
+	 * @see #decryptingStream(InputStream)
+	 */
+	public InputStream encryptingStream(InputStream data) {
+		return Channels.newInputStream(encryptingChannel(Channels.newChannel(data)));
+	}
+
+	/**
+	 * Encrypts a data channel by processing multiple segments in parallel.
+	 *
+	 * @param data the channel providing the data to encrypt.
+	 * @param encrypted the channel to write the encrypted stream to.
+	 * @param executor the {@linkplain ExecutorService} to use for segment processing.
+	 * @throws IOException if an I/O or security error occurs.
+	 */
+	public void encrypt(ReadableByteChannel data, WritableByteChannel encrypted, ExecutorService executor)
+			throws IOException {
+		CipherChannels.encrypt(this, data, encrypted, DEFAULT_SEGMENT_SIZE, executor);
+	}
+
+	/**
+	 * Decrypts the remaining bytes of an encrypted data buffer.
+	 * <p>
+	 * The decrypted data is written to the target buffer starting at its current position. The buffer must provide at
+	 * least {@linkplain #decryptedLength(int)} remaining bytes and must not share its content with the encrypted data
+	 * buffer (i.e. in-place decryption is not supported). On return the positions of both buffers have been advanced by
+	 * the number of consumed resp. written bytes.
+	 * <p>
+	 * The default implementation copies the encrypted data and invokes {@linkplain #decrypt(byte[])}.
+	 *
+	 * @param encrypted the buffer containing the encrypted data bytes to decrypt.
+	 * @param data the buffer to write the decrypted data to.
+	 * @throws GeneralSecurityException if an security error occurs.
+	 */
+	public void decrypt(ByteBuffer encrypted, ByteBuffer data) throws GeneralSecurityException {
+		byte[] encryptedBytes = new byte[encrypted.remaining()];
+
+		encrypted.duplicate().get(encryptedBytes);
+		try (ByteSecret dataBytes = ByteSecret.wrap(decrypt(encryptedBytes))) {
+			if (data.remaining() < dataBytes.length()) {
+				throw new ShortBufferException(
+						"Insufficient output buffer space (required: " + dataBytes.length() + ")");
+			}
+			encrypted.position(encrypted.limit());
+			data.put(dataBytes.get());
+		}
+	}
+
 	/**
 	 * Decrypts encrypted data bytes.
 	 *
 	 * @param encrypted the encrypted data bytes to decrypt.
 	 * @return the decrypted data.
 	 * @throws GeneralSecurityException if an security error occurs.
+	 * @see #decrypt(ByteBuffer, ByteBuffer)
 	 */
 	public abstract byte[] decrypt(byte[] encrypted) throws GeneralSecurityException;
 
+	/**
+	 * Creates a {@linkplain ReadableByteChannel} providing the decrypted data of an encrypted stream.
+	 * <p>
+	 * The encrypted channel is expected to be blocking. Closing the returned channel also closes the encrypted
+	 * channel. Any authentication failure is reported as an {@linkplain IOException}.
+	 *
+	 * @param encrypted the channel providing the encrypted stream to decrypt.
+	 * @return the channel providing the decrypted data.
+	 * @see #encryptingChannel(ReadableByteChannel)
+	 */
+	public ReadableByteChannel decryptingChannel(ReadableByteChannel encrypted) {
+		return CipherChannels.decryptingChannel(this, encrypted);
+	}
+
+	/**
+	 * Creates a read-only {@linkplain SeekableByteChannel} providing random access to the decrypted data of an
+	 * encrypted stream.
+	 * <p>
+	 * The encrypted stream is expected to start at position {@code 0}. Only the segments actually accessed are read and
+	 * decrypted. Closing the returned channel also closes the encrypted channel. Any authentication failure is reported
+	 * as an {@linkplain IOException}.
+	 *
+	 * @param encrypted the channel providing the encrypted stream to decrypt.
+	 * @return the channel providing the decrypted data.
+	 * @see #encryptingChannel(ReadableByteChannel)
+	 */
+	public SeekableByteChannel decryptingChannel(SeekableByteChannel encrypted) {
+		return CipherChannels.decryptingChannel(this, encrypted);
+	}
+
+	/**
+	 * Creates an {@linkplain InputStream} providing the decrypted data of an encrypted stream.
+	 * <p>
+	 * Closing the returned stream also closes the encrypted stream.
+	 *
+	 * @param encrypted the stream providing the encrypted stream to decrypt.
+	 * @return the stream providing the decrypted data.
+	 * @see #encryptingStream(InputStream)
+	 */
+	public InputStream decryptingStream(InputStream encrypted) {
+		return Channels.newInputStream(decryptingChannel(Channels.newChannel(encrypted)));
+	}
+
+	/**
+	 * Decrypts an encrypted stream by processing multiple segments in parallel.
+	 *
+	 * @param encrypted the channel providing the encrypted stream to decrypt.
+	 * @param data the channel to write the decrypted data to.
+	 * @param executor the {@linkplain ExecutorService} to use for segment processing.
+	 * @throws IOException if an I/O or security error occurs.
+	 */
+	public void decrypt(ReadableByteChannel encrypted, WritableByteChannel data, ExecutorService executor)
+			throws IOException {
+		CipherChannels.decrypt(this, encrypted, data, executor);
+	}
+
+	/**
+	 * Derives the {@linkplain SegmentCipher} for a single encrypted stream.
+	 * <p>
+	 * The default implementation does not support streaming encryption and always fails.
+	 *
+	 * @param salt the random salt of the stream to derive the segment cipher for.
+	 * @return the derived {@linkplain SegmentCipher}.
+	 * @throws GeneralSecurityException if an security error occurs or streaming encryption is not supported.
+	 */
+	protected SegmentCipher segmentCipher(byte[] salt) throws GeneralSecurityException {
+		throw new NoSuchAlgorithmException("Streaming encryption not supported by cipher: " + factory().name());
+	}
+
 	/**
 	 * Decrypts encrypted character data.
 	 *
@@ -0,0 +1,569 @@
+/*
+ * Copyright (c) 2018-2021 Holger de Carne and contributors, All Rights Reserved.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.carne.lwjsd.runtime.security;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.NonWritableChannelException;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.SeekableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.security.GeneralSecurityException;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Objects;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+import org.eclipse.jdt.annotation.Nullable;
+
+/**
+ * Segmented streaming encryption on top of a {@linkplain Cipher.SegmentCipher}.
+ * <p>
+ * An encrypted stream consists of a header followed by one or more encrypted segments:
+ *
+ * <pre>
+ * header:  version (1) | segment size (4) | salt (16) | nonce prefix (7)
+ * segment: encrypted segment data (segment size, last segment may be shorter) | tag
+ * </pre>
+ *
+ * The salt is used to derive the stream specific segment key (see {@linkplain Cipher#segmentCipher(byte[])}). The nonce
+ * of a segment is made up of the nonce prefix, the segment index and a flag marking the last segment. The header as
+ * well as the segment's data length are authenticated as additional data. Hence segments can neither be re-ordered
+ * nor truncated without being detected, while each segment can still be decrypted on its own.
+ */
+final class CipherChannels {
+
+	static final int DEFAULT_SEGMENT_SIZE = 64 * 1024;
+	static final int MAX_SEGMENT_SIZE = 16 * 1024 * 1024;
+
+	private static final byte VERSION = 1;
+	private static final int SALT_OFFSET = 5;
+	private static final int SALT_LENGTH = 16;
+	private static final int NONCE_PREFIX_OFFSET = SALT_OFFSET + SALT_LENGTH;
+	private static final int NONCE_PREFIX_LENGTH = 7;
+	private static final int HEADER_LENGTH = NONCE_PREFIX_OFFSET + NONCE_PREFIX_LENGTH;
+	private static final int NONCE_LENGTH = NONCE_PREFIX_LENGTH + Integer.BYTES + 1;
+	private static final long MAX_SEGMENT_COUNT = 1l << Integer.SIZE;
+
+	private CipherChannels() {
+		// prevent instantiation
+	}
+
+	static ReadableByteChannel encryptingChannel(Cipher cipher, ReadableByteChannel data, int segmentSize) {
+		checkSegmentSize(segmentSize);
+		return new TransformingChannel(cipher, data, segmentSize);
+	}
+
+	static ReadableByteChannel decryptingChannel(Cipher cipher, ReadableByteChannel encrypted) {
+		return new TransformingChannel(cipher, encrypted, 0);
+	}
+
+	static SeekableByteChannel decryptingChannel(Cipher cipher, SeekableByteChannel encrypted) {
+		return new DecryptingSeekableChannel(cipher, encrypted);
+	}
+
+	static void encrypt(Cipher cipher, ReadableByteChannel data, WritableByteChannel encrypted, int segmentSize,
+			ExecutorService executor) throws IOException {
+		checkSegmentSize(segmentSize);
+		try (Context context = Context.create(cipher, segmentSize)) {
+			writeFully(encrypted, ByteBuffer.wrap(context.header()));
+			transform(context, new SegmentSource(data, segmentSize), encrypted, executor, true);
+		}
+	}
+
+	static void decrypt(Cipher cipher, ReadableByteChannel encrypted, WritableByteChannel data,
+			ExecutorService executor) throws IOException {
+		try (Context context = Context.read(cipher, encrypted)) {
+			transform(context, new SegmentSource(encrypted, context.encryptedSegmentSize()), data, executor, false);
+		}
+	}
+
+	private static void transform(Context context, SegmentSource source, WritableByteChannel target,
+			ExecutorService executor, boolean encrypt) throws IOException {
+		int window = Math.max(Runtime.getRuntime().availableProcessors(), 1) * 2;
+		Deque<Future<ByteBuffer>> pending = new ArrayDeque<>(window);
+
+		try {
+			ByteBuffer segment = ByteBuffer.allocate(source.segmentLength());
+
+			while (source.next(segment)) {
+				ByteBuffer input = segment;
+				long index = source.index();
+				boolean last = source.isLast();
+
+				pending.add(executor.submit(() -> context.transform(index, last, input, encrypt)));
+				if (pending.size() >= window) {
+					writeFully(target, awaitSegment(pending.remove()));
+				}
+				segment = ByteBuffer.allocate(source.segmentLength());
+			}
+			while (!pending.isEmpty()) {
+				writeFully(target, awaitSegment(pending.remove()));
+			}
+		} finally {
+			for (Future<ByteBuffer> future : pending) {
+				future.cancel(false);
+			}
+		}
+	}
+
+	private static ByteBuffer awaitSegment(Future<ByteBuffer> future) throws IOException {
+		ByteBuffer segment;
+
+		try {
+			segment = future.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException("Interrupted while awaiting segment", e);
+		} catch (ExecutionException e) {
+			Throwable cause = e.getCause();
+
+			if (cause instanceof IOException) {
+				throw (IOException) cause;
+			}
+			throw new IOException("Segment transformation failed", cause);
+		}
+		return segment;
+	}
+
+	private static void checkSegmentSize(int segmentSize) {
+		if (segmentSize <= 0 || segmentSize > MAX_SEGMENT_SIZE) {
+			throw new IllegalArgumentException("Invalid segment size: " + segmentSize);
+		}
+	}
+
+	private static int fill(ReadableByteChannel channel, ByteBuffer buffer) throws IOException {
+		int start = buffer.position();
+
+		while (buffer.hasRemaining() && channel.read(buffer) >= 0) {
+			// Read until buffer is full or EOF
+		}
+		return buffer.position() - start;
+	}
+
+	private static void writeFully(WritableByteChannel channel, ByteBuffer buffer) throws IOException {
+		while (buffer.hasRemaining()) {
+			channel.write(buffer);
+		}
+	}
+
+	/*
+	 * The stream parameters and the derived segment cipher.
+	 */
+	private static final class Context implements AutoCloseable {
+
+		private final byte[] header;
+		private final int segmentSize;
+		private final Cipher.SegmentCipher segmentCipher;
+
+		private Context(byte[] header, int segmentSize, Cipher.SegmentCipher segmentCipher) {
+			this.header = header;
+			this.segmentSize = segmentSize;
+			this.segmentCipher = segmentCipher;
+		}
+
+		static Context create(Cipher cipher, int segmentSize) throws IOException {
+			ByteBuffer header = ByteBuffer.allocate(HEADER_LENGTH);
+			byte[] saltAndNoncePrefix = new byte[SALT_LENGTH + NONCE_PREFIX_LENGTH];
+
+			Randomness.get().nextBytes(saltAndNoncePrefix);
+			header.put(VERSION).putInt(segmentSize).put(saltAndNoncePrefix);
+			return create(cipher, header.array(), segmentSize);
+		}
+
+		static Context read(Cipher cipher, ReadableByteChannel channel) throws IOException {
+			ByteBuffer header = ByteBuffer.allocate(HEADER_LENGTH);
+
+			if (fill(channel, header) < HEADER_LENGTH || header.get(0) != VERSION) {
+				throw new IOException("Invalid encrypted stream header");
+			}
+
+			int segmentSize = header.getInt(1);
+
+			if (segmentSize <= 0 || segmentSize > MAX_SEGMENT_SIZE) {
+				throw new IOException("Invalid encrypted stream segment size: " + segmentSize);
+			}
+			return create(cipher, header.array(), segmentSize);
+		}
+
+		private static Context create(Cipher cipher, byte[] header, int segmentSize) throws IOException {
+			byte[] salt = new byte[SALT_LENGTH];
+
+			System.arraycopy(header, SALT_OFFSET, salt, 0, SALT_LENGTH);
+			try {
+				return new Context(header, segmentSize, cipher.segmentCipher(salt));
+			} catch (GeneralSecurityException e) {
+				throw new IOException("Failed to derive segment cipher", e);
+			}
+		}
+
+		byte[] header() {
+			return this.header;
+		}
+
+		int segmentSize() {
+			return this.segmentSize;
+		}
+
+		int encryptedSegmentSize() {
+			return this.segmentSize + this.segmentCipher.overhead();
+		}
+
+		/*
+		 * Encrypts or decrypts the remaining bytes of the input buffer and returns the flipped result buffer.
+		 */
+		ByteBuffer transform(long index, boolean last, ByteBuffer input, boolean encrypt) throws IOException {
+			if (index >= MAX_SEGMENT_COUNT) {
+				throw new IOException("Maximum segment count exceeded");
+			}
+
+			int overhead = this.segmentCipher.overhead();
+			int dataLength = (encrypt ? input.remaining() : input.remaining() - overhead);
+
+			if (dataLength < 0) {
+				throw new IOException("Truncated segment " + index);
+			}
+
+			byte[] nonce = new byte[NONCE_LENGTH];
+
+			System.arraycopy(this.header, NONCE_PREFIX_OFFSET, nonce, 0, NONCE_PREFIX_LENGTH);
+			ByteBuffer.wrap(nonce, NONCE_PREFIX_LENGTH, Integer.BYTES + 1).putInt((int) index)
+					.put((byte) (last ? 1 : 0));
+
+			byte[] aad = ByteBuffer.allocate(HEADER_LENGTH + Integer.BYTES).put(this.header).putInt(dataLength)
+					.array();
+			ByteBuffer output = ByteBuffer.allocate(encrypt ? dataLength + overhead : dataLength);
+
+			try {
+				if (encrypt) {
+					this.segmentCipher.encrypt(nonce, aad, input, output);
+				} else {
+					this.segmentCipher.decrypt(nonce, aad, input, output);
+				}
+			} catch (GeneralSecurityException e) {
+				throw new IOException("Failed to " + (encrypt ? "encrypt" : "decrypt") + " segment " + index, e);
+			}
+			return output.flip();
+		}
+
+		@Override
+		public void close() {
+			this.segmentCipher.close();
+		}
+
+	}
+
+	/*
+	 * Reads fixed size segments from a channel, looking ahead one segment to detect the last one.
+	 */
+	private static final class SegmentSource {
+
+		private final ReadableByteChannel channel;
+		private final ByteBuffer lookahead;
+		private boolean primed = false;
+		private boolean last = false;
+		private long index = -1;
+
+		SegmentSource(ReadableByteChannel channel, int segmentLength) {
+			this.channel = channel;
+			this.lookahead = ByteBuffer.allocate(segmentLength);
+		}
+
+		int segmentLength() {
+			return this.lookahead.capacity();
+		}
+
+		long index() {
+			return this.index;
+		}
+
+		boolean isLast() {
+			return this.last;
+		}
+
+		/*
+		 * Reads the next segment into the given buffer (and flips it).
+		 */
+		boolean next(ByteBuffer segment) throws IOException {
+			boolean available = !this.last;
+
+			if (available) {
+				if (!this.primed) {
+					fill(this.channel, this.lookahead);
+					this.primed = true;
+				}
+				segment.clear();
+				segment.put(this.lookahead.flip());
+				segment.flip();
+				this.lookahead.clear();
+				this.last = segment.remaining() < this.lookahead.capacity() || fill(this.channel, this.lookahead) == 0;
+				this.index++;
+			}
+			return available;
+		}
+
+	}
+
+	/*
+	 * Sequential encryption (segmentSize > 0) or decryption (segmentSize == 0) of a source channel.
+	 */
+	private static final class TransformingChannel implements ReadableByteChannel {
+
+		private final Cipher cipher;
+		private final ReadableByteChannel source;
+		private final int segmentSize;
+		@Nullable
+		private Context context = null;
+		@Nullable
+		private SegmentSource segmentSource = null;
+		@Nullable
+		private ByteBuffer segment = null;
+		private ByteBuffer output = ByteBuffer.allocate(0);
+		private boolean open = true;
+
+		TransformingChannel(Cipher cipher, ReadableByteChannel source, int segmentSize) {
+			this.cipher = cipher;
+			this.source = source;
+			this.segmentSize = segmentSize;
+		}
+
+		@Override
+		public boolean isOpen() {
+			return this.open;
+		}
+
+		@Override
+		public int read(@Nullable ByteBuffer dst) throws IOException {
+			if (!this.open) {
+				throw new ClosedChannelException();
+			}
+
+			ByteBuffer checkedDst = Objects.requireNonNull(dst);
+			int read = 0;
+
+			while (checkedDst.hasRemaining() && (this.output.hasRemaining() || nextOutput())) {
+				int length = Math.min(checkedDst.remaining(), this.output.remaining());
+				ByteBuffer chunk = this.output.duplicate();
+
+				chunk.limit(chunk.position() + length);
+				checkedDst.put(chunk);
+				this.output.position(this.output.position() + length);
+				read += length;
+			}
+			return (read > 0 || !checkedDst.hasRemaining() ? read : -1);
+		}
+
+		private boolean nextOutput() throws IOException {
+			Context checkedContext = this.context;
+			boolean available = true;
+
+			if (checkedContext == null) {
+				boolean encrypt = this.segmentSize > 0;
+
+				checkedContext = this.context = (encrypt ? Context.create(this.cipher, this.segmentSize)
+						: Context.read(this.cipher, this.source));
+
+				int segmentLength = (encrypt ? this.segmentSize : checkedContext.encryptedSegmentSize());
+
+				this.segmentSource = new SegmentSource(this.source, segmentLength);
+				this.segment = ByteBuffer.allocate(segmentLength);
+				if (encrypt) {
+					this.output = ByteBuffer.wrap(checkedContext.header());
+				} else {
+					available = nextSegment(checkedContext);
+				}
+			} else {
+				available = nextSegment(checkedContext);
+			}
+			return available;
+		}
+
+		private boolean nextSegment(Context checkedContext) throws IOException {
+			SegmentSource checkedSegmentSource = Objects.requireNonNull(this.segmentSource);
+			ByteBuffer checkedSegment = Objects.requireNonNull(this.segment);
+			boolean available = checkedSegmentSource.next(checkedSegment);
+
+			if (available) {
+				this.output = checkedContext.transform(checkedSegmentSource.index(), checkedSegmentSource.isLast(),
+						checkedSegment, this.segmentSize > 0);
+			}
+			return available;
+		}
+
+		@Override
+		public void close() throws IOException {
+			if (this.open) {
+				this.open = false;
+
+				Context checkedContext = this.context;
+
+				if (checkedContext != null) {
+					checkedContext.close();
+				}
+				this.source.close();
+			}
+		}
+
+	}
+
+	/*
+	 * Random access decryption of a seekable source channel.
+	 */
+	private static final class DecryptingSeekableChannel implements SeekableByteChannel {
+
+		private final Cipher cipher;
+		private final SeekableByteChannel source;
+		@Nullable
+		private Context context = null;
+		private long position = 0;
+		private long segmentIndex = -1;
+		private ByteBuffer segment = ByteBuffer.allocate(0);
+		private boolean open = true;
+
+		DecryptingSeekableChannel(Cipher cipher, SeekableByteChannel source) {
+			this.cipher = cipher;
+			this.source = source;
+		}
+
+		@Override
+		public boolean isOpen() {
+			return this.open;
+		}
+
+		@Override
+		public int read(@Nullable ByteBuffer dst) throws IOException {
+			ByteBuffer checkedDst = Objects.requireNonNull(dst);
+			Context checkedContext = context();
+			long size = size();
+			int read = 0;
+
+			while (checkedDst.hasRemaining() && this.position < size) {
+				long index = this.position / checkedContext.segmentSize();
+				int offset = (int) (this.position % checkedContext.segmentSize());
+
+				loadSegment(checkedContext, index);
+
+				int length = Math.min(checkedDst.remaining(), this.segment.limit() - offset);
+				ByteBuffer chunk = this.segment.duplicate();
+
+				chunk.position(offset).limit(offset + length);
+				checkedDst.put(chunk);
+				this.position += length;
+				read += length;
+			}
+			return (read > 0 || !checkedDst.hasRemaining() ? read : -1);
+		}
+
+		@Override
+		public int write(@Nullable ByteBuffer src) {
+			throw new NonWritableChannelException();
+		}
+
+		@Override
+		public long position() throws IOException {
+			ensureOpen();
+			return this.position;
+		}
+
+		@Override
+		public SeekableByteChannel position(long newPosition) throws IOException {
+			ensureOpen();
+			if (newPosition < 0) {
+				throw new IllegalArgumentException("Invalid position: " + newPosition);
+			}
+			this.position = newPosition;
+			return this;
+		}
+
+		@Override
+		public long size() throws IOException {
+			Context checkedContext = context();
+			long encryptedSize = this.source.size() - HEADER_LENGTH;
+			int encryptedSegmentSize = checkedContext.encryptedSegmentSize();
+			long fullSegments = encryptedSize / encryptedSegmentSize;
+			int remainder = (int) (encryptedSize % encryptedSegmentSize);
+			int overhead = encryptedSegmentSize - checkedContext.segmentSize();
+
+			if (remainder > 0 && remainder < overhead) {
+				throw new IOException("Truncated segment " + fullSegments);
+			}
+			return fullSegments * checkedContext.segmentSize() + (remainder > 0 ? remainder - overhead : 0);
+		}
+
+		@Override
+		public SeekableByteChannel truncate(long size) {
+			throw new NonWritableChannelException();
+		}
+
+		private Context context() throws IOException {
+			ensureOpen();
+
+			Context checkedContext = this.context;
+
+			if (checkedContext == null) {
+				this.source.position(0);
+				checkedContext = this.context = Context.read(this.cipher, this.source);
+			}
+			return checkedContext;
+		}
+
+		private void loadSegment(Context checkedContext, long index) throws IOException {
+			if (this.segmentIndex != index) {
+				int encryptedSegmentSize = checkedContext.encryptedSegmentSize();
+				long encryptedSize = this.source.size() - HEADER_LENGTH;
+				long segmentOffset = index * encryptedSegmentSize;
+				int segmentLength = (int) Math.min(encryptedSegmentSize, encryptedSize - segmentOffset);
+				ByteBuffer encrypted = ByteBuffer.allocate(segmentLength);
+
+				this.source.position(HEADER_LENGTH + segmentOffset);
+				if (fill(this.source, encrypted) < segmentLength) {
+					throw new IOException("Truncated segment " + index);
+				}
+				encrypted.flip();
+				this.segmentIndex = -1;
+				this.segment = checkedContext.transform(index, segmentOffset + segmentLength >= encryptedSize,
+						encrypted, false);
+				this.segmentIndex = index;
+			}
+		}
+
+		private void ensureOpen() throws ClosedChannelException {
+			if (!this.open) {
+				throw new ClosedChannelException();
+			}
+		}
+
+		@Override
+		public void close() throws IOException {
+			if (this.open) {
+				this.open = false;
+
+				Context checkedContext = this.context;
+
+				if (checkedContext != null) {
+					checkedContext.close();
+				}
+				this.source.close();
+			}
+		}
+
+	}
+
+}
@@ -0,0 +1,154 @@
+/*
+ * Copyright (c) 2018-2021 Holger de Carne and contributors, All Rights Reserved.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.carne.lwjsd.runtime.security;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
+import java.security.GeneralSecurityException;
+import java.security.KeyPair;
+import java.util.Arrays;
+
+import org.eclipse.jdt.annotation.Nullable;
+
+import de.carne.boot.logging.Log;
+
+/**
+ * {@linkplain SignatureFactory} implementation providing EC256 signatures over the Merkle tree root of the data's chunk
+ * digests.
+ * <p>
+ * The data is split into fixed size chunks which are digested independently. When signing or verifying a file, the
+ * file is memory mapped and the chunks are digested in parallel. The chunk digests are stored as part of the signature,
+ * hence a failed verification identifies the tampered chunks. This signature type uses the same kind of keys as
+ * {@linkplain EC256SignatureFactory}.
+ */
+public class EC256ChunkedSignatureFactory extends EC256SignatureFactory {
+
+	private static final Log LOG = new Log();
+
+	private static final byte VERSION = 1;
+	private static final int HEADER_LENGTH = 1 + Integer.BYTES + Long.BYTES + Integer.BYTES;
+	private static final int CHUNK_SIZE = 1024 * 1024;
+
+	/**
+	 * Signature name.
+	 */
+	public static final String SIGNATURE_NAME = "ec256-chunked-signature";
+
+	/**
+	 * Constructs new {@linkplain EC256ChunkedSignatureFactory} instance.
+	 */
+	public EC256ChunkedSignatureFactory() {
+		super(SIGNATURE_NAME);
+	}
+
+	@Override
+	byte[] signatureSign0(KeyPair keyPair, InputStream data) throws IOException, GeneralSecurityException {
+		return sign(keyPair, ChunkDigests.compute(data, CHUNK_SIZE));
+	}
+
+	@Override
+	byte[] signatureSign0(KeyPair keyPair, Path file) throws IOException, GeneralSecurityException {
+		return sign(keyPair, ChunkDigests.compute(file, CHUNK_SIZE));
+	}
+
+	@Override
+	boolean signatureVerify0(KeyPair keyPair, InputStream data, byte[] signatureBytes)
+			throws IOException, GeneralSecurityException {
+		ChunkDigests signed = decodeSigned(keyPair, signatureBytes);
+
+		return signed != null && verify(signed, ChunkDigests.compute(data, signed.chunkSize()), "<stream>");
+	}
+
+	@Override
+	boolean signatureVerify0(KeyPair keyPair, Path file, byte[] signatureBytes)
+			throws IOException, GeneralSecurityException {
+		ChunkDigests signed = decodeSigned(keyPair, signatureBytes);
+
+		return signed != null && verify(signed, ChunkDigests.compute(file, signed.chunkSize()), file.toString());
+	}
+
+	private byte[] sign(KeyPair keyPair, ChunkDigests chunkDigests) throws GeneralSecurityException {
+		byte[] header = encodeHeader(chunkDigests.chunkSize(), chunkDigests.dataLength(), chunkDigests.chunkCount());
+		byte[] rootSignature = signBytes0(keyPair, signedBytes(header, chunkDigests.root()));
+		byte[] digests = chunkDigests.digests();
+
+		return ByteBuffer.allocate(header.length + digests.length + rootSignature.length).put(header).put(digests)
+				.put(rootSignature).array();
+	}
+
+	@Nullable
+	private ChunkDigests decodeSigned(KeyPair keyPair, byte[] signatureBytes) throws GeneralSecurityException {
+		ChunkDigests signed = null;
+
+		try {
+			ByteBuffer buffer = ByteBuffer.wrap(signatureBytes);
+
+			if (buffer.get() == VERSION) {
+				int chunkSize = buffer.getInt();
+				long dataLength = buffer.getLong();
+				int chunkCount = buffer.getInt();
+
+				if (chunkSize > 0 && chunkCount == ChunkDigests.chunkCount(dataLength, chunkSize)
+						&& (long) chunkCount * ChunkDigests.DIGEST_LENGTH <= buffer.remaining()) {
+					byte[] digests = new byte[chunkCount * ChunkDigests.DIGEST_LENGTH];
+
+					buffer.get(digests);
+
+					byte[] rootSignature = Arrays.copyOfRange(signatureBytes, buffer.position(), signatureBytes.length);
+					ChunkDigests candidate = new ChunkDigests(chunkSize, dataLength, digests);
+					byte[] header = Arrays.copyOf(signatureBytes, HEADER_LENGTH);
+
+					if (verifyBytes0(keyPair, signedBytes(header, candidate.root()), rootSignature)) {
+						signed = candidate;
+					}
+				}
+			}
+		} catch (BufferUnderflowException | IOException e) {
+			LOG.debug(e, "Invalid chunked signature");
+		}
+		return signed;
+	}
+
+	private boolean verify(ChunkDigests signed, ChunkDigests actual, String source) {
+		int[] mismatches = signed.mismatches(actual);
+
+		if (signed.dataLength() != actual.dataLength()) {
+			LOG.warning("Length of ''{0}'' does not match signature (expected: {1}, actual: {2})", source,
+					signed.dataLength(), actual.dataLength());
+		}
+		for (int chunkIndex : mismatches) {
+			long chunkStart = (long) chunkIndex * signed.chunkSize();
+
+			LOG.warning("Chunk {0} (bytes {1}-{2}) of ''{3}'' does not match signature", chunkIndex, chunkStart,
+					chunkStart + signed.chunkSize() - 1, source);
+		}
+		return mismatches.length == 0 && signed.dataLength() == actual.dataLength();
+	}
+
+	private static byte[] encodeHeader(int chunkSize, long dataLength, int chunkCount) {
+		return ByteBuffer.allocate(HEADER_LENGTH).put(VERSION).putInt(chunkSize).putLong(dataLength).putInt(chunkCount)
+				.array();
+	}
+
+	private static byte[] signedBytes(byte[] header, byte[] root) {
+		return ByteBuffer.allocate(header.length + root.length).put(header).put(root).array();
+	}
+
+}
@@ -18,6 +18,8 @@ package de.carne.lwjsd.runtime.security;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.security.GeneralSecurityException;
 import java.security.KeyFactory;
 import java.security.KeyPair;
@@ -48,7 +50,17 @@ public class EC256SignatureFactory extends SignatureFactory {
 	 * Constructs new {@linkplain EC256SignatureFactory} instance.
 	 */
 	public EC256SignatureFactory() {
-		super(SIGNATURE_NAME);
+		this(SIGNATURE_NAME);
+	}
+
+	/**
+	 * Constructs new {@linkplain EC256SignatureFactory} instance for a derived signature type using the same kind of
+	 * keys.
+	 *
+	 * @param name the signature type uniquely identifying this factory.
+	 */
+	protected EC256SignatureFactory(String name) {
+		super(name);
 	}
 
 	@Override
@@ -144,6 +156,35 @@ public class EC256SignatureFactory extends SignatureFactory {
 		return signature.verify(signatureBytes);
 	}
 
+	byte[] signatureSign0(KeyPair keyPair, Path file) throws IOException, GeneralSecurityException {
+		try (InputStream data = Files.newInputStream(file)) {
+			return signatureSign0(keyPair, data);
+		}
+	}
+
+	boolean signatureVerify0(KeyPair keyPair, Path file, byte[] signatureBytes)
+			throws IOException, GeneralSecurityException {
+		try (InputStream data = Files.newInputStream(file)) {
+			return signatureVerify0(keyPair, data, signatureBytes);
+		}
+	}
+
+	byte[] signBytes0(KeyPair keyPair, byte[] data) throws GeneralSecurityException {
+		java.security.Signature signature = java.security.Signature.getInstance(SIGNATURE_ALG);
+
+		signature.initSign(keyPair.getPrivate(), getRandom());
+		signature.update(data);
+		return signature.sign();
+	}
+
+	boolean verifyBytes0(KeyPair keyPair, byte[] data, byte[] signatureBytes) throws GeneralSecurityException {
+		java.security.Signature signature = java.security.Signature.getInstance(SIGNATURE_ALG);
+
+		signature.initVerify(keyPair.getPublic());
+		signature.update(data);
+		return signature.verify(signatureBytes);
+	}
+
 	void signatureClose0(KeyPair keyPair) {
 		safeDestroy(keyPair.getPrivate());
 	}
@@ -171,11 +212,21 @@ public class EC256SignatureFactory extends SignatureFactory {
 			return signatureSign0(this.keyPair, data);
 		}
 
+		@Override
+		public byte[] sign(Path file) throws IOException, GeneralSecurityException {
+			return signatureSign0(this.keyPair, file);
+		}
+
 		@Override
 		public boolean verify(InputStream data, byte[] signatureBytes) throws IOException, GeneralSecurityException {
 			return signatureVerify0(this.keyPair, data, signatureBytes);
 		}
 
+		@Override
+		public boolean verify(Path file, byte[] signatureBytes) throws IOException, GeneralSecurityException {
+			return signatureVerify0(this.keyPair, file, signatureBytes);
+		}
+
 		@Override
 		public void close() throws Exception {
 			signatureClose0(this.keyPair);
@@ -56,7 +56,10 @@ public final class Passwords {
 	 * Decrypts a character based password.
 	 * <p>
 	 * This function detects automatically which {@linkplain Cipher} has been applied to the password or if it is not
-	 * encrypted at all.
+	 * encrypted at all. Decrypted passwords are cached by the {@linkplain SecretsStore} for a limited time (see system
+	 * properties {@code de.carne.lwjsd.runtime.security.SecretsStore.secretCacheTTL} and
+	 * {@code de.carne.lwjsd.runtime.security.SecretsStore.secretCacheSize}). The returned secret is always a private
+	 * copy and should be closed after usage.
 	 *
 	 * @param secretsStore The {@linkplain SecretsStore} providing the {@linkplain Cipher} to use for decryption.
 	 * @param encryptedSecret the secret string (either plain or encrypted).
@@ -65,7 +68,7 @@ public final class Passwords {
 	 */
 	public static CharSecret decryptPassword(SecretsStore secretsStore, String encryptedSecret)
 			throws GeneralSecurityException {
-		char[] plainSecret;
+		CharSecret plainSecret;
 
 		if (encryptedSecret.startsWith(SECRET_PREFIX)) {
 			int dataIndex = encryptedSecret.indexOf(':', SECRET_PREFIX.length() + 1);
@@ -76,13 +79,20 @@ public final class Passwords {
 
 			String cipherName = encryptedSecret.substring(SECRET_PREFIX.length(), dataIndex);
 			Cipher cipher = secretsStore.getCipher(cipherName);
-			String data = encryptedSecret.substring(dataIndex + 1);
+			CharSecret cachedSecret = secretsStore.getCachedSecret(encryptedSecret, cipher);
 
-			plainSecret = cipher.decryptChars(Base64.getDecoder().decode(data));
+			if (cachedSecret != null) {
+				plainSecret = cachedSecret;
+			} else {
+				String data = encryptedSecret.substring(dataIndex + 1);
+
+				plainSecret = CharSecret.wrap(cipher.decryptChars(Base64.getDecoder().decode(data)));
+				secretsStore.cacheSecret(encryptedSecret, cipher, plainSecret);
+			}
 		} else {
-			plainSecret = encryptedSecret.toCharArray();
+			plainSecret = CharSecret.wrap(encryptedSecret.toCharArray());
 		}
-		return CharSecret.wrap(plainSecret);
+		return plainSecret;
 	}
 
 }
@@ -16,31 +16,203 @@
  */
 package de.carne.lwjsd.runtime.security;
 
+import java.security.DrbgParameters;
 import java.security.NoSuchAlgorithmException;
 import java.security.SecureRandom;
+import java.util.Locale;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 
 import de.carne.boot.Exceptions;
+import de.carne.boot.logging.Log;
+import de.carne.util.SystemProperties;
 
-final class Randomness {
+/**
+ * Provides the random sources used for key, salt and nonce generation.
+ * <p>
+ * The random source strategy is selected via the system property
+ * {@code de.carne.lwjsd.runtime.security.Randomness.strategy} (see {@linkplain Strategy}). All threads share a single
+ * (thread-safe) random source. In case of the default {@linkplain Strategy#DRBG} strategy the source seeds itself
+ * from the platform's entropy source on instantiation and is periodically reseeded by a background thread. Callers
+ * therefore never read seed material themselves.
+ */
+public final class Randomness {
 
 	private Randomness() {
 		// prevent instantiation
 	}
 
-	// Shared per thread random source
-	private static final ThreadLocal<SecureRandom> RANDOM = ThreadLocal.withInitial(() -> {
-		SecureRandom random;
+	private static final Log LOG = new Log();
+
+	private static final int NONCE_COUNTER_LENGTH = Integer.BYTES;
+	private static final int NONCE_MIN_PREFIX_LENGTH = 8;
+
+	private static final Strategy STRATEGY = Strategy.valueOf(SystemProperties
+			.value(Randomness.class.getName() + ".strategy", Strategy.DRBG.name()).toUpperCase(Locale.ROOT));
+	private static final long RESEED_INTERVAL = SystemProperties
+			.longValue(Randomness.class.getName() + ".reseedInterval", 10 * 60 * 1000L) * 1000000L;
+
+	/**
+	 * Available random source strategies.
+	 */
+	public enum Strategy {
+
+		/**
+		 * Use the platform's strong {@linkplain SecureRandom} instance (see
+		 * {@linkplain SecureRandom#getInstanceStrong()}). Depending on the platform this source may block until
+		 * sufficient entropy is available.
+		 */
+		STRONG {
+
+			@Override
+			public SecureRandom newInstance() throws NoSuchAlgorithmException {
+				return SecureRandom.getInstanceStrong();
+			}
+
+			@Override
+			void reseed(SecureRandom random) {
+				// Nothing to do
+			}
+
+		},
+
+		/**
+		 * Use a self-seeding DRBG instance, which is periodically reseeded in the background (see system property
+		 * {@code de.carne.lwjsd.runtime.security.Randomness.reseedInterval}, default: 10 minutes).
+		 */
+		DRBG {
+
+			@Override
+			public SecureRandom newInstance() throws NoSuchAlgorithmException {
+				return SecureRandom.getInstance("DRBG",
+						DrbgParameters.instantiation(256, DrbgParameters.Capability.RESEED_ONLY, null));
+			}
+
+			@Override
+			void reseed(SecureRandom random) {
+				// The DRBG pulls the seed material from its entropy source
+				random.reseed();
+			}
 
-		try {
-			random = SecureRandom.getInstanceStrong();
-		} catch (NoSuchAlgorithmException e) {
-			throw Exceptions.toRuntime(e);
+		};
+
+		/**
+		 * Creates a new {@linkplain SecureRandom} instance according to this strategy.
+		 *
+		 * @return the created {@linkplain SecureRandom} instance.
+		 * @throws NoSuchAlgorithmException if the strategy is not supported by the platform.
+		 */
+		public abstract SecureRandom newInstance() throws NoSuchAlgorithmException;
+
+		abstract void reseed(SecureRandom random);
+
+	}
+
+	// Shared random source
+	private static final class SharedRandom {
+
+		static final SecureRandom RANDOM;
+
+		static {
+			try {
+				RANDOM = STRATEGY.newInstance();
+			} catch (NoSuchAlgorithmException e) {
+				throw Exceptions.toRuntime(e);
+			}
+			if (STRATEGY == Strategy.DRBG && RESEED_INTERVAL > 0) {
+				ScheduledExecutorService reseeder = Executors.newSingleThreadScheduledExecutor(runnable -> {
+					Thread thread = new Thread(runnable, Randomness.class.getSimpleName() + " reseeder");
+
+					thread.setDaemon(true);
+					return thread;
+				});
+
+				reseeder.scheduleWithFixedDelay(SharedRandom::reseed, RESEED_INTERVAL, RESEED_INTERVAL,
+						TimeUnit.NANOSECONDS);
+			}
 		}
-		return random;
-	});
 
+		private static void reseed() {
+			LOG.debug("Reseeding random source ''{0}''...", RANDOM.getAlgorithm());
+
+			try {
+				STRATEGY.reseed(RANDOM);
+			} catch (RuntimeException e) {
+				// Keep using the current state; the next scheduled reseed will retry
+				LOG.warning(e, "Failed to reseed random source ''{0}''", RANDOM.getAlgorithm());
+			}
+		}
+
+	}
+
+	private static final class ThreadNonce {
+
+		private byte[] noncePrefix = new byte[0];
+		private int nonceCounter = 0;
+
+		ThreadNonce() {
+			// Nothing to do here
+		}
+
+		void nextNonce(byte[] nonce) {
+			int prefixLength = nonce.length - NONCE_COUNTER_LENGTH;
+
+			if (prefixLength < NONCE_MIN_PREFIX_LENGTH) {
+				throw new IllegalArgumentException("Invalid nonce length: " + nonce.length);
+			}
+			// A fresh random prefix is drawn on first use and whenever the counter wraps around
+			if (this.nonceCounter == 0 || this.noncePrefix.length != prefixLength) {
+				if (this.noncePrefix.length != prefixLength) {
+					this.noncePrefix = new byte[prefixLength];
+				}
+				SharedRandom.RANDOM.nextBytes(this.noncePrefix);
+				this.nonceCounter = 0;
+			}
+			System.arraycopy(this.noncePrefix, 0, nonce, 0, prefixLength);
+
+			int counter = this.nonceCounter;
+
+			nonce[prefixLength] = (byte) (counter >>> 24);
+			nonce[prefixLength + 1] = (byte) (counter >>> 16);
+			nonce[prefixLength + 2] = (byte) (counter >>> 8);
+			nonce[prefixLength + 3] = (byte) counter;
+			this.nonceCounter = counter + 1;
+		}
+
+	}
+
+	// Per thread nonce state
+	private static final ThreadLocal<ThreadNonce> NONCE = ThreadLocal.withInitial(ThreadNonce::new);
+
+	/**
+	 * Gets the configured random source strategy.
+	 *
+	 * @return the configured random source strategy.
+	 */
+	public static Strategy strategy() {
+		return STRATEGY;
+	}
+
+	/**
+	 * Gets the shared {@linkplain SecureRandom} instance.
+	 *
+	 * @return the shared {@linkplain SecureRandom} instance.
+	 */
 	public static SecureRandom get() {
-		return RANDOM.get();
+		return SharedRandom.RANDOM;
+	}
+
+	/**
+	 * Generates a nonce that is unique for the current process.
+	 * <p>
+	 * The nonce consists of a random per thread prefix followed by a 32 bit counter. A new prefix is drawn after
+	 * 2<sup>32</sup> nonces. Apart from this the generation neither allocates memory nor consumes random data.
+	 *
+	 * @param nonce the buffer to fill (the length must be at least 12 bytes).
+	 */
+	public static void nextNonce(byte[] nonce) {
+		NONCE.get().nextNonce(nonce);
 	}
 
 }
@@ -0,0 +1,191 @@
+/*
+ * Copyright (c) 2018-2021 Holger de Carne and contributors, All Rights Reserved.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.carne.lwjsd.runtime.security;
+
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+import org.eclipse.jdt.annotation.Nullable;
+
+/**
+ * Cache for decrypted secrets.
+ * <p>
+ * The decrypted characters are kept in direct (off-heap) buffers which are zeroed as soon as an entry expires, is
+ * evicted or is invalidated. Expired entries are wiped by a shared background thread at their expiry time, regardless
+ * of whether the cache is accessed again. Callers always receive a fresh {@linkplain CharSecret} copy, which they are
+ * responsible to close as usual.
+ */
+final class SecretCache {
+
+	private final long ttlNanos;
+	private final int maxEntries;
+	// Insertion ordered, hence the eldest entry always expires first
+	private final Map<String, Entry> entries = new LinkedHashMap<>();
+	@Nullable
+	private ScheduledFuture<?> purgeFuture = null;
+
+	SecretCache(long ttlMillis, int maxEntries) {
+		this.ttlNanos = ttlMillis * 1000000L;
+		this.maxEntries = maxEntries;
+	}
+
+	boolean isEnabled() {
+		return this.ttlNanos > 0 && this.maxEntries > 0;
+	}
+
+	@Nullable
+	synchronized CharSecret get(String encryptedSecret, Cipher cipher) {
+		long now = System.nanoTime();
+
+		purgeExpired(now);
+
+		Entry entry = this.entries.get(encryptedSecret);
+		CharSecret secret = null;
+
+		if (entry != null) {
+			if (entry.cipher == cipher) {
+				secret = entry.get();
+			} else {
+				// The cipher has been replaced since the entry has been created (re-key)
+				this.entries.remove(encryptedSecret);
+				entry.wipe();
+			}
+		}
+		return secret;
+	}
+
+	synchronized void put(String encryptedSecret, Cipher cipher, CharSecret secret) {
+		long now = System.nanoTime();
+
+		purgeExpired(now);
+
+		Entry previousEntry = this.entries.remove(encryptedSecret);
+
+		if (previousEntry != null) {
+			previousEntry.wipe();
+		}
+		while (this.entries.size() >= this.maxEntries) {
+			Iterator<Entry> entryIterator = this.entries.values().iterator();
+
+			entryIterator.next().wipe();
+			entryIterator.remove();
+		}
+		this.entries.put(encryptedSecret, new Entry(cipher, secret.get(), now + this.ttlNanos));
+		schedulePurge(now);
+	}
+
+	synchronized int size() {
+		purgeExpired(System.nanoTime());
+		return this.entries.size();
+	}
+
+	synchronized void invalidate() {
+		for (Entry entry : this.entries.values()) {
+			entry.wipe();
+		}
+		this.entries.clear();
+
+		ScheduledFuture<?> checkedPurgeFuture = this.purgeFuture;
+
+		if (checkedPurgeFuture != null) {
+			checkedPurgeFuture.cancel(false);
+			this.purgeFuture = null;
+		}
+	}
+
+	private void schedulePurge(long now) {
+		if (this.purgeFuture == null && !this.entries.isEmpty()) {
+			// The eldest entry expires first; the purge is re-scheduled for the next one afterwards
+			long delay = Math.max(this.entries.values().iterator().next().expiry - now, 0);
+
+			this.purgeFuture = Purger.EXECUTOR.schedule(this::purgeScheduled, delay, TimeUnit.NANOSECONDS);
+		}
+	}
+
+	private synchronized void purgeScheduled() {
+		long now = System.nanoTime();
+
+		this.purgeFuture = null;
+		purgeExpired(now);
+		schedulePurge(now);
+	}
+
+	private void purgeExpired(long now) {
+		Iterator<Entry> entryIterator = this.entries.values().iterator();
+
+		while (entryIterator.hasNext()) {
+			Entry entry = entryIterator.next();
+
+			if (now - entry.expiry < 0) {
+				break;
+			}
+			entry.wipe();
+			entryIterator.remove();
+		}
+	}
+
+	// Shared background thread wiping expired entries
+	private static final class Purger {
+
+		static final ScheduledExecutorService EXECUTOR = Executors.newSingleThreadScheduledExecutor(runnable -> {
+			Thread thread = new Thread(runnable, SecretCache.class.getSimpleName() + " purger");
+
+			thread.setDaemon(true);
+			return thread;
+		});
+
+	}
+
+	private static final class Entry {
+
+		final Cipher cipher;
+		final long expiry;
+		private final CharBuffer chars;
+
+		Entry(Cipher cipher, char[] chars, long expiry) {
+			this.cipher = cipher;
+			this.expiry = expiry;
+			this.chars = ByteBuffer.allocateDirect(chars.length * Character.BYTES).asCharBuffer();
+			this.chars.put(chars);
+			this.chars.flip();
+		}
+
+		CharSecret get() {
+			char[] secretChars = new char[this.chars.remaining()];
+
+			this.chars.duplicate().get(secretChars);
+			return CharSecret.wrap(secretChars);
+		}
+
+		void wipe() {
+			this.chars.clear();
+			while (this.chars.hasRemaining()) {
+				this.chars.put('\0');
+			}
+			this.chars.limit(0);
+		}
+
+	}
+
+}
@@ -59,6 +59,16 @@ public abstract class SecretsProvider {
 		return Randomness.get();
 	}
 
+	/**
+	 * Fills a buffer with a nonce that is unique for the current process (see
+	 * {@linkplain Randomness#nextNonce(byte[])}).
+	 *
+	 * @param nonce the buffer to fill.
+	 */
+	protected static void nextNonce(byte[] nonce) {
+		Randomness.nextNonce(nonce);
+	}
+
 	/**
 	 * Destroys a {@linkplain Destroyable} object and handles a possible {@linkplain DestroyFailedException} by issuing
 	 * an error log statement.
@@ -35,6 +35,7 @@ import com.fasterxml.jackson.databind.SerializationFeature;
 import de.carne.boot.logging.Log;
 import de.carne.lwjsd.runtime.config.Config;
 import de.carne.nio.file.attribute.FileAttributes;
+import de.carne.util.SystemProperties;
 
 /**
  * This manages a server's secrets used for encryption and decryption of passwords as well for signature creation and
@@ -50,10 +51,18 @@ public final class SecretsStore {
 	private static final String SECRETS_FILE = "lwjsd.secrets.json";
 
 	private static final String DEFAULT_CIPHER = AES256CipherFactory.CIPHER_NAME;
-	private static final String DEFAULT_SIGNATURE = EC256SignatureFactory.SIGNATURE_NAME;
+	private static final String DEFAULT_SIGNATURE = EC256ChunkedSignatureFactory.SIGNATURE_NAME;
+	private static final String LEGACY_SIGNATURE = EC256SignatureFactory.SIGNATURE_NAME;
+
+	private static final long SECRET_CACHE_TTL = SystemProperties
+			.longValue(SecretsStore.class.getName() + ".secretCacheTTL", 5 * 60 * 1000L);
+	private static final int SECRET_CACHE_SIZE = SystemProperties
+			.intValue(SecretsStore.class.getName() + ".secretCacheSize", 64);
 
 	private final Map<String, Cipher> cipherMap = new HashMap<>();
 	private final Map<String, Signature> signatureMap = new HashMap<>();
+	private final SecretCache secretCache = new SecretCache(SECRET_CACHE_TTL, SECRET_CACHE_SIZE);
+	private String defaultSignature = DEFAULT_SIGNATURE;
 
 	private SecretsStore() {
 		// Just to prevent outside instantiation
@@ -62,6 +71,10 @@ public final class SecretsStore {
 	/**
 	 * Creates a {@linkplain SecretsStore} instance by loading or (if not yet existing) generating the necessary
 	 * security data.
+	 * <p>
+	 * Stores created before the introduction of the chunked signature keep using their existing
+	 * {@value EC256SignatureFactory#SIGNATURE_NAME} key as the default signature, so that existing signatures stay
+	 * valid. Only newly created stores use {@value EC256ChunkedSignatureFactory#SIGNATURE_NAME} by default.
 	 *
 	 * @param config The {@linkplain Config} object to use for initialization.
 	 * @return The created {@linkplain SecretsStore} instance.
@@ -104,7 +117,12 @@ public final class SecretsStore {
 			secretsStore.cipherMap.put(DEFAULT_CIPHER, createDefaultCipher());
 			updateSecretsFile = true;
 		}
-		if (!secretsStore.signatureMap.containsKey(DEFAULT_SIGNATURE)) {
+		if (!secretsStore.signatureMap.containsKey(DEFAULT_SIGNATURE)
+				&& secretsStore.signatureMap.containsKey(LEGACY_SIGNATURE)) {
+			LOG.info("Keeping existing signature ''{0}'' as default signature", LEGACY_SIGNATURE);
+
+			secretsStore.defaultSignature = LEGACY_SIGNATURE;
+		} else if (!secretsStore.signatureMap.containsKey(DEFAULT_SIGNATURE)) {
 			secretsStore.signatureMap.put(DEFAULT_SIGNATURE, createDefaultSignature());
 			updateSecretsFile = true;
 		}
@@ -159,6 +177,36 @@ public final class SecretsStore {
 		return cipher;
 	}
 
+	/**
+	 * Gets the number of currently cached decrypted secrets (see {@linkplain Passwords}).
+	 *
+	 * @return the number of currently cached decrypted secrets.
+	 */
+	public int cachedSecretCount() {
+		return this.secretCache.size();
+	}
+
+	/**
+	 * Invalidates all cached decrypted secrets.
+	 * <p>
+	 * The cached secret data is zeroed immediately. Cached secrets are also invalidated implicitly whenever the
+	 * {@linkplain Cipher} used for their decryption is replaced (re-key).
+	 */
+	public void invalidateSecrets() {
+		this.secretCache.invalidate();
+	}
+
+	@Nullable
+	CharSecret getCachedSecret(String encryptedSecret, Cipher cipher) {
+		return (this.secretCache.isEnabled() ? this.secretCache.get(encryptedSecret, cipher) : null);
+	}
+
+	void cacheSecret(String encryptedSecret, Cipher cipher, CharSecret secret) {
+		if (this.secretCache.isEnabled()) {
+			this.secretCache.put(encryptedSecret, cipher, secret);
+		}
+	}
+
 	/**
 	 * Gets the default {@linkplain Signature}.
 	 *
@@ -166,7 +214,7 @@ public final class SecretsStore {
 	 * @throws NoSuchAlgorithmException if the requested signature name is not known.
 	 */
 	public Signature getDefaultSignature() throws NoSuchAlgorithmException {
-		return getSignature(DEFAULT_SIGNATURE);
+		return getSignature(this.defaultSignature);
 	}
 
 	/**
@@ -18,6 +18,8 @@ package de.carne.lwjsd.runtime.security;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.security.GeneralSecurityException;
 
 /**
@@ -47,6 +49,23 @@ public abstract class Signature extends Secret {
 	 */
 	public abstract byte[] sign(InputStream data) throws IOException, GeneralSecurityException;
 
+	/**
+	 * Signs the content of the given file.
+	 * <p>
+	 * Signature implementations may override this function to take advantage of random file access.
+	 *
+	 * @param file the file to sign.
+	 * @return the generated signature bytes.
+	 * @throws IOException if an I/O error occurs during signing.
+	 * @throws GeneralSecurityException if an security error occurs during signing.
+	 * @see #sign(InputStream)
+	 */
+	public byte[] sign(Path file) throws IOException, GeneralSecurityException {
+		try (InputStream data = Files.newInputStream(file)) {
+			return sign(data);
+		}
+	}
+
 	/**
 	 * Verifies the data provided by the given {@linkplain InputStream}.
 	 *
@@ -59,4 +78,22 @@ public abstract class Signature extends Secret {
 	public abstract boolean verify(InputStream data, byte[] signatureBytes)
 			throws IOException, GeneralSecurityException;
 
+	/**
+	 * Verifies the content of the given file.
+	 * <p>
+	 * Signature implementations may override this function to take advantage of random file access.
+	 *
+	 * @param file the file to verify.
+	 * @param signatureBytes the signature bytes to verify against.
+	 * @return {@code true} if the verification succeeds. {@code false} otherwise.
+	 * @throws IOException if an I/O error occurs during signing.
+	 * @throws GeneralSecurityException if an security error occurs during verification.
+	 * @see #verify(InputStream, byte[])
+	 */
+	public boolean verify(Path file, byte[] signatureBytes) throws IOException, GeneralSecurityException {
+		try (InputStream data = Files.newInputStream(file)) {
+			return verify(data, signatureBytes);
+		}
+	}
+
 }
@@ -0,0 +1,94 @@
+/*
+ * Copyright (c) 2018-2021 Holger de Carne and contributors, All Rights Reserved.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.carne.lwjsd.runtime.server;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+import de.carne.boot.logging.Log;
+import de.carne.lwjsd.api.BootPhaseInfo;
+
+/**
+ * Records the boot phases of the master server on a monotonic time line (based upon {@linkplain System#nanoTime()}).
+ */
+final class BootTimeline {
+
+	private static final Log LOG = new Log();
+
+	private final long originNanos = System.nanoTime();
+	private final List<BootPhaseInfo> phases = new ArrayList<>();
+
+	/**
+	 * Gets the start of the time line.
+	 *
+	 * @return the start of the time line.
+	 */
+	public long origin() {
+		return this.originNanos;
+	}
+
+	/**
+	 * Records a boot phase which has been finished right now.
+	 *
+	 * @param name the name of the boot phase.
+	 * @param startNanos the start of the boot phase.
+	 * @return the end of the boot phase (which can be used as the start of a directly following boot phase).
+	 */
+	public long mark(String name, long startNanos) {
+		long finishNanos = System.nanoTime();
+
+		add(name, startNanos, finishNanos);
+		return finishNanos;
+	}
+
+	/**
+	 * Records a boot phase.
+	 *
+	 * @param name the name of the boot phase.
+	 * @param startNanos the start of the boot phase.
+	 * @param finishNanos the end of the boot phase.
+	 */
+	public synchronized void add(String name, long startNanos, long finishNanos) {
+		BootPhaseInfo phase = new BootPhaseInfo(name, Duration.ofNanos(startNanos - this.originNanos),
+				Duration.ofNanos(finishNanos - startNanos));
+
+		LOG.info("Boot phase ''{0}'' finished in {1} ms (+{2} ms)", phase.name(), phase.duration().toMillis(),
+				phase.offset().toMillis());
+
+		this.phases.add(phase);
+	}
+
+	/**
+	 * Gets the boot phases recorded so far.
+	 *
+	 * @return the boot phases recorded so far.
+	 */
+	public synchronized List<BootPhaseInfo> phases() {
+		return new ArrayList<>(this.phases);
+	}
+
+	/**
+	 * Gets the time elapsed since the start of the time line.
+	 *
+	 * @return the time elapsed since the start of the time line.
+	 */
+	public Duration elapsed() {
+		return Duration.ofNanos(System.nanoTime() - this.originNanos);
+	}
+
+}
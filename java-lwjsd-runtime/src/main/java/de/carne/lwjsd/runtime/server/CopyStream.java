@@ -18,21 +18,61 @@ package de.carne.lwjsd.runtime.server;
 
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.OutputStream;
-import java.nio.file.Files;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.nio.file.Path;
 import java.nio.file.StandardOpenOption;
 
 import org.eclipse.jdt.annotation.Nullable;
 
-class CopyStream extends InputStream {
+/**
+ * {@linkplain InputStream} wrapper copying all data read to a file.
+ * <p>
+ * Copied data is collected in a direct buffer and written to the target file in large chunks, regardless of the chunk
+ * size used by the consumer of this stream.
+ */
+public final class CopyStream extends InputStream {
+
+	private static final int BUFFER_SIZE = 256 * 1024;
 
 	private final InputStream in;
-	private final OutputStream out;
+	private final FileChannel out;
+	private final ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+	private long copied = 0;
 
+	/**
+	 * Constructs a new {@linkplain CopyStream} instance.
+	 * <p>
+	 * The target file is created or truncated if it already exists. Closing this stream does not close the wrapped
+	 * {@linkplain InputStream}.
+	 *
+	 * @param in the {@linkplain InputStream} to read from.
+	 * @param outPath the file to copy all read data to.
+	 * @throws IOException if an I/O error occurs while opening the target file.
+	 */
 	public CopyStream(InputStream in, Path outPath) throws IOException {
 		this.in = in;
-		this.out = Files.newOutputStream(outPath, StandardOpenOption.CREATE_NEW, StandardOpenOption.TRUNCATE_EXISTING);
+		this.out = FileChannel.open(outPath, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+				StandardOpenOption.TRUNCATE_EXISTING);
+	}
+
+	/**
+	 * Gets the number of bytes copied so far.
+	 *
+	 * @return the number of bytes copied so far.
+	 */
+	public long copied() {
+		return this.copied;
+	}
+
+	/**
+	 * Writes any pending data and forces it to the storage device.
+	 *
+	 * @throws IOException if an I/O error occurs.
+	 */
+	public void sync() throws IOException {
+		flush();
+		this.out.force(false);
 	}
 
 	@Override
@@ -40,7 +80,11 @@ class CopyStream extends InputStream {
 		int b = this.in.read();
 
 		if (b != -1) {
-			this.out.write(b);
+			if (!this.buffer.hasRemaining()) {
+				flush();
+			}
+			this.buffer.put((byte) b);
+			this.copied++;
 		}
 		return b;
 	}
@@ -49,15 +93,41 @@ class CopyStream extends InputStream {
 	public int read(byte @Nullable [] buf, int off, int len) throws IOException {
 		int read = this.in.read(buf, off, len);
 
-		if (read != -1) {
-			this.out.write(buf, off, read);
+		if (buf != null && read > 0) {
+			int copyOff = off;
+			int copyRemaining = read;
+
+			while (copyRemaining > 0) {
+				if (!this.buffer.hasRemaining()) {
+					flush();
+				}
+
+				int copyLen = Math.min(copyRemaining, this.buffer.remaining());
+
+				this.buffer.put(buf, copyOff, copyLen);
+				copyOff += copyLen;
+				copyRemaining -= copyLen;
+			}
+			this.copied += read;
 		}
 		return read;
 	}
 
 	@Override
 	public void close() throws IOException {
-		this.out.close();
+		try {
+			flush();
+		} finally {
+			this.out.close();
+		}
+	}
+
+	private void flush() throws IOException {
+		this.buffer.flip();
+		while (this.buffer.hasRemaining()) {
+			this.out.write(this.buffer);
+		}
+		this.buffer.clear();
 	}
 
 }
@@ -0,0 +1,385 @@
+/*
+ * Copyright (c) 2018-2021 Holger de Carne and contributors, All Rights Reserved.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.carne.lwjsd.runtime.server;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+import org.eclipse.jdt.annotation.Nullable;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+
+import de.carne.boot.Exceptions;
+import de.carne.boot.logging.Log;
+import de.carne.lwjsd.runtime.security.Signature;
+
+/**
+ * Persistent cache of successfully verified module files.
+ * <p>
+ * A module is considered unchanged since its last verification if its size, modification time, change time and file
+ * key (where supported by the file system), the digest of its trailing bytes as well as the digest of its signature
+ * files match the cached entry. As the trailing bytes of a jar file contain the zip central directory including the
+ * CRC of every entry, restoring the modification time of a replaced module file does not suffice to skip its
+ * verification. The cache file itself is signed using the default {@linkplain Signature} and discarded if its
+ * signature does not match.
+ */
+public final class ModuleVerificationCache {
+
+	private static final Log LOG = new Log();
+
+	private static final ObjectMapper JSON_OBJECT_MAPPER = new ObjectMapper()
+			.enable(SerializationFeature.INDENT_OUTPUT);
+
+	private static final String DIGEST_ALGORITHM = "SHA-256";
+	private static final int TAIL_DIGEST_SIZE = 64 * 1024;
+	private static final String CHANGE_TIME_ATTRIBUTE = "unix:ctime";
+
+	private final Map<String, JsonModuleVerification> verifications = new HashMap<>();
+	private final Path cacheFile;
+	private final Path signatureFile;
+	private final Signature signature;
+
+	private ModuleVerificationCache(Path cacheFile, Signature signature) {
+		this.cacheFile = cacheFile;
+		this.signatureFile = cacheFile.resolveSibling(cacheFile.getFileName() + "." + signature.name());
+		this.signature = signature;
+	}
+
+	/**
+	 * Loads the module verification cache.
+	 * <p>
+	 * If the cache file does not exist or cannot be verified, an empty cache is returned.
+	 *
+	 * @param cacheFile the cache file to use.
+	 * @param signature the {@linkplain Signature} to use for cache file signing.
+	 * @return the loaded cache.
+	 */
+	public static ModuleVerificationCache load(Path cacheFile, Signature signature) {
+		ModuleVerificationCache cache = new ModuleVerificationCache(cacheFile, signature);
+
+		if (Files.exists(cache.cacheFile) && Files.exists(cache.signatureFile)) {
+			LOG.info("Loading module verification cache ''{0}''...", cache.cacheFile);
+
+			try {
+				byte[] cacheBytes = Files.readAllBytes(cache.cacheFile);
+				byte[] signatureBytes = Files.readAllBytes(cache.signatureFile);
+
+				if (signature.verify(new ByteArrayInputStream(cacheBytes), signatureBytes)) {
+					JsonModuleVerificationCache json = JSON_OBJECT_MAPPER.readValue(cacheBytes,
+							JsonModuleVerificationCache.class);
+
+					for (JsonModuleVerification jsonModule : json.getModules()) {
+						cache.verifications.put(jsonModule.getFileName(), jsonModule);
+					}
+				} else {
+					LOG.warning("Discarding module verification cache ''{0}'' due to signature mismatch",
+							cache.cacheFile);
+				}
+			} catch (IOException | GeneralSecurityException e) {
+				LOG.warning(e, "Discarding unreadable module verification cache ''{0}''", cache.cacheFile);
+			}
+		}
+		return cache;
+	}
+
+	/**
+	 * Checks whether a module file has already been verified successfully and has not been changed since.
+	 *
+	 * @param moduleFile the module file to check.
+	 * @param signatureFiles the signature files of the module.
+	 * @return {@code true} if the module file has already been verified successfully.
+	 */
+	public boolean isVerified(Path moduleFile, Collection<Path> signatureFiles) {
+		JsonModuleVerification verification;
+
+		synchronized (this) {
+			verification = this.verifications.get(moduleFile.getFileName().toString());
+		}
+
+		boolean verified = false;
+
+		if (verification != null) {
+			try {
+				JsonModuleVerification current = newVerification(moduleFile, signatureFiles);
+
+				verified = verification.matches(current);
+			} catch (IOException | GeneralSecurityException e) {
+				LOG.warning(e, "Failed to check module verification cache for file ''{0}''", moduleFile);
+			}
+		}
+		return verified;
+	}
+
+	/**
+	 * Records the successful verification of a module file.
+	 *
+	 * @param moduleFile the verified module file.
+	 * @param signatureFiles the signature files of the module.
+	 */
+	public void setVerified(Path moduleFile, Collection<Path> signatureFiles) {
+		try {
+			JsonModuleVerification verification = newVerification(moduleFile, signatureFiles);
+
+			synchronized (this) {
+				this.verifications.put(verification.getFileName(), verification);
+				store();
+			}
+		} catch (IOException | GeneralSecurityException e) {
+			LOG.warning(e, "Failed to update module verification cache ''{0}''", this.cacheFile);
+		}
+	}
+
+	/**
+	 * Discards any cached verification of a module file.
+	 *
+	 * @param moduleFileName the name of the module file to discard.
+	 */
+	public synchronized void invalidate(String moduleFileName) {
+		if (this.verifications.remove(moduleFileName) != null) {
+			try {
+				store();
+			} catch (IOException | GeneralSecurityException e) {
+				LOG.warning(e, "Failed to update module verification cache ''{0}''", this.cacheFile);
+			}
+		}
+	}
+
+	private void store() throws IOException, GeneralSecurityException {
+		byte[] cacheBytes = JSON_OBJECT_MAPPER
+				.writeValueAsBytes(new JsonModuleVerificationCache(new ArrayList<>(this.verifications.values())));
+		byte[] signatureBytes = this.signature.sign(new ByteArrayInputStream(cacheBytes));
+
+		// A crash in between leaves a mismatching signature, which simply causes the cache to be discarded
+		writeAtomically(this.cacheFile, cacheBytes);
+		writeAtomically(this.signatureFile, signatureBytes);
+	}
+
+	private static void writeAtomically(Path file, byte[] bytes) throws IOException {
+		Path tempFile = file.resolveSibling(file.getFileName() + ".tmp");
+
+		Files.write(tempFile, bytes);
+		Files.move(tempFile, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+	}
+
+	private static JsonModuleVerification newVerification(Path moduleFile, Collection<Path> signatureFiles)
+			throws IOException, GeneralSecurityException {
+		BasicFileAttributes moduleAttributes = Files.readAttributes(moduleFile, BasicFileAttributes.class);
+		Object moduleFileKey = moduleAttributes.fileKey();
+		List<Path> sortedSignatureFiles = new ArrayList<>(signatureFiles);
+		MessageDigest digest = MessageDigest.getInstance(DIGEST_ALGORITHM);
+
+		sortedSignatureFiles.sort(null);
+		for (Path signatureFile : sortedSignatureFiles) {
+			digest.update(signatureFile.getFileName().toString().getBytes(StandardCharsets.UTF_8));
+			digest.update(Files.readAllBytes(signatureFile));
+		}
+
+		String signaturesDigest = Base64.getEncoder().encodeToString(digest.digest());
+
+		return new JsonModuleVerification(moduleFile.getFileName().toString(), moduleAttributes.size(),
+				moduleAttributes.lastModifiedTime().toMillis(), changeTime(moduleFile),
+				(moduleFileKey != null ? moduleFileKey.toString() : ""), tailDigest(moduleFile), signaturesDigest);
+	}
+
+	private static long changeTime(Path file) throws IOException {
+		long changeTime;
+
+		try {
+			// Unlike the modification time, the change time cannot be set by a user
+			changeTime = ((FileTime) Files.getAttribute(file, CHANGE_TIME_ATTRIBUTE)).toMillis();
+		} catch (UnsupportedOperationException | IllegalArgumentException e) {
+			Exceptions.ignore(e);
+			changeTime = -1;
+		}
+		return changeTime;
+	}
+
+	private static String tailDigest(Path file) throws IOException, GeneralSecurityException {
+		MessageDigest digest = MessageDigest.getInstance(DIGEST_ALGORITHM);
+
+		try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+			long position = Math.max(0, channel.size() - TAIL_DIGEST_SIZE);
+			ByteBuffer buffer = ByteBuffer.allocate((int) (channel.size() - position));
+
+			channel.position(position);
+			while (buffer.hasRemaining() && channel.read(buffer) >= 0) {
+				// Read until buffer is full or EOF
+			}
+			buffer.flip();
+			digest.update(buffer);
+		}
+		return Base64.getEncoder().encodeToString(digest.digest());
+	}
+
+	private static final class JsonModuleVerificationCache {
+
+		@Nullable
+		private Collection<JsonModuleVerification> modules;
+
+		// Implicitly used by ObjectMapper
+		@SuppressWarnings("unused")
+		public JsonModuleVerificationCache() {
+			// Nothing to do here
+		}
+
+		public JsonModuleVerificationCache(Collection<JsonModuleVerification> modules) {
+			this.modules = modules;
+		}
+
+		public Collection<JsonModuleVerification> getModules() {
+			return Objects.requireNonNull(this.modules);
+		}
+
+		// Implicitly used by ObjectMapper
+		@SuppressWarnings("unused")
+		public void setModules(Collection<JsonModuleVerification> modules) {
+			this.modules = modules;
+		}
+
+	}
+
+	private static final class JsonModuleVerification {
+
+		@Nullable
+		private String fileName;
+		private long size;
+		private long lastModified;
+		private long changeTime;
+		@Nullable
+		private String fileKey;
+		@Nullable
+		private String tailDigest;
+		@Nullable
+		private String signaturesDigest;
+
+		// Implicitly used by ObjectMapper
+		@SuppressWarnings("unused")
+		public JsonModuleVerification() {
+			// Nothing to do here
+		}
+
+		public JsonModuleVerification(String fileName, long size, long lastModified, long changeTime, String fileKey,
+				String tailDigest, String signaturesDigest) {
+			this.fileName = fileName;
+			this.size = size;
+			this.lastModified = lastModified;
+			this.changeTime = changeTime;
+			this.fileKey = fileKey;
+			this.tailDigest = tailDigest;
+			this.signaturesDigest = signaturesDigest;
+		}
+
+		boolean matches(JsonModuleVerification current) {
+			// Entries written by a previous version lack some of the attributes and therefore never match
+			return this.size == current.size && this.lastModified == current.lastModified
+					&& this.changeTime == current.changeTime && Objects.equals(this.fileKey, current.fileKey)
+					&& Objects.equals(this.tailDigest, current.tailDigest)
+					&& Objects.equals(this.signaturesDigest, current.signaturesDigest);
+		}
+
+		public String getFileName() {
+			return Objects.requireNonNull(this.fileName);
+		}
+
+		// Implicitly used by ObjectMapper
+		@SuppressWarnings("unused")
+		public void setFileName(String fileName) {
+			this.fileName = fileName;
+		}
+
+		public long getSize() {
+			return this.size;
+		}
+
+		// Implicitly used by ObjectMapper
+		@SuppressWarnings("unused")
+		public void setSize(long size) {
+			this.size = size;
+		}
+
+		public long getLastModified() {
+			return this.lastModified;
+		}
+
+		// Implicitly used by ObjectMapper
+		@SuppressWarnings("unused")
+		public void setLastModified(long lastModified) {
+			this.lastModified = lastModified;
+		}
+
+		public long getChangeTime() {
+			return this.changeTime;
+		}
+
+		// Implicitly used by ObjectMapper
+		@SuppressWarnings("unused")
+		public void setChangeTime(long changeTime) {
+			this.changeTime = changeTime;
+		}
+
+		public String getFileKey() {
+			return Objects.requireNonNull(this.fileKey);
+		}
+
+		// Implicitly used by ObjectMapper
+		@SuppressWarnings("unused")
+		public void setFileKey(String fileKey) {
+			this.fileKey = fileKey;
+		}
+
+		public String getTailDigest() {
+			return Objects.requireNonNull(this.tailDigest);
+		}
+
+		// Implicitly used by ObjectMapper
+		@SuppressWarnings("unused")
+		public void setTailDigest(String tailDigest) {
+			this.tailDigest = tailDigest;
+		}
+
+		public String getSignaturesDigest() {
+			return Objects.requireNonNull(this.signaturesDigest);
+		}
+
+		// Implicitly used by ObjectMapper
+		@SuppressWarnings("unused")
+		public void setSignaturesDigest(String signaturesDigest) {
+			this.signaturesDigest = signaturesDigest;
+		}
+
+	}
+
+}
@@ -24,12 +24,16 @@ import java.nio.file.Files;
 import java.nio.file.Path;
 import java.security.GeneralSecurityException;
 import java.security.KeyStore;
-import java.util.Collection;
+import java.time.Duration;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
-import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
 
 import javax.net.ssl.KeyManagerFactory;
@@ -47,11 +51,11 @@ import org.glassfish.jersey.server.ResourceConfig;
 
 import de.carne.boot.Exceptions;
 import de.carne.boot.logging.Log;
-import de.carne.io.IOUtil;
 import de.carne.lwjsd.api.ModuleInfo;
 import de.carne.lwjsd.api.ReasonMessage;
 import de.carne.lwjsd.api.Service;
 import de.carne.lwjsd.api.ServiceContext;
+import de.carne.lwjsd.api.ServiceHandle;
 import de.carne.lwjsd.api.ServiceId;
 import de.carne.lwjsd.api.ServiceInfo;
 import de.carne.lwjsd.api.ServiceManager;
@@ -64,7 +68,6 @@ import de.carne.lwjsd.runtime.security.CharSecret;
 import de.carne.lwjsd.runtime.security.Passwords;
 import de.carne.lwjsd.runtime.security.SecretsStore;
 import de.carne.lwjsd.runtime.ws.ControlApiExceptionMapper;
-import de.carne.nio.file.FileUtil;
 import de.carne.util.Debug;
 import de.carne.util.Late;
 import de.carne.util.SystemProperties;
@@ -81,19 +84,26 @@ public class Server implements ServiceManager, ServiceContext, AutoCloseable {
 	private static final int REQUEST_BACKLOG = getIntDefault(".requestBacklog", 100);
 	private static final long WAIT_TIMEOUT = getLongDefault(".waitTimeout", 1000);
 
-	private interface Request {
+	@FunctionalInterface
+	private interface Request<T> {
 
-		void process() throws ServiceManagerException;
+		T process() throws ServiceManagerException;
 
 	}
 
 	private volatile ServiceManagerState state = ServiceManagerState.CONFIGURED;
+	private final CompletableFuture<ServiceManagerState> startedState = new CompletableFuture<>();
+	private final CompletableFuture<ServiceManagerState> stoppedState = new CompletableFuture<>();
 	private final SecretsStore secretsStore;
 	private final ConfigStore configStore;
 	private final ServiceStore serviceStore;
-	private final BlockingQueue<Request> requests = new LinkedBlockingQueue<>(REQUEST_BACKLOG);
+	private final boolean fastBoot;
+	private final ThreadPoolExecutor controlExecutor = new ThreadPoolExecutor(1, 1, 0, TimeUnit.MILLISECONDS,
+			new LinkedBlockingQueue<>(REQUEST_BACKLOG), this::newControlThread);
 	private final Late<Thread> serverThreadHolder = new Late<>();
 	private final Late<HttpServer> httpServerHolder = new Late<>();
+	private final BootTimeline bootTimeline = new BootTimeline();
+	private final Map<String, Runnable> deferredBootTasks = new LinkedHashMap<>();
 
 	/**
 	 * Constructs new {@linkplain Server} instance.
@@ -104,19 +114,61 @@ public class Server implements ServiceManager, ServiceContext, AutoCloseable {
 	 * @throws ServiceManagerException if an initialization error occurs during server setup.
 	 */
 	public Server(Config config) throws ServiceManagerException {
+		this(config, false);
+	}
+
+	/**
+	 * Constructs new {@linkplain Server} instance.
+	 * <p>
+	 * Invoke {@linkplain #start(boolean)} to perform the actual server startup.
+	 * <p>
+	 * In fast boot mode any work not required to accept control requests (module verification and state file
+	 * resync) is deferred until the HTTP server is up and running.
+	 *
+	 * @param config the {@linkplain Config} instance to use.
+	 * @param fastBoot whether to start up in fast boot mode.
+	 * @throws ServiceManagerException if an initialization error occurs during server setup.
+	 */
+	public Server(Config config, boolean fastBoot) throws ServiceManagerException {
 		try {
+			long phaseStart = this.bootTimeline.origin();
+
 			this.secretsStore = SecretsStore.create(config);
+			phaseStart = this.bootTimeline.mark("SecretsStore.create", phaseStart);
 			this.configStore = ConfigStore.create(config);
-			this.serviceStore = ServiceStore.create(this.secretsStore, this, config);
+			phaseStart = this.bootTimeline.mark("ConfigStore.create", phaseStart);
+			this.serviceStore = ServiceStore.create(this.secretsStore, this, this.configStore, fastBoot);
+			this.bootTimeline.mark("ServiceStore.create", phaseStart);
 		} catch (IOException | GeneralSecurityException e) {
 			throw new ServiceManagerException(e, "Failed to open required store");
 		}
+		this.fastBoot = fastBoot;
+	}
+
+	/**
+	 * Adds a boot task to be run as soon as the HTTP server is up and running (and hence ready to accept control
+	 * requests).
+	 * <p>
+	 * Deferred boot tasks are run in the order they have been added and are recorded as individual boot phases.
+	 *
+	 * @param name the name of the boot task.
+	 * @param task the boot task to run.
+	 * @throws ServiceManagerException if the server has already been started.
+	 */
+	public synchronized void addDeferredBootTask(String name, Runnable task) throws ServiceManagerException {
+		if (this.serverThreadHolder.getOptional().isPresent()) {
+			throw new ServiceManagerException(
+					ReasonMessage.illegalState("Master server has already been started (status: ''{0}'')", this.state));
+		}
+		this.deferredBootTasks.put(name, task);
 	}
 
 	/**
 	 * Starts the master server and sets up the control interface as well as any already configured services.
 	 * <p>
 	 * If the server is started in the current thread the function only returns after the server has been stopped.
+	 * Otherwise the function returns as soon as the server is up and running and all auto start services have been
+	 * started.
 	 *
 	 * @param foreground whether to start and run the server in the current thread ({@code true}) or in a background
 	 * thread.
@@ -124,49 +176,14 @@ public class Server implements ServiceManager, ServiceContext, AutoCloseable {
 	 * @throws ServiceManagerException if the startup fails.
 	 * @throws InterruptedException if the thread is interrupted during server startup or execution.
 	 */
-	public synchronized Thread start(boolean foreground) throws ServiceManagerException, InterruptedException {
-		if (this.state != ServiceManagerState.CONFIGURED) {
-			throw new ServiceManagerException(
-					ReasonMessage.illegalState("Master server has already been started (status: ''{0}'')", this.state));
-		}
-
-		Thread thread;
+	public Thread start(boolean foreground) throws ServiceManagerException, InterruptedException {
+		Thread thread = claimServerThread(foreground);
 
 		if (foreground) {
-			LOG.info("Starting master server...");
-			LOG.debug("Using {0}", this.configStore);
-
-			startHttpServer();
-
-			this.state = ServiceManagerState.RUNNING;
-			notifyAll();
-
-			LOG.notice("Master server up and running");
-
-			this.serviceStore.autoStartServices();
-			thread = this.serverThreadHolder.set(Thread.currentThread());
-			logUsedMemory();
-			while (processRequest()) {
-				sleep();
-			}
-			logUsedMemory();
+			run();
 		} else {
-			thread = new Thread(() -> {
-				try {
-					start(true);
-				} catch (InterruptedException e) {
-					Thread.currentThread().interrupt();
-					throw Exceptions.toRuntime(e);
-				} catch (ServiceManagerException e) {
-					throw Exceptions.toRuntime(e);
-				}
-			}, toString());
-			thread.setDaemon(true);
-			thread.setUncaughtExceptionHandler(this::uncaughtExceptionHandler);
 			thread.start();
-			do {
-				wait(WAIT_TIMEOUT);
-			} while (this.state == ServiceManagerState.CONFIGURED);
+			awaitResult(this.startedState);
 		}
 		return thread;
 	}
@@ -195,42 +212,25 @@ public class Server implements ServiceManager, ServiceContext, AutoCloseable {
 			throws ServiceManagerException {
 		LOG.info("Receiving module file ''{0}''...", fileName);
 
-		Path tempReceiveDir = null;
-		ModuleInfo status;
-
-		try {
-			tempReceiveDir = Files.createTempDirectory("receive");
-
-			Path file = tempReceiveDir.resolve(fileName);
+		ModuleInfo status = this.serviceStore.registerModule(fileStream, fileName, force);
 
-			IOUtil.copyStream(file.toFile(), fileStream);
-			status = registerModule(file, force);
-		} catch (IOException e) {
-			throw new ServiceManagerException(e, "Failed to receive file ''{0}''", fileName);
-		} finally {
-			if (tempReceiveDir != null) {
-				try {
-					FileUtil.delete(tempReceiveDir);
-				} catch (IOException e) {
-					LOG.warning(e, "Failed to delete temporary directory ''{0}''", tempReceiveDir);
-				}
-			}
-		}
+		this.serviceStore.syncStore();
+		logUsedMemory();
 		return status;
 	}
 
 	@Override
 	public ServiceManagerInfo queryStatus() throws ServiceManagerException {
-		Collection<ModuleInfo> moduleInfos = this.serviceStore.queryModuleStatus();
-		Collection<ServiceInfo> serviceInfos = this.serviceStore.queryServiceStatus();
-
-		logUsedMemory();
-		return new ServiceManagerInfo(this.configStore.getBaseUri(), this.state, moduleInfos, serviceInfos);
+		return this.serviceStore.queryStatus();
 	}
 
 	@Override
 	public void requestStop() throws ServiceManagerException {
-		submitRequest(this::stop);
+		submitRequest(this::stop).whenComplete((stopState, exception) -> {
+			if (exception != null) {
+				LOG.error(exception, "Master server stop failed");
+			}
+		});
 	}
 
 	@Override
@@ -302,14 +302,18 @@ public class Server implements ServiceManager, ServiceContext, AutoCloseable {
 	}
 
 	@Override
-	public synchronized void close() {
+	public <T extends Service> ServiceHandle<T> getServiceHandle(Class<T> serviceClass) {
+		return this.serviceStore.getServiceHandle(serviceClass);
+	}
+
+	@Override
+	public void close() {
 		LOG.info("Cleaning up master server resources...");
 
-		int pendingRequestCount = this.requests.size();
+		List<Runnable> pendingRequests = this.controlExecutor.shutdownNow();
 
-		if (pendingRequestCount > 0) {
-			LOG.warning("Discarding {0} unprocessed server requests", pendingRequestCount);
-			this.requests.clear();
+		if (!pendingRequests.isEmpty()) {
+			LOG.warning("Discarding {0} unprocessed server requests", pendingRequests.size());
 		}
 		this.httpServerHolder.getOptional().ifPresent(HttpServer::shutdownNow);
 		this.serviceStore.close();
@@ -324,7 +328,10 @@ public class Server implements ServiceManager, ServiceContext, AutoCloseable {
 		LOG.error(exception, "Server failed with uncaught exception: {0}", exception.getClass().getName());
 
 		try {
-			stop();
+			awaitResult(submitRequest(this::stop));
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			exception.addSuppressed(e);
 		} catch (ServiceManagerException e) {
 			exception.addSuppressed(e);
 		}
@@ -336,53 +343,164 @@ public class Server implements ServiceManager, ServiceContext, AutoCloseable {
 		}
 	}
 
-	private synchronized void stop() throws ServiceManagerException {
-		LOG.info("Stopping master server...");
+	private synchronized Thread claimServerThread(boolean foreground) throws ServiceManagerException {
+		if (this.state != ServiceManagerState.CONFIGURED || this.serverThreadHolder.getOptional().isPresent()) {
+			throw new ServiceManagerException(
+					ReasonMessage.illegalState("Master server has already been started (status: ''{0}'')", this.state));
+		}
 
-		this.serviceStore.safeUnloadAllServices();
-		this.state = ServiceManagerState.STOPPED;
-		notifyAll();
-		try {
-			this.httpServerHolder.getOptional().ifPresent(httpServer -> {
+		Thread thread;
+
+		if (foreground) {
+			thread = Thread.currentThread();
+		} else {
+			thread = new Thread(() -> {
 				try {
-					httpServer.shutdown(WAIT_TIMEOUT, TimeUnit.MILLISECONDS).get();
+					run();
 				} catch (InterruptedException e) {
 					Thread.currentThread().interrupt();
 					throw Exceptions.toRuntime(e);
-				} catch (ExecutionException e) {
-					throw new FunctionException(e);
+				} catch (ServiceManagerException e) {
+					throw Exceptions.toRuntime(e);
 				}
-			});
-		} catch (FunctionException e) {
-			throw new ServiceManagerException(e.getCause(), "HTTP server shutdown failed");
+			}, toString());
+			thread.setDaemon(true);
+			thread.setUncaughtExceptionHandler(this::uncaughtExceptionHandler);
 		}
-		logUsedMemory();
+		return this.serverThreadHolder.set(thread);
+	}
+
+	private void run() throws ServiceManagerException, InterruptedException {
+		LOG.info("Starting master server...");
+		LOG.debug("Using {0}", this.configStore);
+
+		long phaseStart = System.nanoTime();
+
+		startHttpServer();
+		this.bootTimeline.mark("startHttpServer", phaseStart);
+
+		Duration acceptingElapsed = this.bootTimeline.elapsed();
 
-		LOG.notice("Master server has been stopped");
+		this.state = ServiceManagerState.RUNNING;
+		this.serviceStore.publishManagerState(this.state);
+
+		LOG.notice("Master server up and running");
+
+		runDeferredBootTasks();
+
+		ServiceStartScheduler.Report autoStartReport = this.serviceStore.autoStartServices();
+
+		autoStartReport.startNanos().forEach((serviceId, startNanos) -> this.bootTimeline.add(serviceId.toString(),
+				startNanos, startNanos + autoStartReport.startDurations().get(serviceId).toNanos()));
+		this.serviceStore.publishBootPhaseInfos(this.bootTimeline.phases());
+
+		LOG.notice("Master server booted in {0} ms (accepting requests after {1} ms)",
+				this.bootTimeline.elapsed().toMillis(), acceptingElapsed.toMillis());
+
+		this.startedState.complete(this.state);
+		logUsedMemory();
+		awaitResult(this.stoppedState);
+		logUsedMemory();
 	}
 
-	private synchronized boolean processRequest() throws ServiceManagerException {
-		Request request = this.requests.poll();
+	private void runDeferredBootTasks() throws ServiceManagerException {
+		if (this.fastBoot) {
+			long phaseStart = System.nanoTime();
+
+			this.serviceStore.finishDeferredBoot();
+			this.bootTimeline.mark("ServiceStore.finishDeferredBoot", phaseStart);
+		}
+
+		Map<String, Runnable> tasks;
 
-		if (request != null) {
-			request.process();
+		synchronized (this) {
+			tasks = new LinkedHashMap<>(this.deferredBootTasks);
+			this.deferredBootTasks.clear();
+		}
+		for (Map.Entry<String, Runnable> taskEntry : tasks.entrySet()) {
+			String taskName = taskEntry.getKey();
+
+			LOG.info("Running deferred boot task ''{0}''...", taskName);
+
+			long phaseStart = System.nanoTime();
+
+			try {
+				taskEntry.getValue().run();
+			} catch (RuntimeException e) {
+				throw new ServiceManagerException(e, "Deferred boot task ''{0}'' failed", taskName);
+			}
+			this.bootTimeline.mark(taskName, phaseStart);
 		}
-		return this.state == ServiceManagerState.RUNNING;
 	}
 
-	private synchronized void sleep() throws InterruptedException {
-		while (this.state == ServiceManagerState.RUNNING && this.requests.isEmpty()) {
-			this.wait(WAIT_TIMEOUT);
+	private ServiceManagerState stop() throws ServiceManagerException {
+		if (this.state == ServiceManagerState.STOPPED) {
+			LOG.info("Master server already stopped");
+			return this.state;
+		}
+
+		LOG.info("Stopping master server...");
+
+		try {
+			this.serviceStore.safeUnloadAllServices();
+			this.state = ServiceManagerState.STOPPED;
+			this.serviceStore.publishManagerState(this.state);
+			try {
+				this.httpServerHolder.getOptional().ifPresent(httpServer -> {
+					try {
+						httpServer.shutdown(WAIT_TIMEOUT, TimeUnit.MILLISECONDS).get();
+					} catch (InterruptedException e) {
+						Thread.currentThread().interrupt();
+						throw Exceptions.toRuntime(e);
+					} catch (ExecutionException e) {
+						throw new FunctionException(e);
+					}
+				});
+			} catch (FunctionException e) {
+				throw new ServiceManagerException(e.getCause(), "HTTP server shutdown failed");
+			}
+			logUsedMemory();
+
+			LOG.notice("Master server has been stopped");
+		} finally {
+			this.state = ServiceManagerState.STOPPED;
+			this.serviceStore.publishManagerState(this.state);
+			this.startedState.complete(this.state);
+			this.stoppedState.complete(this.state);
 		}
+		return this.state;
 	}
 
-	private synchronized void submitRequest(Request request) throws ServiceManagerException {
+	private <T> CompletableFuture<T> submitRequest(Request<T> request) throws ServiceManagerException {
+		CompletableFuture<T> result = new CompletableFuture<>();
+
 		try {
-			this.requests.add(request);
-		} catch (IllegalStateException e) {
+			this.controlExecutor.execute(() -> {
+				try {
+					result.complete(request.process());
+				} catch (ServiceManagerException | RuntimeException e) {
+					result.completeExceptionally(e);
+				}
+			});
+		} catch (RejectedExecutionException e) {
 			throw new ServiceManagerException(e, "Too many unprocessed requests");
 		}
-		notifyAll();
+		return result;
+	}
+
+	private static <T> T awaitResult(CompletableFuture<T> result) throws ServiceManagerException, InterruptedException {
+		try {
+			return result.get();
+		} catch (ExecutionException e) {
+			throw new ServiceManagerException(e.getCause(), "Server request failed");
+		}
+	}
+
+	private Thread newControlThread(Runnable runnable) {
+		Thread thread = new Thread(runnable, toString() + " (control)");
+
+		thread.setDaemon(true);
+		return thread;
 	}
 
 	private void startHttpServer() throws ServiceManagerException {
@@ -0,0 +1,330 @@
+/*
+ * Copyright (c) 2018-2021 Holger de Carne and contributors, All Rights Reserved.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.carne.lwjsd.runtime.server;
+
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.eclipse.jdt.annotation.Nullable;
+
+import de.carne.boot.logging.Log;
+import de.carne.lwjsd.api.ServiceId;
+import de.carne.lwjsd.api.ServiceManagerException;
+
+/**
+ * Starts a set of services according to their declared dependencies. Services without pending dependencies are
+ * started in parallel using a bounded thread pool.
+ */
+public final class ServiceStartScheduler {
+
+	private static final Log LOG = new Log();
+
+	/**
+	 * Action invoked to start a single service.
+	 */
+	@FunctionalInterface
+	public interface StartAction {
+
+		/**
+		 * Starts a service.
+		 *
+		 * @param serviceId the id of the service to start.
+		 * @throws ServiceManagerException if the service start fails.
+		 */
+		void start(ServiceId serviceId) throws ServiceManagerException;
+
+	}
+
+	private final Map<ServiceId, Node> nodes = new LinkedHashMap<>();
+	private final int parallelism;
+
+	/**
+	 * Constructs a new {@linkplain ServiceStartScheduler} instance.
+	 *
+	 * @param parallelism the maximum number of services to start in parallel.
+	 */
+	public ServiceStartScheduler(int parallelism) {
+		this.parallelism = Math.max(parallelism, 1);
+	}
+
+	/**
+	 * Checks whether a service has already been added.
+	 *
+	 * @param serviceId the id of the service to check.
+	 * @return {@code true} if the service has already been added.
+	 */
+	public boolean contains(ServiceId serviceId) {
+		return this.nodes.containsKey(serviceId);
+	}
+
+	/**
+	 * Adds a service to start.
+	 *
+	 * @param serviceId the id of the service to add.
+	 * @param dependencies the ids of the services which have to be started before.
+	 */
+	public void addService(ServiceId serviceId, Collection<ServiceId> dependencies) {
+		this.nodes.put(serviceId, new Node(serviceId, dependencies));
+	}
+
+	/**
+	 * Starts all added services with resolvable dependencies and waits until all of them have been processed.
+	 *
+	 * @param action the action to invoke for every service to start.
+	 * @return the {@linkplain Report} of this run.
+	 * @throws InterruptedException if the calling thread has been interrupted while waiting.
+	 */
+	public Report run(StartAction action) throws InterruptedException {
+		Collection<Node> schedulableNodes = resolveSchedulableNodes();
+		long startNanos = System.nanoTime();
+
+		if (!schedulableNodes.isEmpty()) {
+			CountDownLatch pendingNodes = new CountDownLatch(schedulableNodes.size());
+			AtomicInteger threadCount = new AtomicInteger();
+			ExecutorService executor = Executors
+					.newFixedThreadPool(Math.min(this.parallelism, schedulableNodes.size()), runnable -> {
+						Thread thread = new Thread(runnable,
+								ServiceStartScheduler.class.getSimpleName() + " #" + threadCount.incrementAndGet());
+
+						thread.setDaemon(true);
+						return thread;
+					});
+
+			try {
+				for (Node node : schedulableNodes) {
+					if (node.dependencies.isEmpty()) {
+						executor.execute(() -> runNode(executor, pendingNodes, action, node));
+					}
+				}
+				pendingNodes.await();
+			} finally {
+				executor.shutdownNow();
+			}
+		}
+		return new Report(this.nodes.values(), Duration.ofNanos(System.nanoTime() - startNanos));
+	}
+
+	private Collection<Node> resolveSchedulableNodes() {
+		Set<Node> schedulableNodes = new LinkedHashSet<>(this.nodes.size());
+		Deque<Node> readyNodes = new ArrayDeque<>();
+
+		for (Node node : this.nodes.values()) {
+			int resolvableDependencyCount = 0;
+
+			for (ServiceId dependency : node.dependencies) {
+				Node dependencyNode = this.nodes.get(dependency);
+
+				if (dependencyNode != null) {
+					dependencyNode.dependents.add(node);
+					resolvableDependencyCount++;
+				}
+			}
+			if (resolvableDependencyCount == node.dependencies.size()) {
+				node.pendingDependencyCount.set(resolvableDependencyCount);
+				if (resolvableDependencyCount == 0) {
+					readyNodes.add(node);
+				}
+			} else {
+				// Unresolvable dependencies are never satisfied
+				node.pendingDependencyCount.set(Integer.MAX_VALUE);
+			}
+		}
+		while (!readyNodes.isEmpty()) {
+			Node node = readyNodes.remove();
+
+			schedulableNodes.add(node);
+			for (Node dependent : node.dependents) {
+				if (dependent.pendingDependencyCount.decrementAndGet() == 0) {
+					readyNodes.add(dependent);
+				}
+			}
+		}
+		for (Node node : this.nodes.values()) {
+			if (!schedulableNodes.contains(node)) {
+				LOG.warning("Skipping service ''{0}'' due to unresolvable or cyclic dependencies {1}", node.id,
+						node.dependencies);
+			}
+			node.dependents.retainAll(schedulableNodes);
+			node.pendingDependencyCount.set(node.dependencies.size());
+		}
+		return schedulableNodes;
+	}
+
+	private void runNode(ExecutorService executor, CountDownLatch pendingNodes, StartAction action, Node node) {
+		node.startNanos = System.nanoTime();
+		try {
+			if (!node.dependencyFailed) {
+				action.start(node.id);
+				node.started = true;
+			} else {
+				LOG.warning("Skipping service ''{0}'' due to failed dependencies {1}", node.id, node.dependencies);
+			}
+		} catch (ServiceManagerException | RuntimeException e) {
+			node.failure = e;
+			LOG.warning(e, "Failed to auto start service ''{0}''", node.id);
+		} catch (LinkageError e) {
+			// Linkage errors (e.g. caused by a broken module jar) must not stall the remaining start sequence. Any
+			// other error is propagated; the bookkeeping below still ensures the scheduler run terminates.
+			node.failure = e;
+			LOG.error(e, "Failed to auto start service ''{0}''", node.id);
+		} finally {
+			node.finishNanos = System.nanoTime();
+			for (Node dependent : node.dependents) {
+				if (!node.started) {
+					dependent.dependencyFailed = true;
+				}
+				if (dependent.pendingDependencyCount.decrementAndGet() == 0) {
+					executor.execute(() -> runNode(executor, pendingNodes, action, dependent));
+				}
+			}
+			pendingNodes.countDown();
+		}
+	}
+
+	private static final class Node {
+
+		final ServiceId id;
+		final List<ServiceId> dependencies;
+		final List<Node> dependents = new ArrayList<>();
+		final AtomicInteger pendingDependencyCount = new AtomicInteger();
+		volatile boolean dependencyFailed = false;
+		volatile boolean started = false;
+		@Nullable
+		volatile Throwable failure = null;
+		volatile long startNanos = 0;
+		volatile long finishNanos = 0;
+
+		Node(ServiceId id, Collection<ServiceId> dependencies) {
+			this.id = id;
+			this.dependencies = new ArrayList<>(dependencies);
+		}
+
+		Duration duration() {
+			return Duration.ofNanos(this.finishNanos - this.startNanos);
+		}
+
+	}
+
+	/**
+	 * Outcome of a {@linkplain ServiceStartScheduler} run.
+	 */
+	public static final class Report {
+
+		private final Map<ServiceId, Long> startNanos = new LinkedHashMap<>();
+		private final Map<ServiceId, Duration> startDurations = new LinkedHashMap<>();
+		private final Map<ServiceId, Throwable> failures = new LinkedHashMap<>();
+		private final List<ServiceId> criticalPath = new ArrayList<>();
+		private final Duration elapsed;
+
+		Report(Collection<Node> nodes, Duration elapsed) {
+			Node criticalNode = null;
+
+			for (Node node : nodes) {
+				if (node.started) {
+					this.startNanos.put(node.id, node.startNanos);
+					this.startDurations.put(node.id, node.duration());
+					if (criticalNode == null || criticalNode.finishNanos < node.finishNanos) {
+						criticalNode = node;
+					}
+				}
+
+				Throwable failure = node.failure;
+
+				if (failure != null) {
+					this.failures.put(node.id, failure);
+				}
+			}
+			while (criticalNode != null) {
+				this.criticalPath.add(0, criticalNode.id);
+				criticalNode = latestFinishedDependency(nodes, criticalNode);
+			}
+			this.elapsed = elapsed;
+		}
+
+		private static @Nullable Node latestFinishedDependency(Collection<Node> nodes, Node node) {
+			Node latestNode = null;
+
+			for (Node dependencyNode : nodes) {
+				if (dependencyNode.dependents.contains(node)
+						&& (latestNode == null || latestNode.finishNanos < dependencyNode.finishNanos)) {
+					latestNode = dependencyNode;
+				}
+			}
+			return latestNode;
+		}
+
+		/**
+		 * Gets the start times (as returned by {@linkplain System#nanoTime()}) of all successfully started services.
+		 *
+		 * @return the start times of all successfully started services.
+		 */
+		public Map<ServiceId, Long> startNanos() {
+			return Collections.unmodifiableMap(this.startNanos);
+		}
+
+		/**
+		 * Gets the start durations of all successfully started services.
+		 *
+		 * @return the start durations of all successfully started services.
+		 */
+		public Map<ServiceId, Duration> startDurations() {
+			return Collections.unmodifiableMap(this.startDurations);
+		}
+
+		/**
+		 * Gets the failures of all services which could not be started.
+		 *
+		 * @return the failures of all services which could not be started.
+		 */
+		public Map<ServiceId, Throwable> failures() {
+			return Collections.unmodifiableMap(this.failures);
+		}
+
+		/**
+		 * Gets the chain of dependent services which determined the overall start duration.
+		 *
+		 * @return the chain of dependent services which determined the overall start duration.
+		 */
+		public List<ServiceId> criticalPath() {
+			return Collections.unmodifiableList(this.criticalPath);
+		}
+
+		/**
+		 * Gets the overall start duration.
+		 *
+		 * @return the overall start duration.
+		 */
+		public Duration elapsed() {
+			return this.elapsed;
+		}
+
+	}
+
+}
@@ -0,0 +1,490 @@
+/*
+ * Copyright (c) 2018-2021 Holger de Carne and contributors, All Rights Reserved.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.carne.lwjsd.runtime.server;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.function.Supplier;
+
+import org.eclipse.jdt.annotation.Nullable;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+
+import de.carne.boot.logging.Log;
+import de.carne.lwjsd.api.ServiceId;
+import de.carne.util.SystemProperties;
+
+/**
+ * Persists the service registrations as a snapshot file plus an append-only journal of subsequent changes.
+ * <p>
+ * Changes are appended as single line records to the journal. Concurrent syncs are group committed, meaning a single
+ * {@linkplain FileChannel#force(boolean)} call covers all records appended so far. As soon as the journal exceeds a
+ * configurable number of records it is compacted into a new snapshot, which atomically replaces the previous one.
+ */
+public final class ServiceStateJournal implements Closeable {
+
+	private static final Log LOG = new Log();
+
+	private static final ObjectMapper SNAPSHOT_OBJECT_MAPPER = new ObjectMapper()
+			.enable(SerializationFeature.INDENT_OUTPUT);
+	private static final ObjectMapper JOURNAL_OBJECT_MAPPER = new ObjectMapper();
+
+	private static final int COMPACT_THRESHOLD = SystemProperties
+			.intValue(ServiceStateJournal.class.getName() + ".compactThreshold", 1000);
+
+	private static final String OPERATION_PUT = "put";
+	private static final String OPERATION_REMOVE = "remove";
+
+	private final Object forceLock = new Object();
+	private final Path snapshotFile;
+	private final Path journalFile;
+	private final FileChannel journalChannel;
+	private final Map<ServiceId, Boolean> services;
+	private final int compactThreshold;
+	private volatile int journalRecordCount;
+	private volatile long appendedSequence = 0;
+	private long forcedSequence = 0;
+
+	private ServiceStateJournal(Path snapshotFile, Path journalFile, FileChannel journalChannel,
+			Map<ServiceId, Boolean> services, int journalRecordCount, int compactThreshold) {
+		this.snapshotFile = snapshotFile;
+		this.journalFile = journalFile;
+		this.journalChannel = journalChannel;
+		this.services = services;
+		this.compactThreshold = compactThreshold;
+		this.journalRecordCount = journalRecordCount;
+	}
+
+	/**
+	 * Opens the journal and restores the persisted service registrations by replaying the snapshot file followed by
+	 * the journal file.
+	 *
+	 * @param snapshotFile the snapshot file to use.
+	 * @param journalFile the journal file to use.
+	 * @return the opened journal.
+	 * @throws IOException if an I/O error occurs while reading the persisted state.
+	 */
+	public static ServiceStateJournal open(Path snapshotFile, Path journalFile) throws IOException {
+		return open(snapshotFile, journalFile, COMPACT_THRESHOLD);
+	}
+
+	/**
+	 * Opens the journal and restores the persisted service registrations by replaying the snapshot file followed by
+	 * the journal file.
+	 *
+	 * @param snapshotFile the snapshot file to use.
+	 * @param journalFile the journal file to use.
+	 * @param compactThreshold the number of journal records causing the journal to be compacted.
+	 * @return the opened journal.
+	 * @throws IOException if an I/O error occurs while reading the persisted state.
+	 */
+	public static ServiceStateJournal open(Path snapshotFile, Path journalFile, int compactThreshold)
+			throws IOException {
+		Map<ServiceId, Boolean> services = new HashMap<>();
+
+		if (Files.exists(snapshotFile)) {
+			JsonServiceStore json = SNAPSHOT_OBJECT_MAPPER.readValue(snapshotFile.toFile(), JsonServiceStore.class);
+
+			for (JsonServiceStoreService jsonService : json.getServices()) {
+				services.put(new ServiceId(jsonService.getModuleName(), jsonService.getServiceName()),
+						jsonService.getAutoStartFlag());
+			}
+		}
+
+		JournalReplay journalReplay = new JournalReplay();
+
+		if (Files.exists(journalFile)) {
+			journalReplay = replayJournal(journalFile, services);
+		}
+
+		FileChannel journalChannel = FileChannel.open(journalFile, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+				StandardOpenOption.APPEND);
+
+		try {
+			// Cut off any torn trailing record, as otherwise new records would be appended to it
+			if (journalChannel.size() > journalReplay.validLength) {
+				LOG.warning("Truncating journal file ''{0}'' to {1} bytes", journalFile, journalReplay.validLength);
+
+				journalChannel.truncate(journalReplay.validLength);
+				journalChannel.force(false);
+			}
+		} catch (IOException e) {
+			journalChannel.close();
+			throw e;
+		}
+		return new ServiceStateJournal(snapshotFile, journalFile, journalChannel, services, journalReplay.recordCount,
+				compactThreshold);
+	}
+
+	private static JournalReplay replayJournal(Path journalFile, Map<ServiceId, Boolean> services)
+			throws IOException {
+		LOG.info("Replaying journal file ''{0}''...", journalFile);
+
+		JournalReplay journalReplay = new JournalReplay();
+		byte[] journalBytes = Files.readAllBytes(journalFile);
+		int lineStart = 0;
+
+		while (lineStart < journalBytes.length) {
+			int lineEnd = lineStart;
+
+			while (lineEnd < journalBytes.length && journalBytes[lineEnd] != '\n') {
+				lineEnd++;
+			}
+			if (lineEnd >= journalBytes.length) {
+				// A record is always written together with its line terminator; an unterminated line is torn
+				LOG.warning("Ignoring unterminated record #{0} in journal file ''{1}''", journalReplay.recordCount + 1,
+						journalFile);
+				break;
+			}
+
+			String journalLine = new String(journalBytes, lineStart, lineEnd - lineStart, StandardCharsets.UTF_8);
+
+			if (!journalLine.isEmpty()) {
+				JsonServiceStoreRecord jsonRecord;
+
+				try {
+					jsonRecord = JOURNAL_OBJECT_MAPPER.readValue(journalLine, JsonServiceStoreRecord.class);
+				} catch (JsonProcessingException e) {
+					// Most likely a torn write at the end of the journal; discard everything from here on
+					LOG.warning(e, "Ignoring invalid record #{0} and any subsequent record in journal file ''{1}''",
+							journalReplay.recordCount + 1, journalFile);
+					break;
+				}
+
+				ServiceId serviceId = new ServiceId(jsonRecord.getModuleName(), jsonRecord.getServiceName());
+
+				if (OPERATION_REMOVE.equals(jsonRecord.getOperation())) {
+					services.remove(serviceId);
+				} else {
+					services.put(serviceId, jsonRecord.getAutoStartFlag());
+				}
+				journalReplay.recordCount++;
+			}
+			lineStart = lineEnd + 1;
+			journalReplay.validLength = lineStart;
+		}
+		return journalReplay;
+	}
+
+	/**
+	 * Gets the persisted service registrations.
+	 *
+	 * @return the persisted service registrations (service id and auto start flag).
+	 */
+	public synchronized Map<ServiceId, Boolean> services() {
+		return new HashMap<>(this.services);
+	}
+
+	/**
+	 * Makes the submitted service registrations persistent.
+	 * <p>
+	 * Only the differences to the already persisted service registrations are appended to the journal. The function
+	 * returns as soon as all records have been forced to the storage device.
+	 * <p>
+	 * The service registrations are retrieved while holding the journal lock. This ensures that concurrent syncs append
+	 * their snapshots in the order they have been taken and an outdated snapshot never overrides a newer one.
+	 *
+	 * @param currentServicesSupplier the supplier of the service registrations to persist.
+	 * @return the number of appended records.
+	 * @throws IOException if an I/O error occurs while writing the journal.
+	 */
+	public int sync(Supplier<Map<ServiceId, Boolean>> currentServicesSupplier) throws IOException {
+		Collection<JsonServiceStoreRecord> jsonRecords = new ArrayList<>();
+		long sequence = append(currentServicesSupplier, jsonRecords);
+
+		force(sequence);
+		if (this.journalRecordCount >= this.compactThreshold) {
+			compact();
+		}
+		return jsonRecords.size();
+	}
+
+	private synchronized long append(Supplier<Map<ServiceId, Boolean>> currentServicesSupplier,
+			Collection<JsonServiceStoreRecord> jsonRecords) throws IOException {
+		Map<ServiceId, Boolean> currentServices = currentServicesSupplier.get();
+
+		for (Map.Entry<ServiceId, Boolean> currentService : currentServices.entrySet()) {
+			ServiceId serviceId = currentService.getKey();
+			Boolean autoStartFlag = currentService.getValue();
+
+			if (!autoStartFlag.equals(this.services.get(serviceId))) {
+				jsonRecords.add(new JsonServiceStoreRecord(OPERATION_PUT, serviceId, autoStartFlag.booleanValue()));
+			}
+		}
+		for (ServiceId serviceId : this.services.keySet()) {
+			if (!currentServices.containsKey(serviceId)) {
+				jsonRecords.add(new JsonServiceStoreRecord(OPERATION_REMOVE, serviceId, false));
+			}
+		}
+
+		long sequence = this.appendedSequence;
+
+		if (!jsonRecords.isEmpty()) {
+			StringBuilder journalLines = new StringBuilder();
+
+			for (JsonServiceStoreRecord jsonRecord : jsonRecords) {
+				journalLines.append(JOURNAL_OBJECT_MAPPER.writeValueAsString(jsonRecord)).append('\n');
+			}
+
+			ByteBuffer journalBuffer = ByteBuffer.wrap(journalLines.toString().getBytes(StandardCharsets.UTF_8));
+
+			while (journalBuffer.hasRemaining()) {
+				this.journalChannel.write(journalBuffer);
+			}
+			this.services.clear();
+			this.services.putAll(currentServices);
+			this.journalRecordCount += jsonRecords.size();
+			sequence++;
+			this.appendedSequence = sequence;
+		}
+		return sequence;
+	}
+
+	private void force(long sequence) throws IOException {
+		synchronized (this.forceLock) {
+			// Any waiting thread's records have been covered by a previous force call already
+			if (this.forcedSequence < sequence) {
+				long forceSequence = this.appendedSequence;
+
+				this.journalChannel.force(false);
+				this.forcedSequence = forceSequence;
+			}
+		}
+	}
+
+	/**
+	 * Writes the persisted service registrations to a new snapshot file and truncates the journal.
+	 *
+	 * @throws IOException if an I/O error occurs while writing the snapshot.
+	 */
+	public void compact() throws IOException {
+		synchronized (this.forceLock) {
+			synchronized (this) {
+				LOG.info("Compacting journal file ''{0}'' ({1} records)...", this.journalFile,
+						this.journalRecordCount);
+
+				Collection<JsonServiceStoreService> jsonServices = new ArrayList<>(this.services.size());
+
+				for (Map.Entry<ServiceId, Boolean> service : this.services.entrySet()) {
+					ServiceId serviceId = service.getKey();
+
+					jsonServices.add(new JsonServiceStoreService(serviceId.moduleName(), serviceId.serviceName(),
+							service.getValue().booleanValue()));
+				}
+
+				byte[] snapshotBytes = SNAPSHOT_OBJECT_MAPPER.writeValueAsBytes(new JsonServiceStore(jsonServices));
+				Path snapshotTempFile = this.snapshotFile
+						.resolveSibling(this.snapshotFile.getFileName().toString() + ".tmp");
+
+				try (FileChannel snapshotChannel = FileChannel.open(snapshotTempFile, StandardOpenOption.CREATE,
+						StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+					ByteBuffer snapshotBuffer = ByteBuffer.wrap(snapshotBytes);
+
+					while (snapshotBuffer.hasRemaining()) {
+						snapshotChannel.write(snapshotBuffer);
+					}
+					snapshotChannel.force(true);
+				}
+				Files.move(snapshotTempFile, this.snapshotFile, StandardCopyOption.ATOMIC_MOVE,
+						StandardCopyOption.REPLACE_EXISTING);
+				// Replaying the journal on top of the new snapshot is idempotent, hence a crash before the journal
+				// has been truncated does not cause any harm
+				this.journalChannel.truncate(0);
+				this.journalChannel.force(true);
+				this.journalRecordCount = 0;
+				this.forcedSequence = this.appendedSequence;
+
+				LOG.info("Service states have been written to file ''{0}''", this.snapshotFile);
+			}
+		}
+	}
+
+	@Override
+	public void close() throws IOException {
+		synchronized (this.forceLock) {
+			synchronized (this) {
+				this.journalChannel.close();
+			}
+		}
+	}
+
+	private static final class JournalReplay {
+
+		int recordCount = 0;
+		long validLength = 0;
+
+	}
+
+	private static final class JsonServiceStoreRecord {
+
+		@Nullable
+		private String operation;
+		@Nullable
+		private String moduleName;
+		@Nullable
+		private String serviceName;
+		private boolean autoStartFlag;
+
+		// Implicitly used by ObjectMapper
+		@SuppressWarnings("unused")
+		public JsonServiceStoreRecord() {
+			// Nothing to do here
+		}
+
+		public JsonServiceStoreRecord(String operation, ServiceId serviceId, boolean autoStartFlag) {
+			this.operation = operation;
+			this.moduleName = serviceId.moduleName();
+			this.serviceName = serviceId.serviceName();
+			this.autoStartFlag = autoStartFlag;
+		}
+
+		public String getOperation() {
+			return Objects.requireNonNull(this.operation);
+		}
+
+		// Implicitly used by ObjectMapper
+		@SuppressWarnings("unused")
+		public void setOperation(String operation) {
+			this.operation = operation;
+		}
+
+		public String getModuleName() {
+			return Objects.requireNonNull(this.moduleName);
+		}
+
+		// Implicitly used by ObjectMapper
+		@SuppressWarnings("unused")
+		public void setModuleName(String moduleName) {
+			this.moduleName = moduleName;
+		}
+
+		public String getServiceName() {
+			return Objects.requireNonNull(this.serviceName);
+		}
+
+		// Implicitly used by ObjectMapper
+		@SuppressWarnings("unused")
+		public void setServiceName(String serviceName) {
+			this.serviceName = serviceName;
+		}
+
+		public boolean getAutoStartFlag() {
+			return this.autoStartFlag;
+		}
+
+		// Implicitly used by ObjectMapper
+		@SuppressWarnings("unused")
+		public void setAutoStartFlag(boolean autoStartFlag) {
+			this.autoStartFlag = autoStartFlag;
+		}
+
+	}
+
+	private static final class JsonServiceStore {
+
+		@Nullable
+		private Collection<JsonServiceStoreService> services;
+
+		// Implicitly used by ObjectMapper
+		@SuppressWarnings("unused")
+		public JsonServiceStore() {
+			// Nothing to do here
+		}
+
+		public JsonServiceStore(Collection<JsonServiceStoreService> services) {
+			this.services = services;
+		}
+
+		public Collection<JsonServiceStoreService> getServices() {
+			return Objects.requireNonNull(this.services);
+		}
+
+		// Implicitly used by ObjectMapper
+		@SuppressWarnings("unused")
+		public void setServices(Collection<JsonServiceStoreService> services) {
+			this.services = services;
+		}
+
+	}
+
+	private static final class JsonServiceStoreService {
+
+		@Nullable
+		private String moduleName;
+		@Nullable
+		private String serviceName;
+		private boolean autoStartFlag;
+
+		// Implicitly used by ObjectMapper
+		@SuppressWarnings("unused")
+		public JsonServiceStoreService() {
+			// Nothing to do here
+		}
+
+		public JsonServiceStoreService(String moduleName, String serviceName, boolean autoStartFlag) {
+			this.moduleName = moduleName;
+			this.serviceName = serviceName;
+			this.autoStartFlag = autoStartFlag;
+		}
+
+		public String getModuleName() {
+			return Objects.requireNonNull(this.moduleName);
+		}
+
+		// Implicitly used by ObjectMapper
+		@SuppressWarnings("unused")
+		public void setModuleName(String moduleName) {
+			this.moduleName = moduleName;
+		}
+
+		public String getServiceName() {
+			return Objects.requireNonNull(this.serviceName);
+		}
+
+		// Implicitly used by ObjectMapper
+		@SuppressWarnings("unused")
+		public void setServiceName(String serviceName) {
+			this.serviceName = serviceName;
+		}
+
+		public boolean getAutoStartFlag() {
+			return this.autoStartFlag;
+		}
+
+		// Implicitly used by ObjectMapper
+		@SuppressWarnings("unused")
+		public void setAutoStartFlag(boolean autoStartFlag) {
+			this.autoStartFlag = autoStartFlag;
+		}
+
+	}
+
+}
@@ -18,18 +18,33 @@ package de.carne.lwjsd.runtime.server;
 
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.OutputStream;
+import java.net.URI;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.nio.file.Files;
+import java.nio.file.InvalidPathException;
 import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
 import java.nio.file.StandardOpenOption;
+import java.security.DigestInputStream;
 import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Base64;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.Deque;
 import java.util.HashMap;
-import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
 import java.util.Objects;
 import java.util.ServiceLoader;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 import java.util.stream.Collectors;
@@ -37,36 +52,40 @@ import java.util.stream.Stream;
 
 import org.eclipse.jdt.annotation.Nullable;
 
-import com.fasterxml.jackson.databind.ObjectMapper;
-import com.fasterxml.jackson.databind.SerializationFeature;
-
 import de.carne.boot.ApplicationJarClassLoader;
+import de.carne.boot.Exceptions;
+import de.carne.boot.check.Check;
 import de.carne.boot.logging.Log;
 import de.carne.io.Closeables;
+import de.carne.lwjsd.api.BootPhaseInfo;
 import de.carne.lwjsd.api.ModuleInfo;
 import de.carne.lwjsd.api.ModuleState;
 import de.carne.lwjsd.api.ReasonMessage;
 import de.carne.lwjsd.api.Service;
 import de.carne.lwjsd.api.ServiceContext;
+import de.carne.lwjsd.api.ServiceDependencies;
 import de.carne.lwjsd.api.ServiceException;
+import de.carne.lwjsd.api.ServiceHandle;
 import de.carne.lwjsd.api.ServiceId;
 import de.carne.lwjsd.api.ServiceInfo;
 import de.carne.lwjsd.api.ServiceManagerException;
+import de.carne.lwjsd.api.ServiceManagerInfo;
+import de.carne.lwjsd.api.ServiceManagerState;
 import de.carne.lwjsd.api.ServiceState;
 import de.carne.lwjsd.runtime.config.Config;
 import de.carne.lwjsd.runtime.security.SecretsStore;
 import de.carne.lwjsd.runtime.security.Signature;
 import de.carne.nio.file.attribute.FileAttributes;
+import de.carne.util.SystemProperties;
 import de.carne.util.function.FunctionException;
 
 final class ServiceStore {
 
 	private static final Log LOG = new Log();
 
-	private static final ObjectMapper JSON_OBJECT_MAPPER = new ObjectMapper()
-			.enable(SerializationFeature.INDENT_OUTPUT);
-
 	private static final String STATE_FILE = "lwjsd.services.json";
+	private static final String JOURNAL_FILE = "lwjsd.services.journal";
+	private static final String MODULE_CACHE_FILE = "lwjsd.modules.json";
 	private static final String MODULES_DIR = "modules";
 
 	public static final String RUNTIME_MODULE_NAME = "";
@@ -74,27 +93,50 @@ final class ServiceStore {
 
 	public static final Pattern MODULE_FILE_NAME_PATTERN = Pattern.compile("(.+)-(\\d+\\.\\d+\\.\\d+)\\.jar");
 
+	private static final String STAGING_SUFFIX = ".staging";
+	private static final String STAGED_MODULE_DIGEST = "SHA-256";
+
+	private static final int AUTO_START_THREADS = SystemProperties.intValue(
+			ServiceStore.class.getName() + ".autoStartThreads", Runtime.getRuntime().availableProcessors());
+	private static final String PARALLEL_BOOT_PROPERTY = ServiceStore.class.getName() + ".parallelBoot";
+
 	private final ModuleFactory moduleFactory = this::getCachedModule;
 	private final ServiceFactory serviceFactory = this::getCachedService;
-	private final Map<String, ClassLoader> moduleCache = new HashMap<>();
-	private final Map<ServiceId, Service> serviceCache = new HashMap<>();
-	private final Map<String, ModuleInstance> moduleInstances = new HashMap<>();
-	private final Map<ServiceId, ServiceInstance> serviceInstances = new HashMap<>();
+	private final Map<String, ClassLoader> moduleCache = new ConcurrentHashMap<>();
+	private final Map<ServiceId, Service> serviceCache = new ConcurrentHashMap<>();
+	private final Map<String, ModuleInstance> moduleInstances = new ConcurrentHashMap<>();
+	private final Map<ServiceId, ServiceInstance> serviceInstances = new ConcurrentHashMap<>();
+	private final ServiceTypeIndex serviceIndex = new ServiceTypeIndex();
+	private final Object moduleLock = new Object();
+	private final Object statusLock = new Object();
 	private final SecretsStore secretsStore;
 	private final ServiceContext serviceContext;
+	private final URI baseUri;
 	private final Path modulesDir;
-	private final Path stateFile;
-
-	private ServiceStore(SecretsStore secretsStore, ServiceContext serviceContext, Path modulesDir, Path stateFile) {
+	private final ServiceStateJournal journal;
+	private final ModuleVerificationCache moduleVerifications;
+	// Evaluated per store (and not per class) to allow switching the boot mode between server runs
+	private final boolean parallelBoot = SystemProperties.booleanValue(PARALLEL_BOOT_PROPERTY, false);
+	private ServiceManagerState managerState = ServiceManagerState.CONFIGURED;
+	private List<BootPhaseInfo> bootPhaseInfos = Collections.emptyList();
+	private boolean deferredBoot = false;
+	private volatile ServiceManagerInfo status;
+
+	private ServiceStore(SecretsStore secretsStore, ServiceContext serviceContext, URI baseUri, Path modulesDir,
+			ServiceStateJournal journal, ModuleVerificationCache moduleVerifications) {
 		this.secretsStore = secretsStore;
 		this.serviceContext = serviceContext;
+		this.baseUri = baseUri;
 		this.modulesDir = modulesDir;
-		this.stateFile = stateFile;
+		this.journal = journal;
+		this.moduleVerifications = moduleVerifications;
+		this.status = new ServiceManagerInfo(baseUri, this.managerState, Collections.emptyList(),
+				Collections.emptyList());
 		this.moduleCache.put(RUNTIME_MODULE_NAME, getClass().getClassLoader());
 	}
 
-	public static ServiceStore create(SecretsStore secretsStore, ServiceContext serviceContext, Config config)
-			throws IOException {
+	public static ServiceStore create(SecretsStore secretsStore, ServiceContext serviceContext, Config config,
+			boolean fastBoot) throws IOException, GeneralSecurityException {
 		Path stateDir = config.getStateDir();
 
 		Files.createDirectories(stateDir, FileAttributes.userDirectoryDefault(stateDir));
@@ -106,157 +148,251 @@ final class ServiceStore {
 		Files.createDirectories(modulesDir, FileAttributes.userDirectoryDefault(stateDir));
 
 		Path stateFile = stateDir.resolve(STATE_FILE);
+		Path journalFile = stateDir.resolve(JOURNAL_FILE);
 
-		LOG.info("Using state file ''{0}''...", stateFile);
-
-		ServiceStore serviceStore = new ServiceStore(secretsStore, serviceContext, modulesDir, stateFile);
+		LOG.info("Using state file ''{0}'' and journal file ''{1}''...", stateFile, journalFile);
 
-		serviceStore.restoreModuleRegistrations();
-		if (Files.exists(stateFile)) {
-			JsonServiceStore json = JSON_OBJECT_MAPPER.readValue(stateFile.toFile(), JsonServiceStore.class);
+		ModuleVerificationCache moduleVerifications = ModuleVerificationCache
+				.load(stateDir.resolve(MODULE_CACHE_FILE), secretsStore.getDefaultSignature());
+		ServiceStateJournal journal = ServiceStateJournal.open(stateFile, journalFile);
+		ServiceStore serviceStore = new ServiceStore(secretsStore, serviceContext, config.getBaseUri(), modulesDir,
+				journal, moduleVerifications);
 
-			for (JsonServiceStoreService jsonService : json.getServices()) {
-				serviceStore.restoreServiceRegistration(jsonService);
+		try {
+			serviceStore.deleteStaleStagingFiles();
+			serviceStore.restoreModuleRegistrations();
+			if (serviceStore.parallelBoot && !fastBoot) {
+				serviceStore.instantiateModules();
+			}
+			journal.services().forEach(serviceStore::restoreServiceRegistration);
+			serviceStore.autoDiscoverModuleServices(RUNTIME_MODULE_NAME);
+			serviceStore.publishStatus();
+			if (fastBoot) {
+				LOG.info("Deferring module verification and state file resync...");
+
+				serviceStore.deferredBoot = true;
+			} else {
+				serviceStore.syncStore0();
+				journal.compact();
 			}
+		} catch (IOException e) {
+			Closeables.safeClose(e, journal);
+			throw e;
 		}
-		serviceStore.autoDiscoverModuleServices(RUNTIME_MODULE_NAME);
-		serviceStore.syncStore0();
 		return serviceStore;
 	}
 
-	private void syncStore0() throws IOException {
-		Collection<JsonServiceStoreService> jsonServices = new ArrayList<>(this.serviceInstances.size());
+	public void finishDeferredBoot() throws ServiceManagerException {
+		if (this.deferredBoot) {
+			this.deferredBoot = false;
+			if (this.parallelBoot) {
+				instantiateModules();
+			}
+			try {
+				syncStore0();
+				this.journal.compact();
+			} catch (IOException e) {
+				throw new ServiceManagerException(e, "Failed to resync service state file");
+			}
+		}
+	}
 
-		for (ServiceInstance serviceInstance : this.serviceInstances.values()) {
-			ServiceId serviceId = serviceInstance.id();
-			JsonServiceStoreService jsonService = new JsonServiceStoreService(serviceId.moduleName(),
-					serviceId.serviceName(), serviceInstance.getAutoStartFlag());
+	private void syncStore0() throws IOException {
+		int journalRecordCount = this.journal.sync(this::currentServices);
 
-			jsonServices.add(jsonService);
+		if (journalRecordCount > 0) {
+			LOG.info("{0} service state change(s) have been journaled", journalRecordCount);
 		}
+	}
 
-		JsonServiceStore json = new JsonServiceStore(jsonServices);
+	private Map<ServiceId, Boolean> currentServices() {
+		Map<ServiceId, Boolean> services = new HashMap<>(this.serviceInstances.size());
 
-		JSON_OBJECT_MAPPER.writeValue(this.stateFile.toFile(), json);
+		for (ServiceInstance serviceInstance : this.serviceInstances.values()) {
+			ServiceInfo serviceInfo = serviceInstance.info();
 
-		LOG.info("Service states have been written to file ''{0}''", this.stateFile);
+			services.put(serviceInfo.id(), serviceInfo.autoStartFlag());
+		}
+		return services;
 	}
 
-	public synchronized void syncStore() throws ServiceManagerException {
+	public void syncStore() throws ServiceManagerException {
 		try {
 			syncStore0();
 		} catch (IOException e) {
-			throw new ServiceManagerException(e, "Failed to write service states file ''{0}''", this.stateFile);
+			throw new ServiceManagerException(e, "Failed to journal service states");
 		}
 	}
 
-	public synchronized Collection<ModuleInfo> queryModuleStatus() {
-		Collection<ModuleInfo> moduleInfos = new ArrayList<>(this.moduleInstances.size());
+	public ServiceManagerInfo queryStatus() {
+		return this.status;
+	}
 
-		for (ModuleInstance moduleInstance : this.moduleInstances.values()) {
-			moduleInfos.add(new ModuleInfo(moduleInstance.name(), moduleInstance.version(), moduleInstance.getState()));
+	public void publishManagerState(ServiceManagerState state) {
+		synchronized (this.statusLock) {
+			this.managerState = state;
+			publishStatus();
 		}
-		return moduleInfos;
 	}
 
-	public synchronized Collection<ServiceInfo> queryServiceStatus() {
-		Collection<ServiceInfo> serviceInfos = new ArrayList<>(this.serviceInstances.size());
+	public void publishBootPhaseInfos(Collection<BootPhaseInfo> bootPhaseInfos) {
+		synchronized (this.statusLock) {
+			this.bootPhaseInfos = new ArrayList<>(bootPhaseInfos);
+			publishStatus();
+		}
+	}
 
-		for (ServiceInstance serviceInstance : this.serviceInstances.values()) {
-			serviceInfos.add(new ServiceInfo(serviceInstance.id(), serviceInstance.getState(),
-					serviceInstance.getAutoStartFlag()));
+	private void publishStatus() {
+		synchronized (this.statusLock) {
+			Collection<ModuleInfo> moduleInfos = new ArrayList<>(this.moduleInstances.size());
+
+			for (ModuleInstance moduleInstance : this.moduleInstances.values()) {
+				moduleInfos.add(moduleInstance.info());
+			}
+
+			Collection<ServiceInfo> serviceInfos = new ArrayList<>(this.serviceInstances.size());
+
+			for (ServiceInstance serviceInstance : this.serviceInstances.values()) {
+				serviceInfos.add(serviceInstance.info());
+			}
+			this.status = new ServiceManagerInfo(this.baseUri, this.managerState, moduleInfos, serviceInfos,
+					this.status.version() + 1, this.bootPhaseInfos);
+		}
+	}
+
+	public ModuleInfo registerModule(Path file, boolean force) throws ServiceManagerException {
+		ModuleInfo moduleInfo;
+
+		try (InputStream fileStream = Files.newInputStream(file)) {
+			moduleInfo = registerModule(fileStream, file.getFileName().toString(), force);
+		} catch (IOException e) {
+			throw new ServiceManagerException(e, "Failed to read module file ''{0}''", file);
 		}
-		return serviceInfos;
+		return moduleInfo;
 	}
 
-	public synchronized ModuleInfo registerModule(Path file, boolean force) throws ServiceManagerException {
-		LOG.info("Registering module ''{0}''...", file);
+	public ModuleInfo registerModule(InputStream fileStream, String fileName, boolean force)
+			throws ServiceManagerException {
+		LOG.info("Registering module ''{0}''...", fileName);
 
-		Matcher moduleNameMatcher = MODULE_FILE_NAME_PATTERN.matcher(file.getFileName().toString());
+		Matcher moduleNameMatcher = MODULE_FILE_NAME_PATTERN.matcher(fileName);
 
-		if (!moduleNameMatcher.matches()) {
+		// The file name is client supplied; reject anything but a plain file name to stay within the modules directory
+		if (!isPlainFileName(fileName) || !moduleNameMatcher.matches()) {
 			throw new ServiceManagerException(
-					ReasonMessage.illegalArgument("Failed to register invalidly named module ''{0}''", file));
+					ReasonMessage.illegalArgument("Failed to register invalidly named module ''{0}''", fileName));
 		}
 
 		String moduleName = moduleNameMatcher.group(1);
 		String moduleVersion = moduleNameMatcher.group(2);
+		StagedModule stagedModule;
 
-		ModuleInstance moduleInstance = this.moduleInstances.get(moduleName);
-
-		if (moduleInstance != null) {
-			if (!force && moduleInstance.version().compareTo(moduleVersion) >= 0) {
-				throw new ServiceManagerException(
-						ReasonMessage.illegalState("Failed to register outdated module ''{0}'' (version: {1} <= {2})",
-								moduleName, moduleVersion, moduleInstance.version()));
-			}
-			deleteModule(moduleName);
-		}
+		// Receive the module outside the module lock to not block other module operations during the transfer
 		try {
-			installModule(file);
+			stagedModule = stageModule(fileStream, fileName);
 		} catch (IOException | GeneralSecurityException e) {
-			throw new ServiceManagerException(e, "Failed to install module ''{0}''", file);
+			throw new ServiceManagerException(e, "Failed to receive module ''{0}''", fileName);
+		}
+		try {
+			synchronized (this.moduleLock) {
+				ModuleInstance moduleInstance = this.moduleInstances.get(moduleName);
+
+				if (moduleInstance != null) {
+					if (!force && moduleInstance.version().compareTo(moduleVersion) >= 0) {
+						throw new ServiceManagerException(ReasonMessage.illegalState(
+								"Failed to register outdated module ''{0}'' (version: {1} <= {2})", moduleName,
+								moduleVersion, moduleInstance.version()));
+					}
+					deleteModule(moduleName);
+				}
+				try {
+					installModule(stagedModule);
+				} catch (IOException e) {
+					throw new ServiceManagerException(e, "Failed to install module ''{0}''", fileName);
+				}
+				this.moduleInstances.put(moduleName,
+						new ModuleInstance(this.moduleFactory, moduleName, moduleVersion));
+				publishStatus();
+				return loadModule(moduleName);
+			}
+		} finally {
+			stagedModule.discard();
 		}
-		this.moduleInstances.put(moduleName, new ModuleInstance(this.moduleFactory, moduleName, moduleVersion));
-		return loadModule(moduleName);
 	}
 
 	@SuppressWarnings("squid:S1301")
-	public synchronized ModuleInfo loadModule(String moduleName) throws ServiceManagerException {
+	public ModuleInfo loadModule(String moduleName) throws ServiceManagerException {
 		LOG.info("Loading module ''{0}''...", moduleName);
 
-		ModuleInstance moduleInstance = this.moduleInstances.get(moduleName);
-
-		if (moduleInstance == null) {
-			throw new ServiceManagerException(
-					ReasonMessage.illegalArgument("Failed to load unknown module ''{0}''", moduleName));
-		}
+		synchronized (this.moduleLock) {
+			ModuleInstance moduleInstance = this.moduleInstances.get(moduleName);
 
-		ModuleState moduleState = moduleInstance.getState();
+			if (moduleInstance == null) {
+				throw new ServiceManagerException(
+						ReasonMessage.illegalArgument("Failed to load unknown module ''{0}''", moduleName));
+			}
 
-		while (moduleState != ModuleState.LOADED) {
-			switch (moduleState) {
-			case REGISTERED:
-				moduleInstance.module();
-				autoDiscoverModuleServices(moduleName);
-				moduleInstance.setState(ModuleState.LOADED);
-				break;
-			case LOADED:
-				LOG.info("Module ''{0}'' already loaded", moduleName);
-				break;
+			ModuleState moduleState = moduleInstance.getState();
+
+			while (moduleState != ModuleState.LOADED) {
+				switch (moduleState) {
+				case REGISTERED:
+					moduleInstance.module();
+					autoDiscoverModuleServices(moduleName);
+					moduleInstance.transition(ModuleState.REGISTERED, ModuleState.LOADED);
+					publishStatus();
+					break;
+				case LOADED:
+					LOG.info("Module ''{0}'' already loaded", moduleName);
+					break;
+				}
+				moduleState = moduleInstance.getState();
 			}
-			moduleState = moduleInstance.getState();
+			return moduleInstance.info();
 		}
-		return new ModuleInfo(moduleInstance.name(), moduleInstance.version(), moduleInstance.getState());
 	}
 
-	public synchronized void deleteModule(String moduleName) throws ServiceManagerException {
+	public void deleteModule(String moduleName) throws ServiceManagerException {
 		LOG.info("Deleting module ''{0}''...", moduleName);
 
-		ModuleInstance moduleInstance = this.moduleInstances.get(moduleName);
+		synchronized (this.moduleLock) {
+			ModuleInstance moduleInstance = this.moduleInstances.get(moduleName);
 
-		if (moduleInstance == null) {
-			throw new ServiceManagerException(
-					ReasonMessage.illegalArgument("Failed to delete unknown module ''{0}''", moduleName));
-		}
+			if (moduleInstance == null) {
+				throw new ServiceManagerException(
+						ReasonMessage.illegalArgument("Failed to delete unknown module ''{0}''", moduleName));
+			}
+			for (ServiceInstance serviceInstance : this.serviceInstances.values()) {
+				ServiceId serviceId = serviceInstance.id();
 
-		Iterator<ServiceInstance> serviceInstancesIterator = this.serviceInstances.values().iterator();
+				if (serviceId.moduleName().equals(moduleName)) {
+					stopService(serviceId, true);
+					this.serviceInstances.remove(serviceId);
 
-		while (serviceInstancesIterator.hasNext()) {
-			ServiceInstance serviceInstance = serviceInstancesIterator.next();
-			ServiceId serviceId = serviceInstance.id();
+					@Nullable Service service = this.serviceCache.remove(serviceId);
 
-			if (serviceId.moduleName().equals(moduleName)) {
-				stopService(serviceId, true);
-				serviceInstancesIterator.remove();
-				this.serviceCache.remove(serviceId);
+					if (service != null) {
+						this.serviceIndex.remove(service);
+					}
+				}
 			}
+			// Same monitor as getCachedModule, so a concurrent instantiation cannot re-cache the module afterwards
+			synchronized (moduleInstance) {
+				this.moduleCache.remove(moduleName);
+				this.moduleInstances.remove(moduleName);
+			}
+			publishStatus();
+			deleteModuleFiles(moduleInstance);
 		}
-		this.moduleCache.remove(moduleName);
-		this.moduleInstances.remove(moduleName);
 
+		LOG.info("Module ''{0}'' deleted", moduleName);
+	}
+
+	private void deleteModuleFiles(ModuleInstance moduleInstance) throws ServiceManagerException {
+		String moduleName = moduleInstance.name();
 		String moduleFileName = moduleInstance.fileName();
 
+		this.moduleVerifications.invalidate(moduleFileName);
 		try (Stream<Path> paths = Files.walk(this.modulesDir, 1)) {
 			paths.forEach(path -> {
 				if (path.getFileName().toString().startsWith(moduleFileName)) {
@@ -272,48 +408,60 @@ final class ServiceStore {
 		} catch (FunctionException e) {
 			throw new ServiceManagerException(e.getCause(), "Failed to delete module ''{0}'' files", moduleName);
 		}
-
-		LOG.info("Module ''{0}'' deleted", moduleName);
 	}
 
-	public synchronized ServiceInfo registerService(ServiceId serviceId, boolean autoStartFlag) {
+	public ServiceInfo registerService(ServiceId serviceId, boolean autoStartFlag) {
 		return registerService0(serviceId, null, autoStartFlag);
 	}
 
-	public synchronized <T extends Service> T getService(Class<T> serviceClass) throws ServiceManagerException {
-		Service foundService = null;
+	public <T extends Service> T getService(Class<T> serviceClass) throws ServiceManagerException {
+		T service = this.serviceIndex.get(serviceClass);
 
-		for (Service service : this.serviceCache.values()) {
-			if (serviceClass.isAssignableFrom(service.getClass())) {
-				foundService = service;
-				break;
-			}
-		}
-		if (foundService == null) {
+		if (service == null) {
 			throw new ServiceManagerException(
 					ReasonMessage.illegalArgument("Failed to get service of type {0}", serviceClass.getName()));
 		}
-		return serviceClass.cast(foundService);
+		return service;
+	}
+
+	public <T extends Service> ServiceHandle<T> getServiceHandle(Class<T> serviceClass) {
+		return this.serviceIndex.handle(serviceClass);
 	}
 
-	public synchronized void autoStartServices() {
+	public ServiceStartScheduler.Report autoStartServices() throws InterruptedException {
 		LOG.info("Auto starting services...");
 
 		// Copy affected ids first, as implicit module loading may register new services
 		Collection<ServiceId> autoStartServiceIds = this.serviceInstances.values().stream()
-				.filter(ServiceInstance::getAutoStartFlag).map(ServiceInstance::id).collect(Collectors.toList());
+				.filter(ServiceInstance::getAutoStartFlag).map(ServiceInstance::id).collect(Collectors.toSet());
+		ServiceStartScheduler scheduler = new ServiceStartScheduler(AUTO_START_THREADS);
+		Deque<ServiceId> pendingServiceIds = new ArrayDeque<>(autoStartServiceIds);
 
-		for (ServiceId autoStartServiceId : autoStartServiceIds) {
-			try {
-				startService(autoStartServiceId, true);
-			} catch (ServiceManagerException e) {
-				LOG.warning(e, "Failed to auto start service ''{0}''", autoStartServiceId);
+		while (!pendingServiceIds.isEmpty()) {
+			ServiceId serviceId = pendingServiceIds.remove();
+			ServiceInstance serviceInstance = this.serviceInstances.get(serviceId);
+
+			if (serviceInstance == null) {
+				LOG.warning("Unknown service dependency ''{0}''", serviceId);
+			} else if (!scheduler.contains(serviceId)) {
+				Collection<ServiceId> dependencies = resolveServiceDependencies(serviceInstance);
+
+				scheduler.addService(serviceId, dependencies);
+				pendingServiceIds.addAll(dependencies);
 			}
 		}
+
+		ServiceStartScheduler.Report report = scheduler
+				.run(serviceId -> startService(serviceId, autoStartServiceIds.contains(serviceId)));
+
+		report.startDurations().forEach((serviceId, duration) -> LOG.info("Service ''{0}'' started in {1} ms",
+				serviceId, duration.toMillis()));
+		LOG.notice("Auto started {0} service(s) in {1} ms (critical path: {2})", report.startDurations().size(),
+				report.elapsed().toMillis(), report.criticalPath());
+		return report;
 	}
 
-	public synchronized ServiceInfo startService(ServiceId serviceId, boolean autoStart)
-			throws ServiceManagerException {
+	public ServiceInfo startService(ServiceId serviceId, boolean autoStart) throws ServiceManagerException {
 		LOG.info("Starting service ''{0}''...", serviceId);
 
 		ServiceInstance serviceInstance = this.serviceInstances.get(serviceId);
@@ -322,7 +470,14 @@ final class ServiceStore {
 			throw new ServiceManagerException(
 					ReasonMessage.illegalArgument("Failed to start unknown service ''{0}''", serviceId));
 		}
+		synchronized (serviceInstance) {
+			startService0(serviceInstance, autoStart);
+		}
+		return serviceInstance.info();
+	}
 
+	private void startService0(ServiceInstance serviceInstance, boolean autoStart) throws ServiceManagerException {
+		ServiceId serviceId = serviceInstance.id();
 		ServiceState serviceState = serviceInstance.getState();
 
 		while (serviceState != ServiceState.RUNNING) {
@@ -335,7 +490,8 @@ final class ServiceStore {
 				} catch (ServiceException e) {
 					throw new ServiceManagerException(e, "Failed to load service ''{0}''", serviceId);
 				}
-				serviceInstance.setState(ServiceState.LOADED);
+				serviceInstance.transition(ServiceState.REGISTERED, ServiceState.LOADED);
+				publishStatus();
 
 				LOG.notice("Service ''{0}'' loaded", serviceId);
 				break;
@@ -345,8 +501,8 @@ final class ServiceStore {
 				} catch (ServiceException e) {
 					throw new ServiceManagerException(e, "Failed to start service ''{0}''", serviceId);
 				}
-				serviceInstance.setAutoStartFlag(autoStart);
-				serviceInstance.setState(ServiceState.RUNNING);
+				serviceInstance.transition(ServiceState.LOADED, ServiceState.RUNNING, autoStart);
+				publishStatus();
 
 				LOG.notice("Service ''{0}'' up and running", serviceId);
 				break;
@@ -356,10 +512,9 @@ final class ServiceStore {
 			}
 			serviceState = serviceInstance.getState();
 		}
-		return new ServiceInfo(serviceInstance.id(), serviceInstance.getState(), serviceInstance.getAutoStartFlag());
 	}
 
-	public synchronized ServiceInfo stopService(ServiceId serviceId, boolean unload) throws ServiceManagerException {
+	public ServiceInfo stopService(ServiceId serviceId, boolean unload) throws ServiceManagerException {
 		LOG.info("Stopping service ''{0}''...", serviceId);
 
 		ServiceInstance serviceInstance = this.serviceInstances.get(serviceId);
@@ -368,7 +523,14 @@ final class ServiceStore {
 			throw new ServiceManagerException(
 					ReasonMessage.illegalArgument("Failed to stop unknown service ''{0}''", serviceId));
 		}
+		synchronized (serviceInstance) {
+			stopService0(serviceInstance, unload);
+		}
+		return serviceInstance.info();
+	}
 
+	private void stopService0(ServiceInstance serviceInstance, boolean unload) throws ServiceManagerException {
+		ServiceId serviceId = serviceInstance.id();
 		ServiceState targetServiceState = (unload ? ServiceState.REGISTERED : ServiceState.LOADED);
 		ServiceState serviceState = serviceInstance.getState();
 
@@ -380,7 +542,8 @@ final class ServiceStore {
 				} catch (ServiceException e) {
 					throw new ServiceManagerException(e, "Failed to stop service ''{0}''", serviceId);
 				}
-				serviceInstance.setState(ServiceState.LOADED);
+				serviceInstance.transition(ServiceState.RUNNING, ServiceState.LOADED);
+				publishStatus();
 
 				LOG.notice("Service ''{0}'' has been stopped", serviceId);
 				break;
@@ -390,7 +553,8 @@ final class ServiceStore {
 				} catch (ServiceException e) {
 					throw new ServiceManagerException(e, "Failed to unload service ''{0}''", serviceId);
 				}
-				serviceInstance.setState(ServiceState.REGISTERED);
+				serviceInstance.transition(ServiceState.LOADED, ServiceState.REGISTERED);
+				publishStatus();
 
 				LOG.notice("Service ''{0}'' has been unloaded", serviceId);
 				break;
@@ -400,10 +564,9 @@ final class ServiceStore {
 			}
 			serviceState = serviceInstance.getState();
 		}
-		return new ServiceInfo(serviceInstance.id(), serviceInstance.getState(), serviceInstance.getAutoStartFlag());
 	}
 
-	public synchronized void safeUnloadAllServices() {
+	public void safeUnloadAllServices() {
 		LOG.info("Unloading all services...");
 
 		for (ServiceInstance serviceInstance : this.serviceInstances.values()) {
@@ -417,11 +580,68 @@ final class ServiceStore {
 		}
 	}
 
-	public synchronized void close() {
+	public void close() {
 		this.serviceInstances.clear();
 		this.serviceCache.clear();
+		this.serviceIndex.clear();
 		this.moduleCache.values().forEach(Closeables::safeClose);
 		this.moduleCache.clear();
+		Closeables.safeClose(this.journal);
+	}
+
+	private Collection<ServiceId> resolveServiceDependencies(ServiceInstance serviceInstance) {
+		Collection<ServiceId> dependencies = new ArrayList<>();
+
+		try {
+			ServiceDependencies serviceDependencies = getServiceClass(serviceInstance.id())
+					.getAnnotation(ServiceDependencies.class);
+
+			if (serviceDependencies != null) {
+				for (String dependency : serviceDependencies.value()) {
+					dependencies.add(resolveServiceDependency(serviceInstance.id(), dependency));
+				}
+			}
+		} catch (ServiceManagerException e) {
+			LOG.warning(e, "Failed to determine dependencies of service ''{0}''", serviceInstance.id());
+		}
+		return dependencies;
+	}
+
+	private Class<?> getServiceClass(ServiceId serviceId) throws ServiceManagerException {
+		Service service = this.serviceCache.get(serviceId);
+		Class<?> serviceClass;
+
+		if (service != null) {
+			serviceClass = service.getClass();
+		} else {
+			// Load the registered service class without initializing or instantiating it
+			ClassLoader loader = getCachedModule(serviceId.moduleName());
+
+			try {
+				serviceClass = Class.forName(serviceId.serviceName(), false, loader);
+			} catch (ClassNotFoundException | LinkageError e) {
+				throw new ServiceManagerException(e, "Failed to load service class ''{0}''", serviceId);
+			}
+		}
+		return serviceClass;
+	}
+
+	private ServiceId resolveServiceDependency(ServiceId serviceId, String serviceName) {
+		ServiceId dependency = new ServiceId(serviceId.moduleName(), serviceName);
+
+		if (!this.serviceInstances.containsKey(dependency)) {
+			ServiceId runtimeDependency = new ServiceId(RUNTIME_MODULE_NAME, serviceName);
+
+			if (this.serviceInstances.containsKey(runtimeDependency)) {
+				dependency = runtimeDependency;
+			} else {
+				dependency = this.serviceInstances.keySet().stream()
+						.filter(candidate -> candidate.serviceName().equals(serviceName)).sorted(
+								(candidate1, candidate2) -> candidate1.moduleName().compareTo(candidate2.moduleName()))
+						.findFirst().orElse(dependency);
+			}
+		}
+		return dependency;
 	}
 
 	private void restoreModuleRegistrations() throws IOException {
@@ -444,31 +664,70 @@ final class ServiceStore {
 		}
 	}
 
-	private void restoreServiceRegistration(JsonServiceStoreService jsonService) {
-		ServiceId serviceId = new ServiceId(jsonService.getModuleName(), jsonService.getServiceName());
+	private void instantiateModules() {
+		List<ModuleInstance> moduleInstanceList = new ArrayList<>(this.moduleInstances.values());
+
+		if (!moduleInstanceList.isEmpty()) {
+			LOG.info("Instantiating {0} module(s) in parallel...", moduleInstanceList.size());
+
+			// Tasks are awaited (and failures logged) in list order; sort it to keep the log independent of task
+			// scheduling and completion order
+			moduleInstanceList.sort((instance1, instance2) -> instance1.name().compareTo(instance2.name()));
+
+			ForkJoinPool pool = new ForkJoinPool(
+					Math.min(Runtime.getRuntime().availableProcessors(), moduleInstanceList.size()));
+
+			try {
+				List<ForkJoinTask<ClassLoader>> tasks = new ArrayList<>(moduleInstanceList.size());
+
+				for (ModuleInstance moduleInstance : moduleInstanceList) {
+					// Go through the module cache, so a module accessed concurrently is never instantiated twice
+					tasks.add(pool.submit(() -> getCachedModule(moduleInstance.name())));
+				}
+				for (int taskIndex = 0; taskIndex < tasks.size(); taskIndex++) {
+					String moduleName = moduleInstanceList.get(taskIndex).name();
 
+					try {
+						tasks.get(taskIndex).get();
+					} catch (ExecutionException e) {
+						// Instantiation is retried (and the failure reported) as soon as the module is accessed
+						LOG.warning(e.getCause(), "Failed to instantiate module ''{0}''", moduleName);
+					}
+				}
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				LOG.warning(e, "Parallel module instantiation has been interrupted");
+			} finally {
+				pool.shutdownNow();
+			}
+		}
+	}
+
+	private void restoreServiceRegistration(ServiceId serviceId, boolean autoStartFlag) {
 		LOG.info("Restoring service registration ''{0}''...", serviceId);
 
-		registerService0(serviceId, null, jsonService.getAutoStartFlag());
+		registerService0(serviceId, null, autoStartFlag);
 	}
 
 	private ServiceInfo registerService0(ServiceId serviceId, @Nullable Service service, boolean autoStartFlag) {
 		LOG.info("Registering service ''{0}''...", serviceId);
 
-		@Nullable ServiceInstance serviceInstance = this.serviceInstances.get(serviceId);
+		ServiceInstance newServiceInstance = new ServiceInstance(this.serviceFactory, serviceId, autoStartFlag);
+		@Nullable ServiceInstance serviceInstance = this.serviceInstances.putIfAbsent(serviceId, newServiceInstance);
 
 		if (serviceInstance == null) {
-			serviceInstance = new ServiceInstance(this.serviceFactory, serviceId, autoStartFlag);
-			if (service != null) {
-				this.serviceCache.put(serviceId, service);
+			serviceInstance = newServiceInstance;
+			if (service != null && this.serviceCache.putIfAbsent(serviceId, service) == null) {
+				this.serviceIndex.add(service);
 			}
-			this.serviceInstances.put(serviceId, serviceInstance);
+
+			publishStatus();
 
 			LOG.notice("Service ''{0}'' registered", serviceId);
 		} else {
 			LOG.info("Service ''{0}'' already registered", serviceId);
 		}
-		return new ServiceInfo(serviceInstance.id(), serviceInstance.getState(), serviceInstance.getAutoStartFlag());
+		return serviceInstance.info();
 	}
 
 	private void autoDiscoverModuleServices(String moduleName) {
@@ -488,36 +747,66 @@ final class ServiceStore {
 		ClassLoader loader = this.moduleCache.get(moduleName);
 
 		if (loader == null) {
-			LOG.info("Instantiating module ''{0}''...", moduleName);
+			ModuleInstance moduleInstance = this.moduleInstances.get(moduleName);
 
-			ModuleInstance moduleInstance = Objects.requireNonNull(this.moduleInstances.get(moduleName));
-			String moduleFileName = moduleInstance.fileName();
-			String signaturePrefix = moduleFileName + ".";
-			Collection<String> moduleSignatures;
-
-			try (Stream<Path> paths = Files.walk(this.modulesDir, 1)) {
-				moduleSignatures = paths.map(path -> path.getFileName().toString())
-						.filter(path -> path.startsWith(signaturePrefix)).collect(Collectors.toList());
-			} catch (IOException e) {
-				throw new ServiceManagerException(e, "Failed to scan signatures for module ''{0}''", moduleName);
+			if (moduleInstance == null) {
+				throw new ServiceManagerException(
+						ReasonMessage.illegalArgument("Failed to instantiate unknown module ''{0}''", moduleName));
 			}
-			if (moduleSignatures.isEmpty()) {
-				throw new ServiceManagerException("Failed to find signature(s) for module ''{0}''", moduleName);
+			synchronized (moduleInstance) {
+				// The module may have been deleted meanwhile; never cache a loader for a deleted module
+				if (this.moduleInstances.get(moduleName) != moduleInstance) {
+					throw new ServiceManagerException(ReasonMessage
+							.illegalArgument("Failed to instantiate deleted module ''{0}''", moduleName));
+				}
+				loader = this.moduleCache.get(moduleName);
+				if (loader == null) {
+					loader = instantiateModule(moduleInstance);
+					this.moduleCache.put(moduleName, loader);
+				}
 			}
-			try {
+		}
+		return loader;
+	}
+
+	private ClassLoader instantiateModule(ModuleInstance moduleInstance) throws ServiceManagerException {
+		String moduleName = moduleInstance.name();
+
+		LOG.info("Instantiating module ''{0}''...", moduleName);
+
+		String moduleFileName = moduleInstance.fileName();
+		String signaturePrefix = moduleFileName + ".";
+		Collection<String> moduleSignatures;
+
+		try (Stream<Path> paths = Files.walk(this.modulesDir, 1)) {
+			moduleSignatures = paths.map(path -> path.getFileName().toString())
+					.filter(path -> path.startsWith(signaturePrefix)).collect(Collectors.toList());
+		} catch (IOException e) {
+			throw new ServiceManagerException(e, "Failed to scan signatures for module ''{0}''", moduleName);
+		}
+		if (moduleSignatures.isEmpty()) {
+			throw new ServiceManagerException("Failed to find signature(s) for module ''{0}''", moduleName);
+		}
+
+		Path moduleFile = this.modulesDir.resolve(moduleFileName);
+		Collection<Path> signatureFiles = moduleSignatures.stream().map(this.modulesDir::resolve)
+				.collect(Collectors.toList());
+		ClassLoader loader;
+
+		try {
+			if (this.moduleVerifications.isVerified(moduleFile, signatureFiles)) {
+				LOG.info("Module ''{0}'' unchanged since last verification", moduleName);
+			} else {
 				for (String signatureFileName : moduleSignatures) {
 					if (!verifyModule(moduleFileName, signatureFileName)) {
 						throw new ServiceManagerException("Failed to verify module ''{0}''", moduleName);
 					}
 				}
-
-				Path moduleFile = this.modulesDir.resolve(moduleFileName);
-
-				loader = new ApplicationJarClassLoader(moduleFile.toFile(), this.moduleCache.get(RUNTIME_MODULE_NAME));
-			} catch (IOException | GeneralSecurityException e) {
-				throw new ServiceManagerException(e, "Failed to instantiate module ''{0}''", moduleName);
+				this.moduleVerifications.setVerified(moduleFile, signatureFiles);
 			}
-			this.moduleCache.put(moduleName, loader);
+			loader = new ApplicationJarClassLoader(moduleFile.toFile(), this.moduleCache.get(RUNTIME_MODULE_NAME));
+		} catch (IOException | GeneralSecurityException e) {
+			throw new ServiceManagerException(e, "Failed to instantiate module ''{0}''", moduleName);
 		}
 		return loader;
 	}
@@ -531,9 +820,17 @@ final class ServiceStore {
 			ClassLoader loader = getCachedModule(serviceId.moduleName());
 
 			try {
-				service = loader.loadClass(serviceId.serviceName()).asSubclass(Service.class).getConstructor()
-						.newInstance();
-				this.serviceCache.put(serviceId, service);
+				Service newService = loader.loadClass(serviceId.serviceName()).asSubclass(Service.class)
+						.getConstructor().newInstance();
+
+				// Concurrent callers may instantiate the same service; only the first one is cached and indexed
+				service = this.serviceCache.putIfAbsent(serviceId, newService);
+				if (service == null) {
+					service = newService;
+					this.serviceIndex.add(service);
+				} else {
+					LOG.info("Discarding concurrently instantiated service ''{0}''", serviceId);
+				}
 			} catch (ReflectiveOperationException e) {
 				throw new ServiceManagerException(e, "Failed to instantiate service ''{0}''", serviceId);
 			}
@@ -541,19 +838,83 @@ final class ServiceStore {
 		return service;
 	}
 
-	private void installModule(Path file) throws IOException, GeneralSecurityException {
+	private static boolean isPlainFileName(String fileName) {
+		Path fileNamePath;
+
+		try {
+			fileNamePath = Paths.get(fileName).getFileName();
+		} catch (InvalidPathException e) {
+			Exceptions.ignore(e);
+			fileNamePath = null;
+		}
+		return fileNamePath != null && fileName.equals(fileNamePath.toString()) && fileName.indexOf('/') < 0
+				&& fileName.indexOf('\\') < 0;
+	}
+
+	private StagedModule stageModule(InputStream fileStream, String fileName)
+			throws IOException, GeneralSecurityException {
 		Signature signature = this.secretsStore.getDefaultSignature();
+		MessageDigest digest = MessageDigest.getInstance(STAGED_MODULE_DIGEST);
+		StagedModule stagedModule = new StagedModule(fileName, signature.name());
+
+		try {
+			stagedModule.stagedModuleFile = Files.createTempFile(this.modulesDir, "." + fileName, STAGING_SUFFIX);
+			stagedModule.stagedSignatureFile = Files.createTempFile(this.modulesDir,
+					"." + stagedModule.signatureFileName(), STAGING_SUFFIX);
+
+			// Receive, digest and sign the module data in a single pass
+			byte[] signatureBytes;
+			long moduleSize;
+
+			try (CopyStream copyStream = new CopyStream(fileStream, stagedModule.stagedModuleFile);
+					DigestInputStream digestStream = new DigestInputStream(copyStream, digest)) {
+				signatureBytes = signature.sign(digestStream);
+				copyStream.sync();
+				moduleSize = copyStream.copied();
+			}
+			try (FileChannel signatureChannel = FileChannel.open(stagedModule.stagedSignatureFile,
+					StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+				ByteBuffer signatureBuffer = ByteBuffer.wrap(signatureBytes);
+
+				while (signatureBuffer.hasRemaining()) {
+					signatureChannel.write(signatureBuffer);
+				}
+				signatureChannel.force(false);
+			}
+			LOG.info("Received module file ''{0}'' ({1} bytes, {2}: {3})", fileName, moduleSize,
+					STAGED_MODULE_DIGEST, Base64.getEncoder().encodeToString(digest.digest()));
+		} catch (IOException | GeneralSecurityException | RuntimeException e) {
+			stagedModule.discard();
+			throw e;
+		}
+		return stagedModule;
+	}
 
-		String fileName = file.getFileName().toString();
-		Path moduleFile = this.modulesDir.resolve(fileName);
-		Path signatureFile = this.modulesDir.resolve(fileName + "." + signature.name());
+	private void installModule(StagedModule stagedModule) throws IOException {
+		Path moduleFile = this.modulesDir.resolve(stagedModule.fileName());
+		Path signatureFile = this.modulesDir.resolve(stagedModule.signatureFileName());
 
-		try (InputStream fileStream = Files.newInputStream(file);
-				CopyStream copyStream = new CopyStream(fileStream, moduleFile);
-				OutputStream signatureStream = Files.newOutputStream(signatureFile, StandardOpenOption.CREATE)) {
-			byte[] signatureBytes = signature.sign(copyStream);
+		// Move the signature first; a signature without module file is ignored during restore
+		Files.move(stagedModule.stagedSignatureFile(), signatureFile, StandardCopyOption.REPLACE_EXISTING,
+				StandardCopyOption.ATOMIC_MOVE);
+		Files.move(stagedModule.stagedModuleFile(), moduleFile, StandardCopyOption.REPLACE_EXISTING,
+				StandardCopyOption.ATOMIC_MOVE);
+		stagedModule.installed();
 
-			signatureStream.write(signatureBytes);
+		// The module has just been signed by ourselves; no need to verify it again on first load
+		this.moduleVerifications.setVerified(moduleFile, Collections.singletonList(signatureFile));
+	}
+
+	private void deleteStaleStagingFiles() throws IOException {
+		try (Stream<Path> paths = Files.walk(this.modulesDir, 1)) {
+			paths.filter(path -> path.getFileName().toString().endsWith(STAGING_SUFFIX)).forEach(path -> {
+				LOG.info("Deleting stale staging file ''{0}''...", path);
+				try {
+					Files.deleteIfExists(path);
+				} catch (IOException e) {
+					LOG.warning(e, "Failed to delete stale staging file ''{0}''", path);
+				}
+			});
 		}
 	}
 
@@ -567,167 +928,174 @@ final class ServiceStore {
 		String signatureName = signatureFileName.substring(moduleFileName.length() + 1);
 		Signature signature = this.secretsStore.getSignature(signatureName);
 		byte[] signatureBytes = Files.readAllBytes(signaturePath);
-		boolean verified;
 
-		try (InputStream moduleStream = Files.newInputStream(modulePath)) {
-			verified = signature.verify(moduleStream, signatureBytes);
-		}
-		return verified;
+		return signature.verify(modulePath, signatureBytes);
 	}
 
-	private static class ModuleInstance {
+	private static class StagedModule {
 
-		private final ModuleFactory factory;
-		private final String name;
-		private final String version;
-		private ModuleState state = ModuleState.REGISTERED;
+		private final String fileName;
+		private final String signatureName;
+		@Nullable
+		Path stagedModuleFile = null;
+		@Nullable
+		Path stagedSignatureFile = null;
 
-		ModuleInstance(ModuleFactory factory, String name, String version) {
-			this.factory = factory;
-			this.name = name;
-			this.version = version;
+		StagedModule(String fileName, String signatureName) {
+			this.fileName = fileName;
+			this.signatureName = signatureName;
 		}
 
-		public String name() {
-			return this.name;
+		public String fileName() {
+			return this.fileName;
 		}
 
-		public String version() {
-			return this.version;
+		public String signatureFileName() {
+			return this.fileName + "." + this.signatureName;
 		}
 
-		public String fileName() {
-			return this.name + "-" + this.version + ".jar";
+		public Path stagedModuleFile() {
+			return Objects.requireNonNull(this.stagedModuleFile);
 		}
 
-		public ClassLoader module() throws ServiceManagerException {
-			return this.factory.get(this.name);
+		public Path stagedSignatureFile() {
+			return Objects.requireNonNull(this.stagedSignatureFile);
 		}
 
-		public ModuleState getState() {
-			return this.state;
+		public void installed() {
+			this.stagedModuleFile = null;
+			this.stagedSignatureFile = null;
 		}
 
-		public void setState(ModuleState state) {
-			this.state = state;
+		public void discard() {
+			discard(this.stagedModuleFile);
+			discard(this.stagedSignatureFile);
+			installed();
+		}
+
+		private static void discard(@Nullable Path stagedFile) {
+			if (stagedFile != null) {
+				try {
+					Files.deleteIfExists(stagedFile);
+				} catch (IOException e) {
+					LOG.warning(e, "Failed to delete staging file ''{0}''", stagedFile);
+				}
+			}
 		}
 
 	}
 
-	private static class ServiceInstance {
+	private static class ModuleInstance {
 
-		private final ServiceFactory factory;
-		private final ServiceId id;
-		private boolean autoStartFlag;
-		private ServiceState state = ServiceState.REGISTERED;
+		private final ModuleFactory factory;
+		private volatile ModuleInfo info;
 
-		ServiceInstance(ServiceFactory factory, ServiceId id, boolean autoStartFlag) {
+		ModuleInstance(ModuleFactory factory, String name, String version) {
 			this.factory = factory;
-			this.id = id;
-			this.autoStartFlag = autoStartFlag;
+			this.info = new ModuleInfo(name, version, ModuleState.REGISTERED);
 		}
 
-		public ServiceId id() {
-			return this.id;
+		public String name() {
+			return this.info.name();
 		}
 
-		public Service service() throws ServiceManagerException {
-			return this.factory.get(this.id);
+		public String version() {
+			return this.info.version();
 		}
 
-		public boolean getAutoStartFlag() {
-			return this.autoStartFlag;
+		public String fileName() {
+			return name() + "-" + version() + ".jar";
 		}
 
-		public void setAutoStartFlag(boolean autoStartFlag) {
-			this.autoStartFlag = autoStartFlag;
+		public ClassLoader module() throws ServiceManagerException {
+			return this.factory.get(name());
 		}
 
-		public ServiceState getState() {
-			return this.state;
+		public ModuleInfo info() {
+			return this.info;
 		}
 
-		public void setState(ServiceState state) {
-			this.state = state;
+		public ModuleState getState() {
+			return this.info.state();
+		}
+
+		public void transition(ModuleState from, ModuleState to) {
+			ModuleInfo currentInfo = this.info;
+
+			Check.assertTrue(currentInfo.state() == from, "Unexpected module state transition {0} -> {1}",
+					currentInfo.state(), to);
+
+			this.info = new ModuleInfo(currentInfo.name(), currentInfo.version(), to);
 		}
 
 	}
 
-	private static final class JsonServiceStore {
+	/*
+	 * State transitions must be performed while holding the instance's monitor. The current state is published as an
+	 * immutable ServiceInfo, hence readers never see partial updates and do not need to acquire the monitor.
+	 */
+	private static class ServiceInstance {
 
-		@Nullable
-		private Collection<JsonServiceStoreService> services;
+		private final ServiceFactory factory;
+		private volatile ServiceInfo info;
 
-		// Implicitly used by ObjectMapper
-		@SuppressWarnings("unused")
-		public JsonServiceStore() {
-			// Nothing to do here
+		ServiceInstance(ServiceFactory factory, ServiceId id, boolean autoStartFlag) {
+			this.factory = factory;
+			this.info = new ServiceInfo(id, ServiceState.REGISTERED, autoStartFlag);
 		}
 
-		public JsonServiceStore(Collection<JsonServiceStoreService> services) {
-			this.services = services;
+		public ServiceId id() {
+			return this.info.id();
 		}
 
-		public Collection<JsonServiceStoreService> getServices() {
-			return Objects.requireNonNull(this.services);
+		public Service service() throws ServiceManagerException {
+			return this.factory.get(id());
 		}
 
-		// Implicitly used by ObjectMapper
-		@SuppressWarnings("unused")
-		public void setServices(Collection<JsonServiceStoreService> services) {
-			this.services = services;
+		public ServiceInfo info() {
+			return this.info;
 		}
 
-	}
-
-	private static final class JsonServiceStoreService {
-
-		@Nullable
-		private String moduleName;
-		@Nullable
-		private String serviceName;
-		private boolean autoStartFlag;
-
-		// Implicitly used by ObjectMapper
-		@SuppressWarnings("unused")
-		public JsonServiceStoreService() {
-			// Nothing to do here
+		public boolean getAutoStartFlag() {
+			return this.info.autoStartFlag();
 		}
 
-		public JsonServiceStoreService(String moduleName, String serviceName, boolean autoStartFlag) {
-			this.moduleName = moduleName;
-			this.serviceName = serviceName;
-			this.autoStartFlag = autoStartFlag;
+		public ServiceState getState() {
+			return this.info.state();
 		}
 
-		public String getModuleName() {
-			return Objects.requireNonNull(this.moduleName);
+		public void transition(ServiceState from, ServiceState to) {
+			transition(from, to, this.info.autoStartFlag());
 		}
 
-		// Implicitly used by ObjectMapper
-		@SuppressWarnings("unused")
-		public void setModuleName(String moduleName) {
-			this.moduleName = moduleName;
-		}
+		public void transition(ServiceState from, ServiceState to, boolean autoStartFlag) {
+			Check.assertTrue(Thread.holdsLock(this));
 
-		public String getServiceName() {
-			return Objects.requireNonNull(this.serviceName);
-		}
+			ServiceInfo currentInfo = this.info;
 
-		// Implicitly used by ObjectMapper
-		@SuppressWarnings("unused")
-		public void setServiceName(String serviceName) {
-			this.serviceName = serviceName;
-		}
+			Check.assertTrue(currentInfo.state() == from && isValidTransition(from, to),
+					"Unexpected service state transition {0} -> {1}", currentInfo.state(), to);
 
-		public boolean getAutoStartFlag() {
-			return this.autoStartFlag;
+			this.info = new ServiceInfo(currentInfo.id(), to, autoStartFlag);
 		}
 
-		// Implicitly used by ObjectMapper
-		@SuppressWarnings("unused")
-		public void setAutoStartFlag(boolean autoStartFlag) {
-			this.autoStartFlag = autoStartFlag;
+		private static boolean isValidTransition(ServiceState from, ServiceState to) {
+			boolean valid;
+
+			switch (from) {
+			case REGISTERED:
+				valid = to == ServiceState.LOADED;
+				break;
+			case LOADED:
+				valid = to == ServiceState.REGISTERED || to == ServiceState.RUNNING;
+				break;
+			case RUNNING:
+				valid = to == ServiceState.LOADED;
+				break;
+			default:
+				valid = false;
+			}
+			return valid;
 		}
 
 	}
@@ -0,0 +1,184 @@
+/*
+ * Copyright (c) 2018-2021 Holger de Carne and contributors, All Rights Reserved.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.carne.lwjsd.runtime.server;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.eclipse.jdt.annotation.Nullable;
+
+import de.carne.lwjsd.api.ReasonMessage;
+import de.carne.lwjsd.api.Service;
+import de.carne.lwjsd.api.ServiceHandle;
+import de.carne.lwjsd.api.ServiceManagerException;
+
+/**
+ * Index mapping every super type of an instantiated {@linkplain Service} to the {@linkplain Service} instance.
+ * <p>
+ * The index is updated whenever a {@linkplain Service} is instantiated or discarded, so that a lookup by type is a
+ * single map access. If multiple {@linkplain Service}s share a type, the first indexed one is returned.
+ */
+public final class ServiceTypeIndex {
+
+	private final Map<Class<?>, List<Service>> index = new ConcurrentHashMap<>();
+	private final AtomicLong generation = new AtomicLong();
+
+	/**
+	 * Adds a {@linkplain Service} instance to the index.
+	 *
+	 * @param service the {@linkplain Service} instance to add.
+	 */
+	public void add(Service service) {
+		for (Class<?> type : superTypes(service.getClass())) {
+			this.index.computeIfAbsent(type, key -> new CopyOnWriteArrayList<>()).add(service);
+		}
+		this.generation.incrementAndGet();
+	}
+
+	/**
+	 * Removes a {@linkplain Service} instance from the index.
+	 *
+	 * @param service the {@linkplain Service} instance to remove.
+	 */
+	public void remove(Service service) {
+		for (Class<?> type : superTypes(service.getClass())) {
+			this.index.computeIfPresent(type, (key, services) -> {
+				services.remove(service);
+				return (services.isEmpty() ? null : services);
+			});
+		}
+		this.generation.incrementAndGet();
+	}
+
+	/**
+	 * Removes all {@linkplain Service} instances from the index.
+	 */
+	public void clear() {
+		this.index.clear();
+		this.generation.incrementAndGet();
+	}
+
+	/**
+	 * Gets the {@linkplain Service} instance of a specific type.
+	 *
+	 * @param <T> the requested service type.
+	 * @param serviceClass the type of the {@linkplain Service} to get.
+	 * @return the first indexed {@linkplain Service} instance of the requested type or {@code null} if there is none.
+	 */
+	public <T extends Service> @Nullable T get(Class<T> serviceClass) {
+		List<Service> services = this.index.get(serviceClass);
+		T service = null;
+
+		if (services != null) {
+			for (Service indexedService : services) {
+				service = serviceClass.cast(indexedService);
+				break;
+			}
+		}
+		return service;
+	}
+
+	/**
+	 * Gets a {@linkplain ServiceHandle} for the {@linkplain Service} instance of a specific type.
+	 * <p>
+	 * The handle caches the resolved instance until the index is modified.
+	 *
+	 * @param <T> the requested service type.
+	 * @param serviceClass the type of the {@linkplain Service} to reference.
+	 * @return the {@linkplain ServiceHandle} referencing the {@linkplain Service} instance.
+	 */
+	public <T extends Service> ServiceHandle<T> handle(Class<T> serviceClass) {
+		return new Handle<>(serviceClass);
+	}
+
+	private static Set<Class<?>> superTypes(Class<?> serviceClass) {
+		Set<Class<?>> superTypes = new HashSet<>();
+		Deque<Class<?>> pendingTypes = new ArrayDeque<>();
+
+		pendingTypes.add(serviceClass);
+		while (!pendingTypes.isEmpty()) {
+			Class<?> type = pendingTypes.remove();
+
+			if (superTypes.add(type)) {
+				Class<?> superClass = type.getSuperclass();
+
+				if (superClass != null && !Object.class.equals(superClass)) {
+					pendingTypes.add(superClass);
+				}
+				for (Class<?> superInterface : type.getInterfaces()) {
+					pendingTypes.add(superInterface);
+				}
+			}
+		}
+		return superTypes;
+	}
+
+	private static final class Resolved<T extends Service> {
+
+		final long generation;
+		final @Nullable T service;
+
+		Resolved(long generation, @Nullable T service) {
+			this.generation = generation;
+			this.service = service;
+		}
+
+	}
+
+	private final class Handle<T extends Service> implements ServiceHandle<T> {
+
+		private final Class<T> serviceClass;
+		private volatile Resolved<T> resolved = new Resolved<>(-1, null);
+
+		Handle(Class<T> serviceClass) {
+			this.serviceClass = serviceClass;
+		}
+
+		@Override
+		public T get() throws ServiceManagerException {
+			long currentGeneration = ServiceTypeIndex.this.generation.get();
+			Resolved<T> currentResolved = this.resolved;
+
+			if (currentResolved.generation != currentGeneration) {
+				currentResolved = new Resolved<>(currentGeneration, ServiceTypeIndex.this.get(this.serviceClass));
+				this.resolved = currentResolved;
+			}
+
+			T service = currentResolved.service;
+
+			if (service == null) {
+				throw new ServiceManagerException(
+						ReasonMessage.illegalArgument("Failed to get service of type {0}", this.serviceClass.getName()));
+			}
+			return service;
+		}
+
+		@Override
+		public String toString() {
+			return this.serviceClass.getName();
+		}
+
+	}
+
+}
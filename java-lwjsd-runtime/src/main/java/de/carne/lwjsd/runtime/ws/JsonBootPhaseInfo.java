@@ -0,0 +1,117 @@
+/*
+ * Copyright (c) 2018-2021 Holger de Carne and contributors, All Rights Reserved.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.carne.lwjsd.runtime.ws;
+
+import java.time.Duration;
+import java.util.Objects;
+
+import org.eclipse.jdt.annotation.Nullable;
+
+import de.carne.lwjsd.api.BootPhaseInfo;
+
+/**
+ * JSON wrapper for {@linkplain BootPhaseInfo}.
+ */
+public final class JsonBootPhaseInfo {
+
+	@Nullable
+	private String name;
+	private long offsetNanos = 0;
+	private long durationNanos = 0;
+
+	/**
+	 * Constructs empty {@linkplain JsonBootPhaseInfo} instance.
+	 */
+	public JsonBootPhaseInfo() {
+		// Nothing to do here
+	}
+
+	/**
+	 * Constructs initialized {@linkplain JsonBootPhaseInfo} instance.
+	 *
+	 * @param source the source object to use for initialization.
+	 */
+	public JsonBootPhaseInfo(BootPhaseInfo source) {
+		this.name = source.name();
+		this.offsetNanos = source.offset().toNanos();
+		this.durationNanos = source.duration().toNanos();
+	}
+
+	/**
+	 * Sets {@code name}.
+	 *
+	 * @param name {@code name} attribute.
+	 */
+	public void setName(String name) {
+		this.name = name;
+	}
+
+	/**
+	 * Gets {@code name} attribute.
+	 *
+	 * @return {@code name} attribute.
+	 */
+	public String getName() {
+		return Objects.requireNonNull(this.name);
+	}
+
+	/**
+	 * Sets {@code offsetNanos}.
+	 *
+	 * @param offsetNanos {@code offsetNanos} attribute.
+	 */
+	public void setOffsetNanos(long offsetNanos) {
+		this.offsetNanos = offsetNanos;
+	}
+
+	/**
+	 * Gets {@code offsetNanos} attribute.
+	 *
+	 * @return {@code offsetNanos} attribute.
+	 */
+	public long getOffsetNanos() {
+		return this.offsetNanos;
+	}
+
+	/**
+	 * Sets {@code durationNanos}.
+	 *
+	 * @param durationNanos {@code durationNanos} attribute.
+	 */
+	public void setDurationNanos(long durationNanos) {
+		this.durationNanos = durationNanos;
+	}
+
+	/**
+	 * Gets {@code durationNanos} attribute.
+	 *
+	 * @return {@code durationNanos} attribute.
+	 */
+	public long getDurationNanos() {
+		return this.durationNanos;
+	}
+
+	/**
+	 * Convert JSON wrapper to source object:
+	 *
+	 * @return the transferred source object.
+	 */
+	public BootPhaseInfo toSource() {
+		return new BootPhaseInfo(getName(), Duration.ofNanos(getOffsetNanos()), Duration.ofNanos(getDurationNanos()));
+	}
+
+}
@@ -18,11 +18,13 @@ package de.carne.lwjsd.runtime.ws;
 
 import java.net.URI;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.Objects;
 import java.util.stream.Collectors;
 
 import org.eclipse.jdt.annotation.Nullable;
 
+import de.carne.lwjsd.api.BootPhaseInfo;
 import de.carne.lwjsd.api.ModuleInfo;
 import de.carne.lwjsd.api.ServiceInfo;
 import de.carne.lwjsd.api.ServiceManagerInfo;
@@ -41,6 +43,9 @@ public final class JsonServiceManagerInfo {
 	private Collection<JsonModuleInfo> moduleInfos = null;
 	@Nullable
 	private Collection<JsonServiceInfo> serviceInfos = null;
+	private long version = 0;
+	@Nullable
+	private Collection<JsonBootPhaseInfo> bootPhaseInfos = null;
 
 	/**
 	 * Constructs empty {@linkplain JsonServiceManagerInfo} instance.
@@ -59,6 +64,9 @@ public final class JsonServiceManagerInfo {
 		this.state = source.state();
 		this.moduleInfos = source.moduleInfos().stream().map(JsonModuleInfo::new).collect(Collectors.toList());
 		this.serviceInfos = source.serviceInfos().stream().map(JsonServiceInfo::new).collect(Collectors.toList());
+		this.version = source.version();
+		this.bootPhaseInfos = source.bootPhaseInfos().stream().map(JsonBootPhaseInfo::new)
+				.collect(Collectors.toList());
 	}
 
 	/**
@@ -133,6 +141,46 @@ public final class JsonServiceManagerInfo {
 		return Objects.requireNonNull(this.serviceInfos);
 	}
 
+	/**
+	 * Sets {@code version}.
+	 *
+	 * @param version {@code version} attribute.
+	 */
+	public void setVersion(long version) {
+		this.version = version;
+	}
+
+	/**
+	 * Gets {@code version} attribute.
+	 *
+	 * @return {@code version} attribute.
+	 */
+	public long getVersion() {
+		return this.version;
+	}
+
+	/**
+	 * Sets {@code bootPhaseInfos}.
+	 *
+	 * @param bootPhaseInfos {@code bootPhaseInfos} attribute.
+	 */
+	public void setBootPhaseInfos(Collection<JsonBootPhaseInfo> bootPhaseInfos) {
+		this.bootPhaseInfos = bootPhaseInfos;
+	}
+
+	/**
+	 * Gets {@code bootPhaseInfos} attribute.
+	 * <p>
+	 * An empty collection is returned if the attribute has not been set (e.g. when talking to an older server).
+	 *
+	 * @return {@code bootPhaseInfos} attribute.
+	 */
+	public Collection<JsonBootPhaseInfo> getBootPhaseInfos() {
+		Collection<JsonBootPhaseInfo> checkedBootPhaseInfos = this.bootPhaseInfos;
+
+		return (checkedBootPhaseInfos != null ? checkedBootPhaseInfos : Collections.emptyList());
+	}
+
 	/**
 	 * Convert JSON wrapper to source object:
 	 *
@@ -143,8 +191,11 @@ public final class JsonServiceManagerInfo {
 				.collect(Collectors.toList());
 		Collection<ServiceInfo> serviceInfoSources = getServiceInfos().stream().map(JsonServiceInfo::toSource)
 				.collect(Collectors.toList());
+		Collection<BootPhaseInfo> bootPhaseInfoSources = getBootPhaseInfos().stream()
+				.map(JsonBootPhaseInfo::toSource).collect(Collectors.toList());
 
-		return new ServiceManagerInfo(getBaseUri(), getState(), moduleInfoSources, serviceInfoSources);
+		return new ServiceManagerInfo(getBaseUri(), getState(), moduleInfoSources, serviceInfoSources, getVersion(),
+				bootPhaseInfoSources);
 	}
 
 }
@@ -67,6 +67,8 @@ class ClientTest {
 			Assertions.assertEquals(ServiceManagerState.RUNNING, status1.state());
 			Assertions.assertEquals(0, status1.moduleInfos().size());
 			Assertions.assertEquals(1, status1.serviceInfos().size());
+			Assertions.assertTrue(status1.bootPhaseInfos().stream()
+					.anyMatch(bootPhaseInfo -> "startHttpServer".equals(bootPhaseInfo.name())));
 
 			// Module management
 			client.registerModule(TestConfig.TEST_SERVICES_MODULE, false);
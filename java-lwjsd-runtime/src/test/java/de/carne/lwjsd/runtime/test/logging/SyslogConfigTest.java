@@ -81,6 +81,20 @@ class SyslogConfigTest {
 		config2.setDefaultMessageApp("lwjsd");
 
 		Assertions.assertEquals("lwjsd", config2.getDefaultMessageApp());
+
+		Assertions.assertEquals(0, config2.getBatchSize());
+		Assertions.assertEquals(SyslogConfig.DEFAULT_BATCH_LINGER, config2.getBatchLinger());
+		Assertions.assertFalse(config2.isBatching());
+
+		config2.setBatchSize(65536).setBatchLinger(5);
+
+		Assertions.assertEquals(65536, config2.getBatchSize());
+		Assertions.assertEquals(5, config2.getBatchLinger());
+		Assertions.assertFalse(config2.isBatching());
+
+		config2.addOption(SyslogOption.OCTET_COUNTING_FRAMING);
+
+		Assertions.assertTrue(config2.isBatching());
 	}
 
 }
@@ -0,0 +1,426 @@
+/*
+ * Copyright (c) 2018-2021 Holger de Carne and contributors, All Rights Reserved.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.carne.lwjsd.runtime.test.logging;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.GeneralSecurityException;
+import java.security.KeyStore;
+import java.time.Instant;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import javax.net.ssl.KeyManagerFactory;
+import javax.net.ssl.SSLContext;
+
+import org.eclipse.jdt.annotation.Nullable;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import de.carne.boot.Exceptions;
+import de.carne.lwjsd.runtime.logging.Syslog;
+import de.carne.lwjsd.runtime.logging.SyslogConfig;
+import de.carne.lwjsd.runtime.logging.SyslogDestination;
+import de.carne.lwjsd.runtime.logging.SyslogMessage;
+import de.carne.lwjsd.runtime.logging.SyslogOption;
+import de.carne.lwjsd.runtime.test.TestConfig;
+
+/**
+ * Test {@linkplain SyslogDestination} class against plain socket based peers.
+ */
+class SyslogDestinationTest {
+
+	private static final int TIMEOUT = 5000;
+	private static final String KEY_STORE_FILE = "localhost.jks";
+	private static final String KEY_STORE_SECRET = "secret";
+	private static final String TRUST_STORE_PROPERTY = "javax.net.ssl.trustStore";
+	private static final String TRUST_STORE_TYPE_PROPERTY = "javax.net.ssl.trustStoreType";
+	private static final String TRUST_STORE_PASSWORD_PROPERTY = "javax.net.ssl.trustStorePassword";
+
+	@Test
+	void testNonBlockingTls(@TempDir Path tempDir) throws IOException, GeneralSecurityException, InterruptedException {
+		Path keyStoreFile = tempDir.resolve(KEY_STORE_FILE);
+
+		try (InputStream keyStoreStream = TestConfig.class.getResourceAsStream(KEY_STORE_FILE)) {
+			Files.copy(keyStoreStream, keyStoreFile, StandardCopyOption.REPLACE_EXISTING);
+		}
+
+		// The destination's TLS context is created once and trusts the default trust store; hence the test key store
+		// has to be set up before the first TLS connection is opened
+		String trustStore = System.setProperty(TRUST_STORE_PROPERTY, keyStoreFile.toString());
+		String trustStoreType = System.setProperty(TRUST_STORE_TYPE_PROPERTY, "JKS");
+		String trustStorePassword = System.setProperty(TRUST_STORE_PASSWORD_PROPERTY, KEY_STORE_SECRET);
+
+		try (SyslogPeer peer = new SyslogPeer(
+				newServerSslContext(keyStoreFile).getServerSocketFactory().createServerSocket(0, 0,
+						InetAddress.getLoopbackAddress()),
+				true)) {
+			SyslogConfig config = newConfig(peer).addOption(SyslogOption.TRANSPORT_TCP_TLS)
+					.addOption(SyslogOption.NON_BLOCKING_IO);
+
+			sendAndReceive(peer, config, "Tls", 100);
+
+			SyslogConfig batchingConfig = newConfig(peer).addOption(SyslogOption.TRANSPORT_TCP_TLS).setBatchSize(1024);
+
+			sendAndReceive(peer, batchingConfig, "BatchedTls", 100);
+		} finally {
+			restoreProperty(TRUST_STORE_PROPERTY, trustStore);
+			restoreProperty(TRUST_STORE_TYPE_PROPERTY, trustStoreType);
+			restoreProperty(TRUST_STORE_PASSWORD_PROPERTY, trustStorePassword);
+		}
+	}
+
+	@Test
+	void testReconnectAfterPeerClose() throws IOException, InterruptedException {
+		testReconnectAfterPeerClose(false);
+		testReconnectAfterPeerClose(true);
+	}
+
+	private void testReconnectAfterPeerClose(boolean nonBlocking) throws IOException, InterruptedException {
+		try (SyslogPeer peer = new SyslogPeer(new ServerSocket(0, 0, InetAddress.getLoopbackAddress()), true)) {
+			SyslogConfig config = newConfig(peer).addOption(SyslogOption.TRANSPORT_TCP);
+
+			if (nonBlocking) {
+				config.addOption(SyslogOption.NON_BLOCKING_IO);
+			}
+			try (SyslogDestination destination = new SyslogDestination(config)) {
+				destination.send(newMessage("Connected"));
+
+				Assertions.assertEquals("Connected", peer.pollMessage());
+
+				peer.closeConnections();
+
+				// Output written before the close is detected is lost (as usual for TCP based Syslog); afterwards the
+				// destination re-connects and delivers any further message
+				@Nullable String received = null;
+				int messageIndex = 0;
+
+				while (received == null && messageIndex < 10) {
+					destination.send(newMessage("Reconnect-" + messageIndex));
+					messageIndex++;
+					received = peer.pollMessage(200);
+				}
+
+				Assertions.assertNotNull(received);
+				Assertions.assertEquals(2, peer.connectionCount());
+
+				destination.send(newMessage("Reconnected"));
+
+				Assertions.assertEquals("Reconnected", peer.pollMessage());
+			}
+		}
+	}
+
+	@Test
+	void testStalledPeer() throws IOException, InterruptedException {
+		ServerSocket serverSocket = new ServerSocket();
+
+		// Keep the peer's socket buffer small, so the sender runs into the pending output limit
+		serverSocket.setReceiveBufferSize(4096);
+		serverSocket.bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+		try (SyslogPeer peer = new SyslogPeer(serverSocket, false)) {
+			SyslogConfig config = newConfig(peer).addOption(SyslogOption.TRANSPORT_TCP)
+					.addOption(SyslogOption.NON_BLOCKING_IO);
+			String padding = "x".repeat(64 * 1024);
+			int messageCount = 256;
+			long stallMillis = 1000;
+
+			// Start reading well before the pending output timeout expires
+			Assertions.assertTrue(stallMillis < Syslog.PENDING_OUTPUT_TIMEOUT);
+
+			Thread stallThread = new Thread(() -> {
+				try {
+					Thread.sleep(stallMillis);
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+				peer.startReading();
+			});
+			long start = System.nanoTime();
+
+			try (SyslogDestination destination = new SyslogDestination(config)) {
+				stallThread.start();
+				for (int messageIndex = 0; messageIndex < messageCount; messageIndex++) {
+					destination.send(newMessage("Stalled-" + messageIndex + "-" + padding));
+				}
+
+				// Far more output than the pending output limit (plus socket buffers) has been sent; hence the sender
+				// must have been blocked until the peer started reading
+				Assertions.assertTrue(
+						TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) >= stallMillis / 2);
+			} finally {
+				stallThread.join();
+			}
+			for (int messageIndex = 0; messageIndex < messageCount; messageIndex++) {
+				Assertions.assertEquals("Stalled-" + messageIndex + "-" + padding, peer.pollMessage());
+			}
+			Assertions.assertEquals(1, peer.connectionCount());
+		}
+	}
+
+	@Test
+	void testSpoolDeliveryOrder(@TempDir Path tempDir) throws IOException, InterruptedException {
+		int port = freePort();
+		SyslogConfig config = new SyslogConfig(InetAddress.getLoopbackAddress().getHostAddress(), port)
+				.addOption(SyslogOption.TRANSPORT_TCP).setSpoolDirectory(tempDir).setSpoolReplayRate(20);
+
+		try (SyslogDestination destination = new SyslogDestination(config)) {
+			// No peer running yet; messages are spooled
+			for (int messageIndex = 0; messageIndex < 3; messageIndex++) {
+				destination.send(newMessage("Spooled-" + messageIndex));
+			}
+
+			Assertions.assertEquals(3, destination.spooledCount());
+
+			try (SyslogPeer peer = new SyslogPeer(new ServerSocket(port, 0, InetAddress.getLoopbackAddress()), true)) {
+				// Spooled messages are still waiting for replay; live messages have to queue up behind them
+				for (int messageIndex = 0; messageIndex < 3; messageIndex++) {
+					destination.send(newMessage("Live-" + messageIndex));
+				}
+				for (int messageIndex = 0; messageIndex < 3; messageIndex++) {
+					Assertions.assertEquals("Spooled-" + messageIndex, peer.pollMessage());
+				}
+				for (int messageIndex = 0; messageIndex < 3; messageIndex++) {
+					Assertions.assertEquals("Live-" + messageIndex, peer.pollMessage());
+				}
+
+				destination.send(newMessage("Direct"));
+
+				Assertions.assertEquals("Direct", peer.pollMessage());
+			}
+		}
+	}
+
+	@Test
+	void testSpoolRecovery(@TempDir Path tempDir) throws IOException, InterruptedException {
+		int port = freePort();
+		SyslogConfig config = new SyslogConfig(InetAddress.getLoopbackAddress().getHostAddress(), port)
+				.addOption(SyslogOption.TRANSPORT_TCP).setSpoolDirectory(tempDir);
+
+		try (SyslogDestination destination = new SyslogDestination(config)) {
+			for (int messageIndex = 0; messageIndex < 3; messageIndex++) {
+				destination.send(newMessage("Recovered-" + messageIndex));
+			}
+
+			Assertions.assertEquals(3, destination.spooledCount());
+		}
+
+		// Simulate a torn write of the 2nd record; recovery stops there and discards the following records as well
+		corruptSpoolRecord(tempDir, 1);
+
+		try (SyslogPeer peer = new SyslogPeer(new ServerSocket(port, 0, InetAddress.getLoopbackAddress()), true);
+				SyslogDestination destination = new SyslogDestination(config)) {
+			// Recovered messages are replayed without any further message being sent
+			Assertions.assertEquals("Recovered-0", peer.pollMessage());
+			Assertions.assertNull(peer.pollMessage(1000));
+
+			destination.send(newMessage("Live"));
+
+			Assertions.assertEquals("Live", peer.pollMessage());
+		}
+	}
+
+	private static void corruptSpoolRecord(Path spoolDirectory, int recordIndex) throws IOException {
+		Path segmentFile;
+
+		try (DirectoryStream<Path> segmentFiles = Files.newDirectoryStream(spoolDirectory, "*.spool")) {
+			segmentFile = segmentFiles.iterator().next();
+		}
+		try (FileChannel segment = FileChannel.open(segmentFile, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+			ByteBuffer buffer = ByteBuffer.allocate(Integer.BYTES);
+			long position = 0;
+
+			// Records are prefixed with their length and checksum (both int)
+			for (int skipIndex = 0; skipIndex < recordIndex; skipIndex++) {
+				buffer.clear();
+				segment.read(buffer, position);
+				position += 2 * Integer.BYTES + buffer.getInt(0);
+			}
+
+			long corruptPosition = position + 2 * Integer.BYTES + 1;
+
+			buffer.clear().limit(1);
+			segment.read(buffer, corruptPosition);
+			buffer.put(0, (byte) ~buffer.get(0)).flip();
+			segment.write(buffer, corruptPosition);
+		}
+	}
+
+	private static int freePort() throws IOException {
+		try (ServerSocket serverSocket = new ServerSocket(0, 0, InetAddress.getLoopbackAddress())) {
+			return serverSocket.getLocalPort();
+		}
+	}
+
+	private static void sendAndReceive(SyslogPeer peer, SyslogConfig config, String prefix, int messageCount)
+			throws IOException, InterruptedException {
+		try (SyslogDestination destination = new SyslogDestination(config)) {
+			for (int messageIndex = 0; messageIndex < messageCount; messageIndex++) {
+				destination.send(newMessage(prefix + "-" + messageIndex));
+			}
+		}
+		for (int messageIndex = 0; messageIndex < messageCount; messageIndex++) {
+			Assertions.assertEquals(prefix + "-" + messageIndex, peer.pollMessage());
+		}
+	}
+
+	private static SyslogConfig newConfig(SyslogPeer peer) {
+		return new SyslogConfig(InetAddress.getLoopbackAddress().getHostAddress(), peer.port());
+	}
+
+	private static SyslogMessage newMessage(String msg) {
+		return new SyslogMessage(SyslogMessage.Severity.SEV_NOTICE, SyslogMessage.Facility.FAC_USER, Instant.now(),
+				msg);
+	}
+
+	private static SSLContext newServerSslContext(Path keyStoreFile) throws IOException, GeneralSecurityException {
+		KeyStore keyStore = KeyStore.getInstance("JKS");
+
+		try (InputStream keyStoreStream = Files.newInputStream(keyStoreFile)) {
+			keyStore.load(keyStoreStream, KEY_STORE_SECRET.toCharArray());
+		}
+
+		KeyManagerFactory keyManagerFactory = KeyManagerFactory.getInstance(KeyManagerFactory.getDefaultAlgorithm());
+
+		keyManagerFactory.init(keyStore, KEY_STORE_SECRET.toCharArray());
+
+		SSLContext sslContext = SSLContext.getInstance("TLS");
+
+		sslContext.init(keyManagerFactory.getKeyManagers(), null, null);
+		return sslContext;
+	}
+
+	private static void restoreProperty(String key, @Nullable String value) {
+		if (value != null) {
+			System.setProperty(key, value);
+		} else {
+			System.clearProperty(key);
+		}
+	}
+
+	private static final class SyslogPeer implements Closeable {
+
+		private final ServerSocket serverSocket;
+		private final CountDownLatch readLatch;
+		private final List<Socket> connections = new CopyOnWriteArrayList<>();
+		private final BlockingQueue<String> messages = new LinkedBlockingQueue<>();
+
+		SyslogPeer(ServerSocket serverSocket, boolean reading) {
+			this.serverSocket = serverSocket;
+			this.readLatch = new CountDownLatch(reading ? 0 : 1);
+
+			Thread acceptThread = new Thread(this::acceptConnections, getClass().getSimpleName());
+
+			acceptThread.setDaemon(true);
+			acceptThread.start();
+		}
+
+		int port() {
+			return this.serverSocket.getLocalPort();
+		}
+
+		int connectionCount() {
+			return this.connections.size();
+		}
+
+		void startReading() {
+			this.readLatch.countDown();
+		}
+
+		void closeConnections() throws IOException {
+			for (Socket connection : this.connections) {
+				connection.close();
+			}
+		}
+
+		String pollMessage() throws InterruptedException {
+			String message = pollMessage(TIMEOUT);
+
+			if (message == null) {
+				throw new IllegalStateException("Unexpected poll timeout");
+			}
+			return message;
+		}
+
+		@Nullable
+		String pollMessage(long timeout) throws InterruptedException {
+			return this.messages.poll(timeout, TimeUnit.MILLISECONDS);
+		}
+
+		@Override
+		public void close() throws IOException {
+			this.serverSocket.close();
+			closeConnections();
+		}
+
+		private void acceptConnections() {
+			try {
+				while (!this.serverSocket.isClosed()) {
+					Socket connection = this.serverSocket.accept();
+					Thread readThread = new Thread(() -> readConnection(connection), getClass().getSimpleName());
+
+					this.connections.add(connection);
+					readThread.setDaemon(true);
+					readThread.start();
+				}
+			} catch (IOException e) {
+				Exceptions.ignore(e);
+			}
+		}
+
+		private void readConnection(Socket connection) {
+			try {
+				this.readLatch.await();
+
+				BufferedReader reader = new BufferedReader(
+						new InputStreamReader(connection.getInputStream(), StandardCharsets.US_ASCII));
+				String line;
+
+				while ((line = reader.readLine()) != null) {
+					// Non-transparent-framing and RFC 3164 without app; the message text is the last token
+					this.messages.add(line.substring(line.lastIndexOf(' ') + 1));
+				}
+			} catch (IOException e) {
+				Exceptions.ignore(e);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		}
+
+	}
+
+}
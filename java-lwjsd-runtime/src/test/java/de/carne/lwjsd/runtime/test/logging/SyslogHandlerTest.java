@@ -18,6 +18,7 @@ package de.carne.lwjsd.runtime.test.logging;
 
 import java.io.IOException;
 import java.util.Arrays;
+import java.util.logging.Level;
 import java.util.logging.LogRecord;
 
 import org.junit.jupiter.api.Assertions;
@@ -27,9 +28,13 @@ import de.carne.lwjsd.api.ServiceInfo;
 import de.carne.lwjsd.api.ServiceManagerException;
 import de.carne.lwjsd.runtime.config.RuntimeConfig;
 import de.carne.lwjsd.runtime.logging.SyslogConfig;
+import de.carne.lwjsd.runtime.logging.SyslogContext;
 import de.carne.lwjsd.runtime.logging.SyslogDestination;
+import de.carne.lwjsd.runtime.logging.SyslogFanOut;
 import de.carne.lwjsd.runtime.logging.SyslogHandler;
+import de.carne.lwjsd.runtime.logging.SyslogMessage;
 import de.carne.lwjsd.runtime.logging.SyslogOption;
+import de.carne.lwjsd.runtime.logging.SyslogOverflowPolicy;
 import de.carne.lwjsd.runtime.logging.SyslogProtocol;
 import de.carne.lwjsd.runtime.server.Server;
 import de.carne.lwjsd.runtime.test.TestConfig;
@@ -46,6 +51,224 @@ class SyslogHandlerTest {
 		testSyslogHandler(TcpSyslogReceiverService.class, SyslogOption.TRANSPORT_TCP);
 		testSyslogHandler(TcpSyslogReceiverService.class, SyslogOption.TRANSPORT_TCP,
 				SyslogOption.OCTET_COUNTING_FRAMING);
+		testSyslogHandler(TcpSyslogReceiverService.class, SyslogOption.TRANSPORT_TCP, SyslogOption.NON_BLOCKING_IO);
+	}
+
+	@Test
+	void testAsyncSyslogHandler() throws IOException, ServiceManagerException, InterruptedException {
+		RuntimeConfig serverConfig = TestConfig.prepareConfig();
+
+		try (Server server = new Server(serverConfig)) {
+			Thread serverThread = server.start(false);
+			ServiceInfo serviceInfo = server.registerService(UdpSyslogReceiverService.class.getName());
+
+			server.startService(serviceInfo.id(), false);
+
+			SyslogReceiver receiver = server.getService(UdpSyslogReceiverService.class);
+			SyslogConfig config = new SyslogConfig(UdpSyslogReceiverService.HOST, UdpSyslogReceiverService.PORT);
+
+			try (SyslogDestination destination = new SyslogDestination(config)) {
+				SyslogHandler handler = new SyslogHandler(destination, 16, SyslogOverflowPolicy.DROP_OLDEST);
+				String message = "Async syslog message " + System.nanoTime();
+
+				handler.publish(new LogRecord(LogLevel.LEVEL_NOTICE, message));
+				handler.flush();
+
+				Assertions.assertEquals(message, receiver.pollMessage(config));
+				Assertions.assertEquals(0, handler.queueDepth());
+				Assertions.assertEquals(0, handler.droppedCount());
+
+				handler.close();
+			}
+			server.requestStop();
+			serverThread.join();
+		} finally {
+			TestConfig.discardConfig(serverConfig);
+		}
+	}
+
+	@Test
+	void testFanOutSyslogHandler() throws IOException, ServiceManagerException, InterruptedException {
+		RuntimeConfig serverConfig = TestConfig.prepareConfig();
+
+		try (Server server = new Server(serverConfig)) {
+			Thread serverThread = server.start(false);
+			ServiceInfo serviceInfo = server.registerService(UdpSyslogReceiverService.class.getName());
+
+			server.startService(serviceInfo.id(), false);
+
+			SyslogReceiver receiver = server.getService(UdpSyslogReceiverService.class);
+			SyslogConfig udpConfig = new SyslogConfig(UdpSyslogReceiverService.HOST, UdpSyslogReceiverService.PORT);
+			// No TCP receiver running; this destination is unavailable
+			SyslogConfig tcpConfig = new SyslogConfig(TcpSyslogReceiverService.HOST, TcpSyslogReceiverService.PORT)
+					.addOption(SyslogOption.TRANSPORT_TCP);
+			SyslogFanOut fanOut = new SyslogFanOut(200)
+					.addTarget(new SyslogDestination(tcpConfig), 16, SyslogOverflowPolicy.DROP_OLDEST)
+					.addTarget(new SyslogDestination(udpConfig), 16, SyslogOverflowPolicy.DROP_OLDEST);
+			SyslogHandler handler = new SyslogHandler(null, 16, SyslogOverflowPolicy.DROP_OLDEST);
+
+			handler.setFanOut(fanOut);
+			for (int messageIndex = 0; messageIndex < 4; messageIndex++) {
+				String message = "Fan-out syslog message " + System.nanoTime();
+
+				handler.publish(new LogRecord(LogLevel.LEVEL_NOTICE, message));
+
+				Assertions.assertEquals(message, receiver.pollMessage(udpConfig));
+			}
+			handler.close();
+			server.requestStop();
+			serverThread.join();
+		} finally {
+			TestConfig.discardConfig(serverConfig);
+		}
+	}
+
+	@Test
+	void testSpoolingSyslogHandler() throws IOException, ServiceManagerException, InterruptedException {
+		RuntimeConfig serverConfig = TestConfig.prepareConfig();
+
+		try (Server server = new Server(serverConfig)) {
+			Thread serverThread = server.start(false);
+			SyslogConfig config = new SyslogConfig(TcpSyslogReceiverService.HOST, TcpSyslogReceiverService.PORT)
+					.addOption(SyslogOption.TRANSPORT_TCP)
+					.setSpoolDirectory(serverConfig.getStateDir().resolve("spool")).setSpoolReplayRate(20);
+
+			try (SyslogDestination destination = new SyslogDestination(config)) {
+				SyslogHandler handler = new SyslogHandler(destination);
+				String[] messages = new String[3];
+
+				// No TCP receiver running yet; messages are spooled
+				for (int messageIndex = 0; messageIndex < messages.length; messageIndex++) {
+					messages[messageIndex] = "Spooled syslog message " + System.nanoTime();
+					handler.publish(new LogRecord(LogLevel.LEVEL_NOTICE, messages[messageIndex]));
+				}
+
+				Assertions.assertEquals(messages.length, destination.spooledCount());
+
+				ServiceInfo serviceInfo = server.registerService(TcpSyslogReceiverService.class.getName());
+
+				server.startService(serviceInfo.id(), false);
+
+				SyslogReceiver receiver = server.getService(TcpSyslogReceiverService.class);
+
+				for (String message : messages) {
+					Assertions.assertEquals(message, receiver.pollMessage(config));
+				}
+			}
+			server.requestStop();
+			serverThread.join();
+		} finally {
+			TestConfig.discardConfig(serverConfig);
+		}
+	}
+
+	@Test
+	void testSuppressingSyslogHandler() throws IOException, ServiceManagerException, InterruptedException {
+		RuntimeConfig serverConfig = TestConfig.prepareConfig();
+
+		try (Server server = new Server(serverConfig)) {
+			Thread serverThread = server.start(false);
+			ServiceInfo serviceInfo = server.registerService(UdpSyslogReceiverService.class.getName());
+
+			server.startService(serviceInfo.id(), false);
+
+			SyslogReceiver receiver = server.getService(UdpSyslogReceiverService.class);
+			SyslogConfig config = new SyslogConfig(UdpSyslogReceiverService.HOST, UdpSyslogReceiverService.PORT);
+
+			try (SyslogDestination destination = new SyslogDestination(config)) {
+				SyslogHandler handler = new SyslogHandler(destination);
+
+				handler.setCollapseDuplicates(true, 60000);
+				for (int messageIndex = 0; messageIndex < 5; messageIndex++) {
+					handler.publish(newLogRecord("duplicate", LogLevel.LEVEL_NOTICE, "Duplicate syslog message"));
+				}
+				handler.publish(newLogRecord("duplicate", LogLevel.LEVEL_NOTICE, "Final syslog message"));
+
+				Assertions.assertEquals("Duplicate syslog message", receiver.pollMessage(config));
+				Assertions.assertEquals("last message repeated 4 times", receiver.pollMessage(config));
+				Assertions.assertEquals("Final syslog message", receiver.pollMessage(config));
+
+				handler.setCollapseDuplicates(false, 0);
+				handler.setRateLimit(1, 2, SyslogMessage.Severity.SEV_ERR);
+				for (int messageIndex = 0; messageIndex < 10; messageIndex++) {
+					handler.publish(newLogRecord("limited", LogLevel.LEVEL_NOTICE, "Limited message " + messageIndex));
+				}
+				handler.publish(newLogRecord("limited", LogLevel.LEVEL_ERROR, "Exempt syslog message"));
+
+				Assertions.assertEquals("Limited message 0", receiver.pollMessage(config));
+				Assertions.assertEquals("Limited message 1", receiver.pollMessage(config));
+				Assertions.assertEquals("8 messages of logger 'limited' suppressed by rate limit",
+						receiver.pollMessage(config));
+				Assertions.assertEquals("Exempt syslog message", receiver.pollMessage(config));
+
+				// Token refill is covered by SyslogLimiterTest; here we only check the timer driven summary
+				handler.setRateLimit(0, 1, SyslogMessage.Severity.SEV_ERR);
+				handler.setCollapseDuplicates(true, 200);
+				for (int messageIndex = 0; messageIndex < 3; messageIndex++) {
+					handler.publish(newLogRecord("expiring", LogLevel.LEVEL_NOTICE, "Expiring syslog message"));
+				}
+
+				Assertions.assertEquals("Expiring syslog message", receiver.pollMessage(config));
+				Assertions.assertEquals("last message repeated 2 times", receiver.pollMessage(config));
+				Assertions.assertEquals(14, handler.suppressedCount());
+			}
+			server.requestStop();
+			serverThread.join();
+		} finally {
+			TestConfig.discardConfig(serverConfig);
+		}
+	}
+
+	@Test
+	void testStructuredDataSyslogHandler() throws IOException, ServiceManagerException, InterruptedException {
+		RuntimeConfig serverConfig = TestConfig.prepareConfig();
+
+		try (Server server = new Server(serverConfig)) {
+			Thread serverThread = server.start(false);
+			ServiceInfo serviceInfo = server.registerService(UdpSyslogReceiverService.class.getName());
+
+			server.startService(serviceInfo.id(), false);
+
+			SyslogReceiver receiver = server.getService(UdpSyslogReceiverService.class);
+			SyslogConfig config = new SyslogConfig(UdpSyslogReceiverService.HOST, UdpSyslogReceiverService.PORT)
+					.setProtocol(SyslogProtocol.RFC5424);
+
+			try (SyslogDestination destination = new SyslogDestination(config)) {
+				SyslogHandler handler = new SyslogHandler(destination);
+				LogRecord logRecord = new LogRecord(LogLevel.LEVEL_INFO, "User {0} logged in from {1}");
+
+				logRecord.setParameters(new Object[] { "alice", "10.0.0.1" });
+				handler.setStructuredDataId("params@32473");
+				SyslogContext.put("context@32473", "session", "s\"1]");
+				try {
+					handler.publish(logRecord);
+				} finally {
+					SyslogContext.clear();
+				}
+
+				String message = receiver.pollRawMessage(config);
+
+				Assertions.assertTrue(message.contains(
+						" [context@32473 session=\"s\\\"1\\]\"][params@32473 0=\"alice\" 1=\"10.0.0.1\"] "),
+						message);
+				Assertions.assertTrue(message.endsWith("User alice logged in from 10.0.0.1"), message);
+
+				handler.publish(new LogRecord(LogLevel.LEVEL_INFO, "No structured data"));
+
+				Assertions.assertEquals("No structured data", receiver.pollMessage(config));
+			}
+			server.requestStop();
+			serverThread.join();
+		} finally {
+			TestConfig.discardConfig(serverConfig);
+		}
+	}
+
+	private static LogRecord newLogRecord(String loggerName, Level level, String message) {
+		LogRecord logRecord = new LogRecord(level, message);
+
+		logRecord.setLoggerName(loggerName);
+		return logRecord;
 	}
 
 	private void testSyslogHandler(Class<? extends SyslogReceiver> receiverClass, SyslogOption... options)
@@ -0,0 +1,242 @@
+/*
+ * Copyright (c) 2018-2021 Holger de Carne and contributors, All Rights Reserved.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.carne.lwjsd.runtime.test.logging;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.net.DatagramPacket;
+import java.net.DatagramSocket;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import org.eclipse.jdt.annotation.Nullable;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import de.carne.lwjsd.api.ServiceInfo;
+import de.carne.lwjsd.api.ServiceManagerException;
+import de.carne.lwjsd.runtime.config.RuntimeConfig;
+import de.carne.lwjsd.runtime.logging.SyslogConfig;
+import de.carne.lwjsd.runtime.logging.SyslogDestination;
+import de.carne.lwjsd.runtime.logging.SyslogIngestBatch;
+import de.carne.lwjsd.runtime.logging.SyslogIngestService;
+import de.carne.lwjsd.runtime.logging.SyslogMessage;
+import de.carne.lwjsd.runtime.logging.SyslogOption;
+import de.carne.lwjsd.runtime.logging.SyslogProtocol;
+import de.carne.lwjsd.runtime.server.Server;
+import de.carne.lwjsd.runtime.test.TestConfig;
+
+/**
+ * Test {@linkplain SyslogIngestService} class.
+ */
+class SyslogIngestServiceTest {
+
+	private static final int TIMEOUT = 5000;
+
+	private final BlockingQueue<String> records = new LinkedBlockingQueue<>();
+
+	@Test
+	void testSyslogIngestService() throws IOException, ServiceManagerException, InterruptedException {
+		RuntimeConfig serverConfig = TestConfig.prepareConfig();
+
+		try (Server server = new Server(serverConfig)) {
+			Thread serverThread = server.start(false);
+			ServiceInfo serviceInfo = server.registerService(TestSyslogIngestService.class.getName());
+
+			server.startService(serviceInfo.id(), false);
+			server.getService(TestSyslogIngestService.class).setSink(this::receive);
+
+			testRawRecords();
+			testSplitFrames();
+			testDestination(new SyslogConfig(TestSyslogIngestService.HOST, TestSyslogIngestService.PORT), 4);
+			testDestination(new SyslogConfig(TestSyslogIngestService.HOST, TestSyslogIngestService.PORT)
+					.setProtocol(SyslogProtocol.RFC5424), 4);
+			testDestination(new SyslogConfig(TestSyslogIngestService.HOST, TestSyslogIngestService.PORT)
+					.addOption(SyslogOption.TRANSPORT_TCP), 1000);
+			testDestination(new SyslogConfig(TestSyslogIngestService.HOST, TestSyslogIngestService.PORT)
+					.setProtocol(SyslogProtocol.RFC5424).addOption(SyslogOption.TRANSPORT_TCP)
+					.addOption(SyslogOption.OCTET_COUNTING_FRAMING).setBatchSize(4096), 1000);
+
+			server.requestStop();
+			serverThread.join();
+		} finally {
+			TestConfig.discardConfig(serverConfig);
+		}
+	}
+
+	@Test
+	void testSlowSink() throws IOException, ServiceManagerException, InterruptedException {
+		RuntimeConfig serverConfig = TestConfig.prepareConfig();
+
+		try (Server server = new Server(serverConfig)) {
+			Thread serverThread = server.start(false);
+			ServiceInfo serviceInfo = server.registerService(TestSyslogIngestService.class.getName());
+
+			server.startService(serviceInfo.id(), false);
+
+			TestSyslogIngestService service = server.getService(TestSyslogIngestService.class);
+			CountDownLatch sinkGate = new CountDownLatch(1);
+
+			service.setSink(batch -> {
+				try {
+					sinkGate.await();
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					throw new InterruptedIOException(e.getMessage());
+				}
+				receive(batch);
+			});
+
+			// Several full batches are received while the sink is blocked
+			int count = 1000;
+			long receivedCount = service.receivedCount();
+
+			try (Socket socket = new Socket(TestSyslogIngestService.HOST, TestSyslogIngestService.PORT)) {
+				OutputStream out = socket.getOutputStream();
+
+				for (int recordIndex = 0; recordIndex < count; recordIndex++) {
+					out.write(("<14>Oct 11 22:14:15 host app: record " + recordIndex + "\n")
+							.getBytes(StandardCharsets.US_ASCII));
+				}
+				out.flush();
+
+				long deadline = System.currentTimeMillis() + TIMEOUT;
+
+				while (service.receivedCount() < receivedCount + count && System.currentTimeMillis() < deadline) {
+					Thread.sleep(10);
+				}
+
+				Assertions.assertEquals(receivedCount + count, service.receivedCount());
+				Assertions.assertTrue(this.records.isEmpty());
+
+				sinkGate.countDown();
+				for (int recordIndex = 0; recordIndex < count; recordIndex++) {
+					Assertions.assertTrue(pollRecord().endsWith("|record " + recordIndex));
+				}
+			}
+			server.requestStop();
+			serverThread.join();
+		} finally {
+			TestConfig.discardConfig(serverConfig);
+		}
+	}
+
+	private void testRawRecords() throws IOException, InterruptedException {
+		try (DatagramSocket socket = new DatagramSocket()) {
+			sendRaw(socket, "<34>Oct 11 22:14:15 mymachine su: 'su root' failed for lonvick on /dev/pts/8");
+
+			Assertions.assertEquals("RFC3164|SEV_CRIT|FAC_AUTH|Oct 11 22:14:15|mymachine|su||||"
+					+ "'su root' failed for lonvick on /dev/pts/8", pollRecord());
+
+			sendRaw(socket, "<13>Feb  5 17:32:18 10.0.0.99 sshd[1234]: Accepted publickey\n");
+
+			Assertions.assertEquals(
+					"RFC3164|SEV_NOTICE|FAC_USER|Feb  5 17:32:18|10.0.0.99|sshd|1234|||Accepted publickey",
+					pollRecord());
+
+			String structuredData = "[exampleSDID@32473 iut=\"3\" eventSource=\"App\\]lication\"]"
+					+ "[examplePriority@32473 class=\"high\"]";
+
+			sendRaw(socket, "<165>1 2003-10-11T22:14:15.003Z mymachine.example.com evntslog - ID47 " + structuredData
+					+ " \uFEFFAn application event log entry");
+
+			Assertions.assertEquals("RFC5424|SEV_NOTICE|FAC_LOCAL4|2003-10-11T22:14:15.003Z|mymachine.example.com|"
+					+ "evntslog||ID47|" + structuredData + "|An application event log entry", pollRecord());
+
+			sendRaw(socket, "no priority at all");
+
+			Assertions.assertEquals("RFC3164|SEV_NOTICE|FAC_USER|||||||no priority at all", pollRecord());
+		}
+	}
+
+	private void testSplitFrames() throws IOException, InterruptedException {
+		try (Socket socket = new Socket(TestSyslogIngestService.HOST, TestSyslogIngestService.PORT)) {
+			OutputStream out = socket.getOutputStream();
+
+			sendSplit(out, "31 <14>1 - - - - - - octet-counted", 5);
+			sendSplit(out, "<14>Oct 11 22:14:15 host app: LF framed\n", 20);
+
+			Assertions.assertEquals("RFC5424|SEV_INFO|FAC_USER|||||||octet-counted", pollRecord());
+			Assertions.assertEquals("RFC3164|SEV_INFO|FAC_USER|Oct 11 22:14:15|host|app||||LF framed", pollRecord());
+		}
+	}
+
+	private void sendSplit(OutputStream out, String frame, int splitIndex) throws IOException, InterruptedException {
+		byte[] frameBytes = frame.getBytes(StandardCharsets.UTF_8);
+
+		out.write(frameBytes, 0, splitIndex);
+		out.flush();
+		Thread.sleep(100);
+		out.write(frameBytes, splitIndex, frameBytes.length - splitIndex);
+		out.flush();
+	}
+
+	private void sendRaw(DatagramSocket socket, String record) throws IOException {
+		byte[] recordBytes = record.getBytes(StandardCharsets.UTF_8);
+
+		socket.send(new DatagramPacket(recordBytes, recordBytes.length,
+				InetAddress.getByName(TestSyslogIngestService.HOST), TestSyslogIngestService.PORT));
+	}
+
+	private void testDestination(SyslogConfig config, int count) throws IOException, InterruptedException {
+		config.setDefaultMessageHost("testhost").setDefaultMessageApp("testapp");
+		try (SyslogDestination destination = new SyslogDestination(config)) {
+			for (int messageIndex = 0; messageIndex < count; messageIndex++) {
+				destination.send(new SyslogMessage(SyslogMessage.Severity.SEV_WARNING,
+						SyslogMessage.Facility.FAC_DAEMON, Instant.now(), config + " message " + messageIndex));
+			}
+		}
+		for (int messageIndex = 0; messageIndex < count; messageIndex++) {
+			String record = pollRecord();
+
+			Assertions.assertTrue(record.startsWith(config.getProtocol() + "|SEV_WARNING|FAC_DAEMON|"), record);
+			Assertions.assertTrue(record.contains("|testhost|testapp|"), record);
+			Assertions.assertTrue(record.endsWith("|" + config + " message " + messageIndex), record);
+		}
+	}
+
+	private String pollRecord() throws InterruptedException {
+		@Nullable String record = this.records.poll(TIMEOUT, TimeUnit.MILLISECONDS);
+
+		if (record == null) {
+			throw new IllegalStateException("Unexpected poll timeout");
+		}
+		return record;
+	}
+
+	private void receive(SyslogIngestBatch batch) {
+		for (int recordIndex = 0; recordIndex < batch.size(); recordIndex++) {
+			StringBuilder record = new StringBuilder();
+
+			record.append(batch.protocol(recordIndex)).append('|');
+			record.append(batch.severity(recordIndex)).append('|');
+			record.append(batch.facility(recordIndex));
+			for (SyslogIngestBatch.Field field : SyslogIngestBatch.Field.values()) {
+				record.append('|').append(batch.fieldString(recordIndex, field));
+			}
+			this.records.add(record.toString());
+		}
+	}
+
+}
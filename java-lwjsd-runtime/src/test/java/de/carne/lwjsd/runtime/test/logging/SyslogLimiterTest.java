@@ -0,0 +1,120 @@
+/*
+ * Copyright (c) 2018-2021 Holger de Carne and contributors, All Rights Reserved.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.carne.lwjsd.runtime.test.logging;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.LogRecord;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import de.carne.lwjsd.runtime.logging.SyslogLimiter;
+import de.carne.lwjsd.runtime.logging.SyslogMessage;
+import de.carne.boot.logging.LogLevel;
+
+/**
+ * Test {@linkplain SyslogLimiter} class.
+ */
+class SyslogLimiterTest {
+
+	private final AtomicLong clock = new AtomicLong(0);
+	private final List<String> summaries = new ArrayList<>();
+	private final SyslogLimiter limiter = new SyslogLimiter(this::summary, this.clock::get);
+
+	@Test
+	void testRateLimitRefill() {
+		this.limiter.setRateLimit(1, 2, SyslogMessage.Severity.SEV_ERR);
+
+		Assertions.assertTrue(admit("limited", "Limited message 0"));
+		Assertions.assertTrue(admit("limited", "Limited message 1"));
+		Assertions.assertFalse(admit("limited", "Limited message 2"));
+		Assertions.assertFalse(admit("limited", "Limited message 3"));
+
+		advance(500);
+
+		Assertions.assertFalse(admit("limited", "Limited message 4"));
+
+		advance(500);
+
+		Assertions.assertTrue(admit("limited", "Refilled message"));
+		Assertions.assertEquals(Arrays.asList("3 messages of logger 'limited' suppressed by rate limit"),
+				this.summaries);
+		Assertions.assertEquals(3, this.limiter.suppressedCount());
+	}
+
+	@Test
+	void testCollapseWindowExpiry() {
+		this.limiter.setCollapseDuplicates(true, 1000);
+
+		Assertions.assertTrue(admit("duplicate", "Duplicate message"));
+		Assertions.assertFalse(admit("duplicate", "Duplicate message"));
+		Assertions.assertFalse(admit("duplicate", "Duplicate message"));
+
+		advance(999);
+		this.limiter.expire();
+
+		Assertions.assertTrue(this.summaries.isEmpty());
+
+		advance(1);
+		this.limiter.expire();
+
+		Assertions.assertEquals(Arrays.asList("last message repeated 2 times"), this.summaries);
+
+		// The summary ends the run; the next duplicate is published again
+		Assertions.assertTrue(admit("duplicate", "Duplicate message"));
+		Assertions.assertEquals(2, this.limiter.suppressedCount());
+	}
+
+	@Test
+	void testSetRateLimitFlushes() {
+		this.limiter.setCollapseDuplicates(true, 60000);
+
+		Assertions.assertTrue(admit("duplicate", "Duplicate message"));
+		Assertions.assertFalse(admit("duplicate", "Duplicate message"));
+
+		this.limiter.setRateLimit(1, 1, SyslogMessage.Severity.SEV_ERR);
+
+		Assertions.assertEquals(Arrays.asList("last message repeated 1 times"), this.summaries);
+		Assertions.assertTrue(admit("limited", "Limited message 0"));
+		Assertions.assertFalse(admit("limited", "Limited message 1"));
+
+		this.limiter.setRateLimit(0, 1, SyslogMessage.Severity.SEV_ERR);
+
+		Assertions.assertEquals(Arrays.asList("last message repeated 1 times",
+				"1 messages of logger 'limited' suppressed by rate limit"), this.summaries);
+	}
+
+	private void summary(SyslogMessage.Severity severity, String msg) {
+		this.summaries.add(msg);
+	}
+
+	private void advance(long millis) {
+		this.clock.addAndGet(TimeUnit.MILLISECONDS.toNanos(millis));
+	}
+
+	private boolean admit(String loggerName, String msg) {
+		LogRecord record = new LogRecord(LogLevel.LEVEL_NOTICE, msg);
+
+		record.setLoggerName(loggerName);
+		return this.limiter.admit(record, SyslogMessage.Severity.SEV_NOTICE);
+	}
+
+}
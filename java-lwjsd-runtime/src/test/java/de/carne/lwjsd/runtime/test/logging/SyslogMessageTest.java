@@ -0,0 +1,148 @@
+/*
+ * Copyright (c) 2018-2021 Holger de Carne and contributors, All Rights Reserved.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.carne.lwjsd.runtime.test.logging;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.TimeZone;
+
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import de.carne.lwjsd.runtime.logging.SyslogConfig;
+import de.carne.lwjsd.runtime.logging.SyslogMessage;
+import de.carne.lwjsd.runtime.logging.SyslogOption;
+import de.carne.lwjsd.runtime.logging.SyslogProtocol;
+
+/**
+ * Test {@linkplain SyslogMessage} encoding.
+ */
+class SyslogMessageTest {
+
+	private static final String PID = Long.toString(ProcessHandle.current().pid());
+	private static final String BOM = "\uFEFF";
+	private static final Instant TIMESTAMP = Instant.parse("2021-01-02T03:04:05.000123456Z");
+
+	private static TimeZone defaultTimeZone = TimeZone.getDefault();
+
+	@BeforeAll
+	static void setUpTimeZone() {
+		// RFC 3164 timestamps are encoded in local time
+		defaultTimeZone = TimeZone.getDefault();
+		TimeZone.setDefault(TimeZone.getTimeZone("UTC"));
+	}
+
+	@AfterAll
+	static void restoreTimeZone() {
+		TimeZone.setDefault(defaultTimeZone);
+	}
+
+	@Test
+	void testRfc3164Encoding() throws IOException {
+		SyslogConfig udpConfig = new SyslogConfig("localhost").setDefaultMessageHost("host0");
+		SyslogConfig tcpConfig = new SyslogConfig("localhost").addOption(SyslogOption.TRANSPORT_TCP)
+				.setDefaultMessageHost("host0");
+		SyslogConfig octetCountingConfig = new SyslogConfig("localhost").addOption(SyslogOption.TRANSPORT_TCP)
+				.addOption(SyslogOption.OCTET_COUNTING_FRAMING).setDefaultMessageHost("host0");
+
+		assertEncoding("<134>Jan 02 03:04:05 host1 app1[" + PID + "]: Message", udpConfig,
+				message("Message").setHost("host1").setApp("app1"));
+		assertEncoding("<134>Jan 02 03:04:05 host0 - Message", udpConfig, message("Message"));
+		assertEncoding("<134>Jan 02 03:04:05 host0 - M?ssage", udpConfig, message("M\u00e9ssage"));
+		assertEncoding("<134>Jan 02 03:04:05 host1 app1[" + PID + "]: Message\n", tcpConfig,
+				message("Message").setHost("host1").setApp("app1"));
+
+		String octetCountedMessage = "<134>Jan 02 03:04:05 host0 - Message";
+
+		assertEncoding(octetCountedMessage.length() + " " + octetCountedMessage, octetCountingConfig,
+				message("Message"));
+	}
+
+	@Test
+	void testRfc5424Encoding() throws IOException {
+		SyslogConfig udpConfig = new SyslogConfig("localhost").setProtocol(SyslogProtocol.RFC5424)
+				.setDefaultMessageHost("host0");
+		SyslogConfig tcpConfig = new SyslogConfig("localhost").setProtocol(SyslogProtocol.RFC5424)
+				.addOption(SyslogOption.TRANSPORT_TCP).setDefaultMessageHost("host0");
+
+		assertEncoding("<134>1 2021-01-02T03:04:05.000123Z host1 app1 " + PID + " id1 - " + BOM + "Message",
+				udpConfig, message("Message").setHost("host1").setApp("app1").setMessageId("id1"));
+		assertEncoding("<134>1 2021-01-02T03:04:05.000123Z host0 - " + PID + " - - " + BOM + "M\u00e9ssage",
+				udpConfig, message("M\u00e9ssage"));
+		assertEncoding(
+				"<134>1 2021-01-02T03:04:05.000123Z host0 - " + PID
+						+ " - [ex@1 p1=\"v1\" p2=\"a\\\"b\\\\c\\]d\"][ex@2 p3=\"\u00e9\"] " + BOM + "Message",
+				udpConfig, message("Message").addStructuredData("ex@1", "p1", "v1")
+						.addStructuredData("ex@1", "p2", "a\"b\\c]d").addStructuredData("ex@2", "p3", "\u00e9"));
+		assertEncoding("<134>1 2021-01-02T03:04:05.000123Z host0 - " + PID + " - - " + BOM + "Message\n", tcpConfig,
+				message("Message"));
+	}
+
+	@Test
+	void testRfc5424Timestamp() throws IOException {
+		SyslogConfig config = new SyslogConfig("localhost").setProtocol(SyslogProtocol.RFC5424)
+				.setDefaultMessageHost("host0");
+
+		// Fraction of second is always encoded with 6 digits and truncated (not rounded) to microseconds
+		assertEncoding("<134>1 2021-01-02T03:04:05.000000Z host0 - " + PID + " - - " + BOM + "Message", config,
+				message(Instant.parse("2021-01-02T03:04:05Z"), "Message"));
+		assertEncoding("<134>1 2021-01-02T03:04:05.999999Z host0 - " + PID + " - - " + BOM + "Message", config,
+				message(Instant.parse("2021-01-02T03:04:05.999999999Z"), "Message"));
+		assertEncoding("<134>1 2021-01-02T03:04:05.100000Z host0 - " + PID + " - - " + BOM + "Message", config,
+				message(Instant.parse("2021-01-02T03:04:05.1Z"), "Message"));
+	}
+
+	@Test
+	void testOctetCountingPrefix() throws IOException {
+		SyslogConfig config = new SyslogConfig("localhost").setProtocol(SyslogProtocol.RFC5424)
+				.addOption(SyslogOption.TRANSPORT_TCP).addOption(SyslogOption.OCTET_COUNTING_FRAMING)
+				.setDefaultMessageHost("host0");
+		String prologue = "<134>1 2021-01-02T03:04:05.000123Z host0 - " + PID + " - - " + BOM;
+
+		// The prefix counts the encoded bytes (not the characters) and grows with the message length
+		for (String msg : new String[] { "", "M\u00e9ssage", "\u20ac".repeat(40), "x".repeat(1000) }) {
+			String frame = prologue + msg;
+			int frameLength = frame.getBytes(StandardCharsets.UTF_8).length;
+
+			assertEncoding(frameLength + " " + frame, config, message(msg));
+		}
+	}
+
+	private static SyslogMessage message(String msg) {
+		return message(TIMESTAMP, msg);
+	}
+
+	private static SyslogMessage message(Instant timestamp, String msg) {
+		return new SyslogMessage(SyslogMessage.Severity.SEV_INFO, SyslogMessage.Facility.FAC_LOCAL0, timestamp, msg);
+	}
+
+	private static void assertEncoding(String expected, SyslogConfig config, SyslogMessage message)
+			throws IOException {
+		byte[] expectedBytes = expected.getBytes(StandardCharsets.UTF_8);
+		ByteArrayOutputStream encodedTo = new ByteArrayOutputStream();
+
+		message.encodeTo(encodedTo, config);
+
+		Assertions.assertArrayEquals(expectedBytes, message.encode(config));
+		Assertions.assertArrayEquals(expectedBytes, encodedTo.toByteArray());
+	}
+
+}
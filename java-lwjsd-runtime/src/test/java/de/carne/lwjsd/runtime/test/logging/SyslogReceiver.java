@@ -51,14 +51,18 @@ abstract class SyslogReceiver implements Service {
 
 	private final BlockingQueue<String> messages = new LinkedBlockingQueue<>();
 
-	@Nullable
-	public String pollMessage(SyslogConfig config) throws InterruptedException {
+	public String pollRawMessage(SyslogConfig config) throws InterruptedException {
 		@Nullable String message = this.messages.poll(TIMEOUT, TimeUnit.MILLISECONDS);
 
 		if (message == null) {
 			throw new IllegalStateException("Unexpected " + config.getProtocol() + " poll timeout");
 		}
+		return message;
+	}
 
+	@Nullable
+	public String pollMessage(SyslogConfig config) throws InterruptedException {
+		String message = pollRawMessage(config);
 		Matcher matcher;
 
 		switch (config.getProtocol()) {
@@ -0,0 +1,44 @@
+/*
+ * Copyright (c) 2018-2021 Holger de Carne and contributors, All Rights Reserved.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.carne.lwjsd.runtime.test.logging;
+
+import de.carne.lwjsd.runtime.logging.SyslogConfig;
+import de.carne.lwjsd.runtime.logging.SyslogIngestService;
+
+/**
+ * {@linkplain SyslogIngestService} listening on the test ports.
+ */
+public class TestSyslogIngestService extends SyslogIngestService {
+
+	/**
+	 * Listen host
+	 */
+	public static final String HOST = "localhost";
+
+	/**
+	 * Listen port
+	 */
+	public static final int PORT = 1001 + SyslogConfig.DEFAULT_PORT;
+
+	/**
+	 * Constructs a new {@linkplain TestSyslogIngestService} instance.
+	 */
+	public TestSyslogIngestService() {
+		super(HOST, PORT, true, true);
+	}
+
+}
@@ -16,8 +16,27 @@
  */
 package de.carne.lwjsd.runtime.test.security;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.SeekableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
 import java.security.GeneralSecurityException;
 import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import javax.crypto.AEADBadTagException;
+import javax.crypto.ShortBufferException;
 
 import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.Test;
@@ -47,6 +66,131 @@ class CipherFactoryTest {
 		testCipherFactory(AES256CipherFactory.CIPHER_NAME);
 	}
 
+	@Test
+	void testByteArrayOnlyCipher() throws GeneralSecurityException {
+		Cipher cipher = new XorCipherFactory().createCipher();
+		byte[] source = getClass().getName().getBytes();
+
+		Assertions.assertEquals(source.length + 1, cipher.encryptedLength(source.length));
+		Assertions.assertEquals(source.length, cipher.decryptedLength(source.length + 1));
+
+		ByteBuffer data = ByteBuffer.allocateDirect(source.length).put(source).flip();
+		ByteBuffer encrypted = ByteBuffer.allocate(cipher.encryptedLength(source.length));
+
+		cipher.encrypt(data, encrypted);
+
+		Assertions.assertFalse(data.hasRemaining());
+		Assertions.assertFalse(encrypted.hasRemaining());
+
+		ByteBuffer decrypted = ByteBuffer.allocateDirect(source.length);
+
+		encrypted.flip();
+		cipher.decrypt(encrypted, decrypted);
+
+		Assertions.assertFalse(encrypted.hasRemaining());
+		Assertions.assertArrayEquals(source, toArray(decrypted.flip()));
+		Assertions.assertThrows(ShortBufferException.class,
+				() -> cipher.encrypt(ByteBuffer.wrap(source), ByteBuffer.allocate(source.length)));
+		Assertions.assertThrows(IOException.class, () -> readAll(
+				cipher.encryptingStream(new ByteArrayInputStream(source))));
+	}
+
+	@Test
+	void testCipherStreams() throws GeneralSecurityException, IOException {
+		CipherFactory cipherFactory = CipherFactory.getInstance(AES256CipherFactory.CIPHER_NAME);
+		int segmentSize = 1024;
+		Cipher cipher = cipherFactory.createCipher();
+		ExecutorService executor = Executors.newFixedThreadPool(4);
+
+		try {
+			for (int length : new int[] { 0, 1, segmentSize - 1, segmentSize, 3 * segmentSize + 17, 100000 }) {
+				byte[] source = new byte[length];
+
+				new Random(length).nextBytes(source);
+
+				byte[] encrypted = readAll(Channels.newInputStream(
+						cipher.encryptingChannel(Channels.newChannel(new ByteArrayInputStream(source)), segmentSize)));
+
+				Assertions.assertArrayEquals(source,
+						readAll(cipher.decryptingStream(new ByteArrayInputStream(encrypted))));
+				Assertions.assertArrayEquals(source, decryptParallel(cipher, encrypted, executor));
+				Assertions.assertArrayEquals(source, readAll(cipher.decryptingStream(
+						new ByteArrayInputStream(encryptParallel(cipher, source, executor)))));
+				testRandomAccess(cipher, source, encrypted);
+				if (length > segmentSize) {
+					byte[] tampered = encrypted.clone();
+
+					tampered[tampered.length / 2] ^= 1;
+
+					Assertions.assertThrows(IOException.class,
+							() -> readAll(cipher.decryptingStream(new ByteArrayInputStream(tampered))));
+
+					byte[] truncated = Arrays.copyOf(encrypted, encrypted.length - (length % segmentSize) - 16);
+
+					Assertions.assertThrows(IOException.class,
+							() -> readAll(cipher.decryptingStream(new ByteArrayInputStream(truncated))));
+				}
+			}
+		} finally {
+			executor.shutdown();
+		}
+	}
+
+	private void testRandomAccess(Cipher cipher, byte[] source, byte[] encrypted) throws IOException {
+		Path encryptedFile = Files.createTempFile(getClass().getSimpleName(), null);
+
+		try {
+			Files.write(encryptedFile, encrypted);
+			try (SeekableByteChannel channel = cipher
+					.decryptingChannel(FileChannel.open(encryptedFile, StandardOpenOption.READ))) {
+				Assertions.assertEquals(source.length, channel.size());
+
+				ByteBuffer buffer = ByteBuffer.allocate(100);
+
+				for (int position : new int[] { source.length / 2, 0, Math.max(source.length - 1, 0), source.length }) {
+					buffer.clear();
+					channel.position(position);
+
+					int read = channel.read(buffer);
+
+					if (position < source.length) {
+						Assertions.assertArrayEquals(
+								Arrays.copyOfRange(source, position, Math.min(position + 100, source.length)),
+								Arrays.copyOf(buffer.array(), read));
+					} else {
+						Assertions.assertEquals(-1, read);
+					}
+				}
+			}
+		} finally {
+			Files.delete(encryptedFile);
+		}
+	}
+
+	private byte[] encryptParallel(Cipher cipher, byte[] source, ExecutorService executor) throws IOException {
+		ByteArrayOutputStream encrypted = new ByteArrayOutputStream();
+
+		try (ReadableByteChannel sourceChannel = Channels.newChannel(new ByteArrayInputStream(source))) {
+			cipher.encrypt(sourceChannel, Channels.newChannel(encrypted), executor);
+		}
+		return encrypted.toByteArray();
+	}
+
+	private byte[] decryptParallel(Cipher cipher, byte[] encrypted, ExecutorService executor) throws IOException {
+		ByteArrayOutputStream decrypted = new ByteArrayOutputStream();
+
+		try (ReadableByteChannel encryptedChannel = Channels.newChannel(new ByteArrayInputStream(encrypted))) {
+			cipher.decrypt(encryptedChannel, Channels.newChannel(decrypted), executor);
+		}
+		return decrypted.toByteArray();
+	}
+
+	private static byte[] readAll(InputStream input) throws IOException {
+		try (InputStream checkedInput = input) {
+			return checkedInput.readAllBytes();
+		}
+	}
+
 	private void testCipherFactory(String name) throws GeneralSecurityException {
 		CipherFactory cipherFactory = CipherFactory.getInstance(name);
 
@@ -71,6 +215,136 @@ class CipherFactoryTest {
 		byte[] encryptedChars = cipherInstance1.encryptChars(charSource);
 
 		Assertions.assertArrayEquals(charSource, cipherInstance1.decryptChars(encryptedChars));
+
+		testCipherBuffers(cipherInstance1, cipherInstance2, source, false);
+		testCipherBuffers(cipherInstance1, cipherInstance2, source, true);
+	}
+
+	private void testCipherBuffers(Cipher cipher1, Cipher cipher2, byte[] source, boolean direct)
+			throws GeneralSecurityException {
+		ByteBuffer data = allocate(source.length, direct).put(source).flip();
+		int encryptedLength = cipher1.encryptedLength(source.length);
+		ByteBuffer encrypted = allocate(encryptedLength + 1, direct);
+
+		encrypted.put((byte) 0);
+		cipher1.encrypt(data, encrypted);
+
+		Assertions.assertFalse(data.hasRemaining());
+		Assertions.assertEquals(encryptedLength + 1, encrypted.position());
+
+		encrypted.flip().get();
+
+		ByteBuffer decrypted = allocate(cipher2.decryptedLength(encrypted.remaining()), direct);
+
+		cipher2.decrypt(encrypted.duplicate(), decrypted);
+
+		Assertions.assertArrayEquals(source, cipher2.decrypt(toArray(encrypted)));
+
+		decrypted.flip();
+
+		Assertions.assertArrayEquals(source, toArray(decrypted));
+
+		ByteBuffer tooSmall = allocate(encryptedLength - 1, direct);
+
+		Assertions.assertThrows(ShortBufferException.class, () -> cipher1.encrypt(ByteBuffer.wrap(source), tooSmall));
+
+		if (!direct && cipher1.factory() instanceof AES256CipherFactory) {
+			ByteBuffer inPlace = ByteBuffer.allocate(encryptedLength);
+
+			inPlace.put(source).flip();
+
+			Assertions.assertThrows(IllegalArgumentException.class,
+					() -> cipher1.encrypt(inPlace.duplicate(), inPlace.duplicate().clear()));
+		}
+
+		byte[] tampered = toArray(encrypted);
+
+		tampered[tampered.length - 1] ^= 1;
+
+		Assertions.assertThrows(AEADBadTagException.class, () -> cipher2.decrypt(tampered));
+		Assertions.assertThrows(AEADBadTagException.class, () -> cipher2.decrypt(new byte[1]));
+	}
+
+	private static class XorCipherFactory extends CipherFactory {
+
+		XorCipherFactory() {
+			super("xor-test-cipher");
+		}
+
+		@Override
+		public Cipher createCipher() {
+			return new XorCipher(this, (byte) 0x5a);
+		}
+
+		@Override
+		public Cipher createCipher(ByteSecret encoded) {
+			return new XorCipher(this, encoded.get()[0]);
+		}
+
+	}
+
+	// Implements only the byte[] based API to check the default implementations of the ByteBuffer based API
+	private static class XorCipher extends Cipher {
+
+		private final CipherFactory factory;
+		private final byte key;
+
+		XorCipher(CipherFactory factory, byte key) {
+			this.factory = factory;
+			this.key = key;
+		}
+
+		@Override
+		public CipherFactory factory() {
+			return this.factory;
+		}
+
+		@Override
+		public ByteSecret getEncoded() {
+			return ByteSecret.wrap(new byte[] { this.key });
+		}
+
+		@Override
+		public byte[] encrypt(byte[] data) {
+			byte[] encrypted = new byte[data.length + 1];
+
+			encrypted[0] = this.key;
+			for (int dataIndex = 0; dataIndex < data.length; dataIndex++) {
+				encrypted[dataIndex + 1] = (byte) (data[dataIndex] ^ this.key);
+			}
+			return encrypted;
+		}
+
+		@Override
+		public byte[] decrypt(byte[] encrypted) throws GeneralSecurityException {
+			if (encrypted.length < 1 || encrypted[0] != this.key) {
+				throw new AEADBadTagException("Invalid encrypted data");
+			}
+
+			byte[] data = new byte[encrypted.length - 1];
+
+			for (int dataIndex = 0; dataIndex < data.length; dataIndex++) {
+				data[dataIndex] = (byte) (encrypted[dataIndex + 1] ^ this.key);
+			}
+			return data;
+		}
+
+		@Override
+		public void close() {
+			// Nothing to do
+		}
+
+	}
+
+	private static ByteBuffer allocate(int capacity, boolean direct) {
+		return (direct ? ByteBuffer.allocateDirect(capacity) : ByteBuffer.allocate(capacity));
+	}
+
+	private static byte[] toArray(ByteBuffer buffer) {
+		byte[] bytes = new byte[buffer.remaining()];
+
+		buffer.duplicate().get(bytes);
+		return bytes;
 	}
 
 }
@@ -59,4 +59,39 @@ class PasswordsTest {
 		}
 	}
 
+	@Test
+	void testCachedPasswords() throws IOException, GeneralSecurityException {
+		Path tempDir = Files.createTempDirectory(getClass().getName());
+		RuntimeConfig config = new RuntimeConfig(Defaults.get());
+
+		config.setConfDir(tempDir);
+		config.setStateDir(tempDir);
+		try {
+			SecretsStore secretsStore = SecretsStore.create(config);
+			String plainSecret = getClass().getName();
+			String encryptedSecret = Passwords.encryptPassword(secretsStore, CharSecret.wrap(plainSecret.toCharArray()));
+
+			Assertions.assertEquals(0, secretsStore.cachedSecretCount());
+			Passwords.decryptPassword(secretsStore, plainSecret).close();
+			Assertions.assertEquals(0, secretsStore.cachedSecretCount());
+
+			// Closing a returned secret must not affect the cached one
+			Passwords.decryptPassword(secretsStore, encryptedSecret).close();
+			Assertions.assertEquals(1, secretsStore.cachedSecretCount());
+			try (CharSecret decryptedSecret = Passwords.decryptPassword(secretsStore, encryptedSecret)) {
+				Assertions.assertArrayEquals(plainSecret.toCharArray(), decryptedSecret.get());
+			}
+			Assertions.assertEquals(1, secretsStore.cachedSecretCount());
+
+			secretsStore.invalidateSecrets();
+			Assertions.assertEquals(0, secretsStore.cachedSecretCount());
+			try (CharSecret decryptedSecret = Passwords.decryptPassword(secretsStore, encryptedSecret)) {
+				Assertions.assertArrayEquals(plainSecret.toCharArray(), decryptedSecret.get());
+			}
+			Assertions.assertEquals(1, secretsStore.cachedSecretCount());
+		} finally {
+			FileUtil.delete(tempDir);
+		}
+	}
+
 }
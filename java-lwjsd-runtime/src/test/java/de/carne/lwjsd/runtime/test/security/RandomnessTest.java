@@ -0,0 +1,120 @@
+/*
+ * Copyright (c) 2018-2021 Holger de Carne and contributors, All Rights Reserved.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.carne.lwjsd.runtime.test.security;
+
+import java.nio.ByteBuffer;
+import java.security.NoSuchAlgorithmException;
+import java.security.SecureRandom;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+import de.carne.boot.logging.Log;
+import de.carne.lwjsd.runtime.security.Randomness;
+
+/**
+ * Test {@linkplain Randomness} class.
+ */
+class RandomnessTest {
+
+	private static final Log LOG = new Log();
+
+	private static final int NONCE_LENGTH = 12;
+	private static final long BENCHMARK_NANOS = TimeUnit.MILLISECONDS.toNanos(250);
+
+	@Test
+	void testStrategies() throws NoSuchAlgorithmException {
+		Assertions.assertEquals(Randomness.Strategy.DRBG, Randomness.strategy());
+		Assertions.assertSame(Randomness.get(), Randomness.get());
+		for (Randomness.Strategy strategy : Randomness.Strategy.values()) {
+			SecureRandom random = strategy.newInstance();
+			byte[] bytes1 = new byte[32];
+			byte[] bytes2 = new byte[32];
+
+			random.nextBytes(bytes1);
+			random.nextBytes(bytes2);
+
+			Assertions.assertFalse(ByteBuffer.wrap(bytes1).equals(ByteBuffer.wrap(bytes2)));
+		}
+	}
+
+	@Test
+	void testNonces() throws InterruptedException {
+		Set<ByteBuffer> nonces = new HashSet<>();
+
+		collectNonces(nonces, 10000);
+
+		Thread thread = new Thread(() -> collectNonces(nonces, 10000));
+
+		thread.start();
+		thread.join();
+
+		Assertions.assertEquals(20000, nonces.size());
+		Assertions.assertThrows(IllegalArgumentException.class, () -> Randomness.nextNonce(new byte[NONCE_LENGTH - 1]));
+	}
+
+	private static void collectNonces(Set<ByteBuffer> nonces, int count) {
+		for (int nonceIndex = 0; nonceIndex < count; nonceIndex++) {
+			byte[] nonce = new byte[NONCE_LENGTH];
+
+			Randomness.nextNonce(nonce);
+			synchronized (nonces) {
+				nonces.add(ByteBuffer.wrap(nonce));
+			}
+		}
+	}
+
+	@Test
+	@Tag("benchmark")
+	void benchmarkStrategies() throws NoSuchAlgorithmException {
+		byte[] nonce = new byte[NONCE_LENGTH];
+
+		for (Randomness.Strategy strategy : Randomness.Strategy.values()) {
+			SecureRandom random = strategy.newInstance();
+
+			logBenchmark(strategy.name(), () -> random.nextBytes(nonce));
+		}
+		logBenchmark("nextNonce", () -> Randomness.nextNonce(nonce));
+	}
+
+	private static void logBenchmark(String name, Runnable operation) {
+		// Warm up
+		runBenchmark(operation);
+
+		long operations = runBenchmark(operation);
+
+		LOG.info("{0}: {1} nonces/s", name, (operations * TimeUnit.SECONDS.toNanos(1)) / BENCHMARK_NANOS);
+	}
+
+	private static long runBenchmark(Runnable operation) {
+		long start = System.nanoTime();
+		long operations = 0;
+
+		while (System.nanoTime() - start < BENCHMARK_NANOS) {
+			for (int batchIndex = 0; batchIndex < 100; batchIndex++) {
+				operation.run();
+			}
+			operations += 100;
+		}
+		return operations;
+	}
+
+}
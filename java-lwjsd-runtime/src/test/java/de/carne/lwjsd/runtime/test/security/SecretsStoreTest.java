@@ -17,6 +17,7 @@
 package de.carne.lwjsd.runtime.test.security;
 
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.security.GeneralSecurityException;
@@ -27,6 +28,8 @@ import org.junit.jupiter.api.Test;
 import de.carne.lwjsd.runtime.config.Defaults;
 import de.carne.lwjsd.runtime.config.RuntimeConfig;
 import de.carne.lwjsd.runtime.security.Cipher;
+import de.carne.lwjsd.runtime.security.EC256ChunkedSignatureFactory;
+import de.carne.lwjsd.runtime.security.EC256SignatureFactory;
 import de.carne.lwjsd.runtime.security.SecretsStore;
 import de.carne.nio.file.FileUtil;
 
@@ -52,6 +55,33 @@ class SecretsStoreTest {
 		}
 	}
 
+	@Test
+	void testLegacySignatureStore() throws IOException, GeneralSecurityException {
+		Path tempDir = Files.createTempDirectory(getClass().getName());
+		RuntimeConfig config = new RuntimeConfig(Defaults.get());
+
+		config.setConfDir(tempDir);
+		config.setStateDir(tempDir);
+		try {
+			Assertions.assertEquals(EC256ChunkedSignatureFactory.SIGNATURE_NAME,
+					SecretsStore.create(config).getDefaultSignature().name());
+
+			// Turn the store into one created before the chunked signature (both share the same key encoding)
+			Path secretsFile = tempDir.resolve("lwjsd.secrets.json");
+			String secrets = Files.readString(secretsFile, StandardCharsets.UTF_8);
+
+			Files.writeString(secretsFile, secrets.replace(EC256ChunkedSignatureFactory.SIGNATURE_NAME,
+					EC256SignatureFactory.SIGNATURE_NAME), StandardCharsets.UTF_8);
+
+			Assertions.assertEquals(EC256SignatureFactory.SIGNATURE_NAME,
+					SecretsStore.create(config).getDefaultSignature().name());
+			Assertions.assertFalse(Files.readString(secretsFile, StandardCharsets.UTF_8)
+					.contains(EC256ChunkedSignatureFactory.SIGNATURE_NAME));
+		} finally {
+			FileUtil.delete(tempDir);
+		}
+	}
+
 	void testSecretsStoreInstance(SecretsStore secretsStore) throws GeneralSecurityException {
 		Cipher defaultCipher = secretsStore.getDefaultCipher();
 
@@ -18,12 +18,18 @@ package de.carne.lwjsd.runtime.test.security;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
 import java.security.GeneralSecurityException;
 import java.security.NoSuchAlgorithmException;
 
 import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.Test;
 
+import de.carne.lwjsd.runtime.security.EC256ChunkedSignatureFactory;
 import de.carne.lwjsd.runtime.security.EC256SignatureFactory;
 import de.carne.lwjsd.runtime.security.Signature;
 import de.carne.lwjsd.runtime.security.SignatureFactory;
@@ -46,6 +52,63 @@ class SignatureFactoryTest {
 	@Test
 	void testSignatureFactories() throws IOException, GeneralSecurityException {
 		testSignatureFactory(EC256SignatureFactory.SIGNATURE_NAME);
+		testSignatureFactory(EC256ChunkedSignatureFactory.SIGNATURE_NAME);
+	}
+
+	@Test
+	void testFileSignatures() throws IOException, GeneralSecurityException {
+		testFileSignature(EC256SignatureFactory.SIGNATURE_NAME);
+		testFileSignature(EC256ChunkedSignatureFactory.SIGNATURE_NAME);
+	}
+
+	private void testFileSignature(String name) throws IOException, GeneralSecurityException {
+		Signature signature = SignatureFactory.getInstance(name).createSignature();
+		Path file = Files.createTempFile(getClass().getSimpleName(), ".bin");
+
+		try {
+			byte[] data = new byte[3 * 1024 * 1024 + 1234];
+
+			for (int dataIndex = 0; dataIndex < data.length; dataIndex++) {
+				data[dataIndex] = (byte) (dataIndex * 31);
+			}
+			Files.write(file, data);
+
+			byte[] fileSignature = signature.sign(file);
+			byte[] streamSignature;
+
+			try (InputStream stream = Files.newInputStream(file)) {
+				streamSignature = signature.sign(stream);
+			}
+
+			Assertions.assertTrue(signature.verify(file, fileSignature));
+			Assertions.assertTrue(signature.verify(file, streamSignature));
+			try (InputStream stream = Files.newInputStream(file)) {
+				Assertions.assertTrue(signature.verify(stream, fileSignature));
+			}
+
+			// Tamper a single byte in the second chunk
+			try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+				channel.write(ByteBuffer.wrap(new byte[] { (byte) ~data[1024 * 1024 + 7] }), 1024 * 1024 + 7);
+			}
+			Assertions.assertFalse(signature.verify(file, fileSignature));
+			try (InputStream stream = Files.newInputStream(file)) {
+				Assertions.assertFalse(signature.verify(stream, fileSignature));
+			}
+
+			// Truncate the file
+			Files.write(file, data);
+			try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+				channel.truncate(data.length - 1);
+			}
+			Assertions.assertFalse(signature.verify(file, fileSignature));
+
+			// Corrupt the signature itself
+			Files.write(file, data);
+			fileSignature[fileSignature.length / 2] ^= 0x01;
+			Assertions.assertFalse(signature.verify(file, fileSignature));
+		} finally {
+			Files.delete(file);
+		}
 	}
 
 	private void testSignatureFactory(String name) throws IOException, GeneralSecurityException {
@@ -0,0 +1,97 @@
+/*
+ * Copyright (c) 2018-2021 Holger de Carne and contributors, All Rights Reserved.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.carne.lwjsd.runtime.test.server;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import de.carne.lwjsd.runtime.server.CopyStream;
+
+/**
+ * Test {@linkplain CopyStream} class.
+ */
+class CopyStreamTest {
+
+	private static final int BUFFER_SIZE = 256 * 1024;
+
+	@Test
+	void testEmptyInput(@TempDir Path tempDir) throws IOException {
+		assertRoundTrip(tempDir, new byte[0], 4096);
+		assertRoundTrip(tempDir, new byte[0], 1);
+	}
+
+	@Test
+	void testSmallInput(@TempDir Path tempDir) throws IOException {
+		byte[] data = randomData(1000);
+
+		assertRoundTrip(tempDir, data, 4096);
+		assertRoundTrip(tempDir, data, 1);
+	}
+
+	@Test
+	void testLargeInput(@TempDir Path tempDir) throws IOException {
+		byte[] data = randomData(3 * BUFFER_SIZE + 17);
+
+		assertRoundTrip(tempDir, data, 4096);
+		assertRoundTrip(tempDir, data, BUFFER_SIZE + 1);
+		assertRoundTrip(tempDir, data, 1);
+	}
+
+	private static void assertRoundTrip(Path tempDir, byte[] data, int readSize) throws IOException {
+		Path outPath = tempDir.resolve("copy" + readSize + ".bin");
+		ByteArrayOutputStream read = new ByteArrayOutputStream();
+		long copied;
+
+		try (CopyStream copyStream = new CopyStream(new ByteArrayInputStream(data), outPath)) {
+			if (readSize > 1) {
+				byte[] buffer = new byte[readSize];
+				int readLen;
+
+				while ((readLen = copyStream.read(buffer, 0, buffer.length)) >= 0) {
+					read.write(buffer, 0, readLen);
+				}
+			} else {
+				int b;
+
+				while ((b = copyStream.read()) >= 0) {
+					read.write(b);
+				}
+			}
+			copyStream.sync();
+			copied = copyStream.copied();
+		}
+		Assertions.assertEquals(data.length, copied);
+		Assertions.assertArrayEquals(data, read.toByteArray());
+		Assertions.assertArrayEquals(data, Files.readAllBytes(outPath));
+	}
+
+	private static byte[] randomData(int length) {
+		byte[] data = new byte[length];
+
+		new Random(length).nextBytes(data);
+		return data;
+	}
+
+}
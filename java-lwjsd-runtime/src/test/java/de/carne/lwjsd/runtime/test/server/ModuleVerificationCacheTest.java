@@ -0,0 +1,159 @@
+/*
+ * Copyright (c) 2018-2021 Holger de Carne and contributors, All Rights Reserved.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.carne.lwjsd.runtime.test.server;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.FileTime;
+import java.security.GeneralSecurityException;
+import java.util.Collection;
+import java.util.Collections;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import de.carne.lwjsd.runtime.security.EC256SignatureFactory;
+import de.carne.lwjsd.runtime.security.Signature;
+import de.carne.lwjsd.runtime.security.SignatureFactory;
+import de.carne.lwjsd.runtime.server.ModuleVerificationCache;
+import de.carne.nio.file.FileUtil;
+
+/**
+ * Test {@linkplain ModuleVerificationCache} class.
+ */
+class ModuleVerificationCacheTest {
+
+	private static final int MODULE_SIZE = 128 * 1024;
+
+	@SuppressWarnings("null")
+	private Path tempDir;
+	@SuppressWarnings("null")
+	private Path cacheFile;
+	@SuppressWarnings("null")
+	private Path moduleFile;
+	@SuppressWarnings("null")
+	private Collection<Path> signatureFiles;
+	@SuppressWarnings("null")
+	private Signature signature;
+
+	@BeforeEach
+	void createFiles() throws IOException, GeneralSecurityException {
+		this.tempDir = Files.createTempDirectory(getClass().getSimpleName());
+		this.cacheFile = this.tempDir.resolve("modules.json");
+		this.moduleFile = this.tempDir.resolve("module-1.0.0.jar");
+
+		Path signatureFile = this.tempDir.resolve("module-1.0.0.jar." + EC256SignatureFactory.SIGNATURE_NAME);
+
+		this.signatureFiles = Collections.singletonList(signatureFile);
+		this.signature = SignatureFactory.getInstance(EC256SignatureFactory.SIGNATURE_NAME).createSignature();
+
+		byte[] moduleBytes = new byte[MODULE_SIZE];
+
+		for (int byteIndex = 0; byteIndex < moduleBytes.length; byteIndex++) {
+			moduleBytes[byteIndex] = (byte) (byteIndex * 31);
+		}
+		Files.write(this.moduleFile, moduleBytes);
+		Files.write(signatureFile, this.signature.sign(this.moduleFile));
+	}
+
+	@AfterEach
+	void deleteFiles() throws IOException {
+		FileUtil.delete(this.tempDir);
+	}
+
+	@Test
+	void testCacheHit() {
+		ModuleVerificationCache cache1 = ModuleVerificationCache.load(this.cacheFile, this.signature);
+
+		Assertions.assertFalse(cache1.isVerified(this.moduleFile, this.signatureFiles));
+
+		cache1.setVerified(this.moduleFile, this.signatureFiles);
+
+		Assertions.assertTrue(cache1.isVerified(this.moduleFile, this.signatureFiles));
+
+		// The cache survives a restart
+		ModuleVerificationCache cache2 = ModuleVerificationCache.load(this.cacheFile, this.signature);
+
+		Assertions.assertTrue(cache2.isVerified(this.moduleFile, this.signatureFiles));
+
+		cache2.invalidate(this.moduleFile.getFileName().toString());
+
+		Assertions.assertFalse(cache2.isVerified(this.moduleFile, this.signatureFiles));
+		Assertions.assertFalse(ModuleVerificationCache.load(this.cacheFile, this.signature)
+				.isVerified(this.moduleFile, this.signatureFiles));
+	}
+
+	@Test
+	void testModuleChange() throws IOException {
+		ModuleVerificationCache cache = ModuleVerificationCache.load(this.cacheFile, this.signature);
+
+		// Modification time change
+		cache.setVerified(this.moduleFile, this.signatureFiles);
+		Files.setLastModifiedTime(this.moduleFile,
+				FileTime.fromMillis(Files.getLastModifiedTime(this.moduleFile).toMillis() - 60000));
+
+		Assertions.assertFalse(cache.isVerified(this.moduleFile, this.signatureFiles));
+
+		// Size change
+		cache.setVerified(this.moduleFile, this.signatureFiles);
+		Files.write(this.moduleFile, new byte[] { 0 }, StandardOpenOption.APPEND);
+
+		Assertions.assertFalse(cache.isVerified(this.moduleFile, this.signatureFiles));
+
+		// Same size content change with restored modification time
+		cache.setVerified(this.moduleFile, this.signatureFiles);
+
+		FileTime lastModified = Files.getLastModifiedTime(this.moduleFile);
+
+		try (FileChannel channel = FileChannel.open(this.moduleFile, StandardOpenOption.WRITE)) {
+			channel.write(ByteBuffer.wrap(new byte[] { 1 }), MODULE_SIZE - 1);
+		}
+		Files.setLastModifiedTime(this.moduleFile, lastModified);
+
+		Assertions.assertFalse(cache.isVerified(this.moduleFile, this.signatureFiles));
+	}
+
+	@Test
+	void testSignatureChange() throws IOException {
+		ModuleVerificationCache cache = ModuleVerificationCache.load(this.cacheFile, this.signature);
+
+		cache.setVerified(this.moduleFile, this.signatureFiles);
+		Files.write(this.signatureFiles.iterator().next(), new byte[] { 0 }, StandardOpenOption.APPEND);
+
+		Assertions.assertFalse(cache.isVerified(this.moduleFile, this.signatureFiles));
+	}
+
+	@Test
+	void testSigningKeyChange() throws GeneralSecurityException {
+		ModuleVerificationCache cache1 = ModuleVerificationCache.load(this.cacheFile, this.signature);
+
+		cache1.setVerified(this.moduleFile, this.signatureFiles);
+
+		Signature otherSignature = SignatureFactory.getInstance(EC256SignatureFactory.SIGNATURE_NAME)
+				.createSignature();
+		ModuleVerificationCache cache2 = ModuleVerificationCache.load(this.cacheFile, otherSignature);
+
+		Assertions.assertFalse(cache2.isVerified(this.moduleFile, this.signatureFiles));
+	}
+
+}
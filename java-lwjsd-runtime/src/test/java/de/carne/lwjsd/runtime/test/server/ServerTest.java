@@ -17,12 +17,17 @@
 package de.carne.lwjsd.runtime.test.server;
 
 import java.io.IOException;
+import java.util.List;
+import java.util.stream.Collectors;
 
 import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.Test;
 
+import de.carne.lwjsd.api.BootPhaseInfo;
 import de.carne.lwjsd.api.ModuleInfo;
 import de.carne.lwjsd.api.ModuleState;
+import de.carne.lwjsd.api.ServiceHandle;
+import de.carne.lwjsd.api.ServiceId;
 import de.carne.lwjsd.api.ServiceInfo;
 import de.carne.lwjsd.api.ServiceManagerException;
 import de.carne.lwjsd.api.ServiceManagerInfo;
@@ -44,6 +49,7 @@ class ServerTest {
 
 		try {
 			testServerRun1(config);
+			testServerFastBootRun(config);
 			testServerRun2(config);
 		} finally {
 			TestConfig.discardConfig(config);
@@ -68,6 +74,10 @@ class ServerTest {
 
 			Assertions.assertEquals(ServiceState.RUNNING, testService.state());
 
+			ServiceHandle<TestService> testServiceHandle = server.getServiceHandle(TestService.class);
+
+			Assertions.assertSame(testService, testServiceHandle.get());
+
 			server.stopService(testServiceInfo.id());
 
 			Assertions.assertEquals(ServiceState.LOADED, testService.state());
@@ -86,6 +96,34 @@ class ServerTest {
 		}
 	}
 
+	private void testServerFastBootRun(RuntimeConfig config) throws ServiceManagerException, InterruptedException {
+		try (Server server = new Server(config, true)) {
+			// Server start
+			server.start(false);
+
+			// Automatic restart of registered services
+			ServiceManagerInfo serviceManagerInfo = server.queryStatus();
+
+			Assertions.assertEquals(ServiceManagerState.RUNNING, serviceManagerInfo.state());
+			Assertions.assertEquals(1, serviceManagerInfo.moduleInfos().size());
+			Assertions.assertEquals(3, serviceManagerInfo.serviceInfos().size());
+
+			// Fast boot timeline
+			List<String> bootPhaseNames = serviceManagerInfo.bootPhaseInfos().stream().map(BootPhaseInfo::name)
+					.collect(Collectors.toList());
+
+			Assertions.assertTrue(bootPhaseNames.indexOf("startHttpServer") < bootPhaseNames
+					.indexOf("ServiceStore.finishDeferredBoot"));
+			Assertions.assertTrue(bootPhaseNames.contains(new ServiceId("", TestService.class.getName()).toString()));
+
+			// Server stop
+			server.requestStop();
+			server.getServerThread().join();
+
+			Assertions.assertEquals(ServiceManagerState.STOPPED, server.queryStatus().state());
+		}
+	}
+
 	private void testServerRun2(RuntimeConfig config) throws ServiceManagerException, InterruptedException {
 		try (Server server = new Server(config)) {
 			// Server start
@@ -97,6 +135,7 @@ class ServerTest {
 			Assertions.assertEquals(ServiceManagerState.RUNNING, serviceManagerInfo1.state());
 			Assertions.assertEquals(1, serviceManagerInfo1.moduleInfos().size());
 			Assertions.assertEquals(3, serviceManagerInfo1.serviceInfos().size());
+			Assertions.assertEquals(serviceManagerInfo1.version(), server.queryStatus().version());
 
 			// Module deletion
 			ModuleInfo moduleInfo = serviceManagerInfo1.moduleInfos().iterator().next();
@@ -112,6 +151,7 @@ class ServerTest {
 			Assertions.assertEquals(ServiceManagerState.RUNNING, serviceManagerInfo1.state());
 			Assertions.assertEquals(0, serviceManagerInfo2.moduleInfos().size());
 			Assertions.assertEquals(2, serviceManagerInfo2.serviceInfos().size());
+			Assertions.assertTrue(serviceManagerInfo1.version() < serviceManagerInfo2.version());
 
 			// Server stop
 			server.requestStop();
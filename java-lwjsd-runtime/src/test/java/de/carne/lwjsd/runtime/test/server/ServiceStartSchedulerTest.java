@@ -0,0 +1,159 @@
+/*
+ * Copyright (c) 2018-2021 Holger de Carne and contributors, All Rights Reserved.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.carne.lwjsd.runtime.test.server;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.BrokenBarrierException;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import de.carne.lwjsd.api.ServiceId;
+import de.carne.lwjsd.api.ServiceManagerException;
+import de.carne.lwjsd.runtime.server.ServiceStartScheduler;
+
+/**
+ * Test {@linkplain ServiceStartScheduler} class.
+ */
+class ServiceStartSchedulerTest {
+
+	private static final ServiceId A = new ServiceId("module", "A");
+	private static final ServiceId B = new ServiceId("module", "B");
+	private static final ServiceId C = new ServiceId("module", "C");
+	private static final ServiceId D = new ServiceId("module", "D");
+	private static final ServiceId E = new ServiceId("module", "E");
+	private static final ServiceId UNKNOWN = new ServiceId("module", "unknown");
+
+	private static final Duration TIMEOUT = Duration.ofSeconds(10);
+
+	@Test
+	void testTopologicalOrder() throws InterruptedException {
+		ServiceStartScheduler scheduler = new ServiceStartScheduler(4);
+		List<ServiceId> started = Collections.synchronizedList(new ArrayList<>());
+
+		scheduler.addService(C, Arrays.asList(B));
+		scheduler.addService(B, Arrays.asList(A));
+		scheduler.addService(D, Arrays.asList(A, C));
+		scheduler.addService(A, Collections.emptyList());
+
+		ServiceStartScheduler.Report report = scheduler.run(started::add);
+
+		Assertions.assertEquals(Arrays.asList(A, B, C, D), started);
+		Assertions.assertEquals(4, report.startNanos().size());
+		Assertions.assertTrue(report.failures().isEmpty());
+	}
+
+	@Test
+	void testParallelStart() throws InterruptedException {
+		ServiceStartScheduler scheduler = new ServiceStartScheduler(2);
+		CyclicBarrier barrier = new CyclicBarrier(2);
+
+		scheduler.addService(A, Collections.emptyList());
+		scheduler.addService(B, Collections.emptyList());
+
+		// Each start only succeeds if the other one is running at the same time
+		ServiceStartScheduler.Report report = scheduler.run(serviceId -> {
+			try {
+				barrier.await(TIMEOUT.toMillis(), TimeUnit.MILLISECONDS);
+			} catch (InterruptedException | BrokenBarrierException | TimeoutException e) {
+				throw new ServiceManagerException(e);
+			}
+		});
+
+		Assertions.assertEquals(2, report.startNanos().size());
+		Assertions.assertTrue(report.failures().isEmpty());
+	}
+
+	@Test
+	void testCycles() throws InterruptedException {
+		ServiceStartScheduler scheduler = new ServiceStartScheduler(2);
+		List<ServiceId> started = Collections.synchronizedList(new ArrayList<>());
+
+		scheduler.addService(A, Arrays.asList(B));
+		scheduler.addService(B, Arrays.asList(A));
+		scheduler.addService(C, Arrays.asList(A));
+		scheduler.addService(D, Arrays.asList(UNKNOWN));
+		scheduler.addService(E, Collections.emptyList());
+
+		ServiceStartScheduler.Report report = Assertions.assertTimeoutPreemptively(TIMEOUT,
+				() -> scheduler.run(started::add));
+
+		Assertions.assertEquals(Arrays.asList(E), started);
+		Assertions.assertEquals(Collections.singleton(E), report.startNanos().keySet());
+	}
+
+	@Test
+	void testFailedDependencies() throws InterruptedException {
+		ServiceStartScheduler scheduler = new ServiceStartScheduler(2);
+		List<ServiceId> started = Collections.synchronizedList(new ArrayList<>());
+
+		scheduler.addService(A, Collections.emptyList());
+		scheduler.addService(B, Arrays.asList(A));
+		scheduler.addService(C, Arrays.asList(B));
+		scheduler.addService(D, Collections.emptyList());
+		scheduler.addService(E, Arrays.asList(D));
+
+		ServiceStartScheduler.Report report = Assertions.assertTimeoutPreemptively(TIMEOUT,
+				() -> scheduler.run(serviceId -> {
+					if (A.equals(serviceId)) {
+						throw new ServiceManagerException("Start failure");
+					}
+					if (D.equals(serviceId)) {
+						throw new NoClassDefFoundError("Broken module");
+					}
+					started.add(serviceId);
+				}));
+
+		Assertions.assertTrue(started.isEmpty());
+		Assertions.assertTrue(report.startNanos().isEmpty());
+		Assertions.assertEquals(2, report.failures().size());
+		Assertions.assertTrue(report.failures().get(A) instanceof ServiceManagerException);
+		Assertions.assertTrue(report.failures().get(D) instanceof NoClassDefFoundError);
+	}
+
+	@Test
+	void testCriticalPath() throws InterruptedException {
+		ServiceStartScheduler scheduler = new ServiceStartScheduler(4);
+
+		scheduler.addService(A, Collections.emptyList());
+		scheduler.addService(B, Arrays.asList(A));
+		scheduler.addService(C, Collections.emptyList());
+		scheduler.addService(D, Arrays.asList(B, C));
+		scheduler.addService(E, Collections.emptyList());
+
+		ServiceStartScheduler.Report report = scheduler.run(serviceId -> {
+			if (A.equals(serviceId) || B.equals(serviceId)) {
+				try {
+					Thread.sleep(100);
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+			}
+		});
+
+		Assertions.assertEquals(Arrays.asList(A, B, D), report.criticalPath());
+		Assertions.assertTrue(report.elapsed().compareTo(Duration.ofMillis(200)) >= 0);
+	}
+
+}
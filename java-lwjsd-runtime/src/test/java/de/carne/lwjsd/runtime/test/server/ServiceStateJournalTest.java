@@ -0,0 +1,150 @@
+/*
+ * Copyright (c) 2018-2021 Holger de Carne and contributors, All Rights Reserved.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.carne.lwjsd.runtime.test.server;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import de.carne.lwjsd.api.ServiceId;
+import de.carne.lwjsd.runtime.server.ServiceStateJournal;
+import de.carne.nio.file.FileUtil;
+
+/**
+ * Test {@linkplain ServiceStateJournal} class.
+ */
+class ServiceStateJournalTest {
+
+	private static final ServiceId A = new ServiceId("module", "A");
+	private static final ServiceId B = new ServiceId("module", "B");
+	private static final ServiceId C = new ServiceId("module", "C");
+
+	private static final int COMPACT_THRESHOLD = 4;
+
+	@SuppressWarnings("null")
+	private Path tempDir;
+	@SuppressWarnings("null")
+	private Path snapshotFile;
+	@SuppressWarnings("null")
+	private Path journalFile;
+
+	@BeforeEach
+	void createFiles() throws IOException {
+		this.tempDir = Files.createTempDirectory(getClass().getSimpleName());
+		this.snapshotFile = this.tempDir.resolve("state.json");
+		this.journalFile = this.tempDir.resolve("state.journal");
+	}
+
+	@AfterEach
+	void deleteFiles() throws IOException {
+		FileUtil.delete(this.tempDir);
+	}
+
+	@Test
+	void testSnapshotAndJournalReplay() throws IOException {
+		Map<ServiceId, Boolean> services = new HashMap<>();
+
+		try (ServiceStateJournal journal = open()) {
+			Assertions.assertTrue(journal.services().isEmpty());
+
+			services.put(A, Boolean.TRUE);
+			Assertions.assertEquals(1, journal.sync(() -> services));
+			journal.compact();
+
+			services.put(B, Boolean.FALSE);
+			services.put(C, Boolean.TRUE);
+			Assertions.assertEquals(2, journal.sync(() -> services));
+			services.remove(C);
+			Assertions.assertEquals(1, journal.sync(() -> services));
+			Assertions.assertEquals(0, journal.sync(() -> services));
+		}
+		Assertions.assertTrue(Files.size(this.journalFile) > 0);
+		try (ServiceStateJournal journal = open()) {
+			Assertions.assertEquals(services, journal.services());
+		}
+	}
+
+	@Test
+	void testTornJournalRecord() throws IOException {
+		Map<ServiceId, Boolean> services = new HashMap<>();
+
+		try (ServiceStateJournal journal = open()) {
+			services.put(A, Boolean.TRUE);
+			services.put(B, Boolean.FALSE);
+			journal.sync(() -> services);
+		}
+		Files.write(this.journalFile, "{\"operation\":\"remove\",\"moduleName\":\"mod".getBytes(StandardCharsets.UTF_8),
+				StandardOpenOption.APPEND);
+		try (ServiceStateJournal journal = open()) {
+			Assertions.assertEquals(services, journal.services());
+
+			// Records appended after the torn one must survive the next replay
+			services.put(C, Boolean.TRUE);
+			services.remove(A);
+			Assertions.assertEquals(2, journal.sync(() -> services));
+		}
+		try (ServiceStateJournal journal = open()) {
+			Assertions.assertEquals(services, journal.services());
+		}
+	}
+
+	@Test
+	void testCompaction() throws IOException {
+		Map<ServiceId, Boolean> services = new HashMap<>();
+
+		try (ServiceStateJournal journal = open()) {
+			services.put(A, Boolean.TRUE);
+			services.put(B, Boolean.TRUE);
+			journal.sync(() -> services);
+			services.put(C, Boolean.TRUE);
+			journal.sync(() -> services);
+
+			Assertions.assertFalse(Files.exists(this.snapshotFile));
+			Assertions.assertTrue(Files.size(this.journalFile) > 0);
+
+			// The 4th record reaches the threshold
+			services.put(A, Boolean.FALSE);
+			journal.sync(() -> services);
+
+			Assertions.assertTrue(Files.exists(this.snapshotFile));
+			Assertions.assertEquals(0, Files.size(this.journalFile));
+
+			services.remove(B);
+			journal.sync(() -> services);
+
+			Assertions.assertTrue(Files.size(this.journalFile) > 0);
+		}
+		// Restart after compaction replays the snapshot plus the subsequent journal records
+		try (ServiceStateJournal journal = open()) {
+			Assertions.assertEquals(services, journal.services());
+		}
+	}
+
+	private ServiceStateJournal open() throws IOException {
+		return ServiceStateJournal.open(this.snapshotFile, this.journalFile, COMPACT_THRESHOLD);
+	}
+
+}
@@ -0,0 +1,160 @@
+/*
+ * Copyright (c) 2018-2021 Holger de Carne and contributors, All Rights Reserved.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.carne.lwjsd.runtime.test.server;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import de.carne.lwjsd.api.ModuleInfo;
+import de.carne.lwjsd.api.ServiceHandle;
+import de.carne.lwjsd.api.ServiceId;
+import de.carne.lwjsd.api.ServiceInfo;
+import de.carne.lwjsd.api.ServiceManagerException;
+import de.carne.lwjsd.api.ServiceState;
+import de.carne.lwjsd.runtime.config.RuntimeConfig;
+import de.carne.lwjsd.runtime.server.Server;
+import de.carne.lwjsd.runtime.test.TestConfig;
+import de.carne.lwjsd.runtime.test.services.EchoService;
+import de.carne.lwjsd.runtime.test.services.TestService;
+
+/**
+ * Test service and module caching of the server's service store.
+ */
+class ServiceStoreTest {
+
+	@Test
+	void testServiceCache() throws IOException, ServiceManagerException, InterruptedException {
+		RuntimeConfig config = TestConfig.prepareConfig();
+
+		try (Server server = new Server(config)) {
+			Thread serverThread = server.start(false);
+			ServiceInfo testServiceInfo = server.registerService(TestService.class.getName());
+			ServiceHandle<TestService> testServiceHandle = server.getServiceHandle(TestService.class);
+
+			server.startService(testServiceInfo.id(), false);
+
+			TestService testService = server.getService(TestService.class);
+
+			// Restarting a loaded service re-uses the cached instance
+			server.stopService(testServiceInfo.id());
+			server.startService(testServiceInfo.id(), false);
+
+			Assertions.assertSame(testService, server.getService(TestService.class));
+			Assertions.assertSame(testService, testServiceHandle.get());
+			Assertions.assertEquals(ServiceState.RUNNING, testService.state());
+
+			server.requestStop();
+			serverThread.join();
+		} finally {
+			TestConfig.discardConfig(config);
+		}
+	}
+
+	@Test
+	void testModuleDeletion() throws IOException, ServiceManagerException, InterruptedException {
+		RuntimeConfig config = TestConfig.prepareConfig();
+
+		try (Server server = new Server(config)) {
+			Thread serverThread = server.start(false);
+			ModuleInfo moduleInfo1 = server.registerModule(TestConfig.TEST_SERVICES_MODULE, false);
+			ServiceId echoServiceId = new ServiceId(moduleInfo1.name(), EchoService.class.getName());
+
+			Assertions.assertEquals(ServiceState.RUNNING, server.startService(echoServiceId, false).state());
+
+			// Deleting the module discards the cached module and its services
+			server.deleteModule(moduleInfo1.name());
+
+			Assertions.assertTrue(server.queryStatus().moduleInfos().isEmpty());
+			Assertions.assertFalse(findServiceInfo(server, echoServiceId).isPresent());
+			Assertions.assertThrows(ServiceManagerException.class, () -> server.startService(echoServiceId, false));
+
+			// A re-registered module is instantiated again
+			ModuleInfo moduleInfo2 = server.registerModule(TestConfig.TEST_SERVICES_MODULE, false);
+
+			Assertions.assertEquals(moduleInfo1.name(), moduleInfo2.name());
+			Assertions.assertEquals(ServiceState.RUNNING, server.startService(echoServiceId, false).state());
+
+			server.requestStop();
+			serverThread.join();
+		} finally {
+			TestConfig.discardConfig(config);
+		}
+	}
+
+	private static final String PARALLEL_BOOT_PROPERTY = Server.class.getPackageName() + ".ServiceStore.parallelBoot";
+
+	@Test
+	void testParallelBoot() throws IOException, ServiceManagerException, InterruptedException {
+		RuntimeConfig config = TestConfig.prepareConfig();
+
+		try {
+			List<ServiceId> echoServiceIds = new ArrayList<>();
+
+			try (Server server = new Server(config)) {
+				Thread serverThread = server.start(false);
+
+				for (int moduleIndex = 1; moduleIndex <= 4; moduleIndex++) {
+					try (InputStream moduleStream = Files.newInputStream(TestConfig.TEST_SERVICES_MODULE)) {
+						ModuleInfo moduleInfo = server.receiveAndRegisterModule(moduleStream,
+								"parallel" + moduleIndex + "-0.0.0.jar", false);
+
+						echoServiceIds.add(new ServiceId(moduleInfo.name(), EchoService.class.getName()));
+					}
+				}
+				server.requestStop();
+				serverThread.join();
+			}
+
+			String parallelBoot = System.setProperty(PARALLEL_BOOT_PROPERTY, Boolean.TRUE.toString());
+
+			try (Server server = new Server(config)) {
+				Thread serverThread = server.start(false);
+
+				// All modules are instantiated during boot and their services are usable afterwards
+				Assertions.assertEquals(echoServiceIds.size(), server.queryStatus().moduleInfos().size());
+				for (ServiceId echoServiceId : echoServiceIds) {
+					Assertions.assertEquals(ServiceState.RUNNING, server.startService(echoServiceId, false).state());
+				}
+
+				server.requestStop();
+				serverThread.join();
+			} finally {
+				if (parallelBoot != null) {
+					System.setProperty(PARALLEL_BOOT_PROPERTY, parallelBoot);
+				} else {
+					System.clearProperty(PARALLEL_BOOT_PROPERTY);
+				}
+			}
+		} finally {
+			TestConfig.discardConfig(config);
+		}
+	}
+
+	private static Optional<ServiceInfo> findServiceInfo(Server server, ServiceId serviceId)
+			throws ServiceManagerException {
+		return server.queryStatus().serviceInfos().stream().filter(serviceInfo -> serviceInfo.id().equals(serviceId))
+				.findFirst();
+	}
+
+}
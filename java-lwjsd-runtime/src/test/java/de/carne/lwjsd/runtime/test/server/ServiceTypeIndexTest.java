@@ -0,0 +1,157 @@
+/*
+ * Copyright (c) 2018-2021 Holger de Carne and contributors, All Rights Reserved.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.carne.lwjsd.runtime.test.server;
+
+import java.util.Objects;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import de.carne.lwjsd.api.Service;
+import de.carne.lwjsd.api.ServiceContext;
+import de.carne.lwjsd.api.ServiceHandle;
+import de.carne.lwjsd.api.ServiceManagerException;
+import de.carne.lwjsd.runtime.server.ServiceTypeIndex;
+
+/**
+ * Test {@linkplain ServiceTypeIndex} class.
+ */
+class ServiceTypeIndexTest {
+
+	interface EchoApi extends Service {
+
+		String echo(String message);
+
+	}
+
+	static class AbstractTestService implements Service {
+
+		@Override
+		public void load(ServiceContext context) {
+			// Nothing to do here
+		}
+
+		@Override
+		public void start(ServiceContext context) {
+			// Nothing to do here
+		}
+
+		@Override
+		public void stop(ServiceContext context) {
+			// Nothing to do here
+		}
+
+		@Override
+		public void unload(ServiceContext context) {
+			// Nothing to do here
+		}
+
+	}
+
+	static class EchoService extends AbstractTestService implements EchoApi {
+
+		@Override
+		public String echo(String message) {
+			return message;
+		}
+
+	}
+
+	static class OtherService extends AbstractTestService {
+		// Nothing to add
+	}
+
+	@Test
+	void testSuperTypeLookup() {
+		ServiceTypeIndex index = new ServiceTypeIndex();
+		EchoService echoService = new EchoService();
+
+		index.add(echoService);
+
+		Assertions.assertSame(echoService, index.get(EchoService.class));
+		Assertions.assertSame(echoService, index.get(AbstractTestService.class));
+		Assertions.assertSame(echoService, index.get(Service.class));
+		Assertions.assertEquals("echo", Objects.requireNonNull(index.get(EchoApi.class)).echo("echo"));
+		Assertions.assertNull(index.get(OtherService.class));
+
+		OtherService otherService = new OtherService();
+
+		index.add(otherService);
+
+		// Shared super types resolve to the first indexed service
+		Assertions.assertSame(echoService, index.get(AbstractTestService.class));
+		Assertions.assertSame(otherService, index.get(OtherService.class));
+	}
+
+	@Test
+	void testHandleInvalidationOnUnregister() throws ServiceManagerException {
+		ServiceTypeIndex index = new ServiceTypeIndex();
+		EchoService echoService1 = new EchoService();
+		ServiceHandle<EchoService> handle = index.handle(EchoService.class);
+
+		Assertions.assertThrows(ServiceManagerException.class, handle::get);
+
+		index.add(echoService1);
+
+		Assertions.assertSame(echoService1, handle.get());
+
+		index.remove(echoService1);
+
+		Assertions.assertThrows(ServiceManagerException.class, handle::get);
+
+		EchoService echoService2 = new EchoService();
+
+		index.add(echoService2);
+
+		Assertions.assertSame(echoService2, handle.get());
+	}
+
+	@Test
+	void testHandleInvalidationOnModuleDeletion() throws ServiceManagerException {
+		ServiceTypeIndex index = new ServiceTypeIndex();
+		EchoService echoService = new EchoService();
+		OtherService otherService = new OtherService();
+		ServiceHandle<AbstractTestService> baseHandle = index.handle(AbstractTestService.class);
+		ServiceHandle<OtherService> otherHandle = index.handle(OtherService.class);
+
+		index.add(echoService);
+		index.add(otherService);
+
+		Assertions.assertSame(echoService, baseHandle.get());
+		Assertions.assertSame(otherService, otherHandle.get());
+
+		// Module deletion removes all of the module's services; the handle falls back to the remaining service
+		index.remove(echoService);
+
+		Assertions.assertSame(otherService, baseHandle.get());
+
+		index.remove(otherService);
+
+		Assertions.assertThrows(ServiceManagerException.class, baseHandle::get);
+		Assertions.assertThrows(ServiceManagerException.class, otherHandle::get);
+
+		// Store shutdown clears the whole index
+		index.add(otherService);
+
+		Assertions.assertSame(otherService, otherHandle.get());
+
+		index.clear();
+
+		Assertions.assertThrows(ServiceManagerException.class, otherHandle::get);
+	}
+
+}
@@ -18,11 +18,13 @@ package de.carne.lwjsd.runtime.test.services;
 
 import de.carne.lwjsd.api.Service;
 import de.carne.lwjsd.api.ServiceContext;
+import de.carne.lwjsd.api.ServiceDependencies;
 import de.carne.lwjsd.api.ServiceException;
 
 /**
  * 
  */
+@ServiceDependencies({ "de.carne.lwjsd.runtime.test.services.TestService" })
 public class EchoService implements Service {
 
 	/**